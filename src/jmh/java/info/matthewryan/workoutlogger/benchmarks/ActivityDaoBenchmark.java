@@ -0,0 +1,123 @@
+package info.matthewryan.workoutlogger.benchmarks;
+
+import info.matthewryan.workoutlogger.model.ActivityRecord;
+import info.matthewryan.workoutlogger.persistence.ActivityDao;
+import info.matthewryan.workoutlogger.persistence.ExerciseDao;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Reads and writes of activity_records against histories of 10k, 100k and 1M sets. Query
+// arguments rotate through a fixed, seeded set so no single page stays hot in the cache.
+// The insert benchmarks grow the trial's copy of the database as they run.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ActivityDaoBenchmark {
+
+    private static final int ARGUMENTS = 64;
+    private static final int BATCH_SIZE = 100;
+
+    @Param({"10000", "100000", "1000000"})
+    public int rows;
+
+    private Path file;
+    private Connection connection;
+    private ActivityDao activityDao;
+
+    private final LocalDate[] dates = new LocalDate[ARGUMENTS];
+    private final String[] exerciseNames = new String[ARGUMENTS];
+    private final int[] exerciseIds = new int[ARGUMENTS];
+    private List<ActivityRecord> batch;
+    private int next;
+    private long timestamp;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        file = BenchmarkDatabase.copy(rows);
+        connection = BenchmarkDatabase.open(file);
+        ExerciseDao exerciseDao = new ExerciseDao(connection);
+        activityDao = new ActivityDao(connection, exerciseDao.getExerciseDictionary());
+
+        // Days inside the generated history; some are rest days with no sets
+        Random random = new Random(42);
+        for (int i = 0; i < ARGUMENTS; i++) {
+            dates[i] = BenchmarkDatabase.END_DATE.minusDays(1 + random.nextInt(BenchmarkDatabase.YEARS * 365));
+            int exercise = random.nextInt(BenchmarkDatabase.EXERCISES);
+            exerciseNames[i] = BenchmarkDatabase.exerciseName(exercise);
+            exerciseIds[i] = exerciseDao.getExerciseIdByName(exerciseNames[i]);
+        }
+
+        timestamp = BenchmarkDatabase.END_TIMESTAMP;
+        batch = new ArrayList<>(BATCH_SIZE);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            batch.add(new ActivityRecord(exerciseIds[i % ARGUMENTS], 5, 100.0, timestamp + i, 1));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        connection.close();
+        BenchmarkDatabase.delete(file);
+    }
+
+    @Benchmark
+    public void insertActivity() {
+        activityDao.insertActivity(new ActivityRecord(exerciseIds[nextIndex()], 5, 100.0, ++timestamp, 1));
+    }
+
+    // One transaction of BATCH_SIZE sets, the write-behind buffer's path
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public long insertActivities() throws Exception {
+        return activityDao.insertActivities(batch);
+    }
+
+    @Benchmark
+    public List<ActivityRecord> getActivitiesByDate() {
+        return activityDao.getActivitiesByDate(dates[nextIndex()]);
+    }
+
+    @Benchmark
+    public List<ActivityRecord> getActivityDataByExercise() {
+        return activityDao.getActivityDataByExercise(exerciseNames[nextIndex()]);
+    }
+
+    @Benchmark
+    public ActivityRecord getPersonalBest() {
+        return activityDao.getPersonalBest(exerciseNames[nextIndex()]);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public List<ActivityRecord> getAllActivitiesOrderedByTimestamp() {
+        return activityDao.getAllActivitiesOrderedByTimestamp();
+    }
+
+    private int nextIndex() {
+        next = (next + 1) & (ARGUMENTS - 1);
+        return next;
+    }
+}
@@ -0,0 +1,138 @@
+package info.matthewryan.workoutlogger.benchmarks;
+
+import info.matthewryan.workoutlogger.model.Session;
+import info.matthewryan.workoutlogger.persistence.ActivityDao;
+import info.matthewryan.workoutlogger.persistence.ExerciseDao;
+import info.matthewryan.workoutlogger.persistence.PersonalBestDao;
+import info.matthewryan.workoutlogger.persistence.SessionDao;
+import info.matthewryan.workoutlogger.persistence.VolumeRollupDao;
+import info.matthewryan.workoutlogger.persistence.WorkoutDao;
+import info.matthewryan.workoutlogger.utils.HistoryGenerator;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.ZoneId;
+
+/**
+ * Pre-populated SQLite files for the benchmarks. The history for a given row count is made by
+ * HistoryGenerator once, with a fixed seed, into target/jmh-databases and reused by later forks and runs; each
+ * trial works on its own temporary copy, so inserts never leak into the next trial.
+ */
+final class BenchmarkDatabase {
+
+    // Exercises the benchmarks pick their arguments from, the catalogue's first entries
+    static final int EXERCISES = 60;
+    static final int WORKOUTS = 10;
+    static final int SESSIONS = 1000;
+    static final int YEARS = 3;
+    static final LocalDate END_DATE = LocalDate.of(2024, 1, 1);
+    static final long END_TIMESTAMP = END_DATE.atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+
+    private static final Path TEMPLATE_DIR = Path.of("target", "jmh-databases");
+    private static final long DAY_MILLIS = 86_400_000L;
+
+    private BenchmarkDatabase() {
+    }
+
+    // A fresh copy of the populated database with the given number of activities
+    static Path copy(int rows) throws IOException, SQLException {
+        Path template = template(rows);
+        Path copy = Files.createTempFile("workout-bench-" + rows + "-", ".db");
+        Files.copy(template, copy, StandardCopyOption.REPLACE_EXISTING);
+        return copy;
+    }
+
+    // Open a connection configured the way Database configures its writer
+    static Connection open(Path file) throws SQLException {
+        Connection connection = DriverManager.getConnection("jdbc:sqlite:" + file);
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("PRAGMA journal_mode = WAL");
+            stmt.execute("PRAGMA synchronous = NORMAL");
+            stmt.execute("PRAGMA cache_size = -16384");
+            stmt.execute("PRAGMA temp_store = MEMORY");
+        }
+        return connection;
+    }
+
+    static void delete(Path file) throws IOException {
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(Path.of(file + "-wal"));
+        Files.deleteIfExists(Path.of(file + "-shm"));
+    }
+
+    static String exerciseName(int index) {
+        return generator(0).getExerciseName(index);
+    }
+
+    private static HistoryGenerator generator(int rows) {
+        return HistoryGenerator.builder()
+                .seed(rows)
+                .athletes(Math.max(1, (int) Math.ceil(rows / 6000.0)))
+                .years(YEARS)
+                .endDate(END_DATE)
+                .maxSets(rows)
+                .build();
+    }
+
+    private static synchronized Path template(int rows) throws IOException, SQLException {
+        Path template = TEMPLATE_DIR.resolve("activities-" + rows + ".db");
+        if (Files.exists(template)) {
+            return template;
+        }
+        Files.createDirectories(TEMPLATE_DIR);
+        Path partial = TEMPLATE_DIR.resolve("activities-" + rows + ".db.partial");
+        delete(partial);
+
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + partial)) {
+            populate(connection, rows);
+        }
+        Files.move(partial, template, StandardCopyOption.REPLACE_EXISTING);
+        return template;
+    }
+
+    private static void populate(Connection connection, int rows) throws SQLException {
+        SessionDao sessionDao = new SessionDao(connection);
+        ExerciseDao exerciseDao = new ExerciseDao(connection);
+        ActivityDao activityDao = new ActivityDao(connection, exerciseDao.getExerciseDictionary());
+        WorkoutDao workoutDao = new WorkoutDao(connection, exerciseDao.getExerciseDictionary());
+
+        sessionDao.createSessionTable();
+        exerciseDao.createExerciseTable();
+        activityDao.createActivityTable();
+        exerciseDao.createVolumeGroupTable();
+        workoutDao.createWorkoutTable();
+        workoutDao.createWorkoutExercisesTable();
+
+        // The catalogue's most popular exercises first, so the benchmark arguments exist
+        connection.setAutoCommit(false);
+        HistoryGenerator generator = generator(rows);
+        int[] exerciseIds = new int[EXERCISES];
+        for (int i = 0; i < EXERCISES; i++) {
+            exerciseIds[i] = exerciseDao.getOrCreateExerciseId(generator.getExerciseName(i));
+        }
+        for (int w = 0; w < WORKOUTS; w++) {
+            workoutDao.insertWorkout("Workout " + w);
+            for (int order = 0; order < 6; order++) {
+                workoutDao.addExerciseToWorkout(w + 1, exerciseIds[(w * 6 + order) % EXERCISES], order);
+            }
+        }
+        for (int s = 0; s < SESSIONS; s++) {
+            long start = END_TIMESTAMP - (SESSIONS - s) * 2 * DAY_MILLIS;
+            sessionDao.startSession(new Session(start, start + 3_600_000L));
+        }
+        connection.commit();
+        connection.setAutoCommit(true);
+
+        generator.insertInto(exerciseDao, activityDao);
+
+        new PersonalBestDao(connection).createPersonalBestTable();
+        new VolumeRollupDao(connection).createRollupTables();
+    }
+}
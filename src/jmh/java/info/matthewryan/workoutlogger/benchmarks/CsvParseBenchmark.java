@@ -0,0 +1,86 @@
+package info.matthewryan.workoutlogger.benchmarks;
+
+import com.opencsv.CSVParser;
+import info.matthewryan.workoutlogger.utils.CsvTokenizer;
+import info.matthewryan.workoutlogger.utils.FixedTimestampParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.text.SimpleDateFormat;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// The CSV parsing strategies used for imports, each timed over one pass of the lines of
+// data.csv: String.split with a new SimpleDateFormat per line (the original importer),
+// opencsv with a cached java.time formatter, and CsvTokenizer with FixedTimestampParser.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CsvParseBenchmark {
+
+    private List<String> lines;
+
+    private final CSVParser csvParser = new CSVParser();
+    private final DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private final ZoneId zone = ZoneId.systemDefault();
+    private final CsvTokenizer tokenizer = new CsvTokenizer();
+    private final FixedTimestampParser timestamps = new FixedTimestampParser();
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                CsvParseBenchmark.class.getResourceAsStream("/data.csv")))) {
+            lines = reader.lines().skip(1).toList();
+        }
+    }
+
+    @Benchmark
+    public long splitAndSimpleDateFormat() throws Exception {
+        long checksum = 0;
+        for (String line : lines) {
+            String[] fields = line.split(",");
+            SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+            checksum += sdf.parse(fields[0]).getTime() + Integer.parseInt(fields[3]) + (long) Double.parseDouble(fields[4]);
+        }
+        return checksum;
+    }
+
+    @Benchmark
+    public long openCsv() throws Exception {
+        long checksum = 0;
+        for (String line : lines) {
+            String[] fields = csvParser.parseLine(line);
+            long timestamp = LocalDateTime.parse(fields[0], formatter).atZone(zone).toInstant().toEpochMilli();
+            checksum += timestamp + Integer.parseInt(fields[3]) + (long) Double.parseDouble(fields[4]);
+        }
+        return checksum;
+    }
+
+    @Benchmark
+    public long tokenizer() {
+        long checksum = 0;
+        for (String line : lines) {
+            tokenizer.reset(line);
+            long timestamp = timestamps.parse(line, tokenizer.fieldStart(0), tokenizer.fieldEnd(0));
+            checksum += timestamp + tokenizer.parseInt(3) + (long) tokenizer.parseDouble(4);
+        }
+        return checksum;
+    }
+}
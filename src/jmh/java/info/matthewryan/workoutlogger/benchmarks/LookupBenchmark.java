@@ -0,0 +1,107 @@
+package info.matthewryan.workoutlogger.benchmarks;
+
+import info.matthewryan.workoutlogger.model.Session;
+import info.matthewryan.workoutlogger.persistence.ExerciseDao;
+import info.matthewryan.workoutlogger.persistence.SessionDao;
+import info.matthewryan.workoutlogger.persistence.WorkoutDao;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Name/id lookups and the small ExerciseDao, SessionDao and WorkoutDao reads. Name lookups
+// are served by the exercise dictionary, so they should not move with the history size.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LookupBenchmark {
+
+    private static final int ARGUMENTS = 64;
+
+    @Param({"10000", "100000", "1000000"})
+    public int rows;
+
+    private Path file;
+    private Connection connection;
+    private ExerciseDao exerciseDao;
+    private SessionDao sessionDao;
+    private WorkoutDao workoutDao;
+
+    private final String[] exerciseNames = new String[ARGUMENTS];
+    private final int[] exerciseIds = new int[ARGUMENTS];
+    private final int[] sessionIds = new int[ARGUMENTS];
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        file = BenchmarkDatabase.copy(rows);
+        connection = BenchmarkDatabase.open(file);
+        exerciseDao = new ExerciseDao(connection);
+        sessionDao = new SessionDao(connection);
+        workoutDao = new WorkoutDao(connection, exerciseDao.getExerciseDictionary());
+
+        Random random = new Random(42);
+        for (int i = 0; i < ARGUMENTS; i++) {
+            exerciseNames[i] = BenchmarkDatabase.exerciseName(random.nextInt(BenchmarkDatabase.EXERCISES));
+            exerciseIds[i] = exerciseDao.getExerciseIdByName(exerciseNames[i]);
+            sessionIds[i] = 1 + random.nextInt(BenchmarkDatabase.SESSIONS);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        connection.close();
+        BenchmarkDatabase.delete(file);
+    }
+
+    @Benchmark
+    public int getExerciseIdByName() {
+        return exerciseDao.getExerciseIdByName(exerciseNames[nextIndex()]);
+    }
+
+    @Benchmark
+    public String getExerciseNameById() {
+        return exerciseDao.getExerciseNameById(exerciseIds[nextIndex()]);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public Object getAllExercises() {
+        return exerciseDao.getAllExercises();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public Session getSessionById() throws Exception {
+        return sessionDao.getSessionById(sessionIds[nextIndex()]);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public List<String> getExercisesForWorkout() {
+        return workoutDao.getExercisesForWorkout(1 + (nextIndex() % BenchmarkDatabase.WORKOUTS));
+    }
+
+    private int nextIndex() {
+        next = (next + 1) & (ARGUMENTS - 1);
+        return next;
+    }
+}
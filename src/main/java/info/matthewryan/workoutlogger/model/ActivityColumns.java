@@ -0,0 +1,241 @@
+package info.matthewryan.workoutlogger.model;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.stream.IntStream;
+
+/**
+ * Column-oriented, read-only copy of activity history. Every field is held in its own primitive
+ * array, sorted by exercise and then by timestamp, so a row costs 32 bytes of array space instead
+ * of an ActivityRecord object and its reference. The rows of one exercise form a contiguous range
+ * that charts and analytics can walk directly. Build instances with {@link #builder(int)};
+ * ActivityDao.loadActivityColumns fills one in a single pass.
+ */
+public final class ActivityColumns implements HistoryColumns {
+
+    private static final ActivityColumns EMPTY = new Builder(0).build();
+
+    private final int size;
+    private final int[] exerciseIds;
+    private final long[] timestamps;
+    private final int[] reps;
+    private final double[] weights;
+    private final long[] sessionIds;
+
+    // Distinct exercise ids in ascending order, and where each one's rows start;
+    // exerciseOffsets has one extra entry holding size
+    private final int[] exerciseKeys;
+    private final int[] exerciseOffsets;
+
+    private ActivityColumns(int size, int[] exerciseIds, long[] timestamps, int[] reps, double[] weights,
+                            long[] sessionIds, int[] exerciseKeys, int[] exerciseOffsets) {
+        this.size = size;
+        this.exerciseIds = exerciseIds;
+        this.timestamps = timestamps;
+        this.reps = reps;
+        this.weights = weights;
+        this.sessionIds = sessionIds;
+        this.exerciseKeys = exerciseKeys;
+        this.exerciseOffsets = exerciseOffsets;
+    }
+
+    public static ActivityColumns empty() {
+        return EMPTY;
+    }
+
+    public static Builder builder(int expectedSize) {
+        return new Builder(expectedSize);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public int getExerciseId(int row) {
+        checkRow(row);
+        return exerciseIds[row];
+    }
+
+    @Override
+    public long getTimestamp(int row) {
+        checkRow(row);
+        return timestamps[row];
+    }
+
+    @Override
+    public int getReps(int row) {
+        checkRow(row);
+        return reps[row];
+    }
+
+    @Override
+    public double getWeight(int row) {
+        checkRow(row);
+        return weights[row];
+    }
+
+    @Override
+    public long getSessionId(int row) {
+        checkRow(row);
+        return sessionIds[row];
+    }
+
+    // Distinct exercise ids present, ascending
+    public int[] getExerciseIds() {
+        return exerciseKeys.clone();
+    }
+
+    // First row of the exercise; equal to getExerciseEnd when it has no rows
+    @Override
+    public int getExerciseStart(int exerciseId) {
+        int key = Arrays.binarySearch(exerciseKeys, exerciseId);
+        return key >= 0 ? exerciseOffsets[key] : insertionOffset(key);
+    }
+
+    // One past the last row of the exercise
+    @Override
+    public int getExerciseEnd(int exerciseId) {
+        int key = Arrays.binarySearch(exerciseKeys, exerciseId);
+        return key >= 0 ? exerciseOffsets[key + 1] : insertionOffset(key);
+    }
+
+    public int getExerciseRowCount(int exerciseId) {
+        return getExerciseEnd(exerciseId) - getExerciseStart(exerciseId);
+    }
+
+    // Materialise one row, for callers that still work with records
+    public ActivityRecord toRecord(int row) {
+        checkRow(row);
+        return new ActivityRecord(exerciseIds[row], reps[row], weights[row], timestamps[row], sessionIds[row]);
+    }
+
+    private int insertionOffset(int searchResult) {
+        return exerciseOffsets[-searchResult - 1];
+    }
+
+    private void checkRow(int row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("Row " + row + " of " + size);
+        }
+    }
+
+    // Appends rows and computes the exercise ranges on build. Rows arriving in (exercise,
+    // timestamp) order are used as they are; anything else is sorted once in build().
+    public static final class Builder {
+
+        private int size;
+        private int[] exerciseIds;
+        private long[] timestamps;
+        private int[] reps;
+        private double[] weights;
+        private long[] sessionIds;
+        private boolean sorted = true;
+
+        private Builder(int expectedSize) {
+            int capacity = Math.max(expectedSize, 16);
+            exerciseIds = new int[capacity];
+            timestamps = new long[capacity];
+            reps = new int[capacity];
+            weights = new double[capacity];
+            sessionIds = new long[capacity];
+        }
+
+        // Same shape as ActivityVisitor, so a builder can be passed as a method reference
+        public void add(int exerciseId, int reps, double weight, long timestamp, long sessionId) {
+            if (size == exerciseIds.length) {
+                grow();
+            }
+            if (size > 0) {
+                int previousExercise = exerciseIds[size - 1];
+                if (exerciseId < previousExercise
+                        || (exerciseId == previousExercise && timestamp < timestamps[size - 1])) {
+                    sorted = false;
+                }
+            }
+            this.exerciseIds[size] = exerciseId;
+            this.timestamps[size] = timestamp;
+            this.reps[size] = reps;
+            this.weights[size] = weight;
+            this.sessionIds[size] = sessionId;
+            size++;
+        }
+
+        public ActivityColumns build() {
+            if (!sorted) {
+                sortRows();
+            }
+
+            // Trim to size so the columns hold no spare capacity
+            int[] exerciseIds = Arrays.copyOf(this.exerciseIds, size);
+            long[] timestamps = Arrays.copyOf(this.timestamps, size);
+            int[] reps = Arrays.copyOf(this.reps, size);
+            double[] weights = Arrays.copyOf(this.weights, size);
+            long[] sessionIds = Arrays.copyOf(this.sessionIds, size);
+
+            int distinct = 0;
+            for (int row = 0; row < size; row++) {
+                if (row == 0 || exerciseIds[row] != exerciseIds[row - 1]) {
+                    distinct++;
+                }
+            }
+            int[] exerciseKeys = new int[distinct];
+            int[] exerciseOffsets = new int[distinct + 1];
+            int key = 0;
+            for (int row = 0; row < size; row++) {
+                if (row == 0 || exerciseIds[row] != exerciseIds[row - 1]) {
+                    exerciseKeys[key] = exerciseIds[row];
+                    exerciseOffsets[key] = row;
+                    key++;
+                }
+            }
+            exerciseOffsets[distinct] = size;
+
+            return new ActivityColumns(size, exerciseIds, timestamps, reps, weights, sessionIds,
+                    exerciseKeys, exerciseOffsets);
+        }
+
+        private void grow() {
+            int capacity = exerciseIds.length * 2;
+            exerciseIds = Arrays.copyOf(exerciseIds, capacity);
+            timestamps = Arrays.copyOf(timestamps, capacity);
+            reps = Arrays.copyOf(reps, capacity);
+            weights = Arrays.copyOf(weights, capacity);
+            sessionIds = Arrays.copyOf(sessionIds, capacity);
+        }
+
+        // Fallback for unordered input; the loaders deliver rows in order and never get here
+        private void sortRows() {
+            int[] order = IntStream.range(0, size).boxed()
+                    .sorted(Comparator.<Integer>comparingInt(row -> exerciseIds[row])
+                            .thenComparingLong(row -> timestamps[row]))
+                    .mapToInt(Integer::intValue)
+                    .toArray();
+
+            int[] sortedExerciseIds = new int[exerciseIds.length];
+            long[] sortedTimestamps = new long[timestamps.length];
+            int[] sortedReps = new int[reps.length];
+            double[] sortedWeights = new double[weights.length];
+            long[] sortedSessionIds = new long[sessionIds.length];
+            for (int i = 0; i < size; i++) {
+                int row = order[i];
+                sortedExerciseIds[i] = exerciseIds[row];
+                sortedTimestamps[i] = timestamps[row];
+                sortedReps[i] = reps[row];
+                sortedWeights[i] = weights[row];
+                sortedSessionIds[i] = sessionIds[row];
+            }
+            exerciseIds = sortedExerciseIds;
+            timestamps = sortedTimestamps;
+            reps = sortedReps;
+            weights = sortedWeights;
+            sessionIds = sortedSessionIds;
+            sorted = true;
+        }
+    }
+}
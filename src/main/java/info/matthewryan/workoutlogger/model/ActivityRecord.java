@@ -1,7 +1,5 @@
 package info.matthewryan.workoutlogger.model;
 
-import java.util.Objects;
-
 public class ActivityRecord {
 
     private long id;
@@ -89,9 +87,16 @@ public class ActivityRecord {
                 sessionId == that.sessionId;  // Compare sessionId
     }
 
-    // Override hashCode() to generate a unique hash code based on the fields
+    // Override hashCode() to generate a unique hash code based on the fields.
+    // Combined by hand: Objects.hash would box every field into a varargs array.
     @Override
     public int hashCode() {
-        return Objects.hash(id, exerciseId, reps, weight, timestamp, sessionId);  // Include sessionId in hashCode
+        int result = Long.hashCode(id);
+        result = 31 * result + exerciseId;
+        result = 31 * result + reps;
+        result = 31 * result + Double.hashCode(weight);
+        result = 31 * result + Long.hashCode(timestamp);
+        result = 31 * result + Long.hashCode(sessionId);  // Include sessionId in hashCode
+        return result;
     }
 }
@@ -0,0 +1,80 @@
+package info.matthewryan.workoutlogger.model;
+
+// Display-ready projection of an activity record: the exercise name is joined in,
+// times are pre-formatted and the set number within the session is computed by the query
+public class ActivityRow {
+
+    private final long id;
+    private final int exerciseId;
+    private final String exerciseName;
+    private final int reps;
+    private final double weight;
+    private final long timestamp;
+    private final long sessionId;
+    private final int setIndex;
+    private final String formattedDateTime;
+    private final String formattedTime;
+
+    public ActivityRow(long id, int exerciseId, String exerciseName, int reps, double weight, long timestamp,
+                       long sessionId, int setIndex, String formattedDateTime, String formattedTime) {
+        this.id = id;
+        this.exerciseId = exerciseId;
+        this.exerciseName = exerciseName;
+        this.reps = reps;
+        this.weight = weight;
+        this.timestamp = timestamp;
+        this.sessionId = sessionId;
+        this.setIndex = setIndex;
+        this.formattedDateTime = formattedDateTime;
+        this.formattedTime = formattedTime;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public int getExerciseId() {
+        return exerciseId;
+    }
+
+    public String getExerciseName() {
+        return exerciseName;
+    }
+
+    public int getReps() {
+        return reps;
+    }
+
+    public double getWeight() {
+        return weight;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public long getSessionId() {
+        return sessionId;
+    }
+
+    // 1-based position of this set within its session, in time order
+    public int getSetIndex() {
+        return setIndex;
+    }
+
+    // yyyy-MM-dd HH:mm:ss in the local time zone
+    public String getFormattedDateTime() {
+        return formattedDateTime;
+    }
+
+    // HH:mm:ss in the local time zone
+    public String getFormattedTime() {
+        return formattedTime;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ActivityRow{id=%d, exercise=%s, set=%d, reps=%d, weight=%.2f, time=%s}",
+                id, exerciseName, setIndex, reps, weight, formattedDateTime);
+    }
+}
@@ -0,0 +1,28 @@
+package info.matthewryan.workoutlogger.model;
+
+/**
+ * Row access to activity history stored column by column in (exercise, timestamp) order, so
+ * the rows of one exercise form a contiguous range found by a lookup of its start and end.
+ * Implemented by the in-memory {@link ActivityColumns} and by the memory-mapped HistorySnapshot;
+ * readers such as the chart's data set walk either one in place.
+ */
+public interface HistoryColumns {
+
+    int size();
+
+    // First row of the exercise; equal to getExerciseEnd when it has no rows
+    int getExerciseStart(int exerciseId);
+
+    // One past the last row of the exercise
+    int getExerciseEnd(int exerciseId);
+
+    int getExerciseId(int row);
+
+    long getTimestamp(int row);
+
+    int getReps(int row);
+
+    double getWeight(int row);
+
+    long getSessionId(int row);
+}
@@ -0,0 +1,102 @@
+package info.matthewryan.workoutlogger.model;
+
+// Best sets of one exercise by three measures: heaviest weight, largest volume (reps x weight)
+// and highest estimated one-rep max. Each measure remembers the activity that set it.
+public class PersonalBest {
+
+    private final int exerciseId;
+
+    private final double bestWeight;
+    private final long bestWeightActivityId;
+    private final long bestWeightTimestamp;
+
+    private final double bestVolume;
+    private final long bestVolumeActivityId;
+    private final long bestVolumeTimestamp;
+
+    private final double bestEstimatedOneRepMax;
+    private final long bestEstimatedOneRepMaxActivityId;
+    private final long bestEstimatedOneRepMaxTimestamp;
+
+    public PersonalBest(int exerciseId,
+                        double bestWeight, long bestWeightActivityId, long bestWeightTimestamp,
+                        double bestVolume, long bestVolumeActivityId, long bestVolumeTimestamp,
+                        double bestEstimatedOneRepMax, long bestEstimatedOneRepMaxActivityId,
+                        long bestEstimatedOneRepMaxTimestamp) {
+        this.exerciseId = exerciseId;
+        this.bestWeight = bestWeight;
+        this.bestWeightActivityId = bestWeightActivityId;
+        this.bestWeightTimestamp = bestWeightTimestamp;
+        this.bestVolume = bestVolume;
+        this.bestVolumeActivityId = bestVolumeActivityId;
+        this.bestVolumeTimestamp = bestVolumeTimestamp;
+        this.bestEstimatedOneRepMax = bestEstimatedOneRepMax;
+        this.bestEstimatedOneRepMaxActivityId = bestEstimatedOneRepMaxActivityId;
+        this.bestEstimatedOneRepMaxTimestamp = bestEstimatedOneRepMaxTimestamp;
+    }
+
+    // Epley estimate of the one-rep max. A single is its own max and a set without reps
+    // estimates nothing. PersonalBestDao uses the same formula in SQL.
+    public static double estimateOneRepMax(int reps, double weight) {
+        if (reps <= 0) {
+            return 0;
+        }
+        if (reps == 1) {
+            return weight;
+        }
+        return weight * (1 + reps / 30.0);
+    }
+
+    // True if a set of reps x weight would beat any of the three records
+    public boolean isBeatenBy(int reps, double weight) {
+        return weight > bestWeight
+                || reps * weight > bestVolume
+                || estimateOneRepMax(reps, weight) > bestEstimatedOneRepMax;
+    }
+
+    public int getExerciseId() {
+        return exerciseId;
+    }
+
+    public double getBestWeight() {
+        return bestWeight;
+    }
+
+    public long getBestWeightActivityId() {
+        return bestWeightActivityId;
+    }
+
+    public long getBestWeightTimestamp() {
+        return bestWeightTimestamp;
+    }
+
+    public double getBestVolume() {
+        return bestVolume;
+    }
+
+    public long getBestVolumeActivityId() {
+        return bestVolumeActivityId;
+    }
+
+    public long getBestVolumeTimestamp() {
+        return bestVolumeTimestamp;
+    }
+
+    public double getBestEstimatedOneRepMax() {
+        return bestEstimatedOneRepMax;
+    }
+
+    public long getBestEstimatedOneRepMaxActivityId() {
+        return bestEstimatedOneRepMaxActivityId;
+    }
+
+    public long getBestEstimatedOneRepMaxTimestamp() {
+        return bestEstimatedOneRepMaxTimestamp;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("PersonalBest{exerciseId=%d, weight=%.2f, volume=%.2f, e1RM=%.2f}",
+                exerciseId, bestWeight, bestVolume, bestEstimatedOneRepMax);
+    }
+}
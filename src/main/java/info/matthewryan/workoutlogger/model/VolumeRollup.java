@@ -0,0 +1,80 @@
+package info.matthewryan.workoutlogger.model;
+
+import java.time.LocalDate;
+
+// Totals of one exercise over one day, ISO week or month
+public class VolumeRollup {
+
+    public enum Resolution {
+        DAY, WEEK, MONTH
+    }
+
+    private final int exerciseId;
+    private final Resolution resolution;
+    private final LocalDate bucketStart;
+    private final long bucketStartMillis;
+    private final double totalVolume;
+    private final int setCount;
+    private final int repCount;
+    private final double maxWeight;
+    private final double bestEstimatedOneRepMax;
+
+    public VolumeRollup(int exerciseId, Resolution resolution, LocalDate bucketStart, long bucketStartMillis,
+                        double totalVolume, int setCount, int repCount, double maxWeight,
+                        double bestEstimatedOneRepMax) {
+        this.exerciseId = exerciseId;
+        this.resolution = resolution;
+        this.bucketStart = bucketStart;
+        this.bucketStartMillis = bucketStartMillis;
+        this.totalVolume = totalVolume;
+        this.setCount = setCount;
+        this.repCount = repCount;
+        this.maxWeight = maxWeight;
+        this.bestEstimatedOneRepMax = bestEstimatedOneRepMax;
+    }
+
+    public int getExerciseId() {
+        return exerciseId;
+    }
+
+    public Resolution getResolution() {
+        return resolution;
+    }
+
+    // First local day of the bucket: the day itself, the Monday of the week or the 1st of the month
+    public LocalDate getBucketStart() {
+        return bucketStart;
+    }
+
+    // Local midnight at the start of the bucket, as epoch milliseconds
+    public long getBucketStartMillis() {
+        return bucketStartMillis;
+    }
+
+    // Sum of reps x weight over the bucket
+    public double getTotalVolume() {
+        return totalVolume;
+    }
+
+    public int getSetCount() {
+        return setCount;
+    }
+
+    public int getRepCount() {
+        return repCount;
+    }
+
+    public double getMaxWeight() {
+        return maxWeight;
+    }
+
+    public double getBestEstimatedOneRepMax() {
+        return bestEstimatedOneRepMax;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("VolumeRollup{exerciseId=%d, %s %s, volume=%.2f, sets=%d, reps=%d, maxWeight=%.2f, e1RM=%.2f}",
+                exerciseId, resolution, bucketStart, totalVolume, setCount, repCount, maxWeight, bestEstimatedOneRepMax);
+    }
+}
@@ -0,0 +1,195 @@
+package info.matthewryan.workoutlogger.persistence;
+
+import info.matthewryan.workoutlogger.model.ActivityRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Bulk writer for activity_records. Rows are queued with addBatch on a single prepared
+ * statement and committed every {@code chunkSize} rows, so a large import costs one
+ * transaction per chunk instead of one per row. Obtain one via {@link ActivityDao#openBatchInserter(int)}.
+ * A bulk loader, from {@link ActivityDao#openBulkLoader(int)}, also sets the activity_bulk_load
+ * guard so the personal best, rollup and change counter triggers skip every row, and rebuilds
+ * both tables and moves the counter on when closed.
+ */
+public class ActivityBatchInserter implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(ActivityBatchInserter.class);
+
+    private static final String START_BULK_LOAD_SQL = "INSERT OR IGNORE INTO activity_bulk_load (id) VALUES (0)";
+    private static final String END_BULK_LOAD_SQL = "DELETE FROM activity_bulk_load";
+    private static final String TABLE_EXISTS_SQL = "SELECT 1 FROM sqlite_master WHERE type = 'table' AND name = ?";
+
+    private final Connection connection;
+    private final ExerciseDictionary exerciseDictionary;
+    private final PreparedStatement pstmt;
+    private final boolean previousAutoCommit;
+    private final int chunkSize;
+    private final boolean bulkLoad;
+
+    private int pending;
+    private long inserted;
+
+    ActivityBatchInserter(Connection connection, ExerciseDictionary exerciseDictionary, String sql, int chunkSize,
+                          boolean bulkLoad) throws SQLException {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Chunk size must be positive");
+        }
+        this.connection = connection;
+        this.exerciseDictionary = exerciseDictionary;
+        this.chunkSize = chunkSize;
+        this.bulkLoad = bulkLoad;
+        this.previousAutoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try {
+            this.pstmt = SlowQueryLog.prepare(connection, sql);
+        } catch (SQLException e) {
+            connection.setAutoCommit(previousAutoCommit);
+            throw e;
+        }
+        if (bulkLoad) {
+            // Committed on its own so a failed first chunk cannot roll the guard back
+            try (Statement stmt = connection.createStatement()) {
+                stmt.executeUpdate(START_BULK_LOAD_SQL);
+                connection.commit();
+            } catch (SQLException e) {
+                rollback();
+                pstmt.close();
+                connection.setAutoCommit(previousAutoCommit);
+                throw e;
+            }
+        }
+    }
+
+    // Queue a record; the current chunk is executed and committed once it is full
+    public void add(ActivityRecord activityRecord) throws SQLException {
+        pstmt.setInt(1, activityRecord.getExerciseId());
+        pstmt.setInt(2, activityRecord.getReps());
+        pstmt.setDouble(3, activityRecord.getWeight());
+        pstmt.setLong(4, activityRecord.getTimestamp());
+        pstmt.setLong(5, activityRecord.getSessionId());
+        pstmt.addBatch();
+
+        if (++pending >= chunkSize) {
+            flush();
+        }
+    }
+
+    // Execute and commit whatever is queued in the current chunk
+    public void flush() throws SQLException {
+        if (pending == 0) {
+            return;
+        }
+        try {
+            long chunkInserted = insertedRows(pstmt.executeBatch());
+            connection.commit();
+            inserted += chunkInserted;
+            pending = 0;
+        } catch (SQLException e) {
+            logger.error("Error inserting batch of {} activity records: {}", pending, e.getMessage(), e);
+            pstmt.clearBatch();
+            rollback();
+            pending = 0;
+            throw e;
+        }
+    }
+
+    // Drop the records queued since the last commit, so that close does not write them
+    public void abandon() throws SQLException {
+        if (pending == 0) {
+            return;
+        }
+        logger.warn("Abandoning a batch of {} activity records", pending);
+        pstmt.clearBatch();
+        pending = 0;
+        rollback();
+    }
+
+    // Rows the statements of a batch inserted. A statement that may skip its row, like the one
+    // behind insertMissingActivities, reports 0 for a skipped row; a driver that reports no count
+    // at all is taken to have inserted the row.
+    private static long insertedRows(int[] counts) {
+        long rows = 0;
+        for (int count : counts) {
+            rows += count == Statement.SUCCESS_NO_INFO ? 1 : Math.max(0, count);
+        }
+        return rows;
+    }
+
+    // Exercises created in the rolled back chunk, e.g. by ExerciseDao.getOrCreateExerciseId while
+    // importing, were written through to the dictionary; their ids no longer exist
+    private void rollback() throws SQLException {
+        try {
+            connection.rollback();
+        } finally {
+            exerciseDictionary.invalidate();
+        }
+    }
+
+    // Number of records committed so far
+    public long getInsertedCount() {
+        return inserted;
+    }
+
+    @Override
+    public void close() throws SQLException {
+        try {
+            flush();
+        } finally {
+            try {
+                pstmt.close();
+                if (bulkLoad) {
+                    // Also after a failed chunk, the ones before it were committed unmaintained
+                    endBulkLoad();
+                }
+            } finally {
+                connection.setAutoCommit(previousAutoCommit);
+            }
+        }
+    }
+
+    private void endBulkLoad() throws SQLException {
+        long start = System.nanoTime();
+        try {
+            finishBulkLoad(connection);
+            connection.commit();
+            logger.info("Finished bulk load of {} activity records in {} ms", inserted, (System.nanoTime() - start) / 1_000_000);
+        } catch (SQLException e) {
+            // The guard stays set, ActivityDao.finishInterruptedBulkLoad retries at the next start
+            logger.error("Error finishing bulk load: {}", e.getMessage(), e);
+            rollback();
+            throw e;
+        }
+    }
+
+    // Rebuild the tables the triggers skipped during a bulk load, move the change counter on and
+    // clear the guard, within the connection's current transaction. Tables not created on this database are left alone.
+    static void finishBulkLoad(Connection connection) throws SQLException {
+        if (tableExists(connection, "personal_bests")) {
+            new PersonalBestDao(connection).rebuildPersonalBests();
+        }
+        if (tableExists(connection, "volume_rollup_day")) {
+            new VolumeRollupDao(connection).rebuildRollups();
+        }
+        try (Statement stmt = connection.createStatement()) {
+            // One move for the whole load, which the change counter triggers skipped row by row
+            stmt.executeUpdate(ActivityDao.BUMP_CHANGE_COUNTER_SQL);
+            stmt.executeUpdate(END_BULK_LOAD_SQL);
+        }
+    }
+
+    static boolean tableExists(Connection connection, String table) throws SQLException {
+        try (PreparedStatement stmt = connection.prepareStatement(TABLE_EXISTS_SQL)) {
+            stmt.setString(1, table);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+}
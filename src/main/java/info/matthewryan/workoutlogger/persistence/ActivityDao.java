@@ -1,24 +1,208 @@
 package info.matthewryan.workoutlogger.persistence;
 
+import info.matthewryan.workoutlogger.model.ActivityColumns;
 import info.matthewryan.workoutlogger.model.ActivityRecord;
+import info.matthewryan.workoutlogger.model.ActivityRow;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.sql.*;
+import java.time.Instant;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public class ActivityDao {
 
     private static final Logger logger = LoggerFactory.getLogger(ActivityDao.class);
 
+    private static final String INSERT_ACTIVITY_SQL =
+            "INSERT INTO activity_records (exercise_id, reps, weight, timestamp, session_id) VALUES (?, ?, ?, ?, ?)";
+
+    // Same parameters as INSERT_ACTIVITY_SQL; skips a set already stored for the session at that
+    // timestamp, found through idx_activity_records_session_timestamp
+    private static final String INSERT_MISSING_ACTIVITY_SQL =
+            "INSERT INTO activity_records (exercise_id, reps, weight, timestamp, session_id) " +
+            "SELECT ?1, ?2, ?3, ?4, ?5 WHERE NOT EXISTS (SELECT 1 FROM activity_records " +
+            "WHERE session_id = ?5 AND timestamp = ?4 AND exercise_id = ?1)";
+
+    private static final String DELETE_ACTIVITY_SQL = "DELETE FROM activity_records WHERE id = ?";
+
+    // Activity rows joined with their exercise name and numbered within their session
+    private static final String ACTIVITY_ROW_SELECT =
+            "SELECT a.id, a.exercise_id, e.name AS exercise_name, a.reps, a.weight, a.timestamp, a.session_id, " +
+            "ROW_NUMBER() OVER (PARTITION BY a.session_id ORDER BY a.timestamp, a.id) AS set_index " +
+            "FROM activity_records a LEFT JOIN exercises e ON e.id = a.exercise_id ";
+
+    // Read queries. Each one is served by an index created in createActivityTable;
+    // QueryPlanTest checks that through EXPLAIN QUERY PLAN.
+    private static final String SELECT_ALL_ACTIVITIES_SQL =
+            "SELECT * FROM activity_records ORDER BY timestamp DESC";
+    private static final String SELECT_ACTIVITIES_BY_TIME_RANGE_SQL =
+            "SELECT * FROM activity_records WHERE timestamp BETWEEN ? AND ? ORDER BY timestamp DESC";
+    private static final String SELECT_ACTIVITIES_BY_EXERCISE_SQL =
+            "SELECT * FROM activity_records WHERE exercise_id = ? ORDER BY timestamp DESC";
+    // The set holding the weight record, found through the trigger-maintained personal_bests row
+    private static final String SELECT_PERSONAL_BEST_SQL =
+            "SELECT a.* FROM personal_bests p JOIN activity_records a ON a.id = p.best_weight_activity_id " +
+            "WHERE p.exercise_id = ?";
+    // The same without personal_bests: the top of the exercise's range in the weight index
+    private static final String SELECT_HEAVIEST_SET_SQL =
+            "SELECT * FROM activity_records WHERE exercise_id = ? ORDER BY weight DESC LIMIT 1";
+    private static final String SELECT_ACTIVITIES_FOR_SESSION_SQL =
+            "SELECT * FROM activity_records WHERE session_id = ? ORDER BY timestamp ASC";
+    private static final String SELECT_ACTIVITY_ROWS_SQL =
+            ACTIVITY_ROW_SELECT + "ORDER BY a.timestamp DESC";
+    private static final String SELECT_ACTIVITY_ROWS_BY_TIME_RANGE_SQL =
+            "SELECT * FROM (" + ACTIVITY_ROW_SELECT +
+            "WHERE a.session_id IN (SELECT session_id FROM activity_records WHERE timestamp BETWEEN ? AND ?)" +
+            ") WHERE timestamp BETWEEN ? AND ? ORDER BY timestamp DESC";
+    private static final String SELECT_ACTIVITY_ROWS_FOR_SESSION_SQL =
+            ACTIVITY_ROW_SELECT + "WHERE a.session_id = ? ORDER BY a.timestamp ASC, a.id ASC";
+    // One page of history, newest first, strictly after the (timestamp, id) cursor. The range on
+    // timestamp walks idx_activity_records_timestamp; the id test only skips rows sharing the
+    // cursor's timestamp. The set number is counted per row from the session index, so a page
+    // costs the same wherever it starts.
+    private static final String SELECT_ACTIVITY_ROWS_PAGE_SQL =
+            "SELECT a.id, a.exercise_id, e.name AS exercise_name, a.reps, a.weight, a.timestamp, a.session_id, " +
+            "(SELECT COUNT(*) FROM activity_records s WHERE s.session_id = a.session_id " +
+            "AND s.timestamp <= a.timestamp AND (s.timestamp < a.timestamp OR s.id <= a.id)) AS set_index " +
+            "FROM activity_records a LEFT JOIN exercises e ON e.id = a.exercise_id " +
+            "WHERE a.timestamp <= ? AND (a.timestamp < ? OR a.id < ?) " +
+            "ORDER BY a.timestamp DESC, a.id DESC LIMIT ?";
+    private static final String COUNT_ACTIVITIES_SQL = "SELECT COUNT(*) FROM activity_records";
+    // Single-pass scans for the streaming readers, oldest first. Only the columns the visitor
+    // takes are selected, so the per-exercise scan is answered from the covering index alone
+    // (ordering it by id as well would add a sort).
+    private static final String SCAN_ACTIVITIES_SQL =
+            "SELECT exercise_id, reps, weight, timestamp, session_id FROM activity_records ORDER BY timestamp, id";
+    private static final String SCAN_ACTIVITIES_BY_EXERCISE_SQL =
+            "SELECT exercise_id, reps, weight, timestamp, session_id FROM activity_records " +
+            "WHERE exercise_id = ? ORDER BY timestamp";
+    // One time window of an exercise, [from, to), for the chart's zoomed views
+    private static final String SCAN_ACTIVITIES_BY_EXERCISE_RANGE_SQL =
+            "SELECT exercise_id, reps, weight, timestamp, session_id FROM activity_records " +
+            "WHERE exercise_id = ? AND timestamp >= ? AND timestamp < ? ORDER BY timestamp";
+    // First and last set of an exercise; both ends of its index range
+    private static final String SELECT_TIMESTAMP_RANGE_BY_EXERCISE_SQL =
+            "SELECT MIN(timestamp), MAX(timestamp) FROM activity_records WHERE exercise_id = ?";
+    // Whole history in (exercise, timestamp) order, read straight off the covering exercise index
+    private static final String SCAN_ACTIVITIES_BY_EXERCISE_ORDER_SQL =
+            "SELECT exercise_id, reps, weight, timestamp, session_id FROM activity_records ORDER BY exercise_id, timestamp";
+    private static final String STREAM_ACTIVITIES_SQL =
+            "SELECT id, exercise_id, reps, weight, timestamp, session_id FROM activity_records ORDER BY timestamp, id";
+
+    // Rows the driver is asked to fetch per round trip during scans. SQLite steps rows lazily
+    // either way, so a scan never buffers the whole result.
+    private static final int SCAN_FETCH_SIZE = 1024;
+
+    // Indexes for the access paths above:
+    // - timestamp: full history and calendar day ranges, newest first
+    // - (exercise_id, timestamp, ...): per-exercise history for the charts; covers every column,
+    //   so the chart query reads one contiguous index range and never touches the table
+    // - (exercise_id, weight): personal best is the last entry of the exercise's range when there
+    //   is no personal_bests table; with one it is two primary key lookups
+    // - (session_id, timestamp): session log, and set numbering via ROW_NUMBER() per session
+    private static final String[] CREATE_ACTIVITY_INDEXES_SQL = {
+            "CREATE INDEX IF NOT EXISTS idx_activity_records_timestamp ON activity_records (timestamp)",
+            "CREATE INDEX IF NOT EXISTS idx_activity_records_exercise_timestamp " +
+                    "ON activity_records (exercise_id, timestamp, reps, weight, session_id)",
+            "CREATE INDEX IF NOT EXISTS idx_activity_records_exercise_weight ON activity_records (exercise_id, weight)",
+            "CREATE INDEX IF NOT EXISTS idx_activity_records_session_timestamp ON activity_records (session_id, timestamp)"
+    };
+
+    // Single-row guard present while a bulk load is running. The personal best, rollup and change
+    // counter triggers test NOT_BULK_LOADING_SQL and skip their per-row work while it is set; the
+    // loader rebuilds both tables and moves the counter on once its rows are in.
+    private static final String CREATE_BULK_LOAD_SQL =
+            "CREATE TABLE IF NOT EXISTS activity_bulk_load (id INTEGER PRIMARY KEY CHECK (id = 0))";
+    static final String NOT_BULK_LOADING_SQL = "NOT EXISTS (SELECT 1 FROM activity_bulk_load)";
+    private static final String SELECT_BULK_LOAD_SQL = "SELECT EXISTS (SELECT 1 FROM activity_bulk_load)";
+
+    static final String BUMP_CHANGE_COUNTER_SQL = "UPDATE activity_change_counter SET counter = counter + 1 WHERE id = 0";
+
+    // Single-row counter bumped by triggers on every insert, update and delete of an activity,
+    // and once per bulk load. Copies of the history kept outside the database, such as
+    // HistorySnapshot, record the value they were built from and are stale once it has moved on.
+    // The triggers are recreated every time, so databases from before the bulk load guard pick it up.
+    private static final String[] CREATE_CHANGE_COUNTER_SQL = {
+            "CREATE TABLE IF NOT EXISTS activity_change_counter (" +
+                    "id INTEGER PRIMARY KEY CHECK (id = 0), counter INTEGER NOT NULL)",
+            "INSERT OR IGNORE INTO activity_change_counter (id, counter) VALUES (0, 0)",
+            "DROP TRIGGER IF EXISTS trg_activity_change_insert",
+            "DROP TRIGGER IF EXISTS trg_activity_change_delete",
+            "DROP TRIGGER IF EXISTS trg_activity_change_update",
+            "CREATE TRIGGER trg_activity_change_insert AFTER INSERT ON activity_records " +
+                    "WHEN " + NOT_BULK_LOADING_SQL + " BEGIN " + BUMP_CHANGE_COUNTER_SQL + "; END",
+            "CREATE TRIGGER trg_activity_change_delete AFTER DELETE ON activity_records " +
+                    "WHEN " + NOT_BULK_LOADING_SQL + " BEGIN " + BUMP_CHANGE_COUNTER_SQL + "; END",
+            "CREATE TRIGGER trg_activity_change_update AFTER UPDATE ON activity_records " +
+                    "WHEN " + NOT_BULK_LOADING_SQL + " BEGIN " + BUMP_CHANGE_COUNTER_SQL + "; END"
+    };
+
+    private static final String SELECT_CHANGE_COUNTER_SQL = "SELECT counter FROM activity_change_counter WHERE id = 0";
+
+    // Latency, rows and errors per public method, published by QueryMetrics
+    private static final QueryStats CREATE_ACTIVITY_TABLE_STATS = QueryMetrics.forMethod(ActivityDao.class, "createActivityTable");
+    private static final QueryStats INSERT_ACTIVITY_STATS = QueryMetrics.forMethod(ActivityDao.class, "insertActivity");
+    private static final QueryStats OPEN_BATCH_INSERTER_STATS = QueryMetrics.forMethod(ActivityDao.class, "openBatchInserter");
+    private static final QueryStats OPEN_BULK_LOADER_STATS = QueryMetrics.forMethod(ActivityDao.class, "openBulkLoader");
+    private static final QueryStats INSERT_ACTIVITIES_STATS = QueryMetrics.forMethod(ActivityDao.class, "insertActivities");
+    private static final QueryStats INSERT_MISSING_ACTIVITIES_STATS =
+            QueryMetrics.forMethod(ActivityDao.class, "insertMissingActivities");
+    private static final QueryStats DELETE_ACTIVITY_STATS = QueryMetrics.forMethod(ActivityDao.class, "deleteActivity");
+    private static final QueryStats GET_ALL_ACTIVITIES_STATS =
+            QueryMetrics.forMethod(ActivityDao.class, "getAllActivitiesOrderedByTimestamp");
+    private static final QueryStats GET_ACTIVITIES_BY_DATE_STATS = QueryMetrics.forMethod(ActivityDao.class, "getActivitiesByDate");
+    private static final QueryStats GET_ACTIVITY_DATA_BY_EXERCISE_STATS =
+            QueryMetrics.forMethod(ActivityDao.class, "getActivityDataByExercise");
+    private static final QueryStats GET_PERSONAL_BEST_STATS = QueryMetrics.forMethod(ActivityDao.class, "getPersonalBest");
+    private static final QueryStats GET_ACTIVITIES_FOR_SESSION_STATS =
+            QueryMetrics.forMethod(ActivityDao.class, "getActivitiesForSession");
+    private static final QueryStats GET_ACTIVITY_ROWS_STATS =
+            QueryMetrics.forMethod(ActivityDao.class, "getActivityRowsOrderedByTimestamp");
+    private static final QueryStats GET_ACTIVITY_ROWS_PAGE_STATS = QueryMetrics.forMethod(ActivityDao.class, "getActivityRowsPage");
+    private static final QueryStats COUNT_ACTIVITIES_STATS = QueryMetrics.forMethod(ActivityDao.class, "countActivities");
+    private static final QueryStats GET_CHANGE_COUNTER_STATS = QueryMetrics.forMethod(ActivityDao.class, "getChangeCounter");
+    private static final QueryStats FOR_EACH_ACTIVITY_STATS = QueryMetrics.forMethod(ActivityDao.class, "forEachActivity");
+    private static final QueryStats FOR_EACH_ACTIVITY_OF_EXERCISE_STATS =
+            QueryMetrics.forMethod(ActivityDao.class, "forEachActivityOfExercise");
+    private static final QueryStats FOR_EACH_ACTIVITY_OF_EXERCISE_BETWEEN_STATS =
+            QueryMetrics.forMethod(ActivityDao.class, "forEachActivityOfExerciseBetween");
+    private static final QueryStats GET_TIMESTAMP_RANGE_STATS = QueryMetrics.forMethod(ActivityDao.class, "getTimestampRange");
+    private static final QueryStats LOAD_ACTIVITY_COLUMNS_STATS = QueryMetrics.forMethod(ActivityDao.class, "loadActivityColumns");
+    private static final QueryStats STREAM_ACTIVITIES_STATS = QueryMetrics.forMethod(ActivityDao.class, "streamActivities");
+    private static final QueryStats GET_ACTIVITY_ROWS_BY_DATE_STATS =
+            QueryMetrics.forMethod(ActivityDao.class, "getActivityRowsByDate");
+    private static final QueryStats GET_ACTIVITY_ROWS_FOR_SESSION_STATS =
+            QueryMetrics.forMethod(ActivityDao.class, "getActivityRowsForSession");
+    private static final QueryStats RESET_TO_FACTORY_SETTINGS_STATS =
+            QueryMetrics.forMethod(ActivityDao.class, "resetToFactorySettings");
+
+    private static final DateTimeFormatter DATE_TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("HH:mm:ss");
+
     private final Connection connection;
+    private final ExerciseDictionary exerciseDictionary;
+    private volatile boolean personalBestsTable;
 
     // Constructor that takes both a custom Connection and ApplicationSettings object
     public ActivityDao(Connection connection) {
+        this(connection, new ExerciseDictionary(connection));
+    }
+
+    // Share one dictionary between all DAOs working on the same database
+    public ActivityDao(Connection connection, ExerciseDictionary exerciseDictionary) {
         this.connection = connection;
+        this.exerciseDictionary = exerciseDictionary;
     }
 
     // Create the activity table with exercise_id as a foreign key to exercises table
@@ -34,8 +218,17 @@ public class ActivityDao {
                 "FOREIGN KEY (session_id) REFERENCES session(id) " +  // Foreign key to session table
                 ");";
 
-        try (Statement stmt = connection.createStatement()) {
+        try (QueryStats.Timer timer = CREATE_ACTIVITY_TABLE_STATS.start();
+             Statement stmt = connection.createStatement()) {
             stmt.execute(sql);
+            for (String indexSql : CREATE_ACTIVITY_INDEXES_SQL) {
+                stmt.execute(indexSql);
+            }
+            stmt.execute(CREATE_BULK_LOAD_SQL);
+            for (String counterSql : CREATE_CHANGE_COUNTER_SQL) {
+                stmt.execute(counterSql);
+            }
+            timer.succeeded(0);
             logger.info("Activity records table created successfully or already exists.");
         } catch (SQLException e) {
             logger.error("Error creating activity_records table: {}", e.getMessage(), e);
@@ -44,28 +237,106 @@ public class ActivityDao {
 
     // Insert an activity record with exercise_id, reps, weight, and timestamp
     public void insertActivity(ActivityRecord activityRecord) {
-        String sql = "INSERT INTO activity_records (exercise_id, reps, weight, timestamp, session_id) VALUES (?, ?, ?, ?, ?)";
-        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+        try (QueryStats.Timer timer = INSERT_ACTIVITY_STATS.start();
+             PreparedStatement pstmt = SlowQueryLog.prepare(connection, INSERT_ACTIVITY_SQL)) {
             pstmt.setInt(1, activityRecord.getExerciseId());
             pstmt.setInt(2, activityRecord.getReps());
             pstmt.setDouble(3, activityRecord.getWeight());
             pstmt.setLong(4, activityRecord.getTimestamp());
             pstmt.setLong(5, activityRecord.getSessionId());  // Set the sessionId
-            pstmt.executeUpdate();
+            timer.succeeded(pstmt.executeUpdate());
         }
         catch (SQLException e) {
             logger.error("Error creating activity_records table: {}", e.getMessage(), e);
         }
     }
 
+    // Open a bulk writer that commits every chunkSize rows through one reused prepared statement
+    public ActivityBatchInserter openBatchInserter(int chunkSize) throws SQLException {
+        try (QueryStats.Timer timer = OPEN_BATCH_INSERTER_STATS.start()) {
+            ActivityBatchInserter inserter = new ActivityBatchInserter(connection, exerciseDictionary, INSERT_ACTIVITY_SQL,
+                    chunkSize, false);
+            timer.succeeded(0);
+            return inserter;
+        }
+    }
+
+    // Like openBatchInserter, for imports: the personal best and rollup triggers are switched off
+    // while it is open and both tables are rebuilt when it is closed. The rebuild reads the whole
+    // history, so a handful of rows is cheaper through openBatchInserter.
+    public ActivityBatchInserter openBulkLoader(int chunkSize) throws SQLException {
+        try (QueryStats.Timer timer = OPEN_BULK_LOADER_STATS.start()) {
+            ActivityBatchInserter inserter = new ActivityBatchInserter(connection, exerciseDictionary, INSERT_ACTIVITY_SQL,
+                    chunkSize, true);
+            timer.succeeded(0);
+            return inserter;
+        }
+    }
+
+    // Finish a bulk load that was cut short, e.g. by a crash, by rebuilding what its triggers
+    // skipped. Call at startup once the personal best and rollup tables exist.
+    public void finishInterruptedBulkLoad() {
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery(SELECT_BULK_LOAD_SQL)) {
+            if (rs.next() && rs.getBoolean(1)) {
+                logger.warn("Found an unfinished bulk load, rebuilding personal bests and rollups");
+                ActivityBatchInserter.finishBulkLoad(connection);
+            }
+        } catch (SQLException e) {
+            logger.error("Error finishing interrupted bulk load: {}", e.getMessage(), e);
+        }
+    }
+
+    // Insert a list of activity records in a single transaction, returns the number inserted
+    public long insertActivities(List<ActivityRecord> activityRecords) throws SQLException {
+        try (QueryStats.Timer timer = INSERT_ACTIVITIES_STATS.start();
+             ActivityBatchInserter inserter = openBatchInserter(Math.max(1, activityRecords.size()))) {
+            for (ActivityRecord activityRecord : activityRecords) {
+                inserter.add(activityRecord);
+            }
+            inserter.flush();
+            timer.succeeded(inserter.getInsertedCount());
+            return inserter.getInsertedCount();
+        }
+    }
+
+    // Insert, in one transaction, the records that are not stored yet, e.g. when replaying the
+    // session journal after a crash. Returns the number actually inserted.
+    public long insertMissingActivities(List<ActivityRecord> activityRecords) throws SQLException {
+        try (QueryStats.Timer timer = INSERT_MISSING_ACTIVITIES_STATS.start();
+             ActivityBatchInserter inserter = new ActivityBatchInserter(connection, exerciseDictionary,
+                     INSERT_MISSING_ACTIVITY_SQL, Math.max(1, activityRecords.size()), false)) {
+            for (ActivityRecord activityRecord : activityRecords) {
+                inserter.add(activityRecord);
+            }
+            inserter.flush();
+            timer.succeeded(inserter.getInsertedCount());
+            return inserter.getInsertedCount();
+        }
+    }
+
+    // Delete one activity record; returns false if there was no such record
+    public boolean deleteActivity(long activityId) {
+        try (QueryStats.Timer timer = DELETE_ACTIVITY_STATS.start();
+             PreparedStatement pstmt = SlowQueryLog.prepare(connection, DELETE_ACTIVITY_SQL)) {
+            pstmt.setLong(1, activityId);
+            int deletedCount = pstmt.executeUpdate();
+            timer.succeeded(deletedCount);
+            boolean deleted = deletedCount > 0;
+            logger.info("Deleted activity {}: {}", activityId, deleted);
+            return deleted;
+        } catch (SQLException e) {
+            logger.error("Error deleting activity {}: {}", activityId, e.getMessage(), e);
+            return false;
+        }
+    }
 
     // Fetch all activities ordered by timestamp in descending order
     public List<ActivityRecord> getAllActivitiesOrderedByTimestamp() {
         List<ActivityRecord> activityRecords = new ArrayList<>();
-        String sql = "SELECT * FROM activity_records ORDER BY timestamp DESC";
-
-        try (Statement stmt = connection.createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
+        try (QueryStats.Timer timer = GET_ALL_ACTIVITIES_STATS.start();
+             PreparedStatement stmt = SlowQueryLog.prepare(connection, SELECT_ALL_ACTIVITIES_SQL);
+             ResultSet rs = stmt.executeQuery()) {
 
             while (rs.next()) {
                 int exerciseId = rs.getInt("exercise_id");
@@ -79,6 +350,7 @@ public class ActivityDao {
                 record.setId(rs.getLong("id"));
                 activityRecords.add(record);
             }
+            timer.succeeded(activityRecords.size());
             logger.info("Retrieved {} activities ordered by timestamp.", activityRecords.size());
         } catch (SQLException e) {
             logger.error("Error retrieving activities ordered by timestamp: {}", e.getMessage(), e);
@@ -93,9 +365,8 @@ public class ActivityDao {
         long startOfDay = date.atStartOfDay().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
         long endOfDay = date.atTime(23, 59, 59, 999999999).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
 
-        String query = "SELECT * FROM activity_records WHERE timestamp BETWEEN ? AND ? ORDER BY timestamp DESC";
-
-        try (PreparedStatement pstmt = connection.prepareStatement(query)) {
+        try (QueryStats.Timer timer = GET_ACTIVITIES_BY_DATE_STATS.start();
+             PreparedStatement pstmt = SlowQueryLog.prepare(connection, SELECT_ACTIVITIES_BY_TIME_RANGE_SQL)) {
             pstmt.setLong(1, startOfDay);
             pstmt.setLong(2, endOfDay);
 
@@ -112,6 +383,7 @@ public class ActivityDao {
                     activities.add(record);
                 }
             }
+            timer.succeeded(activities.size());
         } catch (SQLException e) {
             logger.error("Error retrieving activity data for date {}: {}", date, e.getMessage(), e);
         }
@@ -122,7 +394,6 @@ public class ActivityDao {
 
     public List<ActivityRecord> getActivityDataByExercise(String exerciseName) {
         List<ActivityRecord> activities = new ArrayList<>();
-
         // Get the exercise_id for the given exerciseName
         int exerciseId = getExerciseIdByName(exerciseName);
         if (exerciseId == -1) {
@@ -131,9 +402,8 @@ public class ActivityDao {
         }
 
         // Fetch activity records for the given exercise_id
-        String query = "SELECT * FROM activity_records WHERE exercise_id = ? ORDER BY timestamp DESC";
-
-        try (PreparedStatement pstmt = connection.prepareStatement(query)) {
+        try (QueryStats.Timer timer = GET_ACTIVITY_DATA_BY_EXERCISE_STATS.start();
+             PreparedStatement pstmt = SlowQueryLog.prepare(connection, SELECT_ACTIVITIES_BY_EXERCISE_SQL)) {
             pstmt.setInt(1, exerciseId);  // Set the exercise_id
 
             try (ResultSet rs = pstmt.executeQuery()) {
@@ -150,6 +420,7 @@ public class ActivityDao {
                     activities.add(record);
                 }
             }
+            timer.succeeded(activities.size());
         } catch (SQLException e) {
             logger.error("Error retrieving activity data for exercise {}: {}", exerciseName, e.getMessage(), e);
         }
@@ -158,10 +429,11 @@ public class ActivityDao {
     }
 
 
-    // Fetch the personal best activity for a given exercise
+    // Fetch the personal best activity for a given exercise: the set holding its weight record,
+    // earliest on ties. Read from the personal_bests table of PersonalBestDao, or from the sets
+    // themselves on a database without one.
     public ActivityRecord getPersonalBest(String activity) {
         ActivityRecord bestRecord = null;
-        String sql = "SELECT * FROM activity_records WHERE exercise_id = ? ORDER BY weight DESC LIMIT 1";
 
         int exerciseId = getExerciseIdByName(activity);
 
@@ -169,7 +441,9 @@ public class ActivityDao {
             return null;  // If exercise doesn't exist, return null
         }
 
-        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+        try (QueryStats.Timer timer = GET_PERSONAL_BEST_STATS.start();
+             PreparedStatement pstmt = SlowQueryLog.prepare(connection, hasPersonalBestsTable()
+                     ? SELECT_PERSONAL_BEST_SQL : SELECT_HEAVIEST_SET_SQL)) {
             pstmt.setInt(1, exerciseId);
             try (ResultSet rs = pstmt.executeQuery()) {
                 if (rs.next()) {
@@ -183,6 +457,7 @@ public class ActivityDao {
                     bestRecord.setId(rs.getLong("id"));
                 }
             }
+            timer.succeeded(bestRecord != null ? 1 : 0);
             if (bestRecord != null) {
                 logger.info("Retrieved personal best for {}: {}", activity, bestRecord);
             } else {
@@ -194,27 +469,23 @@ public class ActivityDao {
         return bestRecord;
     }
 
+    // Only a found table is remembered; PersonalBestDao may create it later on
+    private boolean hasPersonalBestsTable() throws SQLException {
+        if (!personalBestsTable) {
+            personalBestsTable = ActivityBatchInserter.tableExists(connection, "personal_bests");
+        }
+        return personalBestsTable;
+    }
+
     // Helper method to get the exercise_id based on exercise name
     private int getExerciseIdByName(String exerciseName) {
-        String sql = "SELECT id FROM exercises WHERE name = ?";
-        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
-            pstmt.setString(1, exerciseName);
-            try (ResultSet rs = pstmt.executeQuery()) {
-                if (rs.next()) {
-                    return rs.getInt("id");
-                }
-            }
-        } catch (SQLException e) {
-            logger.error("Error retrieving exercise ID for {}: {}", exerciseName, e.getMessage(), e);
-        }
-        return -1;  // Return -1 if the exercise does not exist
+        return exerciseDictionary.getId(exerciseName);  // Return -1 if the exercise does not exist
     }
 
     public List<ActivityRecord> getActivitiesForSession(int sessionId) {
         List<ActivityRecord> activities = new ArrayList<>();
-        String sql = "SELECT * FROM activity_records WHERE session_id = ? ORDER BY timestamp ASC";
-
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+        try (QueryStats.Timer timer = GET_ACTIVITIES_FOR_SESSION_STATS.start();
+             PreparedStatement stmt = SlowQueryLog.prepare(connection, SELECT_ACTIVITIES_FOR_SESSION_SQL)) {
             stmt.setInt(1, sessionId);
             try (ResultSet rs = stmt.executeQuery()) {
                 while (rs.next()) {
@@ -230,28 +501,319 @@ public class ActivityDao {
                     activities.add(activityRecord);
                 }
             }
+            timer.succeeded(activities.size());
         } catch (SQLException e) {
             e.printStackTrace();  // Handle this appropriately
         }
         return activities;
     }
 
+    // Display rows for the whole history, newest first, in one query
+    public List<ActivityRow> getActivityRowsOrderedByTimestamp() {
+        List<ActivityRow> rows = new ArrayList<>();
+        try (QueryStats.Timer timer = GET_ACTIVITY_ROWS_STATS.start();
+             PreparedStatement stmt = SlowQueryLog.prepare(connection, SELECT_ACTIVITY_ROWS_SQL);
+             ResultSet rs = stmt.executeQuery()) {
+            readActivityRows(rs, rows);
+            timer.succeeded(rows.size());
+            logger.info("Retrieved {} activity rows ordered by timestamp.", rows.size());
+        } catch (SQLException e) {
+            logger.error("Error retrieving activity rows ordered by timestamp: {}", e.getMessage(), e);
+        }
+        return rows;
+    }
+
+    // First page of the history, newest first
+    public List<ActivityRow> getActivityRowsPage(int pageSize) {
+        return getActivityRowsPage(Long.MAX_VALUE, Long.MAX_VALUE, pageSize);
+    }
+
+    // Next page of the history: up to pageSize rows older than the row at (afterTimestamp, afterId),
+    // usually the last row of the previous page. An empty list means the end was reached.
+    public List<ActivityRow> getActivityRowsPage(long afterTimestamp, long afterId, int pageSize) {
+        List<ActivityRow> rows = new ArrayList<>(pageSize);
+        try (QueryStats.Timer timer = GET_ACTIVITY_ROWS_PAGE_STATS.start();
+             PreparedStatement pstmt = SlowQueryLog.prepare(connection, SELECT_ACTIVITY_ROWS_PAGE_SQL)) {
+            pstmt.setLong(1, afterTimestamp);
+            pstmt.setLong(2, afterTimestamp);
+            pstmt.setLong(3, afterId);
+            pstmt.setInt(4, pageSize);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                readActivityRows(rs, rows);
+            }
+            timer.succeeded(rows.size());
+        } catch (SQLException e) {
+            logger.error("Error retrieving activity page after {}/{}: {}", afterTimestamp, afterId, e.getMessage(), e);
+        }
+        return rows;
+    }
+
+    public long countActivities() {
+        try (QueryStats.Timer timer = COUNT_ACTIVITIES_STATS.start();
+             PreparedStatement stmt = SlowQueryLog.prepare(connection, COUNT_ACTIVITIES_SQL);
+             ResultSet rs = stmt.executeQuery()) {
+            long count = rs.next() ? rs.getLong(1) : 0;
+            timer.succeeded(1);
+            return count;
+        } catch (SQLException e) {
+            logger.error("Error counting activities: {}", e.getMessage(), e);
+            return 0;
+        }
+    }
+
+    // Current value of the change counter; moves on with every change to activity_records
+    public long getChangeCounter() throws SQLException {
+        try (QueryStats.Timer timer = GET_CHANGE_COUNTER_STATS.start();
+             PreparedStatement stmt = SlowQueryLog.prepare(connection, SELECT_CHANGE_COUNTER_SQL);
+             ResultSet rs = stmt.executeQuery()) {
+            long counter = rs.next() ? rs.getLong(1) : 0;
+            timer.succeeded(1);
+            return counter;
+        }
+    }
+
+    // Visit every activity, oldest first, without creating an object per row. Returns the row count.
+    public long forEachActivity(ActivityVisitor visitor) throws SQLException {
+        try (QueryStats.Timer timer = FOR_EACH_ACTIVITY_STATS.start();
+             PreparedStatement pstmt = SlowQueryLog.prepare(connection, SCAN_ACTIVITIES_SQL)) {
+            long rows = visitRows(pstmt, visitor);
+            timer.succeeded(rows);
+            return rows;
+        }
+    }
+
+    // Visit the activities of one exercise, oldest first. Returns the row count.
+    public long forEachActivityOfExercise(int exerciseId, ActivityVisitor visitor) throws SQLException {
+        try (QueryStats.Timer timer = FOR_EACH_ACTIVITY_OF_EXERCISE_STATS.start();
+             PreparedStatement pstmt = SlowQueryLog.prepare(connection, SCAN_ACTIVITIES_BY_EXERCISE_SQL)) {
+            pstmt.setInt(1, exerciseId);
+            long rows = visitRows(pstmt, visitor);
+            timer.succeeded(rows);
+            return rows;
+        }
+    }
+
+    // Visit the activities of one exercise with fromMillis <= timestamp < toMillis, oldest first.
+    // Returns the row count.
+    public long forEachActivityOfExerciseBetween(int exerciseId, long fromMillis, long toMillis, ActivityVisitor visitor)
+            throws SQLException {
+        try (QueryStats.Timer timer = FOR_EACH_ACTIVITY_OF_EXERCISE_BETWEEN_STATS.start();
+             PreparedStatement pstmt = SlowQueryLog.prepare(connection, SCAN_ACTIVITIES_BY_EXERCISE_RANGE_SQL)) {
+            pstmt.setInt(1, exerciseId);
+            pstmt.setLong(2, fromMillis);
+            pstmt.setLong(3, toMillis);
+            long rows = visitRows(pstmt, visitor);
+            timer.succeeded(rows);
+            return rows;
+        }
+    }
+
+    // Timestamps of an exercise's first and last set, or null when it has none
+    public long[] getTimestampRange(int exerciseId) throws SQLException {
+        try (QueryStats.Timer timer = GET_TIMESTAMP_RANGE_STATS.start();
+             PreparedStatement pstmt = SlowQueryLog.prepare(connection, SELECT_TIMESTAMP_RANGE_BY_EXERCISE_SQL)) {
+            pstmt.setInt(1, exerciseId);
+            long[] range = null;
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (rs.next()) {
+                    long first = rs.getLong(1);
+                    if (!rs.wasNull()) {
+                        range = new long[]{first, rs.getLong(2)};
+                    }
+                }
+            }
+            timer.succeeded(1);
+            return range;
+        }
+    }
+
+    // Load the whole history into columns in one pass
+    public ActivityColumns loadActivityColumns() throws SQLException {
+        ActivityColumns.Builder builder = ActivityColumns.builder((int) Math.min(countActivities(), Integer.MAX_VALUE - 8));
+        try (QueryStats.Timer timer = LOAD_ACTIVITY_COLUMNS_STATS.start();
+             PreparedStatement pstmt = SlowQueryLog.prepare(connection, SCAN_ACTIVITIES_BY_EXERCISE_ORDER_SQL)) {
+            timer.succeeded(visitRows(pstmt, builder::add));
+        }
+        ActivityColumns columns = builder.build();
+        logger.info("Loaded {} activities for {} exercises into columns", columns.size(), columns.getExerciseIds().length);
+        return columns;
+    }
+
+    // Load one exercise's history into columns; counted under forEachActivityOfExercise
+    public ActivityColumns loadActivityColumns(int exerciseId) throws SQLException {
+        ActivityColumns.Builder builder = ActivityColumns.builder(256);
+        forEachActivityOfExercise(exerciseId, builder::add);
+        return builder.build();
+    }
+
+    // Load one time window of an exercise into columns; counted under forEachActivityOfExerciseBetween
+    public ActivityColumns loadActivityColumns(int exerciseId, long fromMillis, long toMillis) throws SQLException {
+        ActivityColumns.Builder builder = ActivityColumns.builder(64);
+        forEachActivityOfExerciseBetween(exerciseId, fromMillis, toMillis, builder::add);
+        return builder.build();
+    }
+
+    private long visitRows(PreparedStatement pstmt, ActivityVisitor visitor) throws SQLException {
+        pstmt.setFetchSize(SCAN_FETCH_SIZE);
+        long rows = 0;
+        try (ResultSet rs = pstmt.executeQuery()) {
+            while (rs.next()) {
+                // Columns by position: no name lookup per row
+                visitor.visit(rs.getInt(1), rs.getInt(2), rs.getDouble(3), rs.getLong(4), rs.getLong(5));
+                rows++;
+            }
+        }
+        return rows;
+    }
+
+    // Lazily stream every activity, oldest first. Records are created one at a time as the
+    // stream is consumed and can be collected straight away, so heap use stays flat. The
+    // stream holds an open statement and must be closed, e.g. with try-with-resources.
+    // Read errors during iteration surface as IllegalStateException. QueryStats time the stream
+    // from opening to closing.
+    public Stream<ActivityRecord> streamActivities() throws SQLException {
+        long start = System.nanoTime();
+        PreparedStatement pstmt;
+        ResultSet rs;
+        try {
+            pstmt = SlowQueryLog.prepare(connection, STREAM_ACTIVITIES_SQL);
+        } catch (SQLException e) {
+            STREAM_ACTIVITIES_STATS.recordError(start);
+            throw e;
+        }
+        try {
+            pstmt.setFetchSize(SCAN_FETCH_SIZE);
+            rs = pstmt.executeQuery();
+        } catch (SQLException e) {
+            STREAM_ACTIVITIES_STATS.recordError(start);
+            pstmt.close();
+            throw e;
+        }
+
+        // rows read, and whether reading failed
+        long[] streamed = new long[1];
+        boolean[] failed = new boolean[1];
+        Spliterator<ActivityRecord> rows = new Spliterators.AbstractSpliterator<>(Long.MAX_VALUE,
+                Spliterator.ORDERED | Spliterator.NONNULL) {
+            @Override
+            public boolean tryAdvance(Consumer<? super ActivityRecord> action) {
+                try {
+                    if (!rs.next()) {
+                        return false;
+                    }
+                    ActivityRecord record = new ActivityRecord(rs.getInt(2), rs.getInt(3), rs.getDouble(4),
+                            rs.getLong(5), rs.getLong(6));
+                    record.setId(rs.getLong(1));
+                    streamed[0]++;
+                    action.accept(record);
+                    return true;
+                } catch (SQLException e) {
+                    failed[0] = true;
+                    throw new IllegalStateException("Error reading activity records: " + e.getMessage(), e);
+                }
+            }
+        };
+
+        return StreamSupport.stream(rows, false).onClose(() -> {
+            if (failed[0]) {
+                STREAM_ACTIVITIES_STATS.recordError(start);
+            } else {
+                STREAM_ACTIVITIES_STATS.record(start, streamed[0]);
+            }
+            try {
+                rs.close();
+                pstmt.close();
+            } catch (SQLException e) {
+                logger.error("Error closing activity stream: {}", e.getMessage(), e);
+            }
+        });
+    }
+
+    // Display rows for one day, newest first; set numbers still count the whole session
+    public List<ActivityRow> getActivityRowsByDate(LocalDate date) {
+        List<ActivityRow> rows = new ArrayList<>();
+        long startOfDay = date.atStartOfDay().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        long endOfDay = date.atTime(23, 59, 59, 999999999).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+
+        try (QueryStats.Timer timer = GET_ACTIVITY_ROWS_BY_DATE_STATS.start();
+             PreparedStatement pstmt = SlowQueryLog.prepare(connection, SELECT_ACTIVITY_ROWS_BY_TIME_RANGE_SQL)) {
+            pstmt.setLong(1, startOfDay);
+            pstmt.setLong(2, endOfDay);
+            pstmt.setLong(3, startOfDay);
+            pstmt.setLong(4, endOfDay);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                readActivityRows(rs, rows);
+            }
+            timer.succeeded(rows.size());
+        } catch (SQLException e) {
+            logger.error("Error retrieving activity rows for date {}: {}", date, e.getMessage(), e);
+        }
+        return rows;
+    }
+
+    // Display rows for one session in the order the sets were logged
+    public List<ActivityRow> getActivityRowsForSession(long sessionId) {
+        List<ActivityRow> rows = new ArrayList<>();
+        try (QueryStats.Timer timer = GET_ACTIVITY_ROWS_FOR_SESSION_STATS.start();
+             PreparedStatement pstmt = SlowQueryLog.prepare(connection, SELECT_ACTIVITY_ROWS_FOR_SESSION_SQL)) {
+            pstmt.setLong(1, sessionId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                readActivityRows(rs, rows);
+            }
+            timer.succeeded(rows.size());
+        } catch (SQLException e) {
+            logger.error("Error retrieving activity rows for session {}: {}", sessionId, e.getMessage(), e);
+        }
+        return rows;
+    }
+
+    private void readActivityRows(ResultSet rs, List<ActivityRow> rows) throws SQLException {
+        ZoneId zone = ZoneId.systemDefault();
+        while (rs.next()) {
+            long timestamp = rs.getLong("timestamp");
+            LocalDateTime localTime = LocalDateTime.ofInstant(Instant.ofEpochMilli(timestamp), zone);
+            rows.add(new ActivityRow(
+                    rs.getLong("id"),
+                    rs.getInt("exercise_id"),
+                    rs.getString("exercise_name"),
+                    rs.getInt("reps"),
+                    rs.getDouble("weight"),
+                    timestamp,
+                    rs.getLong("session_id"),
+                    rs.getInt("set_index"),
+                    DATE_TIME_FORMAT.format(localTime),
+                    TIME_FORMAT.format(localTime)
+            ));
+        }
+    }
+
     public void resetToFactorySettings() {
+        long start = System.nanoTime();
+        long deleted = 0;
+        boolean failed = false;
         String deleteNonFactoryExercisesSql = "DELETE FROM exercises WHERE factory = FALSE";
-        try (PreparedStatement pstmt = connection.prepareStatement(deleteNonFactoryExercisesSql)) {
-            pstmt.executeUpdate();
+        try (PreparedStatement pstmt = SlowQueryLog.prepare(connection, deleteNonFactoryExercisesSql)) {
+            deleted += pstmt.executeUpdate();
+            exerciseDictionary.invalidate();
             logger.info("Deleted all non-factory exercises.");
         } catch (SQLException e) {
+            failed = true;
             logger.error("Error deleting non-factory exercises: {}", e.getMessage());
         }
 
         // Optionally, delete activity records for non-factory exercises
         String deleteNonFactoryActivityRecordsSql = "DELETE FROM activity_records WHERE exercise_id NOT IN (SELECT id FROM exercises WHERE factory = TRUE)";
-        try (PreparedStatement pstmt = connection.prepareStatement(deleteNonFactoryActivityRecordsSql)) {
-            pstmt.executeUpdate();
+        try (PreparedStatement pstmt = SlowQueryLog.prepare(connection, deleteNonFactoryActivityRecordsSql)) {
+            deleted += pstmt.executeUpdate();
             logger.info("Deleted activity records for non-factory exercises.");
         } catch (SQLException e) {
+            failed = true;
             logger.error("Error deleting activity records for non-factory exercises: {}", e.getMessage());
         }
+        if (failed) {
+            RESET_TO_FACTORY_SETTINGS_STATS.recordError(start);
+        } else {
+            RESET_TO_FACTORY_SETTINGS_STATS.record(start, deleted);
+        }
     }
 }
@@ -0,0 +1,9 @@
+package info.matthewryan.workoutlogger.persistence;
+
+// Receives activity rows one at a time as primitives, so a full-history pass allocates
+// nothing per row. Used by the ActivityDao forEach methods.
+@FunctionalInterface
+public interface ActivityVisitor {
+
+    void visit(int exerciseId, int reps, double weight, long timestamp, long sessionId);
+}
@@ -0,0 +1,208 @@
+package info.matthewryan.workoutlogger.persistence;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sqlite.SQLiteConfig;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Managed access to one SQLite database file in WAL mode. Every write runs on a single writer
+ * connection, fed by one "db-writer" thread that executes commands in the order they were
+ * submitted, so writers never compete for the database lock. Reads borrow one of a small pool
+ * of read-only connections; under WAL they see the last committed state and run alongside
+ * the writer instead of waiting for it. DAOs are bound to the connection handed to a command
+ * or query and must only be used from inside one.
+ */
+public class Database implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(Database.class);
+
+    public static final String DEFAULT_URL = "jdbc:sqlite:test.db";
+    public static final int DEFAULT_READERS = 2;
+
+    private static final int BUSY_TIMEOUT_MILLIS = 5000;
+
+    // Work done with a connection owned by this class
+    @FunctionalInterface
+    public interface SqlFunction<T> {
+        T apply(Connection connection) throws SQLException;
+    }
+
+    private final Connection writer;
+    private final ExecutorService writerExecutor;
+    private final List<Connection> readers = new ArrayList<>();
+    private final BlockingQueue<Connection> idleReaders;
+    private final ExerciseDictionary exerciseDictionary;
+    private volatile boolean closed;
+    private volatile boolean drained;
+
+    public Database(String url) throws SQLException {
+        this(url, DEFAULT_READERS);
+    }
+
+    public Database(String url, int readerCount) throws SQLException {
+        if (readerCount < 1) {
+            throw new IllegalArgumentException("At least one reader is needed, got " + readerCount);
+        }
+        // The writer goes first so WAL mode is in place before any reader opens the file
+        writer = openWriter(url);
+        exerciseDictionary = new ExerciseDictionary(writer);
+        idleReaders = new ArrayBlockingQueue<>(readerCount);
+        try {
+            for (int i = 0; i < readerCount; i++) {
+                Connection reader = openReader(url);
+                readers.add(reader);
+                idleReaders.add(reader);
+            }
+        } catch (SQLException e) {
+            closeQuietly();
+            throw e;
+        }
+        writerExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "db-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        logger.info("Opened {} with one writer and {} readers", url, readerCount);
+    }
+
+    // Queue a command for the writer connection. Commands run one at a time in submission
+    // order; one that spans several statements manages its own transaction.
+    public <T> CompletableFuture<T> write(SqlFunction<T> command) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        try {
+            writerExecutor.execute(() -> {
+                try {
+                    future.complete(command.apply(writer));
+                } catch (SQLException | RuntimeException e) {
+                    logger.error("Write failed: {}", e.getMessage(), e);
+                    future.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(new SQLException("Database is closed", e));
+        }
+        return future;
+    }
+
+    // Run a query on a read-only connection from the pool, waiting for one to be free
+    public <T> T read(SqlFunction<T> query) throws SQLException {
+        Connection connection = borrowReader();
+        try {
+            return query.apply(connection);
+        } finally {
+            idleReaders.add(connection);
+        }
+    }
+
+    // The exercise dictionary of the writer connection, for the DAOs used in write commands.
+    // Read connections take a follower of it, so they see the writer's changes.
+    public ExerciseDictionary getExerciseDictionary() {
+        return exerciseDictionary;
+    }
+
+    public int getReaderCount() {
+        return readers.size();
+    }
+
+    // Finish queued writes, then close every connection. The writer closes last, which
+    // checkpoints the WAL back into the database file.
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        writerExecutor.shutdown();
+        try {
+            drained = writerExecutor.awaitTermination(10, TimeUnit.SECONDS);
+            if (!drained) {
+                logger.warn("Queued writes did not finish before close");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        closeQuietly();
+    }
+
+    // True once close() has run every queued write; false before close or when it gave up waiting
+    public boolean isDrained() {
+        return drained;
+    }
+
+    private Connection borrowReader() throws SQLException {
+        if (closed) {
+            throw new SQLException("Database is closed");
+        }
+        try {
+            return idleReaders.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted waiting for a read connection", e);
+        }
+    }
+
+    private static Connection openWriter(String url) throws SQLException {
+        Connection connection = DriverManager.getConnection(url);
+        try (Statement stmt = connection.createStatement()) {
+            try (ResultSet rs = stmt.executeQuery("PRAGMA journal_mode = WAL")) {
+                String mode = rs.next() ? rs.getString(1) : null;
+                if (!"wal".equalsIgnoreCase(mode)) {
+                    logger.warn("WAL not available for {}, journal mode is {}", url, mode);
+                }
+            }
+            // In WAL mode NORMAL only syncs at checkpoints; a crash can lose the last commits
+            // but never corrupts the file
+            stmt.execute("PRAGMA synchronous = NORMAL");
+            applyConnectionPragmas(stmt);
+        }
+        return connection;
+    }
+
+    private static Connection openReader(String url) throws SQLException {
+        SQLiteConfig config = new SQLiteConfig();
+        config.setReadOnly(true);
+        Connection connection = DriverManager.getConnection(url, config.toProperties());
+        try (Statement stmt = connection.createStatement()) {
+            applyConnectionPragmas(stmt);
+        }
+        return connection;
+    }
+
+    // Per-connection settings; none of these are stored in the database file
+    private static void applyConnectionPragmas(Statement stmt) throws SQLException {
+        stmt.execute("PRAGMA busy_timeout = " + BUSY_TIMEOUT_MILLIS);
+        stmt.execute("PRAGMA cache_size = -16384");       // 16 MB page cache
+        stmt.execute("PRAGMA temp_store = MEMORY");       // Sorts and temp b-trees stay off disk
+        stmt.execute("PRAGMA mmap_size = 268435456");     // Read pages through a 256 MB mapping
+    }
+
+    private void closeQuietly() {
+        for (Connection reader : readers) {
+            close(reader);
+        }
+        close(writer);
+    }
+
+    private static void close(Connection connection) {
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            logger.error("Error closing connection: {}", e.getMessage(), e);
+        }
+    }
+}
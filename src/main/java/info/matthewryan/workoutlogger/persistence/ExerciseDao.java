@@ -12,10 +12,40 @@ public class ExerciseDao {
 
     private static final Logger logger = LoggerFactory.getLogger(ExerciseDao.class);
 
+    private static final String SELECT_ALL_EXERCISES_SQL = "SELECT * FROM exercises";
+    private static final String SELECT_ALL_VOLUME_GROUPS_SQL = "SELECT name FROM volume_groups";
+
+    // Latency, rows and errors per public method, published by QueryMetrics
+    private static final QueryStats CREATE_EXERCISE_TABLE_STATS = QueryMetrics.forMethod(ExerciseDao.class, "createExerciseTable");
+    private static final QueryStats INSERT_EXERCISE_STATS = QueryMetrics.forMethod(ExerciseDao.class, "insertExercise");
+    private static final QueryStats GET_ALL_EXERCISES_STATS = QueryMetrics.forMethod(ExerciseDao.class, "getAllExercises");
+    private static final QueryStats GET_OR_CREATE_EXERCISE_ID_STATS =
+            QueryMetrics.forMethod(ExerciseDao.class, "getOrCreateExerciseId");
+    private static final QueryStats GET_EXERCISE_ID_BY_NAME_STATS = QueryMetrics.forMethod(ExerciseDao.class, "getExerciseIdByName");
+    private static final QueryStats GET_EXERCISE_NAME_BY_ID_STATS = QueryMetrics.forMethod(ExerciseDao.class, "getExerciseNameById");
+    private static final QueryStats CREATE_VOLUME_GROUP_TABLE_STATS =
+            QueryMetrics.forMethod(ExerciseDao.class, "createVolumeGroupTable");
+    private static final QueryStats INSERT_VOLUME_GROUP_STATS = QueryMetrics.forMethod(ExerciseDao.class, "insertVolumeGroup");
+    private static final QueryStats GET_ALL_VOLUME_GROUPS_STATS = QueryMetrics.forMethod(ExerciseDao.class, "getAllVolumeGroups");
+    private static final QueryStats ARCHIVE_EXERCISE_STATS = QueryMetrics.forMethod(ExerciseDao.class, "archiveExercise");
+    private static final QueryStats DELETE_EXERCISE_STATS = QueryMetrics.forMethod(ExerciseDao.class, "deleteExercise");
+    private static final QueryStats CLEAR_EXERCISES_TABLE_STATS = QueryMetrics.forMethod(ExerciseDao.class, "clearExercisesTable");
+
     private final Connection connection;  // Change to use a shared connection
+    private final ExerciseDictionary exerciseDictionary;
 
     public ExerciseDao(Connection connection) {
+        this(connection, new ExerciseDictionary(connection));
+    }
+
+    // Share one dictionary between all DAOs working on the same database
+    public ExerciseDao(Connection connection, ExerciseDictionary exerciseDictionary) {
         this.connection = connection;
+        this.exerciseDictionary = exerciseDictionary;
+    }
+
+    public ExerciseDictionary getExerciseDictionary() {
+        return exerciseDictionary;
     }
 
     public void createExerciseTable() {
@@ -25,8 +55,10 @@ public class ExerciseDao {
                 "factory BOOLEAN NOT NULL DEFAULT 0" +  // Add factory column with default value 0 (false)
                 ");";
 
-        try (Statement stmt = connection.createStatement()) {
+        try (QueryStats.Timer timer = CREATE_EXERCISE_TABLE_STATS.start();
+             Statement stmt = connection.createStatement()) {
             stmt.execute(sql);
+            timer.succeeded(0);
             logger.info("Exercises table created successfully or already exists.");
         } catch (SQLException e) {
             logger.error("Error creating exercises table: {}", e.getMessage(), e);
@@ -39,28 +71,25 @@ public class ExerciseDao {
             return false;
 
         // Check if the exercise already exists
-        String checkQuery = "SELECT id FROM exercises WHERE name = ?";
-        try (PreparedStatement checkStmt = connection.prepareStatement(checkQuery)) {
-            checkStmt.setString(1, exerciseName);
-            ResultSet rs = checkStmt.executeQuery();
-
-            // If the exercise exists, don't insert it again
-            if (rs.next()) {
-                // Exercise already exists, so we don't insert it again
-                logger.info("Exercise '{}' already exists, skipping insert.", exerciseName);
-                return false; // Return false to indicate the exercise was not inserted
-            }
-        } catch (SQLException e) {
-            logger.error("Error checking if exercise exists: {}", e.getMessage());
-            return false; // Return false if there was an error during the check
+        if (exerciseDictionary.getId(exerciseName) != -1) {
+            // Exercise already exists, so we don't insert it again
+            logger.info("Exercise '{}' already exists, skipping insert.", exerciseName);
+            return false; // Return false to indicate the exercise was not inserted
         }
 
         // If exercise does not exist, insert it
         String insertQuery = "INSERT INTO exercises (name, factory) VALUES (?, ?)";
-        try (PreparedStatement pstmt = connection.prepareStatement(insertQuery)) {
+        try (QueryStats.Timer timer = INSERT_EXERCISE_STATS.start();
+             PreparedStatement pstmt = SlowQueryLog.prepare(connection, insertQuery, Statement.RETURN_GENERATED_KEYS)) {
             pstmt.setString(1, exerciseName);
             pstmt.setBoolean(2, factory);  // Insert the factory value
-            pstmt.executeUpdate();
+            int inserted = pstmt.executeUpdate();
+            try (ResultSet generatedKeys = pstmt.getGeneratedKeys()) {
+                if (generatedKeys.next()) {
+                    exerciseDictionary.put(generatedKeys.getInt(1), exerciseName);
+                }
+            }
+            timer.succeeded(inserted);
             logger.info("Inserted exercise: {} (Factory: {})", exerciseName, factory);
             return true; // Return true to indicate the exercise was successfully inserted
         } catch (SQLException e) {
@@ -72,10 +101,9 @@ public class ExerciseDao {
     // Get a list of all exercises
     public List<Exercise> getAllExercises() {
         List<Exercise> exercises = new ArrayList<>();
-        String sql = "SELECT * FROM exercises";
-
-        try (Statement stmt = connection.createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
+        try (QueryStats.Timer timer = GET_ALL_EXERCISES_STATS.start();
+             PreparedStatement stmt = SlowQueryLog.prepare(connection, SELECT_ALL_EXERCISES_SQL);
+             ResultSet rs = stmt.executeQuery()) {
 
             while (rs.next()) {
                 int id = rs.getInt("id");
@@ -83,6 +111,7 @@ public class ExerciseDao {
                 boolean factory = rs.getBoolean("factory");
                 exercises.add(new Exercise(id, name, factory));
             }
+            timer.succeeded(exercises.size());
         } catch (SQLException e) {
             e.printStackTrace();
         }
@@ -90,28 +119,25 @@ public class ExerciseDao {
     }
 
     public int getOrCreateExerciseId(String exerciseName) {
-        String selectSql = "SELECT id FROM exercises WHERE name = ?";
-        try (PreparedStatement pstmt = connection.prepareStatement(selectSql)) {
-            pstmt.setString(1, exerciseName);
-            try (ResultSet rs = pstmt.executeQuery()) {
-                if (rs.next()) {
-                    return rs.getInt("id");  // Exercise exists, return the id
-                }
-            }
-        } catch (SQLException e) {
-            logger.error("Error checking exercise: {}", e.getMessage(), e);
+        int exerciseId = exerciseDictionary.getId(exerciseName);
+        if (exerciseId != -1) {
+            return exerciseId;  // Exercise exists, return the id
         }
 
         // If exercise doesn't exist, insert it
         String insertSql = "INSERT INTO exercises (name) VALUES (?)";
-        try (PreparedStatement pstmt = connection.prepareStatement(insertSql, Statement.RETURN_GENERATED_KEYS)) {
+        try (QueryStats.Timer timer = GET_OR_CREATE_EXERCISE_ID_STATS.start();
+             PreparedStatement pstmt = SlowQueryLog.prepare(connection, insertSql, Statement.RETURN_GENERATED_KEYS)) {
             pstmt.setString(1, exerciseName);
-            pstmt.executeUpdate();
+            int inserted = pstmt.executeUpdate();
 
             // Get the generated ID of the new exercise
             try (ResultSet generatedKeys = pstmt.getGeneratedKeys()) {
                 if (generatedKeys.next()) {
-                    return generatedKeys.getInt(1);  // Return the new exercise id
+                    exerciseId = generatedKeys.getInt(1);
+                    exerciseDictionary.put(exerciseId, exerciseName);
+                    timer.succeeded(inserted);
+                    return exerciseId;  // Return the new exercise id
                 }
             }
         } catch (SQLException e) {
@@ -121,36 +147,17 @@ public class ExerciseDao {
     }
 
     public int getExerciseIdByName(String exerciseName) {
-        String query = "SELECT id FROM exercises WHERE name = ?";
-        try (PreparedStatement pstmt = connection.prepareStatement(query)) {
-            pstmt.setString(1, exerciseName);
-            try (ResultSet rs = pstmt.executeQuery()) {
-                if (rs.next()) {
-                    return rs.getInt("id");  // Return the exerciseId
-                }
-            }
-        } catch (SQLException e) {
-            logger.error("Error getting exercise ID for {}: {}", exerciseName, e.getMessage(), e);
-        }
-        return -1;  // Return -1 if the exercise doesn't exist
+        long start = System.nanoTime();
+        int exerciseId = exerciseDictionary.getId(exerciseName);  // -1 if the exercise doesn't exist
+        GET_EXERCISE_ID_BY_NAME_STATS.record(start, exerciseId == -1 ? 0 : 1);
+        return exerciseId;
     }
 
     public String getExerciseNameById(int exerciseId) {
-        String exerciseName = null;
-        String sql = "SELECT name FROM exercises WHERE id = ?";
-
-        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
-            pstmt.setInt(1, exerciseId);
-            try (ResultSet rs = pstmt.executeQuery()) {
-                if (rs.next()) {
-                    exerciseName = rs.getString("name");
-                }
-            }
-        } catch (SQLException e) {
-            logger.error("Error retrieving exercise name by id: {}", e.getMessage(), e);
-        }
-
-        return exerciseName;
+        long start = System.nanoTime();
+        String name = exerciseDictionary.getName(exerciseId);
+        GET_EXERCISE_NAME_BY_ID_STATS.record(start, name == null ? 0 : 1);
+        return name;
     }
 
 
@@ -161,8 +168,10 @@ public class ExerciseDao {
                 "name TEXT NOT NULL UNIQUE" +
                 ");";
 
-        try (Statement stmt = connection.createStatement()) {
+        try (QueryStats.Timer timer = CREATE_VOLUME_GROUP_TABLE_STATS.start();
+             Statement stmt = connection.createStatement()) {
             stmt.execute(sql);
+            timer.succeeded(0);
             logger.info("Volume Groups table created successfully or already exists.");
         } catch (SQLException e) {
             logger.error("Error creating volume groups table: {}", e.getMessage(), e);
@@ -172,9 +181,10 @@ public class ExerciseDao {
     public void insertVolumeGroup(String groupName) {
         String sql = "INSERT OR IGNORE INTO volume_groups (name) VALUES (?)";
 
-        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+        try (QueryStats.Timer timer = INSERT_VOLUME_GROUP_STATS.start();
+             PreparedStatement pstmt = SlowQueryLog.prepare(connection, sql)) {
             pstmt.setString(1, groupName);
-            pstmt.executeUpdate();
+            timer.succeeded(pstmt.executeUpdate());
             logger.info("Inserted volume group: {}", groupName);  // Log volume group insertion
         } catch (SQLException e) {
             logger.error("Error inserting volume group: {}", e.getMessage(), e);  // Log error
@@ -183,14 +193,14 @@ public class ExerciseDao {
 
     public List<String> getAllVolumeGroups() {
         List<String> volumeGroups = new ArrayList<>();
-        String sql = "SELECT name FROM volume_groups";
-
-        try (Statement stmt = connection.createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
+        try (QueryStats.Timer timer = GET_ALL_VOLUME_GROUPS_STATS.start();
+             PreparedStatement stmt = SlowQueryLog.prepare(connection, SELECT_ALL_VOLUME_GROUPS_SQL);
+             ResultSet rs = stmt.executeQuery()) {
 
             while (rs.next()) {
                 volumeGroups.add(rs.getString("name"));
             }
+            timer.succeeded(volumeGroups.size());
             logger.info("Retrieved {} volume groups", volumeGroups.size());  // Log the number of volume groups
         } catch (SQLException e) {
             logger.error("Error retrieving volume groups: {}", e.getMessage(), e);  // Log error
@@ -202,10 +212,11 @@ public class ExerciseDao {
     public void archiveExercise(int exerciseId, boolean archive) {
         String sql = "UPDATE exercises SET archived = ? WHERE id = ?";
 
-        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+        try (QueryStats.Timer timer = ARCHIVE_EXERCISE_STATS.start();
+             PreparedStatement pstmt = SlowQueryLog.prepare(connection, sql)) {
             pstmt.setBoolean(1, archive);
             pstmt.setInt(2, exerciseId);
-            pstmt.executeUpdate();
+            timer.succeeded(pstmt.executeUpdate());
             logger.info("Exercise with ID {} archived status updated to {}", exerciseId, archive);
         } catch (SQLException e) {
             logger.error("Error updating archive status for exercise ID {}: {}", exerciseId, e.getMessage(), e);
@@ -216,9 +227,12 @@ public class ExerciseDao {
     public void deleteExercise(int exerciseId) {
         String sql = "DELETE FROM exercises WHERE id = ?";
 
-        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+        try (QueryStats.Timer timer = DELETE_EXERCISE_STATS.start();
+             PreparedStatement pstmt = SlowQueryLog.prepare(connection, sql)) {
             pstmt.setInt(1, exerciseId);
-            pstmt.executeUpdate();
+            int deleted = pstmt.executeUpdate();
+            exerciseDictionary.remove(exerciseId);
+            timer.succeeded(deleted);
             logger.info("Exercise with ID {} deleted", exerciseId);
         } catch (SQLException e) {
             logger.error("Error deleting exercise ID {}: {}", exerciseId, e.getMessage(), e);
@@ -231,8 +245,11 @@ public class ExerciseDao {
     public void clearExercisesTable() {
         String sql = "DELETE FROM exercises";
 
-        try (Statement stmt = connection.createStatement()) {
-            stmt.executeUpdate(sql);
+        try (QueryStats.Timer timer = CLEAR_EXERCISES_TABLE_STATS.start();
+             Statement stmt = connection.createStatement()) {
+            int deleted = stmt.executeUpdate(sql);
+            exerciseDictionary.invalidate();
+            timer.succeeded(deleted);
             logger.info("Exercises table cleared");
         } catch (SQLException e) {
             logger.error("Error clearing exercises table: {}", e.getMessage(), e);
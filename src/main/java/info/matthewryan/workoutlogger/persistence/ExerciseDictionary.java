@@ -0,0 +1,218 @@
+package info.matthewryan.workoutlogger.persistence;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * In-memory, bidirectional exercise name/id dictionary shared by the DAOs of one database.
+ * The whole exercises table is loaded on first use; ExerciseDao writes through on insert and
+ * delete, so lookups are memory reads. Names missing from memory are read through from the
+ * database once, and a name or id the database does not have either is remembered as missing
+ * until it is put or the dictionary is invalidated, so repeated misses cost no query. Code
+ * that writes exercises without the DAOs must call invalidate() for the rows to be seen.
+ * A connection other than the one the DAOs write through, such as a pooled reader, gets a
+ * follower: it reads through its own connection and receives every put, remove and
+ * invalidate of the dictionary it follows, so writes are seen on every connection.
+ */
+public class ExerciseDictionary {
+
+    private static final Logger logger = LoggerFactory.getLogger(ExerciseDictionary.class);
+
+    // Ids above this are kept in a map instead of growing the array
+    private static final int MAX_ARRAY_ID = 1 << 20;
+    // Misses remembered per direction before they are forgotten
+    private static final int MAX_MISSES = 4096;
+
+    private static final String SELECT_ALL_EXERCISES_SQL = "SELECT id, name FROM exercises";
+    private static final String SELECT_ID_BY_NAME_SQL = "SELECT id FROM exercises WHERE name = ?";
+    private static final String SELECT_NAME_BY_ID_SQL = "SELECT name FROM exercises WHERE id = ?";
+
+    private final Connection connection;
+    private final List<ExerciseDictionary> followers = new CopyOnWriteArrayList<>();
+
+    private final Map<String, Integer> idsByName = new HashMap<>();
+    private String[] namesById = new String[64];
+    private final Map<Integer, String> overflowNamesById = new HashMap<>();
+    // Names and ids known not to be in the table
+    private final Set<String> missingNames = new HashSet<>();
+    private final Set<Integer> missingIds = new HashSet<>();
+    private boolean loaded;
+
+    public ExerciseDictionary(Connection connection) {
+        this.connection = connection;
+    }
+
+    // A dictionary for another connection to the same database that follows this one's changes
+    public ExerciseDictionary follower(Connection connection) {
+        ExerciseDictionary follower = new ExerciseDictionary(connection);
+        followers.add(follower);
+        return follower;
+    }
+
+    // Returns the exercise id for a name, or -1 if there is no such exercise
+    public synchronized int getId(String name) {
+        if (name == null) {
+            return -1;
+        }
+        ensureLoaded();
+        Integer id = idsByName.get(name);
+        if (id != null) {
+            return id;
+        }
+        if (missingNames.contains(name)) {
+            return -1;
+        }
+        return readThroughByName(name);
+    }
+
+    // Returns the exercise name for an id, or null if there is no such exercise
+    public synchronized String getName(int id) {
+        ensureLoaded();
+        String name = lookupName(id);
+        if (name != null) {
+            return name;
+        }
+        if (missingIds.contains(id)) {
+            return null;
+        }
+        return readThroughById(id);
+    }
+
+    public synchronized void put(int id, String name) {
+        if (id < 0 || name == null) {
+            return;
+        }
+        missingNames.remove(name);
+        missingIds.remove(id);
+        String previous = lookupName(id);
+        if (previous != null) {
+            idsByName.remove(previous);
+        }
+        Integer previousId = idsByName.put(name, id);
+        if (previousId != null && previousId != id) {
+            storeName(previousId, null);
+        }
+        storeName(id, name);
+        followers.forEach(follower -> follower.put(id, name));
+    }
+
+    public synchronized void remove(int id) {
+        String name = lookupName(id);
+        if (name != null) {
+            idsByName.remove(name);
+            storeName(id, null);
+        }
+        followers.forEach(follower -> follower.remove(id));
+    }
+
+    // Forget everything; the table is reloaded on the next lookup
+    public synchronized void invalidate() {
+        idsByName.clear();
+        Arrays.fill(namesById, null);
+        overflowNamesById.clear();
+        missingNames.clear();
+        missingIds.clear();
+        loaded = false;
+        followers.forEach(ExerciseDictionary::invalidate);
+    }
+
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery(SELECT_ALL_EXERCISES_SQL)) {
+            while (rs.next()) {
+                put(rs.getInt("id"), rs.getString("name"));
+            }
+            loaded = true;
+            logger.info("Loaded {} exercises into the dictionary", idsByName.size());
+        } catch (SQLException e) {
+            // Usually the table does not exist yet; lookups fall back to read-through
+            logger.debug("Could not load exercise dictionary: {}", e.getMessage());
+        }
+    }
+
+    private int readThroughByName(String name) {
+        try (PreparedStatement pstmt = connection.prepareStatement(SELECT_ID_BY_NAME_SQL)) {
+            pstmt.setString(1, name);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (rs.next()) {
+                    int id = rs.getInt("id");
+                    put(id, name);
+                    return id;
+                }
+            }
+            rememberMissing(missingNames, name);
+        } catch (SQLException e) {
+            logger.error("Error retrieving exercise ID for {}: {}", name, e.getMessage(), e);
+        }
+        return -1;
+    }
+
+    private String readThroughById(int id) {
+        try (PreparedStatement pstmt = connection.prepareStatement(SELECT_NAME_BY_ID_SQL)) {
+            pstmt.setInt(1, id);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (rs.next()) {
+                    String name = rs.getString("name");
+                    put(id, name);
+                    return name;
+                }
+            }
+            rememberMissing(missingIds, id);
+        } catch (SQLException e) {
+            logger.error("Error retrieving exercise name by id: {}", e.getMessage(), e);
+        }
+        return null;
+    }
+
+    // A bounded set: once full it starts over rather than growing with every unknown key
+    private static <T> void rememberMissing(Set<T> missing, T key) {
+        if (missing.size() >= MAX_MISSES) {
+            missing.clear();
+        }
+        missing.add(key);
+    }
+
+    private String lookupName(int id) {
+        if (id < 0) {
+            return null;
+        }
+        if (id < MAX_ARRAY_ID) {
+            return id < namesById.length ? namesById[id] : null;
+        }
+        return overflowNamesById.get(id);
+    }
+
+    private void storeName(int id, String name) {
+        if (id >= MAX_ARRAY_ID) {
+            if (name == null) {
+                overflowNamesById.remove(id);
+            } else {
+                overflowNamesById.put(id, name);
+            }
+            return;
+        }
+        if (id >= namesById.length) {
+            if (name == null) {
+                return;
+            }
+            namesById = Arrays.copyOf(namesById, Math.max(id + 1, namesById.length * 2));
+        }
+        namesById[id] = name;
+    }
+}
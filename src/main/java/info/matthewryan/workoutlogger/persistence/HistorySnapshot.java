@@ -0,0 +1,354 @@
+package info.matthewryan.workoutlogger.persistence;
+
+import info.matthewryan.workoutlogger.model.ActivityColumns;
+import info.matthewryan.workoutlogger.model.HistoryColumns;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.IntFunction;
+
+/**
+ * Read-only binary copy of the activity history, memory-mapped from a file so it can be shown
+ * before SQLite is even opened. The file holds a header, a per-exercise index of row ranges,
+ * fixed-width 32-byte rows in (exercise, timestamp) order, the same order as ActivityColumns,
+ * and the names of the exercises. Rows are read from the mapping on demand; nothing is parsed
+ * up front except the names. The header records ActivityDao's change counter at the time of
+ * writing, and a snapshot whose counter differs from the database's is stale. Files are
+ * written to a temporary file and moved into place, so a reader never sees a partial one.
+ * Each rewrite goes to a new numbered generation (history.snapshot.1, .2, ...) rather than over
+ * the current file: Java cannot unmap a file explicitly, and Windows refuses to replace or
+ * delete one that is still mapped. Older generations are deleted at startup, before any is
+ * mapped. A mapping is limited to 2 GB, about 60 million rows.
+ */
+public final class HistorySnapshot implements HistoryColumns {
+
+    private static final Logger logger = LoggerFactory.getLogger(HistorySnapshot.class);
+
+    private static final int MAGIC = 0x48534E50;  // "HSNP"
+    private static final int FORMAT_VERSION = 1;
+
+    // magic, version, changeCounter, rowCount, exerciseCount, namesOffset, reserved
+    private static final int HEADER_SIZE = 32;
+    // exerciseId, firstRow, rowCount
+    private static final int INDEX_ENTRY_SIZE = 12;
+    // timestamp, weight, sessionId, exerciseId, reps
+    private static final int ROW_SIZE = 32;
+
+    private final ByteBuffer buffer;
+    private final long changeCounter;
+    private final int rowCount;
+    private final int exerciseCount;
+    private final int rowsOffset;
+    private final Map<Integer, String> names;
+
+    private HistorySnapshot(ByteBuffer buffer, long changeCounter, int rowCount, int exerciseCount,
+                            Map<Integer, String> names) {
+        this.buffer = buffer;
+        this.changeCounter = changeCounter;
+        this.rowCount = rowCount;
+        this.exerciseCount = exerciseCount;
+        this.rowsOffset = HEADER_SIZE + exerciseCount * INDEX_ENTRY_SIZE;
+        this.names = names;
+    }
+
+    // Map a snapshot file; fails if it is not one or was cut short
+    public static HistorySnapshot open(Path file) throws IOException {
+        long start = System.nanoTime();
+        MappedByteBuffer mapped;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE || channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Not a history snapshot: " + file);
+            }
+            // The mapping stays valid after the channel is closed
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        ByteBuffer buffer = mapped.order(ByteOrder.LITTLE_ENDIAN);
+
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT_VERSION) {
+            throw new IOException("Not a history snapshot, or an unsupported version: " + file);
+        }
+        long changeCounter = buffer.getLong(8);
+        int rowCount = buffer.getInt(16);
+        int exerciseCount = buffer.getInt(20);
+        int namesOffset = buffer.getInt(24);
+        long expectedNamesOffset = HEADER_SIZE + (long) exerciseCount * INDEX_ENTRY_SIZE + (long) rowCount * ROW_SIZE;
+        if (rowCount < 0 || exerciseCount < 0 || namesOffset != expectedNamesOffset || namesOffset > buffer.capacity()) {
+            throw new IOException("Corrupt history snapshot: " + file);
+        }
+
+        Map<Integer, String> names = new HashMap<>();
+        int position = namesOffset;
+        try {
+            for (int i = 0; i < exerciseCount; i++) {
+                int id = buffer.getInt(position);
+                int length = buffer.getInt(position + 4);
+                byte[] bytes = new byte[length];
+                buffer.get(position + 8, bytes);
+                names.put(id, new String(bytes, StandardCharsets.UTF_8));
+                position += 8 + length;
+            }
+        } catch (IndexOutOfBoundsException | NegativeArraySizeException e) {
+            throw new IOException("Corrupt history snapshot: " + file, e);
+        }
+
+        logger.info("Mapped history snapshot of {} activities for {} exercises in {} µs", rowCount, exerciseCount,
+                (System.nanoTime() - start) / 1000);
+        return new HistorySnapshot(buffer, changeCounter, rowCount, exerciseCount, names);
+    }
+
+    // Write columns and the names of their exercises as a snapshot taken at changeCounter
+    public static void write(Path file, long changeCounter, ActivityColumns columns, IntFunction<String> names)
+            throws IOException {
+        long start = System.nanoTime();
+        int[] exerciseIds = columns.getExerciseIds();
+        byte[][] encodedNames = new byte[exerciseIds.length][];
+        long namesSize = 0;
+        for (int i = 0; i < exerciseIds.length; i++) {
+            String name = names.apply(exerciseIds[i]);
+            encodedNames[i] = (name != null ? name : "").getBytes(StandardCharsets.UTF_8);
+            namesSize += 8 + encodedNames[i].length;
+        }
+        long namesOffset = HEADER_SIZE + (long) exerciseIds.length * INDEX_ENTRY_SIZE + (long) columns.size() * ROW_SIZE;
+        long fileSize = namesOffset + namesSize;
+        if (fileSize > Integer.MAX_VALUE) {
+            throw new IOException("History too large for a snapshot: " + columns.size() + " activities");
+        }
+
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, fileSize);
+            ByteBuffer out = mapped.order(ByteOrder.LITTLE_ENDIAN);
+
+            out.putInt(MAGIC)
+               .putInt(FORMAT_VERSION)
+               .putLong(changeCounter)
+               .putInt(columns.size())
+               .putInt(exerciseIds.length)
+               .putInt((int) namesOffset)
+               .putInt(0);
+            for (int exerciseId : exerciseIds) {
+                out.putInt(exerciseId)
+                   .putInt(columns.getExerciseStart(exerciseId))
+                   .putInt(columns.getExerciseRowCount(exerciseId));
+            }
+            for (int row = 0; row < columns.size(); row++) {
+                out.putLong(columns.getTimestamp(row))
+                   .putDouble(columns.getWeight(row))
+                   .putLong(columns.getSessionId(row))
+                   .putInt(columns.getExerciseId(row))
+                   .putInt(columns.getReps(row));
+            }
+            for (int i = 0; i < exerciseIds.length; i++) {
+                out.putInt(exerciseIds[i])
+                   .putInt(encodedNames[i].length)
+                   .put(encodedNames[i]);
+            }
+            mapped.force();
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        logger.info("Wrote history snapshot of {} activities ({} bytes) in {} ms", columns.size(), fileSize,
+                (System.nanoTime() - start) / 1_000_000);
+    }
+
+    // Newest generation of the snapshot named by base, or null if none has been written
+    public static Path latestGeneration(Path base) throws IOException {
+        long latest = latestGenerationNumber(base);
+        return latest > 0 ? generation(base, latest) : null;
+    }
+
+    // File the next rewrite of the snapshot named by base should go to
+    public static Path nextGeneration(Path base) throws IOException {
+        return generation(base, latestGenerationNumber(base) + 1);
+    }
+
+    // Delete the generations older than keep, left over temporary files and an unnumbered file
+    // at base itself. Call only while none of them is mapped; one that cannot be deleted is
+    // left for the next time.
+    public static void deleteOlderGenerations(Path base, Path keep) throws IOException {
+        long kept = keep != null ? generationNumber(base, keep) : Long.MAX_VALUE;
+        String baseName = base.getFileName().toString();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory(base))) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                long number = generationNumber(base, file);
+                boolean stale = (number > 0 && number < kept) || name.equals(baseName)
+                        || (name.startsWith(baseName + ".") && name.endsWith(".tmp"));
+                if (stale) {
+                    try {
+                        Files.delete(file);
+                    } catch (IOException e) {
+                        logger.warn("Could not delete old history snapshot {}: {}", file, e.getMessage());
+                    }
+                }
+            }
+        }
+    }
+
+    private static Path generation(Path base, long number) {
+        return base.resolveSibling(base.getFileName() + "." + number);
+    }
+
+    private static long latestGenerationNumber(Path base) throws IOException {
+        long latest = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory(base))) {
+            for (Path file : files) {
+                latest = Math.max(latest, generationNumber(base, file));
+            }
+        }
+        return latest;
+    }
+
+    // Generation number of file if it is one of base's generations, else 0
+    private static long generationNumber(Path base, Path file) {
+        String prefix = base.getFileName() + ".";
+        String name = file.getFileName().toString();
+        if (!name.startsWith(prefix) || name.length() == prefix.length()) {
+            return 0;
+        }
+        long number = 0;
+        for (int i = prefix.length(); i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c < '0' || c > '9' || number > Long.MAX_VALUE / 10 - 1) {
+                return 0;
+            }
+            number = number * 10 + (c - '0');
+        }
+        return number;
+    }
+
+    private static Path directory(Path base) {
+        Path parent = base.toAbsolutePath().getParent();
+        return parent != null ? parent : Path.of(".");
+    }
+
+    // ActivityDao.getChangeCounter() at the time the snapshot was written
+    public long getChangeCounter() {
+        return changeCounter;
+    }
+
+    @Override
+    public int size() {
+        return rowCount;
+    }
+
+    public boolean isEmpty() {
+        return rowCount == 0;
+    }
+
+    // Distinct exercise ids present, ascending
+    public int[] getExerciseIds() {
+        int[] ids = new int[exerciseCount];
+        for (int i = 0; i < exerciseCount; i++) {
+            ids[i] = buffer.getInt(HEADER_SIZE + i * INDEX_ENTRY_SIZE);
+        }
+        return ids;
+    }
+
+    // Name of an exercise present in the snapshot, or null
+    public String getExerciseName(int exerciseId) {
+        return names.get(exerciseId);
+    }
+
+    // First row of the exercise; equal to getExerciseEnd when it has no rows
+    @Override
+    public int getExerciseStart(int exerciseId) {
+        int entry = findExercise(exerciseId);
+        return entry >= 0 ? buffer.getInt(indexOffset(entry) + 4) : insertionRow(entry);
+    }
+
+    // One past the last row of the exercise
+    @Override
+    public int getExerciseEnd(int exerciseId) {
+        int entry = findExercise(exerciseId);
+        if (entry < 0) {
+            return insertionRow(entry);
+        }
+        return buffer.getInt(indexOffset(entry) + 4) + buffer.getInt(indexOffset(entry) + 8);
+    }
+
+    @Override
+    public long getTimestamp(int row) {
+        return buffer.getLong(rowOffset(row));
+    }
+
+    @Override
+    public double getWeight(int row) {
+        return buffer.getDouble(rowOffset(row) + 8);
+    }
+
+    @Override
+    public long getSessionId(int row) {
+        return buffer.getLong(rowOffset(row) + 16);
+    }
+
+    @Override
+    public int getExerciseId(int row) {
+        return buffer.getInt(rowOffset(row) + 24);
+    }
+
+    @Override
+    public int getReps(int row) {
+        return buffer.getInt(rowOffset(row) + 28);
+    }
+
+    // Copy one exercise's rows into columns, the form the charts take
+    public ActivityColumns getActivityColumns(int exerciseId) {
+        int start = getExerciseStart(exerciseId);
+        int end = getExerciseEnd(exerciseId);
+        ActivityColumns.Builder builder = ActivityColumns.builder(end - start);
+        for (int row = start; row < end; row++) {
+            int offset = rowsOffset + row * ROW_SIZE;
+            builder.add(buffer.getInt(offset + 24), buffer.getInt(offset + 28), buffer.getDouble(offset + 8),
+                    buffer.getLong(offset), buffer.getLong(offset + 16));
+        }
+        return builder.build();
+    }
+
+    // Binary search of the index; like Arrays.binarySearch, -(insertion point) - 1 when absent
+    private int findExercise(int exerciseId) {
+        int low = 0;
+        int high = exerciseCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int midId = buffer.getInt(indexOffset(mid));
+            if (midId < exerciseId) {
+                low = mid + 1;
+            } else if (midId > exerciseId) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    private int insertionRow(int searchResult) {
+        int entry = -searchResult - 1;
+        return entry < exerciseCount ? buffer.getInt(indexOffset(entry) + 4) : rowCount;
+    }
+
+    private static int indexOffset(int entry) {
+        return HEADER_SIZE + entry * INDEX_ENTRY_SIZE;
+    }
+
+    private int rowOffset(int row) {
+        if (row < 0 || row >= rowCount) {
+            throw new IndexOutOfBoundsException("Row " + row + " of " + rowCount);
+        }
+        return rowsOffset + row * ROW_SIZE;
+    }
+}
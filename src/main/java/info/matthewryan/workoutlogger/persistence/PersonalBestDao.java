@@ -0,0 +1,196 @@
+package info.matthewryan.workoutlogger.persistence;
+
+import info.matthewryan.workoutlogger.model.PersonalBest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.*;
+
+/**
+ * Per-exercise personal bests (heaviest weight, largest set volume, highest estimated 1RM), kept
+ * in the personal_bests table by triggers on activity_records. An insert compares the new set
+ * against the stored bests and upserts one row, a constant amount of work however long the
+ * history is. A delete or update that touches a current record holder recomputes that exercise
+ * from its indexed rows. Reading the bests is a primary key lookup. On ties the earliest set
+ * holds the record. During a bulk load the triggers do nothing and the loader rebuilds the table.
+ */
+public class PersonalBestDao {
+
+    private static final Logger logger = LoggerFactory.getLogger(PersonalBestDao.class);
+
+    private static final String[] TRIGGERS = {
+            "trg_personal_bests_insert", "trg_personal_bests_delete", "trg_personal_bests_update"
+    };
+
+    private static final String BEST_COLUMNS =
+            "exercise_id, best_weight, best_weight_activity_id, best_weight_timestamp, " +
+            "best_volume, best_volume_activity_id, best_volume_timestamp, " +
+            "best_e1rm, best_e1rm_activity_id, best_e1rm_timestamp";
+
+    private static final String CREATE_PERSONAL_BESTS_TABLE_SQL =
+            "CREATE TABLE IF NOT EXISTS personal_bests (" +
+            "exercise_id INTEGER PRIMARY KEY, " +
+            "best_weight REAL NOT NULL, " +
+            "best_weight_activity_id INTEGER NOT NULL, " +
+            "best_weight_timestamp INTEGER NOT NULL, " +
+            "best_volume REAL NOT NULL, " +
+            "best_volume_activity_id INTEGER NOT NULL, " +
+            "best_volume_timestamp INTEGER NOT NULL, " +
+            "best_e1rm REAL NOT NULL, " +
+            "best_e1rm_activity_id INTEGER NOT NULL, " +
+            "best_e1rm_timestamp INTEGER NOT NULL" +
+            ")";
+
+    private static final String INSERT_TRIGGER_SQL =
+            "CREATE TRIGGER IF NOT EXISTS trg_personal_bests_insert AFTER INSERT ON activity_records " +
+            "WHEN " + ActivityDao.NOT_BULK_LOADING_SQL + " " +
+            "BEGIN " +
+            "INSERT INTO personal_bests (" + BEST_COLUMNS + ") VALUES (NEW.exercise_id, " +
+            "NEW.weight, NEW.id, NEW.timestamp, " +
+            "NEW.reps * NEW.weight, NEW.id, NEW.timestamp, " +
+            estimatedOneRepMaxSql("NEW") + ", NEW.id, NEW.timestamp) " +
+            "ON CONFLICT (exercise_id) DO UPDATE SET " +
+            keepBetterSql("best_weight") + ", " +
+            keepBetterSql("best_volume") + ", " +
+            keepBetterSql("best_e1rm") + "; " +
+            "END";
+
+    // Only deletes of a current record holder need a recompute
+    private static final String DELETE_TRIGGER_SQL =
+            "CREATE TRIGGER IF NOT EXISTS trg_personal_bests_delete AFTER DELETE ON activity_records " +
+            "WHEN " + ActivityDao.NOT_BULK_LOADING_SQL + " " +
+            "AND EXISTS (SELECT 1 FROM personal_bests p WHERE p.exercise_id = OLD.exercise_id " +
+            "AND OLD.id IN (p.best_weight_activity_id, p.best_volume_activity_id, p.best_e1rm_activity_id)) " +
+            "BEGIN " +
+            "DELETE FROM personal_bests WHERE exercise_id = OLD.exercise_id; " +
+            "INSERT INTO personal_bests (" + BEST_COLUMNS + ") " + selectBestsSql("a.exercise_id = OLD.exercise_id") + "; " +
+            "END";
+
+    private static final String UPDATE_TRIGGER_SQL =
+            "CREATE TRIGGER IF NOT EXISTS trg_personal_bests_update " +
+            "AFTER UPDATE OF exercise_id, reps, weight, timestamp ON activity_records " +
+            "WHEN " + ActivityDao.NOT_BULK_LOADING_SQL + " " +
+            "BEGIN " +
+            "DELETE FROM personal_bests WHERE exercise_id IN (OLD.exercise_id, NEW.exercise_id); " +
+            "INSERT INTO personal_bests (" + BEST_COLUMNS + ") " +
+            selectBestsSql("a.exercise_id IN (OLD.exercise_id, NEW.exercise_id)") + "; " +
+            "END";
+
+    private static final String SELECT_PERSONAL_BEST_SQL =
+            "SELECT " + BEST_COLUMNS + " FROM personal_bests WHERE exercise_id = ?";
+
+    private static final String NEEDS_BACKFILL_SQL =
+            "SELECT EXISTS (SELECT 1 FROM activity_records) AND NOT EXISTS (SELECT 1 FROM personal_bests)";
+
+    private final Connection connection;
+
+    public PersonalBestDao(Connection connection) {
+        this.connection = connection;
+    }
+
+    // Create the table and its triggers; activity_records must exist already. Existing history
+    // is backfilled the first time.
+    public void createPersonalBestTable() {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute(CREATE_PERSONAL_BESTS_TABLE_SQL);
+            // Recreated every time, so databases from before the bulk load guard pick it up
+            for (String trigger : TRIGGERS) {
+                stmt.execute("DROP TRIGGER IF EXISTS " + trigger);
+            }
+            stmt.execute(INSERT_TRIGGER_SQL);
+            stmt.execute(DELETE_TRIGGER_SQL);
+            stmt.execute(UPDATE_TRIGGER_SQL);
+            logger.info("Personal bests table created successfully or already exists.");
+
+            boolean needsBackfill;
+            try (ResultSet rs = stmt.executeQuery(NEEDS_BACKFILL_SQL)) {
+                needsBackfill = rs.next() && rs.getBoolean(1);
+            }
+            if (needsBackfill) {
+                rebuildPersonalBests();
+            }
+        } catch (SQLException e) {
+            logger.error("Error creating personal_bests table: {}", e.getMessage(), e);
+        }
+    }
+
+    // Point lookup of an exercise's bests; null only if it has no sets
+    public PersonalBest getPersonalBest(int exerciseId) throws SQLException {
+        try (PreparedStatement pstmt = connection.prepareStatement(SELECT_PERSONAL_BEST_SQL)) {
+            pstmt.setInt(1, exerciseId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (rs.next()) {
+                    return new PersonalBest(
+                            rs.getInt(1),
+                            rs.getDouble(2), rs.getLong(3), rs.getLong(4),
+                            rs.getDouble(5), rs.getLong(6), rs.getLong(7),
+                            rs.getDouble(8), rs.getLong(9), rs.getLong(10));
+                }
+            }
+        }
+        return null;
+    }
+
+    // Recompute every exercise's bests from activity_records in one statement. Inside a
+    // caller's transaction it joins that transaction; otherwise it runs in one of its own.
+    public void rebuildPersonalBests() throws SQLException {
+        boolean autoCommit = connection.getAutoCommit();
+        if (autoCommit) {
+            connection.setAutoCommit(false);
+        }
+        try (Statement stmt = connection.createStatement()) {
+            stmt.executeUpdate("DELETE FROM personal_bests");
+            int rows = stmt.executeUpdate("INSERT INTO personal_bests (" + BEST_COLUMNS + ") " + selectBestsSql("1"));
+            if (autoCommit) {
+                connection.commit();
+            }
+            logger.info("Rebuilt personal bests for {} exercises", rows);
+        } catch (SQLException e) {
+            if (autoCommit) {
+                connection.rollback();
+            }
+            throw e;
+        } finally {
+            if (autoCommit) {
+                connection.setAutoCommit(true);
+            }
+        }
+    }
+
+    // SQL form of PersonalBest.estimateOneRepMax for the row alias given
+    static String estimatedOneRepMaxSql(String row) {
+        return "(CASE WHEN " + row + ".reps <= 0 THEN 0 " +
+               "WHEN " + row + ".reps = 1 THEN " + row + ".weight " +
+               "ELSE " + row + ".weight * (1 + " + row + ".reps / 30.0) END)";
+    }
+
+    // Upsert assignments replacing one measure when the incoming set is higher, or equal and earlier.
+    // All three assignments read the stored row as it was before the update.
+    private static String keepBetterSql(String measure) {
+        String better = "(excluded." + measure + " > " + measure + " OR (excluded." + measure + " = " + measure +
+                " AND excluded." + measure + "_timestamp < " + measure + "_timestamp))";
+        return measure + " = CASE WHEN " + better + " THEN excluded." + measure + " ELSE " + measure + " END, " +
+               measure + "_activity_id = CASE WHEN " + better + " THEN excluded." + measure + "_activity_id ELSE " +
+               measure + "_activity_id END, " +
+               measure + "_timestamp = CASE WHEN " + better + " THEN excluded." + measure + "_timestamp ELSE " +
+               measure + "_timestamp END";
+    }
+
+    // Best rows per exercise among the activity_records rows (alias a) matching the filter,
+    // in BEST_COLUMNS order
+    private static String selectBestsSql(String filter) {
+        return "SELECT w.exercise_id, w.weight, w.id, w.timestamp, v.volume, v.id, v.timestamp, r.e1rm, r.id, r.timestamp " +
+               "FROM " + rankedSql("weight", "a.weight", filter) + " w " +
+               "JOIN " + rankedSql("volume", "a.reps * a.weight", filter) + " v " +
+               "ON v.exercise_id = w.exercise_id AND v.position = 1 " +
+               "JOIN " + rankedSql("e1rm", estimatedOneRepMaxSql("a"), filter) + " r " +
+               "ON r.exercise_id = w.exercise_id AND r.position = 1 " +
+               "WHERE w.position = 1";
+    }
+
+    private static String rankedSql(String name, String expression, String filter) {
+        return "(SELECT a.exercise_id, a.id, a.timestamp, " + expression + " AS " + name + ", " +
+               "ROW_NUMBER() OVER (PARTITION BY a.exercise_id ORDER BY " + expression + " DESC, a.timestamp, a.id) AS position " +
+               "FROM activity_records a WHERE " + filter + ")";
+    }
+}
@@ -0,0 +1,141 @@
+package info.matthewryan.workoutlogger.persistence;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Registry of the per-method QueryStats of the DAOs. Each DAO holds its QueryStats in static
+ * fields and runs the body of every public method through {@link QueryStats#time}; overloads
+ * that only delegate are counted under the method they call. Nothing is published until {@link #start} is called,
+ * which registers every QueryStats as an MXBean named
+ * {@code info.matthewryan.workoutlogger:type=QueryStats,dao=<dao>,method=<method>} and logs a
+ * summary of the calls made in each period. Both happen on a background thread.
+ */
+public final class QueryMetrics {
+
+    private static final Logger logger = LoggerFactory.getLogger(QueryMetrics.class);
+
+    private static final String DOMAIN = "info.matthewryan.workoutlogger";
+
+    private static final Map<String, QueryStats> stats = new ConcurrentHashMap<>();
+
+    private static ScheduledExecutorService reporter;
+    private static volatile MBeanServer mbeanServer;
+
+    private QueryMetrics() {
+    }
+
+    // Stats of one method; the same instance for every call with the same names
+    public static QueryStats forMethod(Class<?> dao, String method) {
+        String daoName = dao.getSimpleName();
+        return stats.computeIfAbsent(daoName + "." + method, key -> {
+            QueryStats created = new QueryStats(daoName, method);
+            if (mbeanServer != null) {
+                register(mbeanServer, created);
+            }
+            return created;
+        });
+    }
+
+    public static Collection<QueryStats> getAll() {
+        return stats.values();
+    }
+
+    // Publish the stats over JMX and log a summary every periodMillis until stop()
+    public static synchronized void start(long periodMillis) {
+        if (reporter != null) {
+            return;
+        }
+        reporter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "query-metrics");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Starting the platform MBean server takes a while; keep it off the caller's thread
+        reporter.execute(QueryMetrics::registerAll);
+        Map<String, Long> callsAtLastSummary = new HashMap<>();
+        reporter.scheduleAtFixedRate(() -> logSummary(callsAtLastSummary), periodMillis, periodMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    // Stop the periodic summary; the MXBeans stay registered
+    public static synchronized void stop() {
+        if (reporter != null) {
+            reporter.shutdownNow();
+            reporter = null;
+        }
+    }
+
+    // One line per method called since the previous summary, most total time first
+    static String summary(Map<String, Long> callsAtLastSummary) {
+        List<QueryStats> called = new ArrayList<>();
+        for (QueryStats queryStats : stats.values()) {
+            String key = queryStats.getDao() + "." + queryStats.getMethod();
+            long calls = queryStats.getCalls();
+            Long previous = callsAtLastSummary.put(key, calls);
+            if (previous == null || calls != previous) {
+                called.add(queryStats);
+            }
+        }
+        if (called.isEmpty()) {
+            return null;
+        }
+        called.sort(Comparator.comparingDouble(QueryStats::getTotalMillis).reversed());
+
+        StringBuilder summary = new StringBuilder("Query latency since start, for methods called in the last period:");
+        for (QueryStats queryStats : called) {
+            summary.append(String.format("%n  %s.%s: %d calls, %d rows, %d errors, mean %.0f µs, " +
+                            "p50 %d µs, p95 %d µs, p99 %d µs, max %d µs",
+                    queryStats.getDao(), queryStats.getMethod(), queryStats.getCalls(), queryStats.getRows(),
+                    queryStats.getErrors(), queryStats.getMeanMicros(), queryStats.getP50Micros(),
+                    queryStats.getP95Micros(), queryStats.getP99Micros(), queryStats.getMaxMicros()));
+        }
+        return summary.toString();
+    }
+
+    private static void logSummary(Map<String, Long> callsAtLastSummary) {
+        String summary = summary(callsAtLastSummary);
+        if (summary != null) {
+            logger.info(summary);
+        }
+    }
+
+    private static void registerAll() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        // Stats created from here on register themselves
+        mbeanServer = server;
+        for (QueryStats queryStats : stats.values()) {
+            register(server, queryStats);
+        }
+        logger.info("Published {} query stats over JMX", stats.size());
+    }
+
+    private static void register(MBeanServer server, QueryStats queryStats) {
+        try {
+            ObjectName name = new ObjectName(DOMAIN + ":type=QueryStats,dao=" + queryStats.getDao() +
+                    ",method=" + queryStats.getMethod());
+            server.registerMBean(queryStats, name);
+        } catch (InstanceAlreadyExistsException e) {
+            // Registered by registerAll and forMethod at the same time
+        } catch (JMException e) {
+            logger.warn("Could not publish query stats for {}.{}: {}", queryStats.getDao(), queryStats.getMethod(),
+                    e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package info.matthewryan.workoutlogger.persistence;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histogram, row count and error count of one DAO method. Recording takes no lock and
+ * allocates nothing: a few atomic adds and, for a new maximum only, a compare-and-set. The
+ * histogram has four buckets per power of two of nanoseconds. Readers see each counter
+ * up to date but not the set of them as one consistent snapshot. DAO methods time their
+ * statements with a {@link Timer} from {@link #start}.
+ */
+public final class QueryStats implements QueryStatsMXBean {
+
+    // Buckets 0-3 hold 0-3 ns; after that four per power of two, up to 2^63 ns
+    private static final int SUB_BUCKET_BITS = 2;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKET_COUNT = (63 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final String dao;
+    private final String method;
+    private final AtomicLongArray histogram = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder rows = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    QueryStats(String dao, String method) {
+        this.dao = dao;
+        this.method = method;
+    }
+
+    // Time a DAO call from here until the Timer is closed, typically as the first resource of
+    // the method's try-with-resources
+    public Timer start() {
+        return new Timer(this);
+    }
+
+    // A call that started at startNanos (System.nanoTime()) returned rowCount rows or changed
+    // that many
+    public void record(long startNanos, long rowCount) {
+        recordLatency(System.nanoTime() - startNanos);
+        rows.add(rowCount);
+    }
+
+    // A call that started at startNanos failed
+    public void recordError(long startNanos) {
+        recordLatency(System.nanoTime() - startNanos);
+        errors.increment();
+    }
+
+    private void recordLatency(long nanos) {
+        nanos = Math.max(0, nanos);
+        histogram.incrementAndGet(bucketOf(nanos));
+        calls.increment();
+        totalNanos.add(nanos);
+        long max = maxNanos.get();
+        while (nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+            max = maxNanos.get();
+        }
+    }
+
+    @Override
+    public String getDao() {
+        return dao;
+    }
+
+    @Override
+    public String getMethod() {
+        return method;
+    }
+
+    @Override
+    public long getCalls() {
+        return calls.sum();
+    }
+
+    @Override
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    @Override
+    public long getRows() {
+        return rows.sum();
+    }
+
+    @Override
+    public double getTotalMillis() {
+        return totalNanos.sum() / 1_000_000.0;
+    }
+
+    @Override
+    public double getMeanMicros() {
+        long count = calls.sum();
+        return count == 0 ? 0 : totalNanos.sum() / 1000.0 / count;
+    }
+
+    @Override
+    public long getP50Micros() {
+        return percentileNanos(0.50) / 1000;
+    }
+
+    @Override
+    public long getP95Micros() {
+        return percentileNanos(0.95) / 1000;
+    }
+
+    @Override
+    public long getP99Micros() {
+        return percentileNanos(0.99) / 1000;
+    }
+
+    @Override
+    public long getMaxMicros() {
+        return maxNanos.get() / 1000;
+    }
+
+    // Calls made while resetting may be partly counted
+    @Override
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            histogram.set(i, 0);
+        }
+        calls.reset();
+        errors.reset();
+        rows.reset();
+        totalNanos.reset();
+        maxNanos.set(0);
+    }
+
+    // Latency at or under which the given fraction of calls completed, never above the maximum
+    long percentileNanos(double fraction) {
+        long[] counts = new long[BUCKET_COUNT];
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] = histogram.get(i);
+            total += counts[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(fraction * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(bucketUpperBound(i), maxNanos.get());
+            }
+        }
+        return maxNanos.get();
+    }
+
+    static int bucketOf(long nanos) {
+        if (nanos < SUB_BUCKETS) {
+            return (int) nanos;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        int subBucket = (int) (nanos >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    // Largest latency that falls in the bucket
+    static long bucketUpperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long lower = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+        return lower + (1L << shift) - 1;
+    }
+
+    /**
+     * One timed call. Closing it records the latency with the rows passed to
+     * {@link #succeeded}, or as an error if the call never got that far, e.g. because it threw.
+     */
+    public static final class Timer implements AutoCloseable {
+
+        private final QueryStats stats;
+        private final long startNanos = System.nanoTime();
+        private long rowCount = -1;
+
+        private Timer(QueryStats stats) {
+            this.stats = stats;
+        }
+
+        // The call completed, having read or changed rowCount rows
+        public void succeeded(long rowCount) {
+            this.rowCount = Math.max(0, rowCount);
+        }
+
+        @Override
+        public void close() {
+            if (rowCount >= 0) {
+                stats.record(startNanos, rowCount);
+            } else {
+                stats.recordError(startNanos);
+            }
+        }
+    }
+}
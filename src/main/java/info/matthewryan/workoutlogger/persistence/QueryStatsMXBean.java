@@ -0,0 +1,30 @@
+package info.matthewryan.workoutlogger.persistence;
+
+// JMX view of one DAO method's QueryStats. Latencies are in microseconds; percentiles are
+// the upper bound of the histogram bucket they fall in, so they read at most 25% high.
+public interface QueryStatsMXBean {
+
+    String getDao();
+
+    String getMethod();
+
+    long getCalls();
+
+    long getErrors();
+
+    long getRows();
+
+    double getTotalMillis();
+
+    double getMeanMicros();
+
+    long getP50Micros();
+
+    long getP95Micros();
+
+    long getP99Micros();
+
+    long getMaxMicros();
+
+    void reset();
+}
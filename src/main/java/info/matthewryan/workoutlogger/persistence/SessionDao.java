@@ -10,6 +10,15 @@ public class SessionDao {
 
     private static final Logger logger = LoggerFactory.getLogger(SessionDao.class);
 
+    private static final String SELECT_SESSION_BY_ID_SQL = "SELECT * FROM session WHERE id = ?";
+
+    // Latency, rows and errors per public method, published by QueryMetrics
+    private static final QueryStats CREATE_SESSION_TABLE_STATS = QueryMetrics.forMethod(SessionDao.class, "createSessionTable");
+    private static final QueryStats START_SESSION_STATS = QueryMetrics.forMethod(SessionDao.class, "startSession");
+    private static final QueryStats END_SESSION_STATS = QueryMetrics.forMethod(SessionDao.class, "endSession");
+    private static final QueryStats RESTORE_SESSION_STATS = QueryMetrics.forMethod(SessionDao.class, "restoreSession");
+    private static final QueryStats GET_SESSION_BY_ID_STATS = QueryMetrics.forMethod(SessionDao.class, "getSessionById");
+
     private Connection connection;
 
     public SessionDao(Connection connection) {
@@ -21,8 +30,10 @@ public class SessionDao {
                 "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
                 "start_timestamp LONG NOT NULL, " +
                 "end_timestamp LONG)";
-        try (Statement stmt = connection.createStatement()) {
+        try (QueryStats.Timer timer = CREATE_SESSION_TABLE_STATS.start();
+             Statement stmt = connection.createStatement()) {
             stmt.executeUpdate(sql);
+            timer.succeeded(0);
             logger.info("Session table created successfully or already exists.");
         } catch (SQLException e) {
             logger.error("Error creating session table: {}", e.getMessage(), e);
@@ -31,16 +42,18 @@ public class SessionDao {
 
     public void startSession(Session session) {
         String sql = "INSERT INTO session (start_timestamp, end_timestamp) VALUES (?, ?)";
-        try (PreparedStatement stmt = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+        try (QueryStats.Timer timer = START_SESSION_STATS.start();
+             PreparedStatement stmt = SlowQueryLog.prepare(connection, sql, Statement.RETURN_GENERATED_KEYS)) {
             stmt.setLong(1, session.getStartTimestamp());
             stmt.setLong(2, session.getEndTimestamp());
-            stmt.executeUpdate();
+            int inserted = stmt.executeUpdate();
 
             try (ResultSet rs = stmt.getGeneratedKeys()) {
                 if (rs.next()) {
                     session.setId(rs.getInt(1));  // Get the generated ID
                 }
             }
+            timer.succeeded(inserted);
         }
         catch (SQLException e) {
             logger.error("Error creating session: {}", e.getMessage(), e);
@@ -49,24 +62,41 @@ public class SessionDao {
 
     public void endSession(int sessionId, long endTimestamp) throws SQLException {
         String sql = "UPDATE session SET end_timestamp = ? WHERE id = ?";
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+        try (QueryStats.Timer timer = END_SESSION_STATS.start();
+             PreparedStatement stmt = SlowQueryLog.prepare(connection, sql)) {
             stmt.setLong(1, endTimestamp);
             stmt.setInt(2, sessionId);
-            stmt.executeUpdate();
+            timer.succeeded(stmt.executeUpdate());
+        }
+    }
+
+    // Store a session under a known id, or set the end time of the one already stored. An end
+    // timestamp of 0 leaves a stored end time alone.
+    public void restoreSession(int sessionId, long startTimestamp, long endTimestamp) throws SQLException {
+        String sql = "INSERT INTO session (id, start_timestamp, end_timestamp) VALUES (?, ?, ?) " +
+                "ON CONFLICT (id) DO UPDATE SET end_timestamp = excluded.end_timestamp WHERE excluded.end_timestamp > 0";
+        try (QueryStats.Timer timer = RESTORE_SESSION_STATS.start();
+             PreparedStatement stmt = SlowQueryLog.prepare(connection, sql)) {
+            stmt.setInt(1, sessionId);
+            stmt.setLong(2, startTimestamp);
+            stmt.setLong(3, endTimestamp);
+            timer.succeeded(stmt.executeUpdate());
         }
     }
 
     public Session getSessionById(int sessionId) throws SQLException {
-        String sql = "SELECT * FROM session WHERE id = ?";
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+        try (QueryStats.Timer timer = GET_SESSION_BY_ID_STATS.start();
+             PreparedStatement stmt = SlowQueryLog.prepare(connection, SELECT_SESSION_BY_ID_SQL)) {
             stmt.setInt(1, sessionId);
             try (ResultSet rs = stmt.executeQuery()) {
                 if (rs.next()) {
                     long startTimestamp = rs.getLong("start_timestamp");
                     long endTimestamp = rs.getLong("end_timestamp");
+                    timer.succeeded(1);
                     return new Session(sessionId, startTimestamp, endTimestamp, null); // We'll populate activityRecords later
                 }
             }
+            timer.succeeded(0);
         }
         return null;
     }
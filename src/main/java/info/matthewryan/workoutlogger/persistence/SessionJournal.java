@@ -0,0 +1,350 @@
+package info.matthewryan.workoutlogger.persistence;
+
+import info.matthewryan.workoutlogger.model.ActivityRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only redo log of session starts, logged sets and session ends. Every entry is one
+ * fixed-size record carrying a CRC32, so a write torn by a crash is detected on open and cut
+ * off. Appends go straight to the file channel and are made durable by a background thread
+ * that forces the channel once for every group of appends that arrived while the previous
+ * force was running (group commit); the future returned by an append completes when its
+ * record is on disk. On the next launch {@link #replay} writes the recovered entries into the
+ * database, skipping sets that reached it before the crash, and {@link #checkpoint} then empties
+ * the file.
+ */
+public class SessionJournal implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(SessionJournal.class);
+
+    // magic, type, sessionId, timestamp, exerciseId, reps, weight, reserved, crc
+    public static final int RECORD_SIZE = 48;
+    private static final int CRC_OFFSET = RECORD_SIZE - 4;
+    private static final int MAGIC = 0x534A524E;  // "SJRN"
+
+    // Extra time the sync thread waits for more appends before forcing
+    private static final long GROUP_COMMIT_WINDOW_MILLIS = 2;
+
+    public enum EntryType {
+        SESSION_START(1), SET(2), SESSION_END(3);
+
+        private final int code;
+
+        EntryType(int code) {
+            this.code = code;
+        }
+
+        private static EntryType fromCode(int code) {
+            for (EntryType type : values()) {
+                if (type.code == code) {
+                    return type;
+                }
+            }
+            return null;
+        }
+    }
+
+    // One decoded record; exercise, reps and weight are only set for SET entries
+    public static final class Entry {
+
+        private final EntryType type;
+        private final long sessionId;
+        private final long timestamp;
+        private final int exerciseId;
+        private final int reps;
+        private final double weight;
+
+        private Entry(EntryType type, long sessionId, long timestamp, int exerciseId, int reps, double weight) {
+            this.type = type;
+            this.sessionId = sessionId;
+            this.timestamp = timestamp;
+            this.exerciseId = exerciseId;
+            this.reps = reps;
+            this.weight = weight;
+        }
+
+        public EntryType getType() {
+            return type;
+        }
+
+        public long getSessionId() {
+            return sessionId;
+        }
+
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        public ActivityRecord toActivityRecord() {
+            return new ActivityRecord(exerciseId, reps, weight, timestamp, sessionId);
+        }
+    }
+
+    private static final class Waiter {
+        private final long sequence;
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        private Waiter(long sequence) {
+            this.sequence = sequence;
+        }
+    }
+
+    private final FileChannel channel;
+    private final List<Entry> recovered;
+    private final ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+    private final CRC32 crc = new CRC32();
+    private final Deque<Waiter> waiters = new ArrayDeque<>();
+    private final Thread syncThread;
+
+    // Appends written to the channel, and how many of them are known to be on disk
+    private long appended;
+    private long synced;
+    private boolean closed;
+
+    private SessionJournal(FileChannel channel, List<Entry> recovered) {
+        this.channel = channel;
+        this.recovered = recovered;
+        this.syncThread = new Thread(this::syncLoop, "journal-sync");
+        this.syncThread.setDaemon(true);
+        this.syncThread.start();
+    }
+
+    // Open or create the journal, reading back whatever a previous run left in it
+    public static SessionJournal open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try {
+            List<Entry> entries = new ArrayList<>();
+            long validLength = readEntries(channel, entries);
+            if (validLength < channel.size()) {
+                logger.warn("Discarding {} bytes of torn or corrupt journal tail in {}", channel.size() - validLength, file);
+                channel.truncate(validLength);
+                channel.force(false);
+            }
+            channel.position(validLength);
+            if (!entries.isEmpty()) {
+                logger.info("Recovered {} journal entries from {}", entries.size(), file);
+            }
+            return new SessionJournal(channel, Collections.unmodifiableList(entries));
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    // Entries found when the journal was opened
+    public List<Entry> getRecoveredEntries() {
+        return recovered;
+    }
+
+    public CompletableFuture<Void> sessionStarted(long sessionId, long timestamp) {
+        return append(EntryType.SESSION_START, sessionId, timestamp, 0, 0, 0);
+    }
+
+    public CompletableFuture<Void> setLogged(ActivityRecord activityRecord) {
+        return append(EntryType.SET, activityRecord.getSessionId(), activityRecord.getTimestamp(),
+                activityRecord.getExerciseId(), activityRecord.getReps(), activityRecord.getWeight());
+    }
+
+    public CompletableFuture<Void> sessionEnded(long sessionId, long timestamp) {
+        return append(EntryType.SESSION_END, sessionId, timestamp, 0, 0, 0);
+    }
+
+    // Write the recovered entries into the database. Sessions are stored under their journaled
+    // ids; one that was never ended is closed at its last journaled entry. Must run on the
+    // connection the DAOs are bound to; returns the number of sets that were missing.
+    public long replay(SessionDao sessionDao, ActivityDao activityDao) throws SQLException {
+        if (recovered.isEmpty()) {
+            return 0;
+        }
+        // sessionId -> {start, end, last seen}
+        Map<Long, long[]> sessions = new LinkedHashMap<>();
+        List<ActivityRecord> sets = new ArrayList<>();
+        for (Entry entry : recovered) {
+            switch (entry.type) {
+                case SESSION_START:
+                    sessions.computeIfAbsent(entry.sessionId, id -> new long[3])[0] = entry.timestamp;
+                    break;
+                case SESSION_END:
+                    sessions.computeIfAbsent(entry.sessionId, id -> new long[3])[1] = entry.timestamp;
+                    break;
+                default:
+                    sets.add(entry.toActivityRecord());
+                    break;
+            }
+            long[] session = sessions.get(entry.sessionId);
+            if (session != null) {
+                session[2] = Math.max(session[2], entry.timestamp);
+            }
+        }
+
+        long inserted = activityDao.insertMissingActivities(sets);
+        for (Map.Entry<Long, long[]> session : sessions.entrySet()) {
+            long[] times = session.getValue();
+            long start = times[0] != 0 ? times[0] : times[2];
+            long end = times[1] != 0 ? times[1] : times[2];
+            sessionDao.restoreSession(Math.toIntExact(session.getKey()), start, end);
+        }
+        logger.info("Replayed journal: {} sessions, {} of {} sets were missing", sessions.size(), inserted, sets.size());
+        return inserted;
+    }
+
+    // Everything journaled so far is in the database; drop it
+    public synchronized void checkpoint() throws IOException {
+        channel.truncate(0);
+        channel.force(false);
+    }
+
+    // Size of the journal file in bytes
+    public synchronized long size() throws IOException {
+        return channel.size();
+    }
+
+    // Wait for outstanding appends to reach the disk, then close the file
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            notifyAll();
+        }
+        try {
+            syncThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        channel.close();
+    }
+
+    private synchronized CompletableFuture<Void> append(EntryType type, long sessionId, long timestamp,
+                                                        int exerciseId, int reps, double weight) {
+        if (closed) {
+            return CompletableFuture.failedFuture(new IOException("Journal is closed"));
+        }
+        record.clear();
+        record.putInt(MAGIC)
+              .putInt(type.code)
+              .putLong(sessionId)
+              .putLong(timestamp)
+              .putInt(exerciseId)
+              .putInt(reps)
+              .putDouble(weight)
+              .putInt(0);
+        crc.reset();
+        crc.update(record.array(), 0, CRC_OFFSET);
+        record.putInt((int) crc.getValue());
+        record.flip();
+        try {
+            while (record.hasRemaining()) {
+                channel.write(record);
+            }
+        } catch (IOException e) {
+            logger.error("Error appending to journal: {}", e.getMessage(), e);
+            return CompletableFuture.failedFuture(e);
+        }
+        Waiter waiter = new Waiter(++appended);
+        waiters.add(waiter);
+        notifyAll();
+        return waiter.future;
+    }
+
+    private void syncLoop() {
+        while (true) {
+            synchronized (this) {
+                while (appended == synced && !closed) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+                if (appended == synced) {
+                    return;  // Closed with nothing left to sync
+                }
+            }
+            try {
+                Thread.sleep(GROUP_COMMIT_WINDOW_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+
+            long target;
+            synchronized (this) {
+                target = appended;
+            }
+            IOException failure = null;
+            try {
+                channel.force(false);
+            } catch (IOException e) {
+                logger.error("Error syncing journal: {}", e.getMessage(), e);
+                failure = e;
+            }
+            completeWaiters(target, failure);
+        }
+    }
+
+    private synchronized void completeWaiters(long target, IOException failure) {
+        synced = target;
+        while (!waiters.isEmpty() && waiters.peekFirst().sequence <= target) {
+            Waiter waiter = waiters.pollFirst();
+            if (failure == null) {
+                waiter.future.complete(null);
+            } else {
+                waiter.future.completeExceptionally(new UncheckedIOException(failure));
+            }
+        }
+    }
+
+    // Decode records until the end of the file or the first one that fails its checks;
+    // returns the length of the valid prefix
+    private static long readEntries(FileChannel channel, List<Entry> entries) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_SIZE);
+        CRC32 crc = new CRC32();
+        long position = 0;
+        long size = channel.size();
+        while (position + RECORD_SIZE <= size) {
+            buffer.clear();
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, position + buffer.position()) < 0) {
+                    return position;
+                }
+            }
+            buffer.flip();
+            crc.reset();
+            crc.update(buffer.array(), 0, CRC_OFFSET);
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(CRC_OFFSET) != (int) crc.getValue()) {
+                return position;
+            }
+            EntryType type = EntryType.fromCode(buffer.getInt(4));
+            if (type == null) {
+                return position;
+            }
+            entries.add(new Entry(type, buffer.getLong(8), buffer.getLong(16), buffer.getInt(24),
+                    buffer.getInt(28), buffer.getDouble(32)));
+            position += RECORD_SIZE;
+        }
+        return position;
+    }
+}
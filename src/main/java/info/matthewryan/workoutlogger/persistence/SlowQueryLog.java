@@ -0,0 +1,351 @@
+package info.matthewryan.workoutlogger.persistence;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Opt-in record of slow statements. The DAOs prepare their statements through
+ * {@link #prepare}; while no log is installed that is a plain prepareStatement. Once one is
+ * installed, statements are wrapped to capture their bind parameters, time each execution and
+ * count the rows read or changed. A query is timed from executeQuery until its result set is
+ * closed, since SQLite steps through the rows as they are read. Every execution that takes at
+ * least the threshold is written to a text file together with the output of EXPLAIN QUERY
+ * PLAN, which is run with the same binds on the same connection only for those statements.
+ * The file is rotated once it exceeds maxFileBytes, keeping maxFiles old files as .1, .2 and
+ * so on. Entries are written on a background thread.
+ */
+public final class SlowQueryLog implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(SlowQueryLog.class);
+
+    // Set to a threshold in milliseconds to turn the log on at startup
+    public static final String THRESHOLD_PROPERTY = "workoutlogger.slowQueryMillis";
+    public static final Path DEFAULT_FILE = Path.of("slow-queries.log");
+    public static final long DEFAULT_MAX_FILE_BYTES = 1024 * 1024;
+    public static final int DEFAULT_MAX_FILES = 5;
+
+    private static volatile SlowQueryLog installed;
+
+    private final Path file;
+    private final long thresholdNanos;
+    private final long maxFileBytes;
+    private final int maxFiles;
+    private final ExecutorService writer;
+
+    public SlowQueryLog(Path file, long thresholdMillis) {
+        this(file, thresholdMillis, DEFAULT_MAX_FILE_BYTES, DEFAULT_MAX_FILES);
+    }
+
+    public SlowQueryLog(Path file, long thresholdMillis, long maxFileBytes, int maxFiles) {
+        if (thresholdMillis < 0 || maxFileBytes <= 0 || maxFiles < 0) {
+            throw new IllegalArgumentException("Invalid slow query log settings");
+        }
+        this.file = file;
+        this.thresholdNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMillis);
+        this.maxFileBytes = maxFileBytes;
+        this.maxFiles = maxFiles;
+        this.writer = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "slow-query-log");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // A log to DEFAULT_FILE if THRESHOLD_PROPERTY is set, otherwise null
+    public static SlowQueryLog fromSystemProperties() {
+        String threshold = System.getProperty(THRESHOLD_PROPERTY);
+        if (threshold == null || threshold.isBlank()) {
+            return null;
+        }
+        try {
+            return new SlowQueryLog(DEFAULT_FILE, Long.parseLong(threshold.trim()));
+        } catch (IllegalArgumentException e) {
+            logger.warn("Ignoring {}={}: not a threshold in milliseconds", THRESHOLD_PROPERTY, threshold);
+            return null;
+        }
+    }
+
+    // Capture statements prepared from now on into this log, replacing any installed before
+    public void install() {
+        installed = this;
+        logger.info("Logging statements slower than {} ms to {}", TimeUnit.NANOSECONDS.toMillis(thresholdNanos),
+                file.toAbsolutePath());
+    }
+
+    // Stop capturing and wait for the pending entries to be written
+    @Override
+    public void close() {
+        if (installed == this) {
+            installed = null;
+        }
+        writer.shutdown();
+        try {
+            writer.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public static PreparedStatement prepare(Connection connection, String sql) throws SQLException {
+        SlowQueryLog log = installed;
+        PreparedStatement statement = connection.prepareStatement(sql);
+        return log != null ? log.wrap(connection, sql, statement) : statement;
+    }
+
+    public static PreparedStatement prepare(Connection connection, String sql, int autoGeneratedKeys)
+            throws SQLException {
+        SlowQueryLog log = installed;
+        PreparedStatement statement = connection.prepareStatement(sql, autoGeneratedKeys);
+        return log != null ? log.wrap(connection, sql, statement) : statement;
+    }
+
+    private PreparedStatement wrap(Connection connection, String sql, PreparedStatement statement) {
+        return (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                new Class<?>[]{PreparedStatement.class}, new StatementHandler(connection, sql, statement));
+    }
+
+    // One execution that ran over the threshold
+    private void captured(Connection connection, String sql, Map<Integer, Object> binds, int batchSize,
+                          long rows, long elapsedNanos) {
+        if (writer.isShutdown()) {
+            return;  // Closed while this statement was open
+        }
+        List<String> plan = explain(connection, sql, binds);
+        String entry = format(LocalDateTime.now(), sql, binds, batchSize, rows, elapsedNanos, plan);
+        try {
+            writer.execute(() -> append(entry));
+        } catch (RejectedExecutionException e) {
+            // Closed in the meantime
+        }
+    }
+
+    // Runs on the thread that executed the statement, which owns the connection
+    private static List<String> explain(Connection connection, String sql, Map<Integer, Object> binds) {
+        List<String> plan = new ArrayList<>();
+        try (PreparedStatement explain = connection.prepareStatement("EXPLAIN QUERY PLAN " + sql)) {
+            for (Map.Entry<Integer, Object> bind : binds.entrySet()) {
+                explain.setObject(bind.getKey(), bind.getValue());
+            }
+            try (ResultSet rs = explain.executeQuery()) {
+                while (rs.next()) {
+                    plan.add(rs.getString("detail"));
+                }
+            }
+        } catch (SQLException e) {
+            plan.add("(no plan: " + e.getMessage() + ")");
+        }
+        return plan;
+    }
+
+    private static String format(LocalDateTime time, String sql, Map<Integer, Object> binds, int batchSize,
+                                 long rows, long elapsedNanos, List<String> plan) {
+        StringBuilder entry = new StringBuilder();
+        entry.append(time).append(' ')
+             .append(String.format("%.3f", elapsedNanos / 1_000_000.0)).append(" ms, ")
+             .append(rows).append(" rows");
+        if (batchSize > 0) {
+            entry.append(", batch of ").append(batchSize);
+        }
+        entry.append(System.lineSeparator())
+             .append("  sql:   ").append(sql).append(System.lineSeparator())
+             .append("  binds: ").append(binds.values()).append(System.lineSeparator());
+        for (String step : plan) {
+            entry.append("  plan:  ").append(step).append(System.lineSeparator());
+        }
+        return entry.toString();
+    }
+
+    private void append(String entry) {
+        try {
+            if (Files.exists(file) && Files.size(file) >= maxFileBytes) {
+                rotate();
+            }
+            try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                    StandardOpenOption.APPEND)) {
+                out.write(entry);
+            }
+        } catch (IOException e) {
+            logger.error("Error writing the slow query log: {}", e.getMessage(), e);
+        }
+    }
+
+    // file.(n-1) -> file.n, ..., file -> file.1; the oldest falls off the end
+    private void rotate() throws IOException {
+        if (maxFiles == 0) {
+            Files.delete(file);
+            return;
+        }
+        Files.deleteIfExists(rotated(maxFiles));
+        for (int i = maxFiles - 1; i >= 1; i--) {
+            if (Files.exists(rotated(i))) {
+                Files.move(rotated(i), rotated(i + 1), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        Files.move(file, rotated(1), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private Path rotated(int index) {
+        return file.resolveSibling(file.getFileName() + "." + index);
+    }
+
+    // Wraps one prepared statement; used by one thread at a time, like the statement itself
+    private final class StatementHandler implements InvocationHandler {
+
+        private final Connection connection;
+        private final String sql;
+        private final PreparedStatement statement;
+        // Parameter index -> value, for the execution being prepared
+        private final Map<Integer, Object> binds = new TreeMap<>();
+        private Map<Integer, Object> batchBinds = new TreeMap<>();
+        private int batchSize;
+        private ResultHandler openResult;
+
+        private StatementHandler(Connection connection, String sql, PreparedStatement statement) {
+            this.connection = connection;
+            this.sql = sql;
+            this.statement = statement;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            // setInt(index, value), setNull(index, type) and friends; not setFetchSize(rows)
+            if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer) {
+                binds.put((Integer) args[0], name.equals("setNull") ? null : args[1]);
+            } else if (name.equals("clearParameters")) {
+                binds.clear();
+            } else if (name.equals("addBatch")) {
+                batchBinds = new TreeMap<>(binds);
+                batchSize++;
+            } else if (name.equals("clearBatch")) {
+                batchSize = 0;
+            }
+
+            long start = System.nanoTime();
+            Object result = invokeOn(statement, method, args);
+            long elapsed = System.nanoTime() - start;
+
+            switch (name) {
+                case "executeQuery":
+                    finishOpenResult();
+                    openResult = new ResultHandler(this, (ResultSet) result, start);
+                    return Proxy.newProxyInstance(ResultSet.class.getClassLoader(),
+                            new Class<?>[]{ResultSet.class}, openResult);
+                case "executeUpdate":
+                case "executeLargeUpdate":
+                    executed(binds, 0, ((Number) result).longValue(), elapsed);
+                    break;
+                case "execute":
+                    executed(binds, 0, Math.max(0, statement.getUpdateCount()), elapsed);
+                    break;
+                case "executeBatch":
+                case "executeLargeBatch":
+                    executed(batchBinds, batchSize, sum(result), elapsed);
+                    batchSize = 0;
+                    break;
+                case "close":
+                    finishOpenResult();
+                    break;
+                default:
+                    break;
+            }
+            return result;
+        }
+
+        private void finishOpenResult() {
+            if (openResult != null) {
+                openResult.finish();
+                openResult = null;
+            }
+        }
+
+        private void executed(Map<Integer, Object> executedBinds, int executedBatch, long rows, long elapsedNanos) {
+            if (elapsedNanos >= thresholdNanos) {
+                captured(connection, sql, new TreeMap<>(executedBinds), executedBatch, rows, elapsedNanos);
+            }
+        }
+    }
+
+    // Counts the rows a query returns and reports it when the result set is closed
+    private static final class ResultHandler implements InvocationHandler {
+
+        private final StatementHandler statement;
+        private final ResultSet resultSet;
+        private final long start;
+        private final Map<Integer, Object> binds;
+        private long rows;
+        private boolean finished;
+
+        private ResultHandler(StatementHandler statement, ResultSet resultSet, long start) {
+            this.statement = statement;
+            this.resultSet = resultSet;
+            this.start = start;
+            this.binds = new TreeMap<>(statement.binds);
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            Object result = invokeOn(resultSet, method, args);
+            if (method.getName().equals("next") && Boolean.TRUE.equals(result)) {
+                rows++;
+            } else if (method.getName().equals("close")) {
+                finish();
+            }
+            return result;
+        }
+
+        private void finish() {
+            if (!finished) {
+                finished = true;
+                statement.executed(binds, 0, rows, System.nanoTime() - start);
+            }
+        }
+    }
+
+    private static Object invokeOn(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static long sum(Object batchCounts) {
+        long total = 0;
+        if (batchCounts instanceof int[]) {
+            for (int count : (int[]) batchCounts) {
+                total += Math.max(0, count);
+            }
+        } else if (batchCounts instanceof long[]) {
+            for (long count : (long[]) batchCounts) {
+                total += Math.max(0, count);
+            }
+        }
+        return total;
+    }
+}
@@ -0,0 +1,300 @@
+package info.matthewryan.workoutlogger.persistence;
+
+import info.matthewryan.workoutlogger.model.VolumeRollup;
+import info.matthewryan.workoutlogger.model.VolumeRollup.Resolution;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.*;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Per-exercise volume totals by local day, ISO week (Monday to Sunday) and month, one table per
+ * resolution keyed by (exercise_id, bucket), where bucket is the epoch day the bucket starts on.
+ * Triggers on activity_records keep the three tables current: an insert adds to one row per
+ * table, a delete subtracts from it and only rescans the bucket's sets when it removed the
+ * bucket's heaviest or best-e1RM set. The triggers do nothing during a bulk load, which calls
+ * rebuildRollups() when it finishes; do the same after other bulk changes made with them
+ * bypassed. Buckets follow SQLite's 'localtime', i.e. the system time zone.
+ */
+public class VolumeRollupDao {
+
+    private static final Logger logger = LoggerFactory.getLogger(VolumeRollupDao.class);
+
+    private static final String DAY_TABLE = "volume_rollup_day";
+    private static final String WEEK_TABLE = "volume_rollup_week";
+    private static final String MONTH_TABLE = "volume_rollup_month";
+
+    private static final String[] TRIGGERS = {
+            "trg_volume_rollups_insert", "trg_volume_rollups_delete", "trg_volume_rollups_update"
+    };
+
+    private static final String ROLLUP_COLUMNS =
+            "exercise_id, bucket, total_volume, set_count, rep_count, max_weight, best_e1rm";
+
+    private static final String SELECT_DAY_ROLLUPS_SQL = selectRollupsSql(DAY_TABLE);
+    private static final String SELECT_WEEK_ROLLUPS_SQL = selectRollupsSql(WEEK_TABLE);
+    private static final String SELECT_MONTH_ROLLUPS_SQL = selectRollupsSql(MONTH_TABLE);
+
+    private static final String NEEDS_BACKFILL_SQL =
+            "SELECT EXISTS (SELECT 1 FROM activity_records) AND NOT EXISTS (SELECT 1 FROM " + DAY_TABLE + ")";
+
+    private final Connection connection;
+
+    public VolumeRollupDao(Connection connection) {
+        this.connection = connection;
+    }
+
+    // Create the rollup tables and their triggers; activity_records must exist already.
+    // Existing history is backfilled the first time.
+    public void createRollupTables() {
+        try (Statement stmt = connection.createStatement()) {
+            for (Resolution resolution : Resolution.values()) {
+                stmt.execute("CREATE TABLE IF NOT EXISTS " + tableFor(resolution) + " (" +
+                        "exercise_id INTEGER NOT NULL, " +
+                        "bucket INTEGER NOT NULL, " +
+                        "total_volume REAL NOT NULL, " +
+                        "set_count INTEGER NOT NULL, " +
+                        "rep_count INTEGER NOT NULL, " +
+                        "max_weight REAL NOT NULL, " +
+                        "best_e1rm REAL NOT NULL, " +
+                        "PRIMARY KEY (exercise_id, bucket)" +
+                        ") WITHOUT ROWID");
+            }
+            // Recreated every time, so databases from before the bulk load guard pick it up
+            for (String trigger : TRIGGERS) {
+                stmt.execute("DROP TRIGGER IF EXISTS " + trigger);
+            }
+            stmt.execute(insertTriggerSql());
+            stmt.execute(deleteTriggerSql());
+            stmt.execute(updateTriggerSql());
+            logger.info("Volume rollup tables created successfully or already exist.");
+
+            boolean needsBackfill;
+            try (ResultSet rs = stmt.executeQuery(NEEDS_BACKFILL_SQL)) {
+                needsBackfill = rs.next() && rs.getBoolean(1);
+            }
+            if (needsBackfill) {
+                rebuildRollups();
+            }
+        } catch (SQLException e) {
+            logger.error("Error creating volume rollup tables: {}", e.getMessage(), e);
+        }
+    }
+
+    // All buckets of an exercise at the given resolution, oldest first
+    public List<VolumeRollup> getRollups(int exerciseId, Resolution resolution) {
+        return getRollups(exerciseId, resolution, LocalDate.MIN, LocalDate.MAX);
+    }
+
+    // Buckets of an exercise starting between from and to (inclusive), oldest first
+    public List<VolumeRollup> getRollups(int exerciseId, Resolution resolution, LocalDate from, LocalDate to) {
+        List<VolumeRollup> rollups = new ArrayList<>();
+        ZoneId zone = ZoneId.systemDefault();
+
+        try (PreparedStatement pstmt = connection.prepareStatement(selectSqlFor(resolution))) {
+            pstmt.setInt(1, exerciseId);
+            pstmt.setLong(2, from.toEpochDay());
+            pstmt.setLong(3, to.toEpochDay());
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    LocalDate bucketStart = LocalDate.ofEpochDay(rs.getLong(2));
+                    rollups.add(new VolumeRollup(
+                            rs.getInt(1),
+                            resolution,
+                            bucketStart,
+                            bucketStart.atStartOfDay(zone).toInstant().toEpochMilli(),
+                            rs.getDouble(3),
+                            rs.getInt(4),
+                            rs.getInt(5),
+                            rs.getDouble(6),
+                            rs.getDouble(7)));
+                }
+            }
+        } catch (SQLException e) {
+            logger.error("Error retrieving {} rollups for exercise {}: {}", resolution, exerciseId, e.getMessage(), e);
+        }
+        return rollups;
+    }
+
+    // Recompute all three tables from activity_records in one transaction. Called inside a
+    // transaction, e.g. the startup schema one, it joins that transaction and leaves the
+    // commit to the caller.
+    public void rebuildRollups() throws SQLException {
+        long start = System.nanoTime();
+        boolean autoCommit = connection.getAutoCommit();
+        if (autoCommit) {
+            connection.setAutoCommit(false);
+        }
+        try (Statement stmt = connection.createStatement()) {
+            for (Resolution resolution : Resolution.values()) {
+                stmt.executeUpdate("DELETE FROM " + tableFor(resolution));
+            }
+            stmt.executeUpdate("INSERT INTO " + DAY_TABLE + " (" + ROLLUP_COLUMNS + ") " +
+                    "SELECT a.exercise_id, " + bucketKeySql("a.timestamp", Resolution.DAY) + " AS bucket, " +
+                    "SUM(a.reps * a.weight), COUNT(*), SUM(a.reps), MAX(a.weight), " +
+                    "MAX(" + PersonalBestDao.estimatedOneRepMaxSql("a") + ") " +
+                    "FROM activity_records a GROUP BY a.exercise_id, bucket");
+            // Weeks and months are whole days, so fold the day rows rather than convert every set's
+            // timestamp to local time again
+            for (Resolution resolution : new Resolution[] {Resolution.WEEK, Resolution.MONTH}) {
+                stmt.executeUpdate("INSERT INTO " + tableFor(resolution) + " (" + ROLLUP_COLUMNS + ") " +
+                        "SELECT d.exercise_id, " + bucketOfDaySql("d.bucket", resolution) + " AS week_or_month, " +
+                        "SUM(d.total_volume), SUM(d.set_count), SUM(d.rep_count), MAX(d.max_weight), MAX(d.best_e1rm) " +
+                        "FROM " + DAY_TABLE + " d GROUP BY d.exercise_id, week_or_month");
+            }
+            if (autoCommit) {
+                connection.commit();
+            }
+            logger.info("Rebuilt volume rollups in {} ms", (System.nanoTime() - start) / 1_000_000);
+        } catch (SQLException e) {
+            if (autoCommit) {
+                connection.rollback();
+            }
+            throw e;
+        } finally {
+            if (autoCommit) {
+                connection.setAutoCommit(true);
+            }
+        }
+    }
+
+    private static String tableFor(Resolution resolution) {
+        switch (resolution) {
+            case WEEK:
+                return WEEK_TABLE;
+            case MONTH:
+                return MONTH_TABLE;
+            default:
+                return DAY_TABLE;
+        }
+    }
+
+    private static String selectSqlFor(Resolution resolution) {
+        switch (resolution) {
+            case WEEK:
+                return SELECT_WEEK_ROLLUPS_SQL;
+            case MONTH:
+                return SELECT_MONTH_ROLLUPS_SQL;
+            default:
+                return SELECT_DAY_ROLLUPS_SQL;
+        }
+    }
+
+    private static String selectRollupsSql(String table) {
+        return "SELECT " + ROLLUP_COLUMNS + " FROM " + table +
+               " WHERE exercise_id = ? AND bucket BETWEEN ? AND ? ORDER BY bucket";
+    }
+
+    // SQLite date modifiers taking a local date-time to the start of its bucket
+    private static String bucketModifiers(Resolution resolution) {
+        switch (resolution) {
+            case WEEK:
+                return "'start of day', 'weekday 0', '-6 days'";  // Back to Monday
+            case MONTH:
+                return "'start of month'";
+            default:
+                return "'start of day'";
+        }
+    }
+
+    private static String bucketLength(Resolution resolution) {
+        switch (resolution) {
+            case WEEK:
+                return "'+7 days'";
+            case MONTH:
+                return "'+1 month'";
+            default:
+                return "'+1 day'";
+        }
+    }
+
+    // Epoch day of the local date the bucket holding the timestamp starts on
+    private static String bucketKeySql(String timestamp, Resolution resolution) {
+        return "CAST(julianday(" + timestamp + " / 1000, 'unixepoch', 'localtime', " +
+               bucketModifiers(resolution) + ") - 2440587.5 AS INTEGER)";
+    }
+
+    // Epoch day of the week or month bucket holding a local epoch day
+    private static String bucketOfDaySql(String epochDay, Resolution resolution) {
+        if (resolution == Resolution.WEEK) {
+            return "(" + epochDay + " - ((" + epochDay + " + 3) % 7 + 7) % 7)";  // 1970-01-01 was a Thursday
+        }
+        return "CAST(julianday(" + epochDay + " + 2440587.5, " + bucketModifiers(resolution) + ") - 2440587.5 AS INTEGER)";
+    }
+
+    // Epoch millisecond range [start, end) of the bucket holding the timestamp
+    private static String bucketStartMillisSql(String timestamp, Resolution resolution) {
+        return "(CAST(strftime('%s', " + timestamp + " / 1000, 'unixepoch', 'localtime', " +
+               bucketModifiers(resolution) + ", 'utc') AS INTEGER) * 1000)";
+    }
+
+    private static String bucketEndMillisSql(String timestamp, Resolution resolution) {
+        return "(CAST(strftime('%s', " + timestamp + " / 1000, 'unixepoch', 'localtime', " +
+               bucketModifiers(resolution) + ", " + bucketLength(resolution) + ", 'utc') AS INTEGER) * 1000)";
+    }
+
+    // Add the NEW row to its bucket in every table
+    private static String addRowSql() {
+        StringBuilder sql = new StringBuilder();
+        for (Resolution resolution : Resolution.values()) {
+            sql.append("INSERT INTO ").append(tableFor(resolution)).append(" (").append(ROLLUP_COLUMNS).append(") ")
+               .append("VALUES (NEW.exercise_id, ").append(bucketKeySql("NEW.timestamp", resolution)).append(", ")
+               .append("NEW.reps * NEW.weight, 1, NEW.reps, NEW.weight, ")
+               .append(PersonalBestDao.estimatedOneRepMaxSql("NEW")).append(") ")
+               .append("ON CONFLICT (exercise_id, bucket) DO UPDATE SET ")
+               .append("total_volume = total_volume + excluded.total_volume, ")
+               .append("set_count = set_count + 1, ")
+               .append("rep_count = rep_count + excluded.rep_count, ")
+               .append("max_weight = MAX(max_weight, excluded.max_weight), ")
+               .append("best_e1rm = MAX(best_e1rm, excluded.best_e1rm); ");
+        }
+        return sql.toString();
+    }
+
+    // Take the OLD row out of its bucket in every table. The maxima are rescanned from the
+    // bucket's time range only when the removed set held one of them; emptied buckets are dropped.
+    private static String removeRowSql() {
+        String oldE1rm = PersonalBestDao.estimatedOneRepMaxSql("OLD");
+        StringBuilder sql = new StringBuilder();
+        for (Resolution resolution : Resolution.values()) {
+            String table = tableFor(resolution);
+            String bucketRows = "FROM activity_records a WHERE a.exercise_id = OLD.exercise_id " +
+                    "AND a.timestamp >= " + bucketStartMillisSql("OLD.timestamp", resolution) + " " +
+                    "AND a.timestamp < " + bucketEndMillisSql("OLD.timestamp", resolution);
+            String bucketKey = "exercise_id = OLD.exercise_id AND bucket = " + bucketKeySql("OLD.timestamp", resolution);
+
+            sql.append("UPDATE ").append(table).append(" SET ")
+               .append("total_volume = total_volume - OLD.reps * OLD.weight, ")
+               .append("set_count = set_count - 1, ")
+               .append("rep_count = rep_count - OLD.reps, ")
+               .append("max_weight = CASE WHEN OLD.weight < max_weight THEN max_weight ")
+               .append("ELSE COALESCE((SELECT MAX(a.weight) ").append(bucketRows).append("), 0) END, ")
+               .append("best_e1rm = CASE WHEN ").append(oldE1rm).append(" < best_e1rm THEN best_e1rm ")
+               .append("ELSE COALESCE((SELECT MAX(").append(PersonalBestDao.estimatedOneRepMaxSql("a")).append(") ")
+               .append(bucketRows).append("), 0) END ")
+               .append("WHERE ").append(bucketKey).append("; ")
+               .append("DELETE FROM ").append(table).append(" WHERE ").append(bucketKey).append(" AND set_count <= 0; ");
+        }
+        return sql.toString();
+    }
+
+    private static String insertTriggerSql() {
+        return "CREATE TRIGGER IF NOT EXISTS trg_volume_rollups_insert AFTER INSERT ON activity_records " +
+               "WHEN " + ActivityDao.NOT_BULK_LOADING_SQL + " BEGIN " + addRowSql() + "END";
+    }
+
+    private static String deleteTriggerSql() {
+        return "CREATE TRIGGER IF NOT EXISTS trg_volume_rollups_delete AFTER DELETE ON activity_records " +
+               "WHEN " + ActivityDao.NOT_BULK_LOADING_SQL + " BEGIN " + removeRowSql() + "END";
+    }
+
+    private static String updateTriggerSql() {
+        return "CREATE TRIGGER IF NOT EXISTS trg_volume_rollups_update " +
+               "AFTER UPDATE OF exercise_id, reps, weight, timestamp ON activity_records " +
+               "WHEN " + ActivityDao.NOT_BULK_LOADING_SQL + " BEGIN " + removeRowSql() + addRowSql() + "END";
+    }
+}
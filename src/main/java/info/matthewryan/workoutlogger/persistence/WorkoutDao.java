@@ -10,10 +10,34 @@ import java.util.List;
 public class WorkoutDao {
 
     private static final Logger logger = LoggerFactory.getLogger(WorkoutDao.class);
+
+    private static final String SELECT_EXERCISES_FOR_WORKOUT_SQL =
+            "SELECT e.name FROM exercises e " +
+            "JOIN workout_exercises we ON e.id = we.exercise_id " +
+            "WHERE we.workout_id = ? ORDER BY we.\"order\"";
+
+    // Latency, rows and errors per public method, published by QueryMetrics
+    private static final QueryStats CREATE_WORKOUT_TABLE_STATS = QueryMetrics.forMethod(WorkoutDao.class, "createWorkoutTable");
+    private static final QueryStats CREATE_WORKOUT_EXERCISES_TABLE_STATS =
+            QueryMetrics.forMethod(WorkoutDao.class, "createWorkoutExercisesTable");
+    private static final QueryStats CREATE_EXERCISE_TABLE_STATS = QueryMetrics.forMethod(WorkoutDao.class, "createExerciseTable");
+    private static final QueryStats INSERT_WORKOUT_STATS = QueryMetrics.forMethod(WorkoutDao.class, "insertWorkout");
+    private static final QueryStats ADD_EXERCISE_TO_WORKOUT_STATS = QueryMetrics.forMethod(WorkoutDao.class, "addExerciseToWorkout");
+    private static final QueryStats GET_EXERCISE_ID_BY_NAME_STATS = QueryMetrics.forMethod(WorkoutDao.class, "getExerciseIdByName");
+    private static final QueryStats GET_EXERCISES_FOR_WORKOUT_STATS =
+            QueryMetrics.forMethod(WorkoutDao.class, "getExercisesForWorkout");
+
     private Connection connection;
+    private final ExerciseDictionary exerciseDictionary;
 
     public WorkoutDao(Connection connection) {
+        this(connection, new ExerciseDictionary(connection));
+    }
+
+    // Share one dictionary between all DAOs working on the same database
+    public WorkoutDao(Connection connection, ExerciseDictionary exerciseDictionary) {
         this.connection = connection;
+        this.exerciseDictionary = exerciseDictionary;
     }
 
     public void createWorkoutTable() {
@@ -21,8 +45,10 @@ public class WorkoutDao {
                 "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
                 "name TEXT NOT NULL UNIQUE);";
 
-        try (Statement stmt = connection.createStatement()) {
+        try (QueryStats.Timer timer = CREATE_WORKOUT_TABLE_STATS.start();
+             Statement stmt = connection.createStatement()) {
             stmt.execute(sql);
+            timer.succeeded(0);
             logger.info("Workouts table created successfully or already exists.");
         } catch (SQLException e) {
             logger.error("Error creating workouts table: {}", e.getMessage(), e);
@@ -36,8 +62,10 @@ public class WorkoutDao {
                 "\"order\" INTEGER, " +  // Quoted 'order' to avoid conflict with SQL reserved keyword
                 "PRIMARY KEY (workout_id, exercise_id));";
 
-        try (Statement stmt = connection.createStatement()) {
+        try (QueryStats.Timer timer = CREATE_WORKOUT_EXERCISES_TABLE_STATS.start();
+             Statement stmt = connection.createStatement()) {
             stmt.execute(sql);
+            timer.succeeded(0);
             logger.info("Workout Exercises mapping table created successfully or already exists.");
         } catch (SQLException e) {
             logger.error("Error creating workout_exercises table: {}", e.getMessage(), e);
@@ -49,12 +77,15 @@ public class WorkoutDao {
                 "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
                 "name TEXT NOT NULL UNIQUE);";
 
-        try (Statement stmt = connection.createStatement()) {
+        try (QueryStats.Timer timer = CREATE_EXERCISE_TABLE_STATS.start();
+             Statement stmt = connection.createStatement()) {
             stmt.execute(sql);
             logger.info("Exercises table created successfully or already exists.");
 
             // Test insertion immediately after creating the table to verify it works
-            stmt.executeUpdate("INSERT INTO exercises (name) VALUES ('Test Exercise')");
+            int inserted = stmt.executeUpdate("INSERT INTO exercises (name) VALUES ('Test Exercise')");
+            exerciseDictionary.invalidate();
+            timer.succeeded(inserted);
             logger.info("Inserted a test exercise to verify the table.");
         } catch (SQLException e) {
             logger.error("Error creating exercises table: {}", e.getMessage(), e);
@@ -63,9 +94,10 @@ public class WorkoutDao {
 
     public void insertWorkout(String workoutName) {
         String sql = "INSERT INTO workouts (name) VALUES (?)";
-        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+        try (QueryStats.Timer timer = INSERT_WORKOUT_STATS.start();
+             PreparedStatement pstmt = SlowQueryLog.prepare(connection, sql)) {
             pstmt.setString(1, workoutName);
-            pstmt.executeUpdate();
+            timer.succeeded(pstmt.executeUpdate());
             logger.info("Inserted workout: {}", workoutName);
         } catch (SQLException e) {
             logger.error("Error inserting workout: {}", e.getMessage(), e);
@@ -75,11 +107,12 @@ public class WorkoutDao {
     public void addExerciseToWorkout(int workoutId, int exerciseId, int order) {
         String sql = "INSERT INTO workout_exercises (workout_id, exercise_id, \"order\") VALUES (?, ?, ?)";
 
-        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+        try (QueryStats.Timer timer = ADD_EXERCISE_TO_WORKOUT_STATS.start();
+             PreparedStatement pstmt = SlowQueryLog.prepare(connection, sql)) {
             pstmt.setInt(1, workoutId);
             pstmt.setInt(2, exerciseId);
             pstmt.setInt(3, order);
-            pstmt.executeUpdate();
+            timer.succeeded(pstmt.executeUpdate());
             logger.info("Exercise {} added to workout {}", exerciseId, workoutId);
         } catch (SQLException e) {
             logger.error("Error adding exercise to workout: {}", e.getMessage(), e);
@@ -87,35 +120,26 @@ public class WorkoutDao {
     }
 
     public int getExerciseIdByName(String exerciseName) {
-        String sql = "SELECT id FROM exercises WHERE name = ?";
-        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
-            pstmt.setString(1, exerciseName);
-            try (ResultSet rs = pstmt.executeQuery()) {
-                if (rs.next()) {
-                    return rs.getInt("id");
-                } else {
-                    logger.error("Exercise not found: {}", exerciseName);
-                    return -1;  // Return -1 if not found
-                }
-            }
-        } catch (SQLException e) {
-            logger.error("Error getting exercise ID by name: {}", e.getMessage(), e);
-            return -1;
+        long start = System.nanoTime();
+        int exerciseId = exerciseDictionary.getId(exerciseName);
+        GET_EXERCISE_ID_BY_NAME_STATS.record(start, exerciseId == -1 ? 0 : 1);
+        if (exerciseId == -1) {
+            logger.error("Exercise not found: {}", exerciseName);
         }
+        return exerciseId;  // Return -1 if not found
     }
 
     public List<String> getExercisesForWorkout(int workoutId) {
-        String sql = "SELECT e.name FROM exercises e " +
-                "JOIN workout_exercises we ON e.id = we.exercise_id " +
-                "WHERE we.workout_id = ? ORDER BY we.\"order\"";
         List<String> exercises = new ArrayList<>();
-        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+        try (QueryStats.Timer timer = GET_EXERCISES_FOR_WORKOUT_STATS.start();
+             PreparedStatement pstmt = SlowQueryLog.prepare(connection, SELECT_EXERCISES_FOR_WORKOUT_SQL)) {
             pstmt.setInt(1, workoutId);
             try (ResultSet rs = pstmt.executeQuery()) {
                 while (rs.next()) {
                     exercises.add(rs.getString("name"));
                 }
             }
+            timer.succeeded(exercises.size());
         } catch (SQLException e) {
             logger.error("Error retrieving exercises for workout {}: {}", workoutId, e.getMessage(), e);
         }
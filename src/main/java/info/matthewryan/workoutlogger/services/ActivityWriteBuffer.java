@@ -0,0 +1,189 @@
+package info.matthewryan.workoutlogger.services;
+
+import info.matthewryan.workoutlogger.model.ActivityRecord;
+import info.matthewryan.workoutlogger.persistence.ActivityDao;
+import info.matthewryan.workoutlogger.persistence.Database;
+import info.matthewryan.workoutlogger.persistence.SessionJournal;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write-behind buffer for logged sets. add() only queues the record and returns; queued records
+ * are written together in one transaction through Database.write once maxPending of them have
+ * built up, maxDelayMillis after the first of them was queued, on flush(), on close() and when
+ * the JVM shuts down. A set can therefore be lost only if the process dies without running its
+ * shutdown hooks, and then only if it was logged within the last maxDelayMillis. A batch that
+ * fails to write is put back at the front of the queue and retried with the next flush.
+ * Given a {@link SessionJournal}, add() appends the record to it before queueing, and the
+ * future it returns completes once the record is durable there, closing that window.
+ */
+public class ActivityWriteBuffer implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(ActivityWriteBuffer.class);
+
+    public static final int DEFAULT_MAX_PENDING = 50;
+    public static final long DEFAULT_MAX_DELAY_MILLIS = 2000;
+
+    private final Database database;
+    private final ActivityDao activityDao;
+    private final SessionJournal journal;
+    private final int maxPending;
+    private final long maxDelayMillis;
+    private final ScheduledExecutorService timer;
+    private final Thread shutdownHook;
+
+    private List<ActivityRecord> pending = new ArrayList<>();
+    private ScheduledFuture<?> scheduledFlush;
+    private CompletableFuture<Long> lastWrite = CompletableFuture.completedFuture(0L);
+    // Completes when the records now pending are committed, and when those last handed over are
+    private CompletableFuture<Long> pendingWritten = new CompletableFuture<>();
+    private CompletableFuture<Long> lastWritten = CompletableFuture.completedFuture(0L);
+    private boolean closed;
+
+    // activityDao must be bound to the database's writer connection
+    public ActivityWriteBuffer(Database database, ActivityDao activityDao) {
+        this(database, activityDao, null);
+    }
+
+    public ActivityWriteBuffer(Database database, ActivityDao activityDao, SessionJournal journal) {
+        this(database, activityDao, journal, DEFAULT_MAX_PENDING, DEFAULT_MAX_DELAY_MILLIS);
+    }
+
+    public ActivityWriteBuffer(Database database, ActivityDao activityDao, int maxPending, long maxDelayMillis) {
+        this(database, activityDao, null, maxPending, maxDelayMillis);
+    }
+
+    public ActivityWriteBuffer(Database database, ActivityDao activityDao, SessionJournal journal,
+                               int maxPending, long maxDelayMillis) {
+        if (maxPending <= 0 || maxDelayMillis <= 0) {
+            throw new IllegalArgumentException("Flush thresholds must be positive");
+        }
+        this.database = database;
+        this.activityDao = activityDao;
+        this.journal = journal;
+        this.maxPending = maxPending;
+        this.maxDelayMillis = maxDelayMillis;
+        this.timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "activity-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.shutdownHook = new Thread(this::flushAndWait, "activity-flush-on-exit");
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+    }
+
+    // Queue a record for the next batch; never waits for the database. The future completes
+    // when the record is journaled, or at once without a journal.
+    public synchronized CompletableFuture<Void> add(ActivityRecord activityRecord) {
+        if (closed) {
+            throw new IllegalStateException("Write buffer is closed");
+        }
+        CompletableFuture<Void> durable = journal != null
+                ? journal.setLogged(activityRecord)
+                : CompletableFuture.completedFuture(null);
+        pending.add(activityRecord);
+        if (pending.size() >= maxPending) {
+            flush();
+        } else if (scheduledFlush == null) {
+            scheduledFlush = timer.schedule(this::flush, maxDelayMillis, TimeUnit.MILLISECONDS);
+        }
+        return durable;
+    }
+
+    // Completes once every record queued so far is committed, without hurrying the write along.
+    // A batch that fails is retried, and the future follows the retry.
+    public synchronized CompletableFuture<Long> whenWritten() {
+        return pending.isEmpty() ? lastWritten : pendingWritten;
+    }
+
+    // Hand everything queued so far to the writer. The future completes once those records,
+    // and every batch handed over before them, are committed.
+    public synchronized CompletableFuture<Long> flush() {
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+        if (pending.isEmpty()) {
+            return lastWrite;
+        }
+        List<ActivityRecord> batch = pending;
+        CompletableFuture<Long> written = pendingWritten;
+        pending = new ArrayList<>();
+        pendingWritten = new CompletableFuture<>();
+        lastWritten = written;
+        lastWrite = database.write(connection -> activityDao.insertActivities(batch))
+                .whenComplete((inserted, error) -> {
+                    if (error != null) {
+                        requeue(batch, written);
+                    } else {
+                        logger.debug("Wrote {} buffered activity records", inserted);
+                        written.complete(inserted);
+                    }
+                });
+        return lastWrite;
+    }
+
+    public synchronized int getPendingCount() {
+        return pending.size();
+    }
+
+    // Flush, wait for the writes and stop the timer; later adds are rejected
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        flushAndWait();
+        synchronized (this) {
+            if (!pending.isEmpty()) {
+                pendingWritten.completeExceptionally(new IllegalStateException(
+                        "Write buffer closed with " + pending.size() + " records unwritten"));
+            }
+        }
+        timer.shutdownNow();
+        try {
+            Runtime.getRuntime().removeShutdownHook(shutdownHook);
+        } catch (IllegalStateException e) {
+            // Already shutting down; the hook is running or has run
+        }
+    }
+
+    private void flushAndWait() {
+        try {
+            flush().join();
+        } catch (RuntimeException e) {
+            logger.error("Buffered activity records could not be written, {} still pending: {}",
+                    getPendingCount(), e.getMessage(), e);
+        }
+    }
+
+    private synchronized void requeue(List<ActivityRecord> batch, CompletableFuture<Long> written) {
+        logger.error("Failed to write {} buffered activity records; keeping them for the next flush", batch.size());
+        batch.addAll(pending);
+        pending = batch;
+        if (lastWritten == written) {
+            lastWritten = pendingWritten;
+        }
+        pendingWritten.whenComplete((inserted, error) -> {
+            if (error != null) {
+                written.completeExceptionally(error);
+            } else {
+                written.complete(inserted);
+            }
+        });
+        if (!closed && scheduledFlush == null) {
+            scheduledFlush = timer.schedule(this::flush, maxDelayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package info.matthewryan.workoutlogger.services;
+
+import info.matthewryan.workoutlogger.persistence.ActivityDao;
+import info.matthewryan.workoutlogger.persistence.Database;
+import info.matthewryan.workoutlogger.persistence.ExerciseDao;
+import info.matthewryan.workoutlogger.persistence.ExerciseDictionary;
+import info.matthewryan.workoutlogger.persistence.PersonalBestDao;
+import info.matthewryan.workoutlogger.persistence.SessionDao;
+import info.matthewryan.workoutlogger.persistence.VolumeRollupDao;
+import info.matthewryan.workoutlogger.persistence.WorkoutDao;
+import javafx.application.Platform;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Runs DAO calls off the JavaFX thread and hands back CompletableFutures. Built on a
+ * {@link Database}, queries run on one thread per read connection, each connection with DAOs
+ * of its own, so several queries proceed at once and never share a connection. The service is
+ * for reads; writes go through Database.write. Continue on the FX thread with
+ * {@link #FX_THREAD}, or deliver through a {@link RequestSlot} when a newer request should
+ * replace an older one. A request cancelled while still queued is skipped without touching
+ * the database.
+ */
+public class AsyncDataService {
+
+    private static final Logger logger = LoggerFactory.getLogger(AsyncDataService.class);
+
+    // Executor form of Platform.runLater, for thenAcceptAsync and friends
+    public static final Executor FX_THREAD = Platform::runLater;
+
+    // Either a database with DAOs per read connection, or one fixed set of DAOs
+    private final Database database;
+    private final DaoSet fixedDaos;
+    private final Map<Connection, DaoSet> readerDaos = new ConcurrentHashMap<>();
+    private final ExecutorService executor;
+
+    public AsyncDataService(Database database) {
+        this.database = database;
+        this.fixedDaos = null;
+        this.executor = Executors.newFixedThreadPool(database.getReaderCount(), daemonThreads("db-reader"));
+    }
+
+    // A single worker thread sharing the given DAOs
+    public AsyncDataService(ActivityDao activityDao, ExerciseDao exerciseDao, SessionDao sessionDao, WorkoutDao workoutDao) {
+        this(activityDao, exerciseDao, sessionDao, workoutDao, Executors.newSingleThreadExecutor(daemonThreads("db-worker")));
+    }
+
+    public AsyncDataService(ActivityDao activityDao, ExerciseDao exerciseDao, SessionDao sessionDao, WorkoutDao workoutDao,
+                            ExecutorService executor) {
+        this(activityDao, exerciseDao, sessionDao, workoutDao, null, null, executor);
+    }
+
+    // Fixed DAOs including the rollups and personal bests; without them rollups() and
+    // personalBests() fail their requests
+    public AsyncDataService(ActivityDao activityDao, ExerciseDao exerciseDao, SessionDao sessionDao, WorkoutDao workoutDao,
+                            VolumeRollupDao volumeRollupDao, PersonalBestDao personalBestDao, ExecutorService executor) {
+        this.database = null;
+        this.fixedDaos = new DaoSet(activityDao, exerciseDao, sessionDao, workoutDao, volumeRollupDao, personalBestDao);
+        this.executor = executor;
+    }
+
+    public <T> CompletableFuture<T> activities(Function<ActivityDao, T> query) {
+        return submit(daos -> query.apply(daos.activityDao));
+    }
+
+    public <T> CompletableFuture<T> exercises(Function<ExerciseDao, T> query) {
+        return submit(daos -> query.apply(daos.exerciseDao));
+    }
+
+    public <T> CompletableFuture<T> sessions(Function<SessionDao, T> query) {
+        return submit(daos -> query.apply(daos.sessionDao));
+    }
+
+    public <T> CompletableFuture<T> workouts(Function<WorkoutDao, T> query) {
+        return submit(daos -> query.apply(daos.workoutDao));
+    }
+
+    public <T> CompletableFuture<T> rollups(Function<VolumeRollupDao, T> query) {
+        return submit(daos -> query.apply(Objects.requireNonNull(daos.volumeRollupDao, "No rollup DAO")));
+    }
+
+    public <T> CompletableFuture<T> personalBests(Function<PersonalBestDao, T> query) {
+        return submit(daos -> query.apply(Objects.requireNonNull(daos.personalBestDao, "No personal best DAO")));
+    }
+
+    // Stop taking requests; queued ones still run
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    private <T> CompletableFuture<T> submit(Function<DaoSet, T> query) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                if (future.isDone()) {
+                    return;  // Cancelled while queued
+                }
+                try {
+                    future.complete(run(query));
+                } catch (SQLException | RuntimeException e) {
+                    logger.error("Database request failed: {}", e.getMessage(), e);
+                    future.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    private <T> T run(Function<DaoSet, T> query) throws SQLException {
+        if (database == null) {
+            return query.apply(fixedDaos);
+        }
+        return database.read(connection -> query.apply(readerDaos.computeIfAbsent(connection,
+                reader -> new DaoSet(database.getExerciseDictionary().follower(reader), reader))));
+    }
+
+    private static ThreadFactory daemonThreads(String name) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);  // Never keeps the application alive on exit
+            return thread;
+        };
+    }
+
+    // The DAOs bound to one connection
+    private static final class DaoSet {
+
+        private final ActivityDao activityDao;
+        private final ExerciseDao exerciseDao;
+        private final SessionDao sessionDao;
+        private final WorkoutDao workoutDao;
+        private final VolumeRollupDao volumeRollupDao;
+        private final PersonalBestDao personalBestDao;
+
+        private DaoSet(ActivityDao activityDao, ExerciseDao exerciseDao, SessionDao sessionDao, WorkoutDao workoutDao,
+                       VolumeRollupDao volumeRollupDao, PersonalBestDao personalBestDao) {
+            this.activityDao = activityDao;
+            this.exerciseDao = exerciseDao;
+            this.sessionDao = sessionDao;
+            this.workoutDao = workoutDao;
+            this.volumeRollupDao = volumeRollupDao;
+            this.personalBestDao = personalBestDao;
+        }
+
+        // Each read connection keeps its own dictionary, following the writer's so that
+        // exercises the writer adds or deletes are seen here too
+        private DaoSet(ExerciseDictionary dictionary, Connection connection) {
+            this(new ActivityDao(connection, dictionary), new ExerciseDao(connection, dictionary),
+                    new SessionDao(connection), new WorkoutDao(connection, dictionary), new VolumeRollupDao(connection),
+                    new PersonalBestDao(connection));
+        }
+    }
+}
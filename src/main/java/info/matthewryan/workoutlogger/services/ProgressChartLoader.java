@@ -0,0 +1,408 @@
+package info.matthewryan.workoutlogger.services;
+
+import info.matthewryan.workoutlogger.model.ActivityColumns;
+import info.matthewryan.workoutlogger.model.VolumeRollup;
+import info.matthewryan.workoutlogger.model.VolumeRollup.Resolution;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.SQLException;
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Level-of-detail loading for the progress chart. The width of the visible time range picks
+ * a level: single sets for narrow views, weekly and then monthly volume totals from the rollup
+ * tables as the view widens, so a query never returns more than a few hundred points. Each
+ * level cuts time into fixed tiles. A view is assembled from the tiles it overlaps plus one on
+ * either side, each fetched once with a range-bounded query and kept in an LRU cache keyed by
+ * (exercise, level, tile), so panning mostly reuses what is already loaded. Cached tiles are
+ * not refreshed by themselves: a logged set is added to them with {@link #add}, and
+ * {@link #invalidate(int)} drops them after any other change to an exercise's history.
+ * A logged set is not in the database until its write commits, so until then it is also added
+ * to tiles fetched in the meantime. Tiles loaded before the set was logged match the database
+ * once it commits and stay; the ones fetched in between, or still being fetched when it was
+ * logged, are dropped and fetched again, as their query may or may not have read the set. If the write fails, every tile holding the set
+ * is dropped.
+ */
+public class ProgressChartLoader {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProgressChartLoader.class);
+
+    private static final long DAY_MILLIS = 86_400_000L;
+
+    // About 1 MB of tiles at a few hundred points each
+    private static final int MAX_CACHED_TILES = 256;
+
+    public enum Level {
+        // Tile length and the widest view, in days, each level is used for
+        SETS(28, 120, null),
+        WEEKS(364, 4 * 365, Resolution.WEEK),
+        MONTHS(3652, Long.MAX_VALUE, Resolution.MONTH);
+
+        private final long tileDays;
+        private final long maxSpanDays;
+        private final Resolution resolution;
+
+        Level(long tileDays, long maxSpanDays, Resolution resolution) {
+            this.tileDays = tileDays;
+            this.maxSpanDays = maxSpanDays;
+            this.resolution = resolution;
+        }
+
+        // Tile holding the timestamp; rollup tiles go by the bucket's epoch day
+        long tileOf(double millis) {
+            return Math.floorDiv((long) Math.floor(millis / DAY_MILLIS), tileDays);
+        }
+
+        // Local date the bucket holding the timestamp starts on, as the rollup tables key it
+        LocalDate bucketOf(long millis) {
+            LocalDate date = Instant.ofEpochMilli(millis).atZone(ZoneId.systemDefault()).toLocalDate();
+            return resolution == Resolution.WEEK
+                    ? date.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY))
+                    : date.withDayOfMonth(1);
+        }
+    }
+
+    private final AsyncDataService dataService;
+    private final Map<TileKey, CompletableFuture<Tile>> tiles =
+            new LinkedHashMap<TileKey, CompletableFuture<Tile>>(64, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<TileKey, CompletableFuture<Tile>> eldest) {
+                    return size() > MAX_CACHED_TILES;
+                }
+            };
+
+    // Logged sets whose write has not committed yet, by exercise; guarded by tiles
+    private final Map<Integer, List<LoggedSet>> uncommitted = new HashMap<>();
+
+    public ProgressChartLoader(AsyncDataService dataService) {
+        this.dataService = dataService;
+    }
+
+    // Finest level that keeps a view of the given width to a few hundred points
+    public static Level levelFor(double spanMillis) {
+        double spanDays = spanMillis / DAY_MILLIS;
+        for (Level level : Level.values()) {
+            if (spanDays <= level.maxSpanDays) {
+                return level;
+            }
+        }
+        return Level.MONTHS;
+    }
+
+    // The points of an exercise around [fromMillis, toMillis), at the level the range calls for.
+    // Tiles already cached or in flight are shared, so the future completes at once when
+    // every tile is loaded.
+    public CompletableFuture<Series> load(int exerciseId, double fromMillis, double toMillis) {
+        Level level = levelFor(toMillis - fromMillis);
+        long firstTile = level.tileOf(fromMillis) - 1;
+        long lastTile = level.tileOf(toMillis) + 1;
+
+        List<CompletableFuture<Tile>> parts = new ArrayList<>();
+        for (long tile = firstTile; tile <= lastTile; tile++) {
+            parts.add(tile(new TileKey(exerciseId, level, tile)));
+        }
+        return CompletableFuture.allOf(parts.toArray(new CompletableFuture<?>[0]))
+                .thenApply(ignored -> assemble(exerciseId, level, firstTile, lastTile, parts));
+    }
+
+    // Whether load would return the same tiles as series holds for this range
+    public boolean isCurrent(Series series, int exerciseId, double fromMillis, double toMillis) {
+        Level level = levelFor(toMillis - fromMillis);
+        return series.exerciseId == exerciseId && series.level == level
+                && series.firstTile == level.tileOf(fromMillis) - 1 && series.lastTile == level.tileOf(toMillis) + 1;
+    }
+
+    // Add a set that has just been logged to the cached tiles it falls into, at every level,
+    // so they match the database without being fetched again. written completes when the set
+    // is committed. The future returned completes after that, with true if tiles holding the
+    // set had to be dropped, in which case a view showing them should be loaded again.
+    public CompletableFuture<Boolean> add(int exerciseId, long timestamp, double volume, CompletableFuture<?> written) {
+        LoggedSet set = new LoggedSet(timestamp, volume);
+        synchronized (tiles) {
+            uncommitted.computeIfAbsent(exerciseId, id -> new ArrayList<>()).add(set);
+            for (Level level : Level.values()) {
+                TileKey key = new TileKey(exerciseId, level, set.tileOf(level));
+                tiles.computeIfPresent(key, (k, cached) -> {
+                    if (!cached.isDone()) {
+                        // Its query may not run until after the commit
+                        set.fetchedUncommitted.add(k);
+                    }
+                    return cached.thenApply(loaded -> set.addTo(loaded, level));
+                });
+            }
+        }
+        return written.handle((result, error) -> {
+            synchronized (tiles) {
+                List<LoggedSet> sets = uncommitted.get(exerciseId);
+                sets.remove(set);
+                if (sets.isEmpty()) {
+                    uncommitted.remove(exerciseId);
+                }
+                if (error != null) {
+                    // The set never reached the database; the tiles it was added to are wrong
+                    for (Level level : Level.values()) {
+                        tiles.remove(new TileKey(exerciseId, level, set.tileOf(level)));
+                    }
+                    return true;
+                }
+                for (TileKey key : set.fetchedUncommitted) {
+                    tiles.remove(key);
+                }
+                return !set.fetchedUncommitted.isEmpty();
+            }
+        });
+    }
+
+    // The series with a set added as add puts it into the series' tiles, for a view to show a
+    // logged set without assembling its tiles again; the series itself if the set falls outside
+    public Series plus(Series series, long timestamp, double volume) {
+        LoggedSet set = new LoggedSet(timestamp, volume);
+        long tile = set.tileOf(series.level);
+        if (tile < series.firstTile || tile > series.lastTile) {
+            return series;
+        }
+        Tile points = set.addTo(new Tile(series.x, series.y), series.level);
+        return new Series(series.exerciseId, series.level, series.firstTile, series.lastTile, points.x, points.y);
+    }
+
+    // Forget the cached tiles of an exercise
+    public void invalidate(int exerciseId) {
+        synchronized (tiles) {
+            tiles.keySet().removeIf(key -> key.exerciseId == exerciseId);
+        }
+    }
+
+    private CompletableFuture<Tile> tile(TileKey key) {
+        synchronized (tiles) {
+            CompletableFuture<Tile> tile = tiles.get(key);
+            if (tile == null) {
+                tile = fetch(key);
+                // Sets logged but not yet committed are not in what the query reads
+                for (LoggedSet set : uncommitted.getOrDefault(key.exerciseId, List.of())) {
+                    if (set.tileOf(key.level) == key.index) {
+                        tile = tile.thenApply(loaded -> set.addTo(loaded, key.level));
+                        set.fetchedUncommitted.add(key);
+                    }
+                }
+                tiles.put(key, tile);
+                // A failed tile is fetched again next time
+                CompletableFuture<Tile> fetched = tile;
+                fetched.whenComplete((result, error) -> {
+                    if (error != null) {
+                        synchronized (tiles) {
+                            tiles.remove(key, fetched);
+                        }
+                    }
+                });
+            }
+            return tile;
+        }
+    }
+
+    private CompletableFuture<Tile> fetch(TileKey key) {
+        long firstDay = key.index * key.level.tileDays;
+        long lastDay = firstDay + key.level.tileDays - 1;
+        if (key.level.resolution == null) {
+            return dataService.activities(dao -> {
+                try {
+                    return Tile.of(dao.loadActivityColumns(key.exerciseId, firstDay * DAY_MILLIS, (lastDay + 1) * DAY_MILLIS));
+                } catch (SQLException e) {
+                    throw new IllegalStateException("Error loading sets for exercise " + key.exerciseId + ": " + e.getMessage(), e);
+                }
+            });
+        }
+        return dataService.rollups(dao -> Tile.of(dao.getRollups(key.exerciseId, key.level.resolution,
+                LocalDate.ofEpochDay(firstDay), LocalDate.ofEpochDay(lastDay))));
+    }
+
+    private static Series assemble(int exerciseId, Level level, long firstTile, long lastTile,
+                                   List<CompletableFuture<Tile>> parts) {
+        int size = 0;
+        for (CompletableFuture<Tile> part : parts) {
+            size += part.join().x.length;
+        }
+        double[] x = new double[size];
+        double[] y = new double[size];
+        int offset = 0;
+        for (CompletableFuture<Tile> part : parts) {
+            Tile tile = part.join();
+            System.arraycopy(tile.x, 0, x, offset, tile.x.length);
+            System.arraycopy(tile.y, 0, y, offset, tile.y.length);
+            offset += tile.x.length;
+        }
+        logger.debug("Assembled {} points of exercise {} from {} {} tiles", size, exerciseId, parts.size(), level);
+        return new Series(exerciseId, level, firstTile, lastTile, x, y);
+    }
+
+    /**
+     * Points of one exercise at one level over a run of whole tiles, in timestamp order: the
+     * time of each set or bucket start as x and its volume as y.
+     */
+    public static final class Series {
+
+        private final int exerciseId;
+        private final Level level;
+        private final long firstTile;
+        private final long lastTile;
+        private final double[] x;
+        private final double[] y;
+
+        private Series(int exerciseId, Level level, long firstTile, long lastTile, double[] x, double[] y) {
+            this.exerciseId = exerciseId;
+            this.level = level;
+            this.firstTile = firstTile;
+            this.lastTile = lastTile;
+            this.x = x;
+            this.y = y;
+        }
+
+        public int getExerciseId() {
+            return exerciseId;
+        }
+
+        public Level getLevel() {
+            return level;
+        }
+
+        public int size() {
+            return x.length;
+        }
+
+        // The arrays themselves; callers must not modify them
+        public double[] getX() {
+            return x;
+        }
+
+        public double[] getY() {
+            return y;
+        }
+    }
+
+    // One tile's points
+    private static final class Tile {
+
+        private final double[] x;
+        private final double[] y;
+
+        private Tile(double[] x, double[] y) {
+            this.x = x;
+            this.y = y;
+        }
+
+        // A copy with the point added in x order, or with y added to the point at x when merging
+        private Tile plus(double pointX, double pointY, boolean merge) {
+            // From the end, where new sets land; past equal x values, so a set logged in the
+            // same millisecond follows the earlier one
+            int index = x.length;
+            while (index > 0 && x[index - 1] > pointX) {
+                index--;
+            }
+            if (merge && index > 0 && x[index - 1] == pointX) {
+                double[] sums = y.clone();
+                sums[index - 1] += pointY;
+                return new Tile(x, sums);
+            }
+            double[] newX = new double[x.length + 1];
+            double[] newY = new double[y.length + 1];
+            System.arraycopy(x, 0, newX, 0, index);
+            System.arraycopy(y, 0, newY, 0, index);
+            newX[index] = pointX;
+            newY[index] = pointY;
+            System.arraycopy(x, index, newX, index + 1, x.length - index);
+            System.arraycopy(y, index, newY, index + 1, y.length - index);
+            return new Tile(newX, newY);
+        }
+
+        private static Tile of(ActivityColumns columns) {
+            double[] x = new double[columns.size()];
+            double[] y = new double[columns.size()];
+            for (int row = 0; row < columns.size(); row++) {
+                x[row] = columns.getTimestamp(row);
+                y[row] = columns.getReps(row) * columns.getWeight(row);
+            }
+            return new Tile(x, y);
+        }
+
+        private static Tile of(List<VolumeRollup> rollups) {
+            double[] x = new double[rollups.size()];
+            double[] y = new double[rollups.size()];
+            for (int i = 0; i < rollups.size(); i++) {
+                x[i] = rollups.get(i).getBucketStartMillis();
+                y[i] = rollups.get(i).getTotalVolume();
+            }
+            return new Tile(x, y);
+        }
+    }
+
+    // A logged set as it is added to the tiles of each level
+    private static final class LoggedSet {
+
+        private final long timestamp;
+        private final double volume;
+        // Tiles fetched while the set was uncommitted, which its commit makes uncertain
+        private final List<TileKey> fetchedUncommitted = new ArrayList<>();
+
+        private LoggedSet(long timestamp, double volume) {
+            this.timestamp = timestamp;
+            this.volume = volume;
+        }
+
+        private long tileOf(Level level) {
+            if (level.resolution == null) {
+                return level.tileOf(timestamp);
+            }
+            return Math.floorDiv(level.bucketOf(timestamp).toEpochDay(), level.tileDays);
+        }
+
+        // Sets are points of their own; a bucket's total grows
+        private Tile addTo(Tile tile, Level level) {
+            if (level.resolution == null) {
+                return tile.plus(timestamp, volume, false);
+            }
+            long bucketStart = level.bucketOf(timestamp).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+            return tile.plus(bucketStart, volume, true);
+        }
+    }
+
+    private static final class TileKey {
+
+        private final int exerciseId;
+        private final Level level;
+        private final long index;
+
+        private TileKey(int exerciseId, Level level, long index) {
+            this.exerciseId = exerciseId;
+            this.level = level;
+            this.index = index;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) {
+                return true;
+            }
+            if (!(other instanceof TileKey)) {
+                return false;
+            }
+            TileKey key = (TileKey) other;
+            return exerciseId == key.exerciseId && level == key.level && index == key.index;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(exerciseId, level, index);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package info.matthewryan.workoutlogger.services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+/**
+ * Holds the latest of a series of requests feeding the same view, such as the chart behind an
+ * exercise combo box. Delivering a new request cancels the one before it, so a queued query is
+ * skipped, and a result that arrives after it has been superseded is dropped instead of
+ * overwriting newer data. Meant to be used from the FX thread.
+ */
+public class RequestSlot {
+
+    private static final Logger logger = LoggerFactory.getLogger(RequestSlot.class);
+
+    private final Executor resultExecutor;
+    private CompletableFuture<?> current;
+
+    public RequestSlot() {
+        this(AsyncDataService.FX_THREAD);
+    }
+
+    // Results are handed over on resultExecutor; tests pass a direct executor
+    public RequestSlot(Executor resultExecutor) {
+        this.resultExecutor = resultExecutor;
+    }
+
+    // Make request the current one and pass its result to onResult, unless a newer
+    // request has taken the slot by the time it arrives
+    public <T> CompletableFuture<Void> deliver(CompletableFuture<T> request, Consumer<T> onResult) {
+        return deliver(request, onResult, failure -> { });
+    }
+
+    // As above, and pass the failure to onFailure if the request fails while it is still
+    // the current one, e.g. so the view can stop waiting for it. The data service has
+    // already logged it.
+    public <T> CompletableFuture<Void> deliver(CompletableFuture<T> request, Consumer<T> onResult,
+                                               Consumer<Throwable> onFailure) {
+        cancel();
+        current = request;
+        return request.handleAsync((result, failure) -> {
+            if (current != request) {
+                return null;
+            }
+            try {
+                if (failure == null) {
+                    onResult.accept(result);
+                } else {
+                    onFailure.accept(failure);
+                }
+            } catch (RuntimeException e) {
+                logger.error("Error applying request result: {}", e.getMessage(), e);
+            }
+            return null;
+        }, resultExecutor);
+    }
+
+    // Cancel the current request, if any, e.g. when its view is closed
+    public void cancel() {
+        CompletableFuture<?> request = current;
+        if (request != null) {
+            // Give up the slot first, so the cancellation is not handed over as a failure
+            current = null;
+            request.cancel(false);
+        }
+    }
+}
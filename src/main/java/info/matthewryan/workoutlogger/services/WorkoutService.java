@@ -20,10 +20,17 @@ public class WorkoutService {
     private long sessionStartTime;
     private long sessionEndTime;
     private ExerciseDao exerciseDao;
+    private ActivityWriteBuffer writeBuffer;  // Null keeps the history in memory only
 
     public WorkoutService(ApplicationSettings settings, ExerciseDao exerciseDao) {
+        this(settings, exerciseDao, null);
+    }
+
+    // Recorded sets are also persisted through the write-behind buffer
+    public WorkoutService(ApplicationSettings settings, ExerciseDao exerciseDao, ActivityWriteBuffer writeBuffer) {
         this.settings = settings;
         this.exerciseDao = exerciseDao;
+        this.writeBuffer = writeBuffer;
     }
 
     // Start a new session with a unique session ID (based on the current time)
@@ -57,6 +64,9 @@ public class WorkoutService {
         // Create ActivityRecord using the exerciseId and current sessionId
         ActivityRecord activityRecord = new ActivityRecord(exerciseId, reps, weight, System.currentTimeMillis(), currentSessionId);
         sessionHistory.add(activityRecord);
+        if (writeBuffer != null) {
+            writeBuffer.add(activityRecord);  // Returns at once; the set is written with the next batch
+        }
     }
 
     // Get the history of activities for the current session
@@ -111,9 +121,12 @@ public class WorkoutService {
                 .orElse(0.0);
     }
 
-    // End the current session
+    // End the current session and write out its buffered sets
     public void endSession() {
         this.sessionEndTime = System.currentTimeMillis();
+        if (writeBuffer != null) {
+            writeBuffer.flush();
+        }
     }
 
     // Get the duration of the current session
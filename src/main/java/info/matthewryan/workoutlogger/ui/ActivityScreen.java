@@ -1,16 +1,27 @@
 package info.matthewryan.workoutlogger.ui;
 
+import info.matthewryan.workoutlogger.model.ActivityRecord;
 import info.matthewryan.workoutlogger.model.Exercise;
+import info.matthewryan.workoutlogger.model.PersonalBest;
+import info.matthewryan.workoutlogger.model.Session;
 import info.matthewryan.workoutlogger.persistence.ActivityDao;
 import info.matthewryan.workoutlogger.persistence.ExerciseDao;
-import info.matthewryan.workoutlogger.model.ActivityRecord;
+import info.matthewryan.workoutlogger.persistence.HistorySnapshot;
+import info.matthewryan.workoutlogger.services.ActivityWriteBuffer;
+import info.matthewryan.workoutlogger.services.AsyncDataService;
+import info.matthewryan.workoutlogger.services.ProgressChartLoader;
+import info.matthewryan.workoutlogger.services.RequestSlot;
+import info.matthewryan.workoutlogger.utils.HistoryDataSet;
+import info.matthewryan.workoutlogger.utils.LttbDownsampler;
 
 import io.fair_acc.chartfx.XYChart;
 import io.fair_acc.chartfx.axes.spi.DefaultNumericAxis;
 import io.fair_acc.chartfx.plugins.DataPointTooltip;
 import io.fair_acc.chartfx.plugins.Zoomer;
+import io.fair_acc.dataset.DataSet;
 import io.fair_acc.dataset.spi.DefaultErrorDataSet;
 
+import javafx.application.Platform;
 import javafx.scene.control.*;
 import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
@@ -19,10 +30,11 @@ import javafx.scene.layout.GridPane;
 import javafx.scene.layout.Priority;
 import javafx.scene.text.Text;
 
+import java.sql.SQLException;
 import java.text.SimpleDateFormat;
-import java.util.Comparator;
 import java.util.Date;
-import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.IntToDoubleFunction;
 
 import javafx.util.StringConverter;
 import org.jetbrains.annotations.NotNull;
@@ -33,8 +45,11 @@ public class ActivityScreen {
 
     private static final Logger logger = LoggerFactory.getLogger(ActivityScreen.class);
 
-    private ActivityDao activityDao;
-    private ExerciseDao exerciseDao;
+    // Fewest points drawn however narrow the chart is
+    private static final int MIN_CHART_POINTS = 100;
+
+    private AsyncDataService dataService;
+    private ActivityWriteBuffer writeBuffer;
     private CustomToolBar toolBar;
     private ScreenStartup screenStartup;
 
@@ -47,11 +62,55 @@ public class ActivityScreen {
 
     private DefaultNumericAxis xAxis1;
 
-    public ActivityScreen(ActivityDao activityDao, ExerciseDao exerciseDao, CustomToolBar toolBar, ScreenStartup screenStartup) {
-        this.activityDao = activityDao;
-        this.exerciseDao = exerciseDao;
+    private Exercise selectedExercise;
+
+    // Selecting another exercise supersedes the chart data still being loaded, and zooming
+    // supersedes the points still being loaded for the previous range
+    private final RequestSlot graphRequest = new RequestSlot();
+    private final RequestSlot seriesRequest = new RequestSlot();
+
+    // Points for the visible range at a level of detail that suits its width
+    private final ProgressChartLoader chartLoader;
+    // Exercise charted from the database, with its first and last timestamp; -1 when the
+    // chart comes from the snapshot or shows nothing
+    private int chartExerciseId = -1;
+    private long[] chartHistory;
+    private ProgressChartLoader.Series chartSeries;
+    // A load for the visible range has yet to arrive
+    private boolean seriesPending;
+
+    // Up-to-date copy of the history, or null while there is none or sets may be logged
+    private HistorySnapshot snapshot;
+
+    // The points loaded for the selected exercise, in timestamp order. The chart shows about one
+    // point per pixel of its visible part, picked by LTTB, and picks again on zoom and resize.
+    private double[] seriesX = new double[0];
+    private double[] seriesY = new double[0];
+    private DefaultErrorDataSet loadedDataSet;
+    private double[] noErrors = new double[0];
+    // Sets read in place from the snapshot; switching exercise only moves its row range
+    private final HistoryDataSet snapshotDataSet = new HistoryDataSet("Exercise Data", HistoryDataSet.Measure.VOLUME);
+    // Whichever of the two is on the chart, or null when there is no chart
+    private DataSet dataSet;
+    // What the data set holds: series range and point budget; from -1 when nothing is drawn
+    private int shownFrom = -1;
+    private int shownTo;
+    private int shownPoints;
+    private boolean resamplePending;
+
+    // Logged sets are written through writeBuffer
+    public ActivityScreen(AsyncDataService dataService, ActivityWriteBuffer writeBuffer, CustomToolBar toolBar,
+                          ScreenStartup screenStartup) {
+        this.dataService = dataService;
+        this.writeBuffer = writeBuffer;
         this.toolBar = toolBar;
         this.screenStartup = screenStartup;
+        this.chartLoader = new ProgressChartLoader(dataService);
+    }
+
+    // Draw charts from the snapshot instead of querying; null goes back to the database
+    public void setSnapshot(HistorySnapshot snapshot) {
+        this.snapshot = snapshot;
     }
 
     public BorderPane getRoot() {
@@ -100,6 +159,12 @@ public class ActivityScreen {
         chart.getPlugins().add(new Zoomer());
         chart.getPlugins().add(new DataPointTooltip());
 
+        // The Zoomer turns auto-ranging off and moves the axis range; both change what is visible
+        xAxis1.minProperty().addListener((observable, oldValue, newValue) -> scheduleResample());
+        xAxis1.maxProperty().addListener((observable, oldValue, newValue) -> scheduleResample());
+        xAxis1.autoRangingProperty().addListener((observable, oldValue, newValue) -> scheduleResample());
+        chart.widthProperty().addListener((observable, oldValue, newValue) -> scheduleResample());
+
         return chart;
     }
 
@@ -109,11 +174,11 @@ public class ActivityScreen {
 
         ComboBox<Exercise> exerciseComboBox = new ComboBox<>();
         exerciseComboBox.setStyle("-fx-font-size: 15px;");
-        List<Exercise> exercises = exerciseDao.getAllExercises();
 
         // Add a "Select" placeholder as a string
         exerciseComboBox.getItems().add(new Exercise(-1, "Select an Exercise", false));  // Add the placeholder
-        exerciseComboBox.getItems().addAll(exercises);  // Add real exercises
+        dataService.exercises(ExerciseDao::getAllExercises)
+                .thenAcceptAsync(exerciseComboBox.getItems()::addAll, AsyncDataService.FX_THREAD);  // Add real exercises
 
         exerciseComboBox.getSelectionModel().selectFirst();  // Select the "Select an Exercise" by default
 
@@ -148,7 +213,8 @@ public class ActivityScreen {
         exerciseComboBox.setOnAction(e -> {
             Exercise selectedExercise = exerciseComboBox.getSelectionModel().getSelectedItem();
             if (selectedExercise != null && !"Select".equals(selectedExercise)) {
-                updateGraphForExercise(selectedExercise.getName());
+                this.selectedExercise = selectedExercise;
+                updateGraphForExercise(selectedExercise);
             }
         });
 
@@ -201,6 +267,8 @@ public class ActivityScreen {
         });
 
         Button btnSave = new Button();
+        btnSave.setFocusTraversable(false);
+        btnSave.setOnMouseClicked(event -> saveSet());
 
         Image deleteImage = new Image("delete_icon.png");  // Load delete icon
         Image saveImage = new Image("save_icon.png");  // Load save icon
@@ -355,65 +423,331 @@ public class ActivityScreen {
         return null;
     }
 
-    private void updateGraphForExercise(String exercise) {
+    // Log the reps and weight entered as a set of the selected exercise in the current session
+    private void saveSet() {
+        Session session = SessionManager.getInstance().getCurrentSession();
+        if (session == null || selectedExercise == null || selectedExercise.getId() == -1) {
+            logger.info("Select an exercise during a session to log a set");
+            return;
+        }
+        int reps;
+        double weight;
+        try {
+            reps = Integer.parseInt(repsField.getText().trim());
+            weight = Double.parseDouble(unitField.getText().trim());  // Weight in the unit column
+        } catch (NumberFormatException e) {
+            logger.info("Enter reps and weight to log a set");
+            return;
+        }
+        if (reps <= 0 || weight <= 0) {
+            logger.info("Reps and weight must be positive values");
+            return;
+        }
+
+        ActivityRecord record = new ActivityRecord(selectedExercise.getId(), reps, weight,
+                System.currentTimeMillis(), session.getId());
+        // The stored bests are one primary key lookup; asked for before the set is buffered
+        CompletableFuture<PersonalBest> storedBest =
+                dataService.personalBests(dao -> {
+                    try {
+                        return dao.getPersonalBest(record.getExerciseId());
+                    } catch (SQLException e) {
+                        // Fails the read, so no personal best is claimed for the set
+                        throw new IllegalStateException("Error reading personal bests: " + e.getMessage(), e);
+                    }
+                });
+        writeBuffer.add(record);  // Returns at once; the set is written with the next batch
+        logger.info("Logged {} x {} of {}", reps, weight, selectedExercise.getName());
+        String exerciseName = selectedExercise.getName();
+        storedBest.thenAcceptAsync(best -> {
+            if (isNewPersonalBest(best, record)) {
+                logger.info("New personal best for {}: {} x {}", exerciseName, reps, weight);
+            }
+        }, AsyncDataService.FX_THREAD);
+        repsField.clear();
+        appendToGraph(record);
+    }
 
-        List<ActivityRecord> activityRecords = activityDao.getActivityDataByExercise(exercise);
+    // True if the set beats the stored bests, or is the exercise's first. The read can run after
+    // the set's batch has committed; the set then holds a record itself, matched by timestamp.
+    private static boolean isNewPersonalBest(PersonalBest best, ActivityRecord record) {
+        if (best == null) {
+            return true;
+        }
+        long timestamp = record.getTimestamp();
+        return best.isBeatenBy(record.getReps(), record.getWeight())
+                || best.getBestWeightTimestamp() == timestamp
+                || best.getBestVolumeTimestamp() == timestamp
+                || best.getBestEstimatedOneRepMaxTimestamp() == timestamp;
+    }
 
-        logger.info("Fetched {} records for exercise: {}", activityRecords.size(), exercise);
+    // Add a logged set to the chart without querying: it goes into the cached tiles and into
+    // the points on the chart, which are resampled once. Tiles are only read again if the
+    // commit leaves them in doubt.
+    private void appendToGraph(ActivityRecord record) {
+        long timestamp = record.getTimestamp();
+        int exerciseId = record.getExerciseId();
+        double volume = record.getReps() * record.getWeight();
+        chartLoader.add(exerciseId, timestamp, volume, writeBuffer.whenWritten())
+                .thenAcceptAsync(dropped -> {
+                    if (dropped && dataSet == loadedDataSet && chartExerciseId == exerciseId) {
+                        chartSeries = null;
+                        loadVisibleSeries();
+                    }
+                }, AsyncDataService.FX_THREAD);
+        if (dataSet == snapshotDataSet && selectedExercise != null && selectedExercise.getId() == exerciseId) {
+            switchFromSnapshot(exerciseId, timestamp);
+            return;
+        }
+        if (exerciseId != chartExerciseId) {
+            if (dataSet == null && selectedExercise != null && selectedExercise.getId() == exerciseId) {
+                showHistory(selectedExercise, new long[]{timestamp, timestamp});  // The exercise's first set
+            }
+            return;
+        }
+        chartHistory[0] = Math.min(chartHistory[0], timestamp);
+        chartHistory[1] = Math.max(chartHistory[1], timestamp);
+        if (chartSeries == null || seriesPending) {
+            // Points on the way were read from the tiles as they were before the set
+            chartSeries = null;
+        } else {
+            showSeries(chartLoader.plus(chartSeries, timestamp, volume));
+        }
+        loadVisibleSeries();  // Only if the set took the history into new tiles
+    }
 
-        if (!activityRecords.isEmpty()) {
-            // Sort the records based on timestamp (ascending order)
-            activityRecords.sort(Comparator.comparingLong(ActivityRecord::getTimestamp));
+    // The snapshot lacks the logged set, so the exercise is charted from the database from now
+    // on. Its rows already give the history's range; the snapshot's points stay on the chart
+    // until the visible tiles, the set among them, are loaded.
+    private void switchFromSnapshot(int exerciseId, long timestamp) {
+        snapshot = null;  // Behind the database until a fresh one is published
+        int last = snapshotDataSet.getRowCount() - 1;
+        chartExerciseId = exerciseId;
+        chartHistory = new long[]{
+                Math.min((long) snapshotDataSet.getRowX(0), timestamp),
+                Math.max((long) snapshotDataSet.getRowX(last), timestamp)};
+        chartSeries = null;
+        seriesX = new double[0];
+        seriesY = new double[0];
+        loadedDataSet = new DefaultErrorDataSet("Exercise Data", MIN_CHART_POINTS);
+        loadVisibleSeries();
+    }
 
-            // Get the earliest and latest timestamps
-            long earliestTimestamp = activityRecords.get(0).getTimestamp(); // First record has the earliest timestamp
-            long latestTimestamp = activityRecords.get(activityRecords.size() - 1).getTimestamp(); // Last record has the latest timestamp
+    private void updateGraphForExercise(Exercise exercise) {
+        chartExerciseId = -1;
+        chartHistory = null;
+        chartSeries = null;
+        seriesPending = false;
+        seriesRequest.cancel();
+        HistorySnapshot current = snapshot;
+        if (current != null && exercise.getId() != -1) {
+            graphRequest.cancel();
+            showSnapshotGraph(exercise, current);
+            return;
+        }
+        // Only how far the history reaches; the points follow for the visible range. Only the
+        // latest selection is drawn when the user moves through the combo box quickly.
+        graphRequest.deliver(dataService.activities(dao -> loadTimestampRange(dao, exercise)),
+                range -> showHistory(exercise, range));
+    }
 
-            // Log the earliest and latest timestamps
-            logger.info("Earliest activity date: {}", new Date(earliestTimestamp));
-            logger.info("Latest activity date: {}", new Date(latestTimestamp));
+    // Chart an exercise straight from the snapshot's columns, without copying its sets
+    private void showSnapshotGraph(Exercise exercise, HistorySnapshot current) {
+        int start = current.getExerciseStart(exercise.getId());
+        int end = current.getExerciseEnd(exercise.getId());
+        logger.info("Fetched {} records for exercise: {}", end - start, exercise.getName());
+        if (start == end) {
+            logger.info("No records found for the selected exercise.");
+            showNoData();
+            return;
+        }
+        showTimeAxis(current.getTimestamp(start), current.getTimestamp(end - 1));
+        snapshotDataSet.setExercise(current, exercise.getId());
+        showDataSet(snapshotDataSet);
+    }
 
-            // Create a new axis with the specific bounds and tick unit
-            DefaultNumericAxis xAxis = new DefaultNumericAxis(earliestTimestamp, latestTimestamp, 2592000000L); // 30 days in milliseconds (1 month)
-            xAxis1.set("Date", "iso");
-            // Set time axis and format the date
-            xAxis.setTimeAxis(true);
-            xAxis.setAutoRangeRounding(false); // Prevent auto-ranging
+    // Chart an exercise from the database: set up the axis for its whole history, then load
+    // the points of the visible range
+    private void showHistory(Exercise exercise, long[] range) {
+        if (range == null) {
+            logger.info("No records found for exercise: {}", exercise.getName());
+            showNoData();
+            return;
+        }
+        showTimeAxis(range[0], range[1]);
+        chartExerciseId = exercise.getId();
+        chartHistory = range;
+        seriesX = new double[0];
+        seriesY = new double[0];
+        loadedDataSet = new DefaultErrorDataSet("Exercise Data", MIN_CHART_POINTS);
+        showDataSet(loadedDataSet);
+        loadVisibleSeries();
+    }
 
-            StringConverter<Number> converter = getNumberStringConverter();
+    private void showTimeAxis(long earliestTimestamp, long latestTimestamp) {
+        // Log the earliest and latest timestamps
+        logger.info("Earliest activity date: {}", new Date(earliestTimestamp));
+        logger.info("Latest activity date: {}", new Date(latestTimestamp));
 
-            xAxis1.setTickLabelFormatter(converter);
-            xAxis1.set("Date", "iso");
+        // Create a new axis with the specific bounds and tick unit
+        DefaultNumericAxis xAxis = new DefaultNumericAxis(earliestTimestamp, latestTimestamp, 2592000000L); // 30 days in milliseconds (1 month)
+        xAxis1.set("Date", "iso");
+        // Set time axis and format the date
+        xAxis.setTimeAxis(true);
+        xAxis.setAutoRangeRounding(false); // Prevent auto-ranging
 
-            // Set the X-axis to the chart
-            chart.getXAxis().set(xAxis); // Link this new axis to the chart
-        } else {
-            logger.info("No records found for the selected exercise.");
-        }
+        StringConverter<Number> converter = getNumberStringConverter();
 
-        if (!activityRecords.isEmpty()) {
-            // Create a DataSet for the graph
-            DefaultErrorDataSet dataSet = new DefaultErrorDataSet("Exercise Data");
+        xAxis1.setTickLabelFormatter(converter);
+        xAxis1.set("Date", "iso");
+
+        // Set the X-axis to the chart
+        chart.getXAxis().set(xAxis); // Link this new axis to the chart
+    }
+
+    private void showDataSet(DataSet shown) {
+        dataSet = shown;
+        shownFrom = -1;
+        resampleVisible();
 
-            // Process the data to populate the graph
-            for (ActivityRecord record : activityRecords) {
-                double volume = record.getReps() * record.getWeight();
+        // Clear previous chart data and add the new data series
+        chart.getDatasets().clear();
+        chart.getDatasets().add(dataSet);
+
+        // Ensure the chart is displayed in the center of the graphPanel
+        graphPanel.setCenter(chart);
+    }
+
+    private void showNoData() {
+        // If no data is available, show the "No data" message
+        logger.info("No data found for the selected exercise.");
+        dataSet = null;
+        Text graphPlaceholderText = new Text("No data available for this exercise.");
+        graphPanel.setCenter(graphPlaceholderText);
+    }
 
-                // Add the data point to the DataSet
-                dataSet.add(new Date(record.getTimestamp()).getTime(), volume);
+    // Load the points for the visible range unless they are loaded already. Ranges that are
+    // cached arrive on the next pulse; meanwhile the points at hand are resampled.
+    private void loadVisibleSeries() {
+        double from = chartHistory[0];
+        double to = chartHistory[1] + 1;
+        if (!xAxis1.isAutoRanging() && xAxis1.getMin() < xAxis1.getMax()) {
+            from = Math.max(from, xAxis1.getMin());
+            to = Math.min(to, xAxis1.getMax());
+            if (from >= to) {
+                return;  // Zoomed or panned away from the history
             }
+        }
+        if (chartSeries != null && chartLoader.isCurrent(chartSeries, chartExerciseId, from, to)) {
+            return;
+        }
+        int exerciseId = chartExerciseId;
+        seriesPending = true;
+        seriesRequest.deliver(chartLoader.load(exerciseId, from, to), series -> {
+            seriesPending = false;
+            if (series.getExerciseId() == chartExerciseId) {
+                showSeries(series);
+            }
+        }, failure -> seriesPending = false);
+    }
 
-            // Clear previous chart data and add the new data series
-            chart.getDatasets().clear();
-            chart.getDatasets().add(dataSet);
+    private void showSeries(ProgressChartLoader.Series series) {
+        logger.debug("Charting {} points of exercise {} by {}", series.size(), series.getExerciseId(), series.getLevel());
+        chartSeries = series;
+        seriesX = series.getX();
+        seriesY = series.getY();
+        if (dataSet != loadedDataSet) {
+            showDataSet(loadedDataSet);  // In place of the snapshot's points
+            return;
+        }
+        shownFrom = -1;
+        resampleVisible();
+    }
+
+    // Coalesce the axis and size changes of one zoom into a single resample
+    private void scheduleResample() {
+        if (dataSet == null || resamplePending) {
+            return;
+        }
+        resamplePending = true;
+        Platform.runLater(() -> {
+            resamplePending = false;
+            if (dataSet != null) {
+                resampleVisible();
+                if (chartExerciseId != -1) {
+                    loadVisibleSeries();
+                }
+            }
+        });
+    }
 
-            // Ensure the chart is displayed in the center of the graphPanel
-            graphPanel.setCenter(chart);
+    // Show the LTTB reduction of the points in the axis range in one data set update. Snapshot
+    // sets are picked by row; loaded points are copied, being few.
+    private void resampleVisible() {
+        boolean fromSnapshot = dataSet == snapshotDataSet;
+        IntToDoubleFunction pointX = fromSnapshot ? snapshotDataSet::getRowX : i -> seriesX[i];
+        IntToDoubleFunction pointY = fromSnapshot ? snapshotDataSet::getRowY : i -> seriesY[i];
+        int count = fromSnapshot ? snapshotDataSet.getRowCount() : seriesX.length;
+
+        // Everything while auto-ranging, since the axis range then follows the data set
+        int from = 0;
+        int to = count;
+        if (!xAxis1.isAutoRanging() && xAxis1.getMin() < xAxis1.getMax()) {
+            // One point beyond each edge so the line runs to the border
+            from = Math.max(0, firstIndexAtOrAfter(pointX, count, xAxis1.getMin()) - 1);
+            to = Math.min(count, firstIndexAtOrAfter(pointX, count, xAxis1.getMax()) + 1);
+        }
+        int points = Math.max(MIN_CHART_POINTS, (int) chart.getWidth());
+        if (from == shownFrom && to == shownTo && points == shownPoints) {
+            return;
+        }
+        long start = System.nanoTime();
+        int[] selected = LttbDownsampler.downsample(pointX, pointY, from, to, points);
+        if (fromSnapshot) {
+            snapshotDataSet.select(selected, selected.length);
         } else {
-            // If no data is available, show the "No data" message
-            logger.info("No data found for the selected exercise.");
-            Text graphPlaceholderText = new Text("No data available for this exercise.");
-            graphPanel.setCenter(graphPlaceholderText);
+            double[] x = new double[selected.length];
+            double[] y = new double[selected.length];
+            for (int i = 0; i < selected.length; i++) {
+                x[i] = seriesX[selected[i]];
+                y[i] = seriesY[selected[i]];
+            }
+            if (noErrors.length < selected.length) {
+                noErrors = new double[selected.length];
+            }
+            loadedDataSet.set(x, y, noErrors, noErrors, selected.length, true);
+        }
+        shownFrom = from;
+        shownTo = to;
+        shownPoints = points;
+        logger.debug("Showing {} of {} points in {} µs", selected.length, to - from, (System.nanoTime() - start) / 1000);
+    }
+
+    // Binary search: index of the first of count ascending values >= target, or count if there is none
+    private static int firstIndexAtOrAfter(IntToDoubleFunction sorted, int count, double target) {
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (sorted.applyAsDouble(mid) < target) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // Runs on the database thread
+    private static long[] loadTimestampRange(ActivityDao activityDao, Exercise exercise) {
+        if (exercise.getId() == -1) {
+            return null;  // The placeholder entry
+        }
+        try {
+            return activityDao.getTimestampRange(exercise.getId());
+        } catch (SQLException e) {
+            logger.error("Error loading activity data for exercise {}: {}", exercise.getName(), e.getMessage(), e);
+            return null;
         }
     }
 
@@ -1,7 +1,5 @@
 package info.matthewryan.workoutlogger.ui;
 
-import info.matthewryan.workoutlogger.persistence.ActivityDao;
-import info.matthewryan.workoutlogger.persistence.ExerciseDao;
 import javafx.scene.control.Button;
 import javafx.scene.control.ToolBar;
 import javafx.stage.Stage;
@@ -18,7 +16,7 @@ public class CustomToolBar extends ToolBar {
     private Button btnExercises;
     private Button btnSettings; // New Settings button
 
-    public CustomToolBar(Stage primaryStage, ActivityDao activityDao, ExerciseDao exerciseDao) {
+    public CustomToolBar(Stage primaryStage) {
         super();
 
         btnWorkouts = new Button("Workouts");
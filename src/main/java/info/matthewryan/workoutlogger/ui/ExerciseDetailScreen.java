@@ -1,6 +1,8 @@
 package info.matthewryan.workoutlogger.ui;
 
+import info.matthewryan.workoutlogger.persistence.Database;
 import info.matthewryan.workoutlogger.persistence.ExerciseDao;
+import info.matthewryan.workoutlogger.services.AsyncDataService;
 import javafx.geometry.Insets;
 import javafx.scene.Scene;
 import javafx.scene.control.*;
@@ -9,11 +11,13 @@ import javafx.stage.Stage;
 
 public class ExerciseDetailScreen {
 
-    private ExerciseDao exerciseDao;
+    private Database database;
+    private ExerciseDao exerciseDao;  // Bound to the writer connection
     private String existingExerciseName;
     private ScreenStartup screenStartup;
 
-    public ExerciseDetailScreen(ExerciseDao exerciseDao, ScreenStartup screenStartup, String existingExerciseName) {
+    public ExerciseDetailScreen(Database database, ExerciseDao exerciseDao, ScreenStartup screenStartup, String existingExerciseName) {
+        this.database = database;
         this.exerciseDao = exerciseDao;
         this.screenStartup = screenStartup; // Initialize the ScreenStartup reference
         this.existingExerciseName = existingExerciseName;
@@ -34,8 +38,9 @@ public class ExerciseDetailScreen {
         saveButton.setOnAction(e -> {
             String exerciseName = exerciseNameField.getText();
             if (!exerciseName.isEmpty()) {
-                exerciseDao.insertExercise(exerciseName, false);
-                goBackToExercisesScreen();
+                // Go back once the insert is committed, so the list shows the new exercise
+                database.write(connection -> exerciseDao.insertExercise(exerciseName, false))
+                        .thenRunAsync(this::goBackToExercisesScreen, AsyncDataService.FX_THREAD);
             }
         });
 
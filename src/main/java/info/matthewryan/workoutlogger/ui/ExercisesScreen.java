@@ -2,6 +2,7 @@ package info.matthewryan.workoutlogger.ui;
 
 import info.matthewryan.workoutlogger.model.Exercise;
 import info.matthewryan.workoutlogger.persistence.ExerciseDao;
+import info.matthewryan.workoutlogger.services.AsyncDataService;
 import javafx.geometry.Pos;
 import javafx.scene.Scene;
 import javafx.scene.control.*;
@@ -9,15 +10,13 @@ import javafx.scene.layout.BorderPane;
 import javafx.scene.layout.HBox;
 import javafx.stage.Stage;
 
-import java.util.List;
-
 public class ExercisesScreen {
 
-    private ExerciseDao exerciseDao;
+    private AsyncDataService dataService;
     private ScreenStartup screenStartup;
 
-    public ExercisesScreen(ExerciseDao exerciseDao, ScreenStartup screenStartup) {
-        this.exerciseDao = exerciseDao;
+    public ExercisesScreen(AsyncDataService dataService, ScreenStartup screenStartup) {
+        this.dataService = dataService;
         this.screenStartup = screenStartup;
     }
 
@@ -29,8 +28,8 @@ public class ExercisesScreen {
 
         // Create a ListView to display the exercises
         ListView<Exercise> listView = new ListView<>();
-        List<Exercise> exercises = exerciseDao.getAllExercises();
-        listView.getItems().addAll(exercises);
+        dataService.exercises(ExerciseDao::getAllExercises)
+                .thenAcceptAsync(listView.getItems()::setAll, AsyncDataService.FX_THREAD);
 
         // Set up a cell factory to display exercise names in the ListView
         listView.setCellFactory(param -> new ListCell<Exercise>() {
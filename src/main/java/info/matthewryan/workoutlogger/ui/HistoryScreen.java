@@ -1,13 +1,14 @@
 package info.matthewryan.workoutlogger.ui;
 
-import info.matthewryan.workoutlogger.persistence.ActivityDao;
 import info.matthewryan.workoutlogger.model.ActivityRecord;
-import info.matthewryan.workoutlogger.persistence.ExerciseDao;
+import info.matthewryan.workoutlogger.model.ActivityRow;
+import info.matthewryan.workoutlogger.services.AsyncDataService;
+import info.matthewryan.workoutlogger.services.RequestSlot;
+import javafx.beans.property.SimpleObjectProperty;
 import javafx.beans.property.SimpleStringProperty;
 import javafx.geometry.Pos;
 import javafx.scene.Scene;
 import javafx.scene.control.*;
-import javafx.scene.control.cell.PropertyValueFactory;
 import javafx.scene.layout.BorderPane;
 import javafx.scene.layout.StackPane;
 import javafx.stage.Stage;
@@ -15,7 +16,6 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import em.libs.jfxcalendar.JFXCalendar;
 
-import java.text.SimpleDateFormat;
 import java.time.LocalDate;
 import java.util.List;
 
@@ -23,23 +23,30 @@ public class HistoryScreen {
 
     private static final Logger logger = LoggerFactory.getLogger(HistoryScreen.class);
 
-    private ActivityDao activityDao;
-    private ExerciseDao exerciseDao;
+    // Rows fetched per page, and how close to the end of the loaded rows a visible row
+    // has to be before the next page is fetched
+    private static final int PAGE_SIZE = 200;
+    private static final int PREFETCH_ROWS = 50;
+
+    private AsyncDataService dataService;
     private CustomToolBar toolBar;
+    private TableView<ActivityRow> tableView;
+
+    // Pages and day filters all fill the same table; the newest request wins
+    private final RequestSlot tableRequest = new RequestSlot();
+
+    // Paging state of the full history; off while the table shows a single calendar day
+    private boolean paging;
+    private boolean pageRequested;
+    private boolean lastPageLoaded;
 
-    public HistoryScreen(ActivityDao activityDao, ExerciseDao exerciseDao, CustomToolBar toolBar) {
-        this.activityDao = activityDao;
-        this.exerciseDao = exerciseDao;
+    public HistoryScreen(AsyncDataService dataService, CustomToolBar toolBar) {
+        this.dataService = dataService;
         this.toolBar = toolBar;  // Store the passed ToolBar instance
     }
 
     public BorderPane getRoot() {
 
-        if (activityDao == null)
-            logger.info("activityDao is null");
-        else
-            logger.info("activityDao is not null");
-
         BorderPane calendarPanel = createCalendarPickerPanel();
         BorderPane historyPanel = createHistoryPanel();
 
@@ -64,8 +71,9 @@ public class HistoryScreen {
             if (newValue.isPresent()) {
                 LocalDate selectedDate = newValue.get();
                 // Filter activities by the selected date
-                List<ActivityRecord> filteredActivities = activityDao.getActivitiesByDate(selectedDate);
-                updateTable(filteredActivities);
+                paging = false;  // A single day is loaded in full
+                tableRequest.deliver(dataService.activities(dao -> dao.getActivityRowsByDate(selectedDate)),
+                        this::updateTable);
             }
         });
 
@@ -81,57 +89,88 @@ public class HistoryScreen {
     private BorderPane createHistoryPanel() {
         BorderPane historyPanel = new BorderPane();
 
-        // Create the TableView to display the history of activities
-        TableView<ActivityRecord> tableView = new TableView<>();
+        // Create the TableView to display the history of activities.
+        // Rows arrive with the exercise name and formatted time already filled in,
+        // so rendering a cell never goes back to the database.
+        tableView = new TableView<>();
 
         // Define columns
-        TableColumn<ActivityRecord, String> activityColumn = new TableColumn<>("Exercise");
-        activityColumn.setCellValueFactory(param -> {
-            // Use the exerciseId to fetch the exercise name from the database
-            ActivityRecord record = param.getValue();
-            String exerciseName = exerciseDao.getExerciseNameById(record.getExerciseId());  // Fetch exercise name by ID
-            return new SimpleStringProperty(exerciseName);  // Set the exercise name as the cell value
-        });
+        TableColumn<ActivityRow, String> activityColumn = new TableColumn<>("Exercise");
+        activityColumn.setCellValueFactory(param -> new SimpleStringProperty(param.getValue().getExerciseName()));
 
-        TableColumn<ActivityRecord, Integer> repsColumn = new TableColumn<>("Reps");
-        repsColumn.setCellValueFactory(new PropertyValueFactory<>("reps"));
-
-        TableColumn<ActivityRecord, Double> weightColumn = new TableColumn<>("Weight (kg)");
-        weightColumn.setCellValueFactory(new PropertyValueFactory<>("weight"));
-
-        TableColumn<ActivityRecord, Long> timestampColumn = new TableColumn<>("Timestamp");
-        timestampColumn.setCellValueFactory(new PropertyValueFactory<>("timestamp"));
-
-        // Format timestamp to readable date
-        timestampColumn.setCellFactory(col -> {
-            return new javafx.scene.control.TableCell<ActivityRecord, Long>() {
-                @Override
-                protected void updateItem(Long item, boolean empty) {
-                    super.updateItem(item, empty);
-                    if (empty || item == null) {
-                        setText(null);
-                    } else {
-                        SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
-                        setText(sdf.format(item)); // Format the Long timestamp as a String
-                    }
-                }
-            };
-        });
+        TableColumn<ActivityRow, Integer> repsColumn = new TableColumn<>("Reps");
+        repsColumn.setCellValueFactory(param -> new SimpleObjectProperty<>(param.getValue().getReps()));
+
+        TableColumn<ActivityRow, Double> weightColumn = new TableColumn<>("Weight (kg)");
+        weightColumn.setCellValueFactory(param -> new SimpleObjectProperty<>(param.getValue().getWeight()));
+
+        TableColumn<ActivityRow, String> timestampColumn = new TableColumn<>("Timestamp");
+        timestampColumn.setCellValueFactory(param -> new SimpleStringProperty(param.getValue().getFormattedDateTime()));
 
         // Add columns to the TableView
         tableView.getColumns().addAll(activityColumn, repsColumn, weightColumn, timestampColumn);
 
-        // Fetch activities from the database, ordered by timestamp descending
-        List<ActivityRecord> activities = activityDao.getAllActivitiesOrderedByTimestamp();
-        tableView.getItems().setAll(activities);  // Populate the table with activity records
+        // TableView only creates rows for what is on screen; when one of them comes close to
+        // the end of the loaded rows, fetch the next page
+        tableView.setRowFactory(view -> new TableRow<>() {
+            @Override
+            public void updateIndex(int index) {
+                super.updateIndex(index);
+                if (index >= 0 && index >= view.getItems().size() - PREFETCH_ROWS) {
+                    requestNextPage();
+                }
+            }
+        });
+
+        // Start with the newest page only; older rows are loaded as the user scrolls
+        paging = true;
+        lastPageLoaded = false;
+        pageRequested = true;
+        tableRequest.deliver(dataService.activities(dao -> dao.getActivityRowsPage(PAGE_SIZE)),
+                this::appendPage, this::pageFailed);
         historyPanel.setCenter(tableView);
 
         return historyPanel;
     }
 
-    private void updateTable(List<ActivityRecord> activities) {
-        TableView<ActivityRecord> tableView = new TableView<>();
-        tableView.getItems().setAll(activities);  // Populate the table with filtered activity records
+    private void requestNextPage() {
+        if (!paging || pageRequested || lastPageLoaded) {
+            return;
+        }
+        // Called while rows are being laid out; the page is appended when the query returns
+        pageRequested = true;
+        List<ActivityRow> items = tableView.getItems();
+        if (items.isEmpty()) {
+            tableRequest.deliver(dataService.activities(dao -> dao.getActivityRowsPage(PAGE_SIZE)),
+                this::appendPage, this::pageFailed);
+        } else {
+            ActivityRow last = items.get(items.size() - 1);
+            tableRequest.deliver(dataService.activities(
+                    dao -> dao.getActivityRowsPage(last.getTimestamp(), last.getId(), PAGE_SIZE)),
+                    this::appendPage, this::pageFailed);
+        }
+    }
+
+    private void appendPage(List<ActivityRow> page) {
+        pageRequested = false;
+        if (!paging) {
+            return;
+        }
+        if (page.size() < PAGE_SIZE) {
+            lastPageLoaded = true;
+        }
+        List<ActivityRow> items = tableView.getItems();
+        items.addAll(page);
+        logger.debug("Loaded {} more history rows, {} in table", page.size(), items.size());
+    }
+
+    // The query is logged by the data service; let the next scroll ask for the page again
+    private void pageFailed(Throwable failure) {
+        pageRequested = false;
+    }
+
+    private void updateTable(List<ActivityRow> activities) {
+        tableView.getItems().setAll(activities);  // Populate the table with filtered activity rows
     }
 
     public void start(Stage primaryStage) {
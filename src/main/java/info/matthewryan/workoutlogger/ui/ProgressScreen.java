@@ -2,21 +2,20 @@ package info.matthewryan.workoutlogger.ui;
 
 import info.matthewryan.workoutlogger.model.Exercise;
 import info.matthewryan.workoutlogger.persistence.ExerciseDao;
+import info.matthewryan.workoutlogger.services.AsyncDataService;
 import javafx.scene.Scene;
 import javafx.scene.control.ListCell;
 import javafx.scene.control.ListView;
 import javafx.scene.layout.BorderPane;
 import javafx.stage.Stage;
 
-import java.util.List;
-
 public class ProgressScreen {
 
-    private ExerciseDao exerciseDao;
+    private AsyncDataService dataService;
     private ScreenStartup screenStartup;
 
-    public ProgressScreen(ExerciseDao exerciseDao, ScreenStartup screenStartup) {
-        this.exerciseDao = exerciseDao;
+    public ProgressScreen(AsyncDataService dataService, ScreenStartup screenStartup) {
+        this.dataService = dataService;
         this.screenStartup = screenStartup;
     }
 
@@ -25,8 +24,8 @@ public class ProgressScreen {
 
         // Create a ListView to display exercises
         ListView<Exercise> listView = new ListView<>();
-        List<Exercise> exercises = exerciseDao.getAllExercises();
-        listView.getItems().addAll(exercises);
+        dataService.exercises(ExerciseDao::getAllExercises)
+                .thenAcceptAsync(listView.getItems()::setAll, AsyncDataService.FX_THREAD);
 
         // Set up a cell factory to display exercise names in the ListView
         listView.setCellFactory(param -> new ListCell<Exercise>() {
@@ -1,13 +1,25 @@
 package info.matthewryan.workoutlogger.ui;
 
-import info.matthewryan.workoutlogger.model.ActivityRecord;
 import info.matthewryan.workoutlogger.persistence.ActivityDao;
+import info.matthewryan.workoutlogger.persistence.Database;
 import info.matthewryan.workoutlogger.persistence.ExerciseDao;
+import info.matthewryan.workoutlogger.persistence.HistorySnapshot;
+import info.matthewryan.workoutlogger.persistence.PersonalBestDao;
+import info.matthewryan.workoutlogger.persistence.QueryMetrics;
 import info.matthewryan.workoutlogger.persistence.SessionDao;
+import info.matthewryan.workoutlogger.persistence.SessionJournal;
+import info.matthewryan.workoutlogger.persistence.SlowQueryLog;
+import info.matthewryan.workoutlogger.persistence.VolumeRollupDao;
+import info.matthewryan.workoutlogger.persistence.WorkoutDao;
+import info.matthewryan.workoutlogger.services.ActivityWriteBuffer;
+import info.matthewryan.workoutlogger.services.AsyncDataService;
+import info.matthewryan.workoutlogger.utils.CsvImportPipeline;
 import info.matthewryan.workoutlogger.utils.CsvImporter;
-import info.matthewryan.workoutlogger.utils.DatabaseConnection;
+import info.matthewryan.workoutlogger.utils.ImportResult;
 import javafx.application.Application;
+import javafx.application.Platform;
 import javafx.scene.Scene;
+import javafx.scene.control.Label;
 import javafx.scene.layout.BorderPane;
 import javafx.stage.Stage;
 import org.slf4j.Logger;
@@ -18,12 +30,22 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.util.List;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
 
 public class ScreenStartup extends Application {
 
     private static final Logger logger = LoggerFactory.getLogger(ScreenStartup.class);
 
+    private static final Path JOURNAL_FILE = Path.of("session.journal");
+    private static final Path SNAPSHOT_FILE = Path.of("history.snapshot");
+    // How often the DAO query latencies are summarised in the log
+    private static final long QUERY_SUMMARY_PERIOD_MILLIS = 60_000;
+
     private final String[] defaultExercises = {
             "Abdominal Twists", "Abmat Crunches", "Back Extension", "Back Squat",
             "Barbell Chest Squat", "Bench Press", "Bicep Curl", "Bulgarian Split Squat",
@@ -39,6 +61,24 @@ public class ScreenStartup extends Application {
     private SessionDao sessionDao;
     private ActivityDao activityDao;
     private ExerciseDao exerciseDao;
+    private PersonalBestDao personalBestDao;
+    private VolumeRollupDao volumeRollupDao;
+    private WorkoutDao workoutDao;
+    // Database, journal, slow query log and data service are opened on the startup thread;
+    // volatile as stop() may run before startup has handed them over
+    private volatile Database database;
+    private volatile SessionJournal journal;
+    // Sets logged on the activity screen, written in batches
+    private ActivityWriteBuffer writeBuffer;
+    // False when the last run's journal could not be replayed and must be kept
+    private boolean journalReplayed;
+    // Only when started with -Dworkoutlogger.slowQueryMillis=<threshold>
+    private volatile SlowQueryLog slowQueryLog;
+    // Latest snapshot written or opened; replaced on the writer thread
+    private volatile HistorySnapshot snapshot;
+    // The snapshot handed to the charts; null while a session is open
+    private HistorySnapshot chartSnapshot;
+    private volatile AsyncDataService dataService;
     private CustomToolBar toolBar;
 
     private WorkoutsScreen workoutsScreen;
@@ -58,43 +98,153 @@ public class ScreenStartup extends Application {
 
     @Override
     public void start(Stage primaryStage) {
+        StartupTimer timer = new StartupTimer();
 
-        DatabaseConnection databaseConnection = new DatabaseConnection();
+        // Show the window straight away; the start screen replaces the placeholder once the
+        // schema is ready. Screens are built on first navigation.
+        toolBar = new CustomToolBar(primaryStage);
+        toolBar.setDisable(true);
+        BorderPane deck = new BorderPane();
+        deck.setCenter(new Label("Loading..."));
+        deck.setBottom(toolBar); // Attach the toolbar to the bottom of BorderPane
 
-        sessionDao = new SessionDao(databaseConnection.getConnection());
-        activityDao = new ActivityDao(databaseConnection.getConnection());
-        exerciseDao = new ExerciseDao(databaseConnection.getConnection());
+        Scene scene = new Scene(deck, 400, 600);
+        primaryStage.setTitle("Workout Logger");
+        primaryStage.setScene(scene);
+        primaryStage.show();
+        timer.phase("window");
+
+        // Files and connections are opened off the FX thread, which must return from start()
+        // before the window is painted. Schema setup and the initial import are then the first
+        // commands on the writer. These DAOs are bound to the writer connection and are only
+        // used inside write commands.
+        CompletableFuture.runAsync(() -> openStores(timer), ScreenStartup::startupThread)
+                .thenCompose(opened -> database.write(connection -> {
+            sessionDao = new SessionDao(connection);
+            // Resolve exercise names and ids through one in-memory dictionary, which the
+            // read connections' dictionaries follow
+            exerciseDao = new ExerciseDao(connection, database.getExerciseDictionary());
+            activityDao = new ActivityDao(connection, exerciseDao.getExerciseDictionary());
+            personalBestDao = new PersonalBestDao(connection);
+            volumeRollupDao = new VolumeRollupDao(connection);
+            workoutDao = new WorkoutDao(connection, exerciseDao.getExerciseDictionary());
+            csvImporter = new CsvImporter(exerciseDao, activityDao);
+
+            // Tables and reference data in one transaction: a single commit instead of one
+            // per statement
+            connection.setAutoCommit(false);
+            try {
+                createSchema();
+                preloadVolumeGroups();
+                preloadDefaultExercises();
+                connection.commit();
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                // The default exercises were written through before the rollback undid them
+                exerciseDao.getExerciseDictionary().invalidate();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+            timer.phase("schema and seed");
 
-        sessionDao.createSessionTable();
+            // The bundled history seeds an empty database; importing it again would duplicate it
+            if (loadExistingData && activityDao.countActivities() == 0) {
+                loadExistingDataFromCSV();
+                timer.phase("import");
+            }
 
-        exerciseDao.createExerciseTable();
-        activityDao.createActivityTable();
-        exerciseDao.createVolumeGroupTable();
-        preloadVolumeGroups();
-        preloadDefaultExercises();
+            // Bring back whatever the last run journaled but did not get into the database
+            if (journal != null) {
+                try {
+                    journal.replay(sessionDao, activityDao);
+                    journalReplayed = true;
+                } catch (SQLException e) {
+                    // Keep the journal so the next start can try again
+                    logger.error("Failed to replay the session journal: {}", e.getMessage(), e);
+                }
+                timer.phase("journal replay");
+            }
+            return activityDao.getChangeCounter();
+        })).thenAcceptAsync(changeCounter -> {
+            finishStartup(changeCounter, deck);
+            timer.phase("start screen");
+            timer.report();
+        }, AsyncDataService.FX_THREAD).exceptionally(e -> {
+            logger.error("Startup failed: {}", e.getMessage(), e);
+            Platform.runLater(Platform::exit);
+            return null;
+        });
+    }
+
+    // Runs on the startup thread, before anything is queued on the writer
+    private void openStores(StartupTimer timer) {
+        // Map last run's history first; it needs nothing from SQLite
+        snapshot = openSnapshot();
+        timer.phase("snapshot");
 
-        csvImporter = new CsvImporter(exerciseDao, activityDao);
+        slowQueryLog = SlowQueryLog.fromSystemProperties();
+        if (slowQueryLog != null) {
+            slowQueryLog.install();
+        }
 
-        if (loadExistingData) {
-            loadExistingDataFromCSV();
+        try {
+            database = new Database(Database.DEFAULT_URL);
+        } catch (SQLException e) {
+            throw new IllegalStateException("Failed to open the database: " + e.getMessage(), e);
         }
+        timer.phase("database");
 
-        List<ActivityRecord> activities = activityDao.getAllActivitiesOrderedByTimestamp();
-        logger.info("Loaded activities: {}", activities.size());
+        try {
+            journal = SessionJournal.open(JOURNAL_FILE);
+        } catch (IOException e) {
+            // Carry on without crash protection rather than refuse to start
+            logger.error("Failed to open the session journal: {}", e.getMessage(), e);
+        }
+        timer.phase("journal");
 
-        // Initialize screens
-        toolBar = new CustomToolBar(primaryStage, activityDao, exerciseDao);
-        activityScreen = new ActivityScreen(activityDao, exerciseDao, toolBar, this);
-        workoutsScreen = new WorkoutsScreen(sessionDao, toolBar, this);
-        historyScreen = new HistoryScreen(activityDao, exerciseDao, toolBar);
-        exercisesScreen = new ExercisesScreen(exerciseDao, this);
-        progressScreen = new ProgressScreen(exerciseDao, this);
-        settingsScreen = new SettingsScreen();
+        // Screens read through the pooled read connections so the FX thread never waits on SQLite
+        dataService = new AsyncDataService(database);
+    }
 
+    private static void startupThread(Runnable bootstrap) {
+        Thread thread = new Thread(bootstrap, "startup");
+        thread.setDaemon(true);
+        thread.start();
+    }
 
-        // Set up a BorderPane to hold all the screens (Deck of screens)
-        BorderPane deck = new BorderPane();
-        deck.setCenter(workoutsScreen.getRoot()); // Initially show the Start Screen
+    // Runs on the FX thread once the database is ready
+    private void finishStartup(long changeCounter, BorderPane deck) {
+        if (journal != null && journalReplayed) {
+            try {
+                journal.checkpoint();
+            } catch (IOException e) {
+                logger.error("Failed to checkpoint the session journal: {}", e.getMessage(), e);
+            }
+        }
+        SessionManager.getInstance().attach(database, sessionDao, journal);
+        writeBuffer = new ActivityWriteBuffer(database, activityDao, journal);
+        QueryMetrics.start(QUERY_SUMMARY_PERIOD_MILLIS);
+
+        HistorySnapshot current = snapshot;
+        if (current != null && current.getChangeCounter() != changeCounter) {
+            logger.info("History snapshot is stale (counter {}, database {})", current.getChangeCounter(), changeCounter);
+            snapshot = null;
+        }
+        // Charts come from the snapshot while no session can be adding sets
+        chartSnapshot = snapshot;
+        if (snapshot == null) {
+            refreshSnapshot();
+        }
+        SessionManager.getInstance().setSessionListener(() -> {
+            if (SessionManager.getInstance().getCurrentSession() != null) {
+                publishSnapshot(null);
+            } else {
+                // The session's sets go to the writer ahead of the snapshot that should hold them
+                writeBuffer.flush();
+                refreshSnapshot();
+            }
+        });
 
         // ToolBar Actions
         toolBar.setOnWorkoutsAction(() -> showStartScreen());
@@ -102,41 +252,90 @@ public class ScreenStartup extends Application {
         toolBar.setOnExercisesAction(() -> showExercisesScreen());
         toolBar.setOnProgressAction(() -> showProgressScreen());
         toolBar.setOnSettingsAction(() -> showSettingsScreen());
+        toolBar.setDisable(false);
 
-        // Set up the layout with the toolbar and the current screen
-        deck.setBottom(toolBar); // Attach the toolbar to the bottom of BorderPane
+        showStartScreen();
+    }
 
-        Scene scene = new Scene(deck, 400, 600);
-        primaryStage.setTitle("Workout Logger");
-        primaryStage.setScene(scene);
-        primaryStage.show();
+    private void createSchema() {
+        sessionDao.createSessionTable();
+
+        exerciseDao.createExerciseTable();
+        activityDao.createActivityTable();
+        personalBestDao.createPersonalBestTable();
+        volumeRollupDao.createRollupTables();
+        activityDao.finishInterruptedBulkLoad();
+        exerciseDao.createVolumeGroupTable();
+        workoutDao.createWorkoutTable();
+        workoutDao.createWorkoutExercisesTable();
+    }
+
+    @Override
+    public void stop() {
+        QueryMetrics.stop();
+        SessionManager.getInstance().setSessionListener(null);
+        SessionManager.getInstance().endSession();
+        if (writeBuffer != null) {
+            writeBuffer.close();
+        }
+        if (database != null) {
+            // Queued behind the session's last writes
+            database.write(connection -> captureSnapshot());
+        }
+
+        // Let queued queries and writes finish, then close the connections
+        if (dataService != null) {
+            dataService.shutdown();
+        }
+        if (database != null) {
+            database.close();
+        }
+        if (slowQueryLog != null) {
+            slowQueryLog.close();
+        }
+
+        // Everything journaled is committed once the buffer has written every set and the
+        // writer has drained its queue; otherwise the next start replays it
+        if (journal != null) {
+            try {
+                if ((writeBuffer == null || writeBuffer.getPendingCount() == 0)
+                        && (database == null || database.isDrained())) {
+                    journal.checkpoint();
+                } else {
+                    logger.warn("Keeping the session journal, not every write reached the database");
+                }
+                journal.close();
+            } catch (IOException e) {
+                logger.error("Failed to close the session journal: {}", e.getMessage(), e);
+            }
+        }
     }
 
     public void showStartScreen() {
         BorderPane deck = (BorderPane) toolBar.getScene().getRoot();
-        deck.setCenter(workoutsScreen.getRoot());
+        deck.setCenter(getWorkoutsScreen().getRoot());
         deck.setBottom(toolBar);
     }
 
     void showProgressScreen() {
         BorderPane deck = (BorderPane) toolBar.getScene().getRoot();
-        deck.setCenter(progressScreen.getRoot());
+        deck.setCenter(getProgressScreen().getRoot());
         deck.setBottom(toolBar);
     }
 
     void showExerciseProgressScreen(String exerciseName) {
-        ExerciseProgressScreen progressScreen = new ExerciseProgressScreen();
+        ExerciseProgressScreen exerciseProgressScreen = new ExerciseProgressScreen();
         BorderPane deck = (BorderPane) toolBar.getScene().getRoot();
-        deck.setCenter(progressScreen.getRoot());
+        deck.setCenter(exerciseProgressScreen.getRoot());
     }
 
     public void showActivityScreen(BorderPane deck) {
-        deck.setCenter(activityScreen.getRoot());
+        deck.setCenter(getActivityScreen().getRoot());
         deck.setBottom(toolBar);
     }
 
     public void showSessionActivityLogScreen(int currentSessionId) {
-        SessionActivityLogScreen sessionActivityLogScreen = new SessionActivityLogScreen(activityDao, exerciseDao, toolBar, currentSessionId, this);
+        SessionActivityLogScreen sessionActivityLogScreen = new SessionActivityLogScreen(dataService, toolBar, currentSessionId, this);
         BorderPane sessionActivityLogRoot = sessionActivityLogScreen.getRoot();
         BorderPane deck = (BorderPane) toolBar.getScene().getRoot();
         deck.setCenter(sessionActivityLogRoot);
@@ -144,30 +343,128 @@ public class ScreenStartup extends Application {
     }
 
     private void showHistoryScreen(BorderPane deck) {
-        deck.setCenter(historyScreen.getRoot());
+        deck.setCenter(getHistoryScreen().getRoot());
         deck.setBottom(toolBar);
     }
 
     void showExercisesScreen() {
         BorderPane deck = (BorderPane) toolBar.getScene().getRoot();
-        deck.setCenter(exercisesScreen.getRoot());
+        deck.setCenter(getExercisesScreen().getRoot());
         deck.setBottom(toolBar);
     }
 
     public void showExerciseDetailScreen(String exerciseName) {
-        ExerciseDetailScreen detailScreen = new ExerciseDetailScreen(exerciseDao, this, exerciseName);
+        ExerciseDetailScreen detailScreen = new ExerciseDetailScreen(database, exerciseDao, this, exerciseName);
         BorderPane deck = (BorderPane) toolBar.getScene().getRoot();
         deck.setCenter(detailScreen.getRoot());
     }
 
     public void showSettingsScreen() {
         BorderPane root = (BorderPane) toolBar.getScene().getRoot();
-        root.setCenter(settingsScreen.getRoot());
+        root.setCenter(getSettingsScreen().getRoot());
+    }
+
+    // Each screen is built the first time it is shown
+
+    private WorkoutsScreen getWorkoutsScreen() {
+        if (workoutsScreen == null) {
+            workoutsScreen = built("workouts", () -> new WorkoutsScreen(sessionDao, toolBar, this));
+        }
+        return workoutsScreen;
+    }
+
+    private ActivityScreen getActivityScreen() {
+        if (activityScreen == null) {
+            activityScreen = built("activity", () -> new ActivityScreen(dataService, writeBuffer, toolBar, this));
+            activityScreen.setSnapshot(chartSnapshot);
+        }
+        return activityScreen;
+    }
+
+    private HistoryScreen getHistoryScreen() {
+        if (historyScreen == null) {
+            historyScreen = built("history", () -> new HistoryScreen(dataService, toolBar));
+        }
+        return historyScreen;
+    }
+
+    private ExercisesScreen getExercisesScreen() {
+        if (exercisesScreen == null) {
+            exercisesScreen = built("exercises", () -> new ExercisesScreen(dataService, this));
+        }
+        return exercisesScreen;
+    }
+
+    private ProgressScreen getProgressScreen() {
+        if (progressScreen == null) {
+            progressScreen = built("progress", () -> new ProgressScreen(dataService, this));
+        }
+        return progressScreen;
+    }
+
+    private SettingsScreen getSettingsScreen() {
+        if (settingsScreen == null) {
+            settingsScreen = built("settings", SettingsScreen::new);
+        }
+        return settingsScreen;
+    }
+
+    private static <T> T built(String name, Supplier<T> factory) {
+        long start = System.nanoTime();
+        T screen = factory.get();
+        logger.info("Built {} screen in {} ms", name, (System.nanoTime() - start) / 1_000_000);
+        return screen;
+    }
+
+    // Map the newest snapshot generation after deleting the older ones, which nothing has
+    // mapped yet this early
+    private HistorySnapshot openSnapshot() {
+        try {
+            Path latest = HistorySnapshot.latestGeneration(SNAPSHOT_FILE);
+            HistorySnapshot.deleteOlderGenerations(SNAPSHOT_FILE, latest);
+            return latest != null ? HistorySnapshot.open(latest) : null;
+        } catch (IOException e) {
+            logger.warn("Ignoring unreadable history snapshot: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    // Bring the snapshot up to date behind every write queued so far, then chart from it
+    private void refreshSnapshot() {
+        database.write(connection -> captureSnapshot())
+                .thenAcceptAsync(this::publishSnapshot, AsyncDataService.FX_THREAD);
+    }
+
+    // FX thread: what the charts draw from, if anything
+    private void publishSnapshot(HistorySnapshot current) {
+        chartSnapshot = current;
+        if (activityScreen != null) {
+            activityScreen.setSnapshot(current);
+        }
+    }
+
+    // Runs on the writer. Rewrites the file only if the history changed since the last snapshot.
+    private HistorySnapshot captureSnapshot() throws SQLException {
+        long changeCounter = activityDao.getChangeCounter();
+        HistorySnapshot current = snapshot;
+        if (current != null && current.getChangeCounter() == changeCounter) {
+            return current;
+        }
+        try {
+            // A new generation, as the current file may still be mapped by the previous snapshot
+            Path file = HistorySnapshot.nextGeneration(SNAPSHOT_FILE);
+            HistorySnapshot.write(file, changeCounter, activityDao.loadActivityColumns(),
+                    exerciseDao.getExerciseDictionary()::getName);
+            snapshot = HistorySnapshot.open(file);
+        } catch (IOException e) {
+            logger.error("Failed to write the history snapshot: {}", e.getMessage(), e);
+            snapshot = null;
+        }
+        return snapshot;
     }
 
     private void loadExistingDataFromCSV() {
         String filePath = "/data.csv";
-        int lineCounter = 0;  // Counter to track lines
 
         try (InputStream inputStream = getClass().getResourceAsStream(filePath)) {
             // Handle case where the file isn't found
@@ -175,30 +472,16 @@ public class ScreenStartup extends Application {
                 throw new FileNotFoundException("File not found: " + filePath);
             }
 
-            // Read and process each line of the file
+            // Parse on worker threads and batch-insert from this thread
             try (BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream))) {
-                String line;
-                while ((line = reader.readLine()) != null && lineCounter < 1000) {  // Limit to 100 lines
-                    lineCounter++;  // Increment counter for each line
-
-                    // Skip the header line
-                    if (lineCounter == 1) {
-                        continue;  // Skip header
-                    }
-
-                    try {
-                        // Assuming CsvImporter processes each line of the CSV
-                        csvImporter.importCsvLine(line);  // Process the line
-                        //logger.info("Processed line {}: {}", lineCounter, line);
-                    } catch (Exception e) {
-                        logger.error("Error processing line {}: {}", lineCounter, e.getMessage());
-                        break;  // Stop processing on the first exception
-                    }
-                }
+                ImportResult result = new CsvImportPipeline(exerciseDao, activityDao).run(reader);
+                logger.info("Loaded existing data from {}: {}", filePath, result);
             }
         } catch (IOException e) {
             // Handle exceptions for file reading
             logger.error("Error reading the file: {}", e.getMessage());
+        } catch (SQLException e) {
+            logger.error("Error importing the file: {}", e.getMessage(), e);
         }
     }
 
@@ -214,4 +497,25 @@ public class ScreenStartup extends Application {
             exerciseDao.insertExercise(exercise, true);
         }
     }
+
+    // Time spent in each startup phase, logged as one report at the end. Phases follow each other
+    // across the FX and writer threads, so no two threads touch it at once.
+    private static final class StartupTimer {
+
+        private final long begin = System.nanoTime();
+        private final Map<String, Long> phases = new LinkedHashMap<>();
+        private long phaseStart = begin;
+
+        private void phase(String name) {
+            long now = System.nanoTime();
+            phases.put(name, (now - phaseStart) / 1_000_000);
+            phaseStart = now;
+        }
+
+        private void report() {
+            StringBuilder report = new StringBuilder();
+            phases.forEach((name, millis) -> report.append(String.format("%n  %-16s %5d ms", name, millis)));
+            logger.info("Startup took {} ms:{}", (System.nanoTime() - begin) / 1_000_000, report);
+        }
+    }
 }
@@ -1,27 +1,20 @@
 package info.matthewryan.workoutlogger.ui;
 
-import info.matthewryan.workoutlogger.model.ActivityRecord;
-import info.matthewryan.workoutlogger.persistence.ActivityDao;
-import info.matthewryan.workoutlogger.persistence.ExerciseDao;
+import info.matthewryan.workoutlogger.model.ActivityRow;
+import info.matthewryan.workoutlogger.services.AsyncDataService;
 import javafx.scene.control.*;
 import javafx.scene.layout.BorderPane;
 import javafx.scene.layout.HBox;
 
-import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.util.List;
-
 public class SessionActivityLogScreen {
 
-    private ActivityDao activityDao;
-    private ExerciseDao exerciseDao;
+    private AsyncDataService dataService;
     private CustomToolBar toolBar;
     private int currentSessionId;
     private ScreenStartup screenStartup;
 
-    public SessionActivityLogScreen(ActivityDao activityDao, ExerciseDao exerciseDao, CustomToolBar toolBar, int currentSessionId, ScreenStartup screenStartup) {
-        this.activityDao = activityDao;
-        this.exerciseDao = exerciseDao;
+    public SessionActivityLogScreen(AsyncDataService dataService, CustomToolBar toolBar, int currentSessionId, ScreenStartup screenStartup) {
+        this.dataService = dataService;
         this.toolBar = toolBar;
         this.currentSessionId = currentSessionId;
         this.screenStartup = screenStartup;
@@ -42,45 +35,34 @@ public class SessionActivityLogScreen {
         toolbar.getChildren().add(btnBack);
         root.setTop(toolbar);  // Set the toolbar at the top
 
-        // Fetch the activities for the current session
-        List<ActivityRecord> activities = activityDao.getActivitiesForSession(currentSessionId);
-
-        // Create a TableView for the activity records
-        TableView<ActivityRecord> tableView = new TableView<>();
-        tableView.setItems(javafx.collections.FXCollections.observableArrayList(activities));
+        // Create a TableView for the activity rows. They are fetched off the FX thread with set
+        // numbers, exercise names and times resolved by the query, so the cells below never
+        // touch the database
+        TableView<ActivityRow> tableView = new TableView<>();
+        dataService.activities(dao -> dao.getActivityRowsForSession(currentSessionId))
+                .thenAcceptAsync(tableView.getItems()::setAll, AsyncDataService.FX_THREAD);
 
         // Set up the columns for the TableView
 
-        // Set Column: Activity list index + 1
-        TableColumn<ActivityRecord, String> setColumn = new TableColumn<>("Set");
-        setColumn.setCellValueFactory((cellData) -> {
-            int index = tableView.getItems().indexOf(cellData.getValue()) + 1;  // List index + 1
-            return new javafx.beans.property.SimpleStringProperty(String.valueOf(index));
-        });
+        // Set Column: position of the set within the session
+        TableColumn<ActivityRow, String> setColumn = new TableColumn<>("Set");
+        setColumn.setCellValueFactory(cellData -> new javafx.beans.property.SimpleStringProperty(String.valueOf(cellData.getValue().getSetIndex())));
 
-        // Exercise Column: Fetch the exercise name using the activityRecord.exerciseId
-        TableColumn<ActivityRecord, String> exerciseColumn = new TableColumn<>("Exercise");
-        exerciseColumn.setCellValueFactory(cellData -> {
-            String exerciseName = exerciseDao.getExerciseNameById(cellData.getValue().getExerciseId());
-            return new javafx.beans.property.SimpleStringProperty(exerciseName);
-        });
+        // Exercise Column
+        TableColumn<ActivityRow, String> exerciseColumn = new TableColumn<>("Exercise");
+        exerciseColumn.setCellValueFactory(cellData -> new javafx.beans.property.SimpleStringProperty(cellData.getValue().getExerciseName()));
 
         // Weight Column
-        TableColumn<ActivityRecord, String> unitColumn = new TableColumn<>("Weight");
+        TableColumn<ActivityRow, String> unitColumn = new TableColumn<>("Weight");
         unitColumn.setCellValueFactory(cellData -> new javafx.beans.property.SimpleStringProperty(Double.toString(cellData.getValue().getWeight())));
 
         // Reps Column
-        TableColumn<ActivityRecord, Integer> repsColumn = new TableColumn<>("Reps");
+        TableColumn<ActivityRow, Integer> repsColumn = new TableColumn<>("Reps");
         repsColumn.setCellValueFactory(cellData -> new javafx.beans.property.SimpleObjectProperty<>(cellData.getValue().getReps()));
 
         // Time Column (formerly Timestamp)
-        TableColumn<ActivityRecord, String> timeColumn = new TableColumn<>("Time");
-        timeColumn.setCellValueFactory(cellData -> {
-            // Format the timestamp into a readable time format (example: "HH:mm:ss")
-            long timestamp = cellData.getValue().getTimestamp();
-            SimpleDateFormat sdf = new SimpleDateFormat("HH:mm:ss");
-            return new javafx.beans.property.SimpleStringProperty(sdf.format(new Date(timestamp)));
-        });
+        TableColumn<ActivityRow, String> timeColumn = new TableColumn<>("Time");
+        timeColumn.setCellValueFactory(cellData -> new javafx.beans.property.SimpleStringProperty(cellData.getValue().getFormattedTime()));
 
         // Add columns to the TableView
         tableView.getColumns().addAll(setColumn, exerciseColumn, unitColumn, repsColumn, timeColumn);
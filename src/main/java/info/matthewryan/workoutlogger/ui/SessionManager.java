@@ -1,11 +1,27 @@
 package info.matthewryan.workoutlogger.ui;
 
 import info.matthewryan.workoutlogger.model.Session;
+import info.matthewryan.workoutlogger.persistence.Database;
+import info.matthewryan.workoutlogger.persistence.SessionDao;
+import info.matthewryan.workoutlogger.persistence.SessionJournal;
+import info.matthewryan.workoutlogger.services.AsyncDataService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 public class SessionManager {
 
+    private static final Logger logger = LoggerFactory.getLogger(SessionManager.class);
+
     private static SessionManager instance;
     private Session currentSession;
+    // Started but still waiting for the writer to store its row
+    private Session startingSession;
+
+    // Set by attach(); without them sessions only live in memory
+    private Database database;
+    private SessionDao sessionDao;
+    private SessionJournal journal;
+    private Runnable sessionListener;
 
     private SessionManager() {
         // Private constructor to prevent multiple instances
@@ -18,20 +34,92 @@ public class SessionManager {
         return instance;
     }
 
+    // Store sessions through the writer and record their start and end in the journal.
+    // sessionDao must be bound to the database's writer connection; journal may be null.
+    public void attach(Database database, SessionDao sessionDao, SessionJournal journal) {
+        this.database = database;
+        this.sessionDao = sessionDao;
+        this.journal = journal;
+    }
+
+    // Run after a session starts or ends, once its row has been handed to the writer
+    public void setSessionListener(Runnable sessionListener) {
+        this.sessionListener = sessionListener;
+    }
+
+    // The session becomes current once the writer has stored its row, without blocking the
+    // FX thread on whatever the writer is busy with
     public void startSession() {
-        currentSession = new Session(System.currentTimeMillis(), 0);
-        // You could also save the session to a database or shared file if needed
+        if (startingSession != null) {
+            return;  // Already on its way
+        }
+        Session session = new Session(System.currentTimeMillis(), 0);
+        if (database == null) {
+            currentSession = session;
+            notifyListener();
+            return;
+        }
+        startingSession = session;
+        database.write(connection -> {
+            // The row supplies the id that sets and journal entries refer to
+            sessionDao.startSession(session);
+            if (journal != null) {
+                journal.sessionStarted(session.getId(), session.getStartTimestamp());
+            }
+            return null;
+        }).whenCompleteAsync((result, e) -> {
+            if (startingSession != session) {
+                return;  // Ended before it was stored
+            }
+            startingSession = null;
+            if (e != null) {
+                logger.error("Error starting session: {}", e.getMessage(), e);
+                return;
+            }
+            currentSession = session;
+            notifyListener();
+        }, AsyncDataService.FX_THREAD);
     }
 
     public void endSession() {
+        if (currentSession == null && startingSession != null) {
+            // Queued behind the start, so the row and its id exist by the time this runs
+            Session session = startingSession;
+            startingSession = null;
+            session.setEndTimestamp(System.currentTimeMillis());
+            database.write(connection -> {
+                if (journal != null) {
+                    journal.sessionEnded(session.getId(), session.getEndTimestamp());
+                }
+                sessionDao.endSession(session.getId(), session.getEndTimestamp());
+                return null;
+            });
+            return;
+        }
         if (currentSession != null) {
-            currentSession.setEndTimestamp(System.currentTimeMillis());
-            // Update session in database or perform any cleanup
+            Session session = currentSession;
+            session.setEndTimestamp(System.currentTimeMillis());
+            if (database != null) {
+                database.write(connection -> {
+                    if (journal != null) {
+                        journal.sessionEnded(session.getId(), session.getEndTimestamp());
+                    }
+                    sessionDao.endSession(session.getId(), session.getEndTimestamp());
+                    return null;
+                });
+            }
             currentSession = null;  // Reset the session once it's ended
+            notifyListener();
         }
     }
 
     public Session getCurrentSession() {
         return currentSession;
     }
+
+    private void notifyListener() {
+        if (sessionListener != null) {
+            sessionListener.run();
+        }
+    }
 }
@@ -0,0 +1,239 @@
+package info.matthewryan.workoutlogger.utils;
+
+import info.matthewryan.workoutlogger.model.ActivityRecord;
+import info.matthewryan.workoutlogger.persistence.ActivityBatchInserter;
+import info.matthewryan.workoutlogger.persistence.ActivityDao;
+import info.matthewryan.workoutlogger.persistence.ExerciseDao;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Multi-stage CSV import: one reader thread chunks lines, a pool of parser threads turns them
+ * into ActivityRecords, and the calling thread is the single writer that resolves exercise ids
+ * and batch-inserts through ActivityDao. Stages are connected by bounded queues, so a slow
+ * writer holds back the reader instead of buffering the whole file. Only the writer touches the
+ * database connection.
+ * <p>
+ * Parsed chunks reach the writer in the order the parsers finish them, so rows are committed in
+ * arrival order, not file order. If a stage fails, the chunks committed so far stay and the one
+ * being filled is dropped.
+ */
+public class CsvImportPipeline {
+
+    private static final Logger logger = LoggerFactory.getLogger(CsvImportPipeline.class);
+
+    private static final int LINES_PER_CHUNK = 1024;
+
+    // End-of-stream markers, compared by identity
+    private static final List<String> END_OF_LINES = new ArrayList<>(0);
+    private static final ParsedChunk END_OF_RECORDS = new ParsedChunk(0);
+
+    private final ExerciseDao exerciseDao;
+    private final ActivityDao activityDao;
+    private final int parserThreads;
+    private final int queueCapacity;
+    private final int commitSize;
+
+    public CsvImportPipeline(ExerciseDao exerciseDao, ActivityDao activityDao) {
+        this(exerciseDao, activityDao, Math.max(1, Runtime.getRuntime().availableProcessors() - 1),
+                16, CsvImporter.DEFAULT_CHUNK_SIZE);
+    }
+
+    public CsvImportPipeline(ExerciseDao exerciseDao, ActivityDao activityDao,
+                             int parserThreads, int queueCapacity, int commitSize) {
+        if (parserThreads <= 0 || queueCapacity <= 0 || commitSize <= 0) {
+            throw new IllegalArgumentException("Parser threads, queue capacity and commit size must be positive");
+        }
+        this.exerciseDao = exerciseDao;
+        this.activityDao = activityDao;
+        this.parserThreads = parserThreads;
+        this.queueCapacity = queueCapacity;
+        this.commitSize = commitSize;
+    }
+
+    // Import a whole CSV file (header line first). Blocks until every row is committed.
+    public ImportResult run(BufferedReader reader) throws IOException, SQLException {
+        long start = System.nanoTime();
+
+        BlockingQueue<List<String>> lineChunks = new ArrayBlockingQueue<>(queueCapacity);
+        BlockingQueue<ParsedChunk> parsedChunks = new ArrayBlockingQueue<>(queueCapacity);
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        AtomicLong skipped = new AtomicLong();
+
+        ExecutorService stages = Executors.newFixedThreadPool(parserThreads + 1, new StageThreadFactory());
+        try {
+            stages.execute(() -> readLines(reader, lineChunks, failure));
+            for (int i = 0; i < parserThreads; i++) {
+                stages.execute(() -> parseChunks(lineChunks, parsedChunks, skipped, failure));
+            }
+
+            long imported = writeChunks(parsedChunks, failure);
+
+            ImportResult result = new ImportResult(imported, skipped.get(), System.nanoTime() - start);
+            logger.info("Pipelined import of {} rows ({} skipped) with {} parsers in {} ms, {} rows/sec",
+                    result.getImportedRows(), result.getSkippedRows(), parserThreads, result.getElapsedMillis(),
+                    String.format("%.0f", result.getRowsPerSecond()));
+            return result;
+        } finally {
+            // Unblocks the upstream stages if the writer gave up early
+            stages.shutdownNow();
+        }
+    }
+
+    // Reader stage: chunk lines so queue hand-offs are amortised, then post one end marker
+    private void readLines(BufferedReader reader, BlockingQueue<List<String>> lineChunks, AtomicReference<Exception> failure) {
+        try {
+            CsvImporter.readRecord(reader);  // Skip header
+            List<String> chunk = new ArrayList<>(LINES_PER_CHUNK);
+            String line;
+            while ((line = CsvImporter.readRecord(reader)) != null) {
+                chunk.add(line);
+                if (chunk.size() == LINES_PER_CHUNK) {
+                    lineChunks.put(chunk);
+                    chunk = new ArrayList<>(LINES_PER_CHUNK);
+                }
+            }
+            if (!chunk.isEmpty()) {
+                lineChunks.put(chunk);
+            }
+        } catch (IOException e) {
+            failure.compareAndSet(null, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        putQuietly(lineChunks, END_OF_LINES);
+    }
+
+    // Parser stage: each thread owns its tokenizer and timestamp parser, exercise ids are left for the writer
+    private void parseChunks(BlockingQueue<List<String>> lineChunks, BlockingQueue<ParsedChunk> parsedChunks,
+                             AtomicLong skipped, AtomicReference<Exception> failure) {
+        CsvTokenizer tokenizer = new CsvTokenizer();
+        FixedTimestampParser timestampParser = new FixedTimestampParser();
+        String exerciseName = null;
+        try {
+            while (true) {
+                List<String> lines = lineChunks.take();
+                if (lines == END_OF_LINES) {
+                    lineChunks.put(END_OF_LINES);  // Let the other parsers see it too
+                    break;
+                }
+                ParsedChunk parsed = new ParsedChunk(lines.size());
+                for (String line : lines) {
+                    try {
+                        if (!CsvImporter.tokenize(tokenizer, line)) {
+                            skipped.incrementAndGet();
+                            continue;
+                        }
+                        exerciseName = CsvImporter.exerciseName(tokenizer, exerciseName);
+                        parsed.add(CsvImporter.toRecord(tokenizer, -1, timestampParser), exerciseName);
+                    } catch (IllegalArgumentException e) {
+                        logger.warn("Skipping unparseable line: {} ({})", line, e.getMessage());
+                        skipped.incrementAndGet();
+                    }
+                }
+                parsedChunks.put(parsed);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        } catch (RuntimeException e) {
+            failure.compareAndSet(null, e);
+        }
+        putQuietly(parsedChunks, END_OF_RECORDS);
+    }
+
+    // Writer stage: runs on the calling thread and is the only user of the DAOs
+    private long writeChunks(BlockingQueue<ParsedChunk> parsedChunks, AtomicReference<Exception> failure)
+            throws IOException, SQLException {
+        Map<String, Integer> exerciseIds = new HashMap<>();
+        int finishedParsers = 0;
+
+        try (ActivityBatchInserter inserter = activityDao.openBulkLoader(commitSize)) {
+            while (finishedParsers < parserThreads && failure.get() == null) {
+                ParsedChunk chunk = parsedChunks.take();
+                if (chunk == END_OF_RECORDS) {
+                    finishedParsers++;
+                    continue;
+                }
+                for (int i = 0; i < chunk.size && failure.get() == null; i++) {
+                    ActivityRecord record = chunk.records[i];
+                    record.setExerciseId(exerciseIds.computeIfAbsent(chunk.exerciseNames[i], exerciseDao::getOrCreateExerciseId));
+                    inserter.add(record);
+                }
+            }
+            if (failure.get() != null) {
+                // Closing would otherwise commit the partial chunk
+                inserter.abandon();
+                rethrow(failure.get());
+            }
+            inserter.flush();
+            return inserter.getInsertedCount();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("CSV import interrupted", e);
+        }
+    }
+
+    private static void rethrow(Exception failure) throws IOException {
+        if (failure instanceof IOException) {
+            throw (IOException) failure;
+        }
+        if (failure != null) {
+            throw new IOException("CSV import failed: " + failure.getMessage(), failure);
+        }
+    }
+
+    private static <T> void putQuietly(BlockingQueue<T> queue, T marker) {
+        try {
+            queue.put(marker);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Records parsed from one line chunk, with the exercise names still to be resolved
+    private static final class ParsedChunk {
+        private final ActivityRecord[] records;
+        private final String[] exerciseNames;
+        private int size;
+
+        private ParsedChunk(int capacity) {
+            this.records = new ActivityRecord[capacity];
+            this.exerciseNames = new String[capacity];
+        }
+
+        private void add(ActivityRecord record, String exerciseName) {
+            records[size] = record;
+            exerciseNames[size] = exerciseName;
+            size++;
+        }
+    }
+
+    private static final class StageThreadFactory implements ThreadFactory {
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "csv-import-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
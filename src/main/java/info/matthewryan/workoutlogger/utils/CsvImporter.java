@@ -1,22 +1,46 @@
 package info.matthewryan.workoutlogger.utils;
 
 import info.matthewryan.workoutlogger.model.ActivityRecord;
+import info.matthewryan.workoutlogger.persistence.ActivityBatchInserter;
 import info.matthewryan.workoutlogger.persistence.ActivityDao;
 import info.matthewryan.workoutlogger.persistence.ExerciseDao;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.sql.SQLException;
 import java.time.Instant;
 import java.time.LocalDate;
 import java.time.ZoneId;
+import java.util.HashMap;
+import java.util.Map;
 
+// Not thread-safe: the tokenizer and timestamp parser are reused across lines
 public class CsvImporter {
 
     private static final Logger logger = LoggerFactory.getLogger(CsvImporter.class);
 
+    // Rows committed per transaction by the bulk import path
+    public static final int DEFAULT_CHUNK_SIZE = 10_000;
+
+    // Column positions in the Strong-style export
+    static final int DATE_COLUMN = 0;
+    static final int EXERCISE_COLUMN = 2;
+    static final int REPS_COLUMN = 3;
+    static final int WEIGHT_COLUMN = 4;
+    private static final int MIN_COLUMNS = 5;
+
+    // Limits on one quoted record spanning several lines
+    static final int MAX_RECORD_LINES = 64;
+    static final int MAX_RECORD_CHARS = 64 * 1024;
+
     private final ExerciseDao exerciseDao;
     private final ActivityDao activityDao;
 
+    private final CsvTokenizer tokenizer = new CsvTokenizer();
+    private final FixedTimestampParser timestampParser = new FixedTimestampParser();
+
     // Constructor to allow dependency injection for easier testing
     public CsvImporter(ExerciseDao exerciseDao, ActivityDao activityDao) {
         this.exerciseDao = exerciseDao;
@@ -26,27 +50,13 @@ public class CsvImporter {
     // Method to import a single CSV line
     public void importCsvLine(String line) {
         try {
-            // Process the single CSV line
-            String[] nextLine = line.split(",");
-            if (nextLine.length < 5) {
-                logger.warn("Skipping invalid line: {}", line);
+            if (!tokenize(tokenizer, line)) {
                 return;
             }
 
-            String date = nextLine[0];  // Assuming the first column is the date
-            String exerciseName = nextLine[2];
-            int reps = Integer.parseInt(nextLine[3]);
-            double weightKg = Double.parseDouble(nextLine[4]);
-            long timestamp = parseDateToTimestamp(date);
-
             // Get or create exercise ID
-            int exerciseId = exerciseDao.getOrCreateExerciseId(exerciseName);
-
-            // Extract the date part of the timestamp as the session ID
-            long sessionId = getSessionIdFromTimestamp(timestamp);
-
-            // Create ActivityRecord object, pass the exercise ID, timestamp, and sessionId
-            ActivityRecord record = new ActivityRecord(exerciseId, reps, weightKg, timestamp, sessionId);
+            int exerciseId = exerciseDao.getOrCreateExerciseId(tokenizer.getString(EXERCISE_COLUMN));
+            ActivityRecord record = toRecord(tokenizer, exerciseId, timestampParser);
 
             // Insert into database using DAO
             activityDao.insertActivity(record);
@@ -57,21 +67,134 @@ public class CsvImporter {
         }
     }
 
-    private long getSessionIdFromTimestamp(long timestamp) {
-        // Extract the date part from the timestamp (ignoring the time)
-        LocalDate date = Instant.ofEpochMilli(timestamp).atZone(ZoneId.systemDefault()).toLocalDate();
-        return date.toEpochDay();  // Use the epoch day as the sessionId (a long)
+    // Import a whole CSV file (header line first) using the default chunk size
+    public ImportResult importCsv(BufferedReader reader) throws IOException, SQLException {
+        return importCsv(reader, DEFAULT_CHUNK_SIZE);
     }
 
-    // Helper method to parse date to timestamp
-    private long parseDateToTimestamp(String date) {
+    // Import a whole CSV file (header line first), committing every chunkSize rows in one batched transaction.
+    // Personal bests and rollups are rebuilt once at the end rather than maintained per row.
+    public ImportResult importCsv(BufferedReader reader, int chunkSize) throws IOException, SQLException {
+        long start = System.nanoTime();
+        long skipped = 0;
+        long imported;
+
+        Map<String, Integer> exerciseIds = new HashMap<>();
+        String exerciseName = null;
+
+        try (ActivityBatchInserter inserter = activityDao.openBulkLoader(chunkSize)) {
+            String line = readRecord(reader);  // Skip header
+            while ((line = readRecord(reader)) != null) {
+                try {
+                    if (!tokenize(tokenizer, line)) {
+                        skipped++;
+                        continue;
+                    }
+                    exerciseName = exerciseName(tokenizer, exerciseName);
+                    int exerciseId = exerciseIds.computeIfAbsent(exerciseName, exerciseDao::getOrCreateExerciseId);
+                    inserter.add(toRecord(tokenizer, exerciseId, timestampParser));
+                } catch (IllegalArgumentException e) {
+                    logger.warn("Skipping unparseable line: {} ({})", line, e.getMessage());
+                    skipped++;
+                }
+            }
+            inserter.flush();
+            imported = inserter.getInsertedCount();
+        }
+
+        ImportResult result = new ImportResult(imported, skipped, System.nanoTime() - start);
+        logger.info("Imported {} rows ({} skipped) in {} ms, {} rows/sec",
+                result.getImportedRows(), result.getSkippedRows(), result.getElapsedMillis(),
+                String.format("%.0f", result.getRowsPerSecond()));
+        return result;
+    }
+
+    // Read one CSV record, joining physical lines while a quoted field is still open. Null at end of input.
+    // Only a quote that opens a field counts, as CsvTokenizer reads it; a quote inside an unquoted
+    // field, such as an inch mark in a note, is a literal character. A field still open after
+    // MAX_RECORD_LINES lines or MAX_RECORD_CHARS characters, or at the end of the input, is taken
+    // to be a stray quote: the first line is returned on its own and reading resumes at the line
+    // after it, so one bad field cannot swallow the rest of the file.
+    static String readRecord(BufferedReader reader) throws IOException {
+        String line = reader.readLine();
+        if (line == null || line.indexOf('"') < 0) {
+            return line;
+        }
+        CsvTokenizer tokenizer = new CsvTokenizer();
+        tokenizer.reset(line);
+        if (tokenizer.isComplete()) {
+            return line;
+        }
+        // Characters read past the mark: each line plus up to two for its terminator
+        reader.mark(MAX_RECORD_CHARS + 2 * MAX_RECORD_LINES);
+        StringBuilder record = new StringBuilder(line);
+        int lines = 1;
+        String next;
+        while (lines < MAX_RECORD_LINES && (next = reader.readLine()) != null) {
+            if (record.length() - line.length() + next.length() > MAX_RECORD_CHARS) {
+                break;
+            }
+            record.append('\n').append(next);
+            lines++;
+            tokenizer.reset(record);
+            if (tokenizer.isComplete()) {
+                return record.toString();
+            }
+        }
+        logger.warn("Unterminated quote, reading the line on its own: {}", line);
         try {
-            java.text.SimpleDateFormat sdf = new java.text.SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
-            java.util.Date parsedDate = sdf.parse(date);
-            return parsedDate.getTime();
-        } catch (java.text.ParseException e) {
+            reader.reset();
+        } catch (IOException e) {
+            // A line longer than the read-ahead limit dropped the mark; the lines after the
+            // quote cannot be read again, so stop rather than lose them
+            throw new IOException("Unterminated quote in a record longer than " + MAX_RECORD_CHARS +
+                    " characters: " + line, e);
+        }
+        return line;
+    }
+
+    // Tokenize a record, returns false if it does not have enough columns
+    static boolean tokenize(CsvTokenizer tokenizer, CharSequence line) {
+        if (tokenizer.reset(line) < MIN_COLUMNS) {
+            logger.warn("Skipping invalid line: {}", line);
+            return false;
+        }
+        return true;
+    }
+
+    // Exercise name of the tokenized record, reusing the previous String when the name repeats
+    static String exerciseName(CsvTokenizer tokenizer, String previous) {
+        if (previous != null && tokenizer.fieldEquals(EXERCISE_COLUMN, previous)) {
+            return previous;
+        }
+        return tokenizer.getString(EXERCISE_COLUMN);
+    }
+
+    // Build an ActivityRecord from a tokenized record; the exercise name column is resolved by the caller
+    static ActivityRecord toRecord(CsvTokenizer tokenizer, int exerciseId, FixedTimestampParser timestampParser) {
+        int reps = tokenizer.parseInt(REPS_COLUMN);
+        double weightKg = tokenizer.parseDouble(WEIGHT_COLUMN);
+
+        long timestamp;
+        long sessionId;
+        try {
+            timestamp = timestampParser.parse(tokenizer.getInput(),
+                    tokenizer.fieldStart(DATE_COLUMN), tokenizer.fieldEnd(DATE_COLUMN));
+            // The local date of the timestamp is the session ID
+            sessionId = timestampParser.getLastEpochDay();
+        } catch (IllegalArgumentException e) {
             logger.error("Date format error: {}", e.getMessage(), e);
-            return System.currentTimeMillis(); // Default to current time if parsing fails
+            timestamp = System.currentTimeMillis(); // Default to current time if parsing fails
+            sessionId = getSessionIdFromTimestamp(timestamp);
         }
+
+        // Create ActivityRecord object, pass the exercise ID, timestamp, and sessionId
+        return new ActivityRecord(exerciseId, reps, weightKg, timestamp, sessionId);
+    }
+
+    static long getSessionIdFromTimestamp(long timestamp) {
+        // Extract the date part from the timestamp (ignoring the time)
+        LocalDate date = Instant.ofEpochMilli(timestamp).atZone(ZoneId.systemDefault()).toLocalDate();
+        return date.toEpochDay();  // Use the epoch day as the sessionId (a long)
     }
 }
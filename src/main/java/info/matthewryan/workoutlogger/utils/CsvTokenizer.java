@@ -0,0 +1,250 @@
+package info.matthewryan.workoutlogger.utils;
+
+import java.util.Arrays;
+
+/**
+ * Reusable RFC-4180 tokenizer. {@link #reset(CharSequence)} scans a record into field boundaries
+ * without creating strings; fields are then read through the primitive accessors, so parsing a
+ * line allocates nothing unless a String is explicitly asked for. Quoted fields may contain
+ * commas, doubled quotes and line breaks; when a quote is still open at the end of the input,
+ * {@link #isComplete()} returns false and the caller should append the next line and reset again.
+ * Instances are not thread-safe.
+ */
+public class CsvTokenizer {
+
+    private static final char SEPARATOR = ',';
+    private static final char QUOTE = '"';
+
+    // Powers of ten that are exact doubles, for the fast decimal path
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private CharSequence input;
+    private int fieldCount;
+    private int[] starts = new int[16];
+    private int[] ends = new int[16];
+    private boolean[] escaped = new boolean[16];
+    private boolean complete;
+
+    private final StringBuilder unescapeBuffer = new StringBuilder();
+
+    // Tokenize one record; returns the number of fields found
+    public int reset(CharSequence record) {
+        this.input = record;
+        this.fieldCount = 0;
+        this.complete = true;
+
+        int length = record.length();
+        int pos = 0;
+        while (true) {
+            if (pos < length && record.charAt(pos) == QUOTE) {
+                // Quoted field: content runs to the next quote that is not doubled
+                int start = pos + 1;
+                int i = start;
+                boolean hasEscapes = false;
+                while (true) {
+                    if (i >= length) {
+                        complete = false;
+                        addField(start, length, hasEscapes);
+                        return fieldCount;
+                    }
+                    if (record.charAt(i) == QUOTE) {
+                        if (i + 1 < length && record.charAt(i + 1) == QUOTE) {
+                            hasEscapes = true;
+                            i += 2;
+                            continue;
+                        }
+                        break;
+                    }
+                    i++;
+                }
+                addField(start, i, hasEscapes);
+                pos = i + 1;
+                // Skip anything between the closing quote and the separator
+                while (pos < length && record.charAt(pos) != SEPARATOR) {
+                    pos++;
+                }
+            } else {
+                int start = pos;
+                while (pos < length && record.charAt(pos) != SEPARATOR) {
+                    pos++;
+                }
+                addField(start, pos, false);
+            }
+
+            if (pos >= length) {
+                return fieldCount;
+            }
+            pos++;  // Step over the separator
+        }
+    }
+
+    // False when the input ended inside a quoted field
+    public boolean isComplete() {
+        return complete;
+    }
+
+    public int getFieldCount() {
+        return fieldCount;
+    }
+
+    public int fieldStart(int field) {
+        checkField(field);
+        return starts[field];
+    }
+
+    public int fieldEnd(int field) {
+        checkField(field);
+        return ends[field];
+    }
+
+    public int fieldLength(int field) {
+        checkField(field);
+        return ends[field] - starts[field];
+    }
+
+    public CharSequence getInput() {
+        return input;
+    }
+
+    // Compare a field to a string without materialising the field
+    public boolean fieldEquals(int field, String value) {
+        checkField(field);
+        if (escaped[field]) {
+            return getString(field).equals(value);
+        }
+        int start = starts[field];
+        int length = ends[field] - start;
+        if (value.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (input.charAt(start + i) != value.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Materialise a field as a String, with doubled quotes collapsed
+    public String getString(int field) {
+        checkField(field);
+        int start = starts[field];
+        int end = ends[field];
+        if (!escaped[field]) {
+            return input.subSequence(start, end).toString();
+        }
+        unescapeBuffer.setLength(0);
+        for (int i = start; i < end; i++) {
+            char c = input.charAt(i);
+            unescapeBuffer.append(c);
+            if (c == QUOTE) {
+                i++;  // Skip the second quote of the pair
+            }
+        }
+        return unescapeBuffer.toString();
+    }
+
+    public int parseInt(int field) {
+        checkField(field);
+        int start = starts[field];
+        int end = ends[field];
+        if (start == end) {
+            throw new NumberFormatException("Empty field " + field);
+        }
+        boolean negative = false;
+        int i = start;
+        char first = input.charAt(i);
+        if (first == '-' || first == '+') {
+            negative = first == '-';
+            if (++i == end) {
+                throw new NumberFormatException("Invalid integer in field " + field);
+            }
+        }
+        long value = 0;
+        for (; i < end; i++) {
+            int digit = input.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                throw new NumberFormatException("Invalid integer in field " + field + ": " + getString(field));
+            }
+            value = value * 10 + digit;
+            if (value > (long) Integer.MAX_VALUE + 1) {
+                throw new NumberFormatException("Integer out of range in field " + field);
+            }
+        }
+        value = negative ? -value : value;
+        if (value > Integer.MAX_VALUE) {
+            throw new NumberFormatException("Integer out of range in field " + field);
+        }
+        return (int) value;
+    }
+
+    // Plain decimals with up to 15 significant digits are converted exactly without allocating;
+    // anything else (exponents, long mantissas) falls back to Double.parseDouble
+    public double parseDouble(int field) {
+        checkField(field);
+        int start = starts[field];
+        int end = ends[field];
+        if (start == end) {
+            throw new NumberFormatException("Empty field " + field);
+        }
+        int i = start;
+        boolean negative = false;
+        char first = input.charAt(i);
+        if (first == '-' || first == '+') {
+            negative = first == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int fractionDigits = 0;
+        boolean seenPoint = false;
+        boolean seenDigit = false;
+        for (; i < end; i++) {
+            char c = input.charAt(i);
+            if (c >= '0' && c <= '9') {
+                seenDigit = true;
+                if (mantissa != 0 || c != '0') {
+                    digits++;
+                }
+                if (digits > 15) {
+                    return Double.parseDouble(getString(field));
+                }
+                mantissa = mantissa * 10 + (c - '0');
+                if (seenPoint) {
+                    fractionDigits++;
+                }
+            } else if (c == '.' && !seenPoint) {
+                seenPoint = true;
+            } else {
+                return Double.parseDouble(getString(field));
+            }
+        }
+        if (!seenDigit || fractionDigits >= POWERS_OF_TEN.length) {
+            return Double.parseDouble(getString(field));
+        }
+        double value = mantissa / POWERS_OF_TEN[fractionDigits];
+        return negative ? -value : value;
+    }
+
+    private void addField(int start, int end, boolean hasEscapes) {
+        if (fieldCount == starts.length) {
+            int capacity = fieldCount * 2;
+            starts = Arrays.copyOf(starts, capacity);
+            ends = Arrays.copyOf(ends, capacity);
+            escaped = Arrays.copyOf(escaped, capacity);
+        }
+        starts[fieldCount] = start;
+        ends[fieldCount] = end;
+        escaped[fieldCount] = hasEscapes;
+        fieldCount++;
+    }
+
+    private void checkField(int field) {
+        if (field < 0 || field >= fieldCount) {
+            throw new IndexOutOfBoundsException("Field " + field + " of " + fieldCount);
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package info.matthewryan.workoutlogger.utils;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.zone.ZoneOffsetTransition;
+import java.time.zone.ZoneRules;
+import java.util.Arrays;
+
+/**
+ * Parses the fixed {@code yyyy-MM-dd HH:mm:ss} layout of the CSV exports arithmetically into epoch
+ * milliseconds in a given zone. The epoch millisecond at which each local day starts is cached in a
+ * small direct-mapped table, so a timestamp on an already seen day costs a few multiplications.
+ * Days containing a zone offset transition are resolved through java.time instead. Instances are
+ * not thread-safe; give each parsing thread its own.
+ */
+public class FixedTimestampParser {
+
+    private static final int LAYOUT_LENGTH = 19;
+    private static final int CACHE_SIZE = 1024;  // Power of two
+    private static final long MILLIS_PER_DAY = 86_400_000L;
+    private static final long NO_FIXED_OFFSET = Long.MIN_VALUE;
+
+    private final ZoneId zone;
+    private final ZoneRules rules;
+
+    // Direct-mapped cache: epoch day -> epoch milli of local midnight, or NO_FIXED_OFFSET
+    private final long[] cachedDays = new long[CACHE_SIZE];
+    private final long[] cachedDayStarts = new long[CACHE_SIZE];
+
+    private long lastEpochDay;
+
+    public FixedTimestampParser() {
+        this(ZoneId.systemDefault());
+    }
+
+    public FixedTimestampParser(ZoneId zone) {
+        this.zone = zone;
+        this.rules = zone.getRules();
+        Arrays.fill(cachedDays, Long.MIN_VALUE);
+    }
+
+    public long parse(CharSequence text) {
+        return parse(text, 0, text.length());
+    }
+
+    // Parse text[start, end) as yyyy-MM-dd HH:mm:ss and return epoch milliseconds
+    public long parse(CharSequence text, int start, int end) {
+        if (end - start != LAYOUT_LENGTH
+                || text.charAt(start + 4) != '-' || text.charAt(start + 7) != '-'
+                || text.charAt(start + 10) != ' '
+                || text.charAt(start + 13) != ':' || text.charAt(start + 16) != ':') {
+            throw new IllegalArgumentException("Expected yyyy-MM-dd HH:mm:ss but got: " + text.subSequence(start, end));
+        }
+
+        int year = digits(text, start, 4);
+        int month = digits(text, start + 5, 2);
+        int day = digits(text, start + 8, 2);
+        int hour = digits(text, start + 11, 2);
+        int minute = digits(text, start + 14, 2);
+        int second = digits(text, start + 17, 2);
+
+        if (month < 1 || month > 12 || day < 1 || day > lengthOfMonth(year, month)
+                || hour > 23 || minute > 59 || second > 59) {
+            throw new IllegalArgumentException("Invalid date/time: " + text.subSequence(start, end));
+        }
+
+        long epochDay = epochDay(year, month, day);
+        lastEpochDay = epochDay;
+
+        long dayStart = dayStart(epochDay);
+        if (dayStart == NO_FIXED_OFFSET) {
+            // The offset changes during this day, let java.time resolve gaps and overlaps
+            return LocalDateTime.of(year, month, day, hour, minute, second)
+                    .atZone(zone).toInstant().toEpochMilli();
+        }
+        return dayStart + ((hour * 60L + minute) * 60L + second) * 1000L;
+    }
+
+    // Local epoch day of the last parsed timestamp, handy as a per-day session key
+    public long getLastEpochDay() {
+        return lastEpochDay;
+    }
+
+    private long dayStart(long epochDay) {
+        int slot = (int) (epochDay & (CACHE_SIZE - 1));
+        if (cachedDays[slot] == epochDay) {
+            return cachedDayStarts[slot];
+        }
+
+        LocalDate date = LocalDate.ofEpochDay(epochDay);
+        ZonedDateTime startOfDay = date.atStartOfDay(zone);
+        long start = startOfDay.toInstant().toEpochMilli();
+        // A gap at midnight starts the day later than 00:00, e.g. at 01:00, with the transition
+        // sitting exactly at start where nextTransition does not see it
+        ZoneOffsetTransition transition = rules.nextTransition(Instant.ofEpochMilli(start));
+        boolean fixedOffset = startOfDay.toLocalTime().equals(LocalTime.MIDNIGHT)
+                && (transition == null || transition.getInstant().toEpochMilli() >= start + MILLIS_PER_DAY);
+
+        long value = fixedOffset ? start : NO_FIXED_OFFSET;
+        cachedDays[slot] = epochDay;
+        cachedDayStarts[slot] = value;
+        return value;
+    }
+
+    // Days since 1970-01-01 for a proleptic Gregorian date (same algorithm as LocalDate.toEpochDay)
+    private static long epochDay(int year, int month, int day) {
+        long y = year;
+        long total = 365 * y;
+        if (y >= 0) {
+            total += (y + 3) / 4 - (y + 99) / 100 + (y + 399) / 400;
+        } else {
+            total -= y / -4 - y / -100 + y / -400;
+        }
+        total += (367 * month - 362) / 12;
+        total += day - 1;
+        if (month > 2) {
+            total--;
+            if (!isLeapYear(year)) {
+                total--;
+            }
+        }
+        return total - 719528;  // Days from year 0 to 1970
+    }
+
+    private static int lengthOfMonth(int year, int month) {
+        switch (month) {
+            case 2:
+                return isLeapYear(year) ? 29 : 28;
+            case 4:
+            case 6:
+            case 9:
+            case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+
+    private static boolean isLeapYear(int year) {
+        return (year & 3) == 0 && (year % 100 != 0 || year % 400 == 0);
+    }
+
+    private static int digits(CharSequence text, int start, int count) {
+        int value = 0;
+        for (int i = start; i < start + count; i++) {
+            int digit = text.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                throw new IllegalArgumentException("Expected digit at " + i + " in: " + text);
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+}
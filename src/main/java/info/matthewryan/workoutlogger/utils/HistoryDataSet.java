@@ -0,0 +1,133 @@
+package info.matthewryan.workoutlogger.utils;
+
+import info.matthewryan.workoutlogger.model.ActivityColumns;
+import info.matthewryan.workoutlogger.model.HistoryColumns;
+import info.matthewryan.workoutlogger.model.PersonalBest;
+import io.fair_acc.dataset.DataSet;
+import io.fair_acc.dataset.events.ChartBits;
+import io.fair_acc.dataset.spi.AbstractDataSet;
+
+/**
+ * Chart data set that reads one exercise's sets straight out of {@link HistoryColumns}, such as
+ * the memory-mapped history snapshot, without copying them: x is a set's timestamp and y one
+ * {@link Measure} of it, worked out from reps and weight when the chart reads the point.
+ * Switching exercise only looks up the exercise's row range. To draw fewer points than the
+ * exercise has, e.g. an LTTB selection, pass the rows to show; their values stay where they are.
+ */
+@SuppressWarnings("unchecked")  // AbstractDataSet.lock() implements the generic DataSet.lock()
+public class HistoryDataSet extends AbstractDataSet<HistoryDataSet> {
+
+    private static final long serialVersionUID = 1L;
+
+    public enum Measure {
+        VOLUME,
+        MAX_WEIGHT,
+        ESTIMATED_ONE_REP_MAX;
+
+        public double of(int reps, double weight) {
+            switch (this) {
+                case MAX_WEIGHT:
+                    return weight;
+                case ESTIMATED_ONE_REP_MAX:
+                    return PersonalBest.estimateOneRepMax(reps, weight);
+                default:
+                    return reps * weight;
+            }
+        }
+    }
+
+    private Measure measure;
+    private transient HistoryColumns columns = ActivityColumns.empty();
+    // Rows of the exercise, [start, end)
+    private int start;
+    private int end;
+    // Rows shown, as ascending offsets from start, when only some are; null shows them all
+    private int[] selected;
+    private int selectedCount;
+
+    public HistoryDataSet(String name, Measure measure) {
+        super(name, 2);
+        this.measure = measure;
+    }
+
+    public Measure getMeasure() {
+        return measure;
+    }
+
+    // Show every set of one exercise
+    public HistoryDataSet setExercise(HistoryColumns columns, int exerciseId) {
+        lock().writeLockGuard(() -> {
+            this.columns = columns;
+            start = columns.getExerciseStart(exerciseId);
+            end = columns.getExerciseEnd(exerciseId);
+            selected = null;
+        });
+        fireInvalidated(ChartBits.DataSetData);
+        return getThis();
+    }
+
+    // Show only count of the exercise's sets, given as ascending offsets from its first row.
+    // The array is kept, not copied; null shows every set again.
+    public HistoryDataSet select(int[] rows, int count) {
+        if (rows != null && (count < 0 || count > rows.length)) {
+            throw new IndexOutOfBoundsException("Count " + count + " of " + rows.length);
+        }
+        lock().writeLockGuard(() -> {
+            selected = rows;
+            selectedCount = count;
+        });
+        fireInvalidated(ChartBits.DataSetData);
+        return getThis();
+    }
+
+    // Number of sets the exercise has, shown or not
+    public int getRowCount() {
+        return end - start;
+    }
+
+    // Timestamp and measure of the exercise's set at an offset from its first row
+    public double getRowX(int offset) {
+        return columns.getTimestamp(start + offset);
+    }
+
+    public double getRowY(int offset) {
+        int row = start + offset;
+        return measure.of(columns.getReps(row), columns.getWeight(row));
+    }
+
+    @Override
+    public double get(int dimIndex, int index) {
+        int offset = selected == null ? index : selected[index];
+        return dimIndex == DIM_X ? getRowX(offset) : getRowY(offset);
+    }
+
+    @Override
+    public int getDataCount() {
+        return selected == null ? end - start : selectedCount;
+    }
+
+    // Show what another HistoryDataSet shows, reading the same columns in place; copy only
+    // decides whether its selection of rows is shared or copied. Other data sets hold values
+    // of their own, with nothing to read them from, and are not accepted.
+    @Override
+    public DataSet set(DataSet other, boolean copy) {
+        if (!(other instanceof HistoryDataSet)) {
+            throw new UnsupportedOperationException("HistoryDataSet is a view of history columns and can only show "
+                    + "another HistoryDataSet, not a " + other.getClass().getSimpleName());
+        }
+        HistoryDataSet source = (HistoryDataSet) other;
+        if (source == this) {
+            return getThis();
+        }
+        source.lock().readLockGuard(() -> lock().writeLockGuard(() -> {
+            measure = source.measure;
+            columns = source.columns;
+            start = source.start;
+            end = source.end;
+            selected = copy && source.selected != null ? source.selected.clone() : source.selected;
+            selectedCount = source.selectedCount;
+        }));
+        fireInvalidated(ChartBits.DataSetData);
+        return getThis();
+    }
+}
@@ -0,0 +1,40 @@
+package info.matthewryan.workoutlogger.utils;
+
+public class ImportResult {
+
+    private final long importedRows;
+    private final long skippedRows;
+    private final long elapsedNanos;
+
+    public ImportResult(long importedRows, long skippedRows, long elapsedNanos) {
+        this.importedRows = importedRows;
+        this.skippedRows = skippedRows;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public long getImportedRows() {
+        return importedRows;
+    }
+
+    public long getSkippedRows() {
+        return skippedRows;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedNanos / 1_000_000L;
+    }
+
+    // Throughput of the import, in committed rows per second
+    public double getRowsPerSecond() {
+        if (elapsedNanos <= 0) {
+            return 0.0;
+        }
+        return importedRows * 1_000_000_000.0 / elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ImportResult{imported=%d, skipped=%d, elapsedMs=%d, rowsPerSecond=%.0f}",
+                importedRows, skippedRows, getElapsedMillis(), getRowsPerSecond());
+    }
+}
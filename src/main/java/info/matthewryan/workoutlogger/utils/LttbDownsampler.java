@@ -0,0 +1,92 @@
+package info.matthewryan.workoutlogger.utils;
+
+import java.util.function.IntToDoubleFunction;
+
+/**
+ * Largest-Triangle-Three-Buckets downsampling (Steinarsson, 2013). The first and last points
+ * are always kept; the points between them are split into buckets of equal size, and from
+ * each bucket the one point is kept that forms the largest triangle with the point kept from
+ * the previous bucket and the average of the next bucket. That keeps the shape of the series,
+ * including isolated peaks, with one point per bucket, so a chart fed threshold points per
+ * axis width draws in time bounded by its width rather than by the length of the series.
+ */
+public final class LttbDownsampler {
+
+    private LttbDownsampler() {
+    }
+
+    // Indices, ascending, of at most threshold points of x[from, to) and y[from, to) to draw.
+    // x must be in ascending order. Every index is returned when there are no more points than
+    // the threshold, or the threshold is below 3.
+    public static int[] downsample(double[] x, double[] y, int from, int to, int threshold) {
+        if (from < 0 || to > x.length || to > y.length || from > to) {
+            throw new IndexOutOfBoundsException("Range " + from + " to " + to + " of " + Math.min(x.length, y.length));
+        }
+        return downsample(i -> x[i], i -> y[i], from, to, threshold);
+    }
+
+    // The same over points read through accessors, for series that are not held in arrays
+    public static int[] downsample(IntToDoubleFunction x, IntToDoubleFunction y, int from, int to, int threshold) {
+        if (from < 0 || from > to) {
+            throw new IndexOutOfBoundsException("Range " + from + " to " + to);
+        }
+        int count = to - from;
+        if (count <= threshold || threshold < 3) {
+            int[] all = new int[count];
+            for (int i = 0; i < count; i++) {
+                all[i] = from + i;
+            }
+            return all;
+        }
+
+        int[] selected = new int[threshold];
+        int kept = 0;
+        selected[kept++] = from;
+
+        // Buckets over the points between the first and the last
+        double bucketSize = (double) (count - 2) / (threshold - 2);
+        int previous = from;
+        for (int bucket = 0; bucket < threshold - 2; bucket++) {
+            int bucketStart = from + 1 + (int) (bucket * bucketSize);
+            int bucketEnd = from + 1 + (int) ((bucket + 1) * bucketSize);
+
+            // Average of the next bucket; the last point stands in for the one after the last bucket
+            int nextStart = bucketEnd;
+            int nextEnd = Math.min(to - 1, from + 1 + (int) ((bucket + 2) * bucketSize));
+            double averageX;
+            double averageY;
+            if (nextStart >= nextEnd) {
+                averageX = x.applyAsDouble(to - 1);
+                averageY = y.applyAsDouble(to - 1);
+            } else {
+                double sumX = 0;
+                double sumY = 0;
+                for (int i = nextStart; i < nextEnd; i++) {
+                    sumX += x.applyAsDouble(i);
+                    sumY += y.applyAsDouble(i);
+                }
+                averageX = sumX / (nextEnd - nextStart);
+                averageY = sumY / (nextEnd - nextStart);
+            }
+
+            // Twice the triangle's area is enough to compare
+            double previousX = x.applyAsDouble(previous);
+            double previousY = y.applyAsDouble(previous);
+            double largestArea = -1;
+            int largest = bucketStart;
+            for (int i = bucketStart; i < bucketEnd; i++) {
+                double area = Math.abs((previousX - averageX) * (y.applyAsDouble(i) - previousY)
+                        - (previousX - x.applyAsDouble(i)) * (averageY - previousY));
+                if (area > largestArea) {
+                    largestArea = area;
+                    largest = i;
+                }
+            }
+            selected[kept++] = largest;
+            previous = largest;
+        }
+
+        selected[kept] = to - 1;
+        return selected;
+    }
+}
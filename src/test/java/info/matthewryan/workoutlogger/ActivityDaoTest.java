@@ -1,14 +1,25 @@
 package info.matthewryan.workoutlogger;
 
+import info.matthewryan.workoutlogger.persistence.ActivityBatchInserter;
 import info.matthewryan.workoutlogger.persistence.ActivityDao;
+import info.matthewryan.workoutlogger.persistence.ExerciseDao;
+import info.matthewryan.workoutlogger.model.ActivityColumns;
 import info.matthewryan.workoutlogger.model.ActivityRecord;
+import info.matthewryan.workoutlogger.model.ActivityRow;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.sql.*;
+import java.text.SimpleDateFormat;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -118,6 +129,191 @@ class ActivityDaoTest extends UnitTestBase {
         assertEquals(60.0, firstRecord.getWeight(), "First record should have weight 40.0 kg");
     }
 
+    @Test
+    void testInsertActivitiesBatch() throws SQLException {
+        int exerciseId = insertExerciseIfNotExists("Bench Press");
+
+        // Build more records than one chunk so several commits happen
+        List<ActivityRecord> activityRecords = new ArrayList<>();
+        for (int i = 0; i < 250; i++) {
+            activityRecords.add(new ActivityRecord(exerciseId, 5, 100.0 + i, 1635288019000L + i * 1000L, 1));
+        }
+
+        long inserted;
+        try (ActivityBatchInserter inserter = dao.openBatchInserter(100)) {
+            for (ActivityRecord record : activityRecords) {
+                inserter.add(record);
+            }
+            inserter.flush();
+            inserted = inserter.getInsertedCount();
+        }
+
+        assertEquals(250, inserted, "All records should be committed");
+        assertTrue(connection.getAutoCommit(), "Auto-commit should be restored after the batch");
+
+        List<ActivityRecord> activities = dao.getAllActivitiesOrderedByTimestamp();
+        assertEquals(250, activities.size(), "All batched records should be readable");
+        assertEquals(349.0, activities.get(0).getWeight(), "Latest record should be the last one added");
+
+        // The list variant inserts everything in one transaction
+        assertEquals(2, dao.insertActivities(activityRecords.subList(0, 2)));
+        assertEquals(252, dao.getAllActivitiesOrderedByTimestamp().size());
+    }
+
+    @Test
+    void testActivityRowsJoinExerciseNamesAndNumberSets() {
+        new ExerciseDao(connection).createExerciseTable();
+        int benchId = insertExerciseIfNotExists("Bench Press");
+        int curlId = insertExerciseIfNotExists("Bicep Curl");
+
+        // Two sessions, inserted out of time order
+        long base = 1635288019000L;
+        dao.insertActivity(new ActivityRecord(curlId, 10, 15.0, base + 120_000L, 1));
+        dao.insertActivity(new ActivityRecord(benchId, 5, 100.0, base, 1));
+        dao.insertActivity(new ActivityRecord(benchId, 5, 102.5, base + 60_000L, 1));
+        dao.insertActivity(new ActivityRecord(benchId, 8, 80.0, base + 86_400_000L, 2));
+
+        List<ActivityRow> sessionRows = dao.getActivityRowsForSession(1);
+        assertEquals(3, sessionRows.size());
+        assertEquals(List.of(1, 2, 3), sessionRows.stream().map(ActivityRow::getSetIndex).toList());
+        assertEquals(List.of("Bench Press", "Bench Press", "Bicep Curl"),
+                sessionRows.stream().map(ActivityRow::getExerciseName).toList());
+        String expectedTime = new SimpleDateFormat("HH:mm:ss").format(new Date(base));
+        assertEquals(expectedTime, sessionRows.get(0).getFormattedTime());
+
+        List<ActivityRow> allRows = dao.getActivityRowsOrderedByTimestamp();
+        assertEquals(4, allRows.size());
+        assertEquals(2, allRows.get(0).getSessionId(), "Newest row should come first");
+        assertEquals(1, allRows.get(0).getSetIndex(), "Set numbers restart for each session");
+        assertEquals(new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date(base + 86_400_000L)),
+                allRows.get(0).getFormattedDateTime());
+
+        // Filtering by date keeps the set numbers of the whole session
+        LocalDate day = Instant.ofEpochMilli(base + 120_000L).atZone(ZoneId.systemDefault()).toLocalDate();
+        List<ActivityRow> dayRows = dao.getActivityRowsByDate(day);
+        assertFalse(dayRows.isEmpty());
+        ActivityRow curl = dayRows.stream().filter(row -> row.getExerciseId() == curlId).findFirst().orElseThrow();
+        assertEquals(3, curl.getSetIndex());
+    }
+
+    @Test
+    void testActivityRowsPaging() throws SQLException {
+        new ExerciseDao(connection).createExerciseTable();
+        int exerciseId = insertExerciseIfNotExists("Bench Press");
+
+        // Pairs of rows share a timestamp so the id part of the cursor matters
+        List<ActivityRecord> records = new ArrayList<>();
+        long base = 1635288019000L;
+        for (int i = 0; i < 25; i++) {
+            records.add(new ActivityRecord(exerciseId, 5, 100.0 + i, base + (i / 2) * 1000L, 1));
+        }
+        dao.insertActivities(records);
+        assertEquals(25, dao.countActivities());
+
+        List<ActivityRow> expected = dao.getActivityRowsOrderedByTimestamp();
+        List<ActivityRow> paged = new ArrayList<>();
+        List<ActivityRow> page = dao.getActivityRowsPage(10);
+        while (!page.isEmpty()) {
+            assertTrue(page.size() <= 10);
+            paged.addAll(page);
+            ActivityRow last = page.get(page.size() - 1);
+            page = dao.getActivityRowsPage(last.getTimestamp(), last.getId(), 10);
+        }
+
+        assertEquals(25, paged.size(), "Every row should be returned exactly once");
+        assertEquals(paged.stream().map(ActivityRow::getId).distinct().count(), 25);
+        for (int i = 1; i < paged.size(); i++) {
+            ActivityRow previous = paged.get(i - 1);
+            ActivityRow current = paged.get(i);
+            assertTrue(previous.getTimestamp() > current.getTimestamp()
+                    || (previous.getTimestamp() == current.getTimestamp() && previous.getId() > current.getId()),
+                    "Pages should be ordered newest first");
+        }
+
+        // Set numbers on a page match those computed over the whole session
+        for (ActivityRow row : paged) {
+            ActivityRow full = expected.stream().filter(r -> r.getId() == row.getId()).findFirst().orElseThrow();
+            assertEquals(full.getSetIndex(), row.getSetIndex());
+            assertEquals("Bench Press", row.getExerciseName());
+        }
+    }
+
+    @Test
+    void testStreamingReaders() throws SQLException {
+        List<ActivityRecord> records = new ArrayList<>();
+        long base = 1635288019000L;
+        for (int i = 0; i < 30; i++) {
+            // Inserted newest first to check the readers sort oldest first
+            records.add(new ActivityRecord(i % 3 + 1, i, 50.0 + i, base - i * 1000L, 7));
+        }
+        dao.insertActivities(records);
+
+        long[] previousTimestamp = {Long.MIN_VALUE};
+        double[] totalWeight = {0};
+        long visited = dao.forEachActivity((exerciseId, reps, weight, timestamp, sessionId) -> {
+            assertTrue(timestamp >= previousTimestamp[0], "Rows should be visited oldest first");
+            assertEquals(7, sessionId);
+            previousTimestamp[0] = timestamp;
+            totalWeight[0] += weight;
+        });
+        assertEquals(30, visited);
+        assertEquals(records.stream().mapToDouble(ActivityRecord::getWeight).sum(), totalWeight[0], 1e-9);
+
+        long visitedForExercise = dao.forEachActivityOfExercise(2,
+                (exerciseId, reps, weight, timestamp, sessionId) -> assertEquals(2, exerciseId));
+        assertEquals(10, visitedForExercise);
+
+        try (Stream<ActivityRecord> stream = dao.streamActivities()) {
+            List<ActivityRecord> streamed = stream.toList();
+            assertEquals(30, streamed.size());
+            assertEquals(base - 29_000L, streamed.get(0).getTimestamp());
+            assertTrue(streamed.get(0).getId() > 0, "Streamed records should carry their id");
+        }
+
+        // Streams can stop early and still release the statement on close
+        try (Stream<ActivityRecord> stream = dao.streamActivities()) {
+            assertEquals(5, stream.limit(5).count());
+        }
+        dao.insertActivity(new ActivityRecord(1, 1, 1.0, base, 7));
+        assertEquals(31, dao.countActivities());
+    }
+
+    @Test
+    void testLoadActivityColumns() throws SQLException {
+        List<ActivityRecord> records = new ArrayList<>();
+        long base = 1635288019000L;
+        for (int i = 0; i < 40; i++) {
+            records.add(new ActivityRecord(4 - i % 4, i, 50.0 + i, base - i * 1000L, i / 10));
+        }
+        dao.insertActivities(records);
+
+        ActivityColumns columns = dao.loadActivityColumns();
+        assertEquals(40, columns.size());
+        assertArrayEquals(new int[]{1, 2, 3, 4}, columns.getExerciseIds());
+        for (int exerciseId = 1; exerciseId <= 4; exerciseId++) {
+            int start = columns.getExerciseStart(exerciseId);
+            int end = columns.getExerciseEnd(exerciseId);
+            assertEquals(10, end - start);
+            for (int row = start; row < end; row++) {
+                assertEquals(exerciseId, columns.getExerciseId(row));
+                if (row > start) {
+                    assertTrue(columns.getTimestamp(row) >= columns.getTimestamp(row - 1));
+                }
+            }
+        }
+
+        double expectedVolume = records.stream().mapToDouble(r -> r.getReps() * r.getWeight()).sum();
+        double volume = 0;
+        for (int row = 0; row < columns.size(); row++) {
+            volume += columns.getReps(row) * columns.getWeight(row);
+        }
+        assertEquals(expectedVolume, volume, 1e-6);
+
+        ActivityColumns single = dao.loadActivityColumns(2);
+        assertEquals(10, single.size());
+        assertArrayEquals(new int[]{2}, single.getExerciseIds());
+    }
+
     // Helper method to insert an exercise if it does not exist
     private int insertExerciseIfNotExists(String exerciseName) {
         try (Statement stmt = connection.createStatement()) {
@@ -0,0 +1,136 @@
+package info.matthewryan.workoutlogger;
+
+import info.matthewryan.workoutlogger.model.ActivityRecord;
+import info.matthewryan.workoutlogger.persistence.ActivityDao;
+import info.matthewryan.workoutlogger.persistence.Database;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DatabaseTest {
+
+    @TempDir
+    Path tempDir;
+
+    private Database database;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        database = new Database("jdbc:sqlite:" + tempDir.resolve("workouts.db"), 2);
+        database.write(connection -> {
+            new ActivityDao(connection).createActivityTable();
+            return null;
+        }).get(5, TimeUnit.SECONDS);
+    }
+
+    @AfterEach
+    void tearDown() {
+        database.close();
+    }
+
+    @Test
+    void testConnectionsAreConfigured() throws Exception {
+        assertEquals("wal", database.write(connection -> pragma(connection.createStatement(), "journal_mode"))
+                .get(5, TimeUnit.SECONDS));
+        assertEquals("1", database.write(connection -> pragma(connection.createStatement(), "synchronous"))
+                .get(5, TimeUnit.SECONDS), "NORMAL");
+        assertEquals("2", database.read(connection -> pragma(connection.createStatement(), "temp_store")), "MEMORY");
+
+        // Readers cannot write
+        assertThrows(SQLException.class, () -> database.read(connection -> {
+            try (Statement stmt = connection.createStatement()) {
+                return stmt.executeUpdate("DELETE FROM activity_records");
+            }
+        }));
+    }
+
+    @Test
+    void testCloseReportsWhetherQueuedWritesFinished() {
+        assertFalse(database.isDrained());
+        CompletableFuture<Void> write = database.write(connection -> {
+            new ActivityDao(connection).insertActivity(new ActivityRecord(1, 5, 50.0, 1635288019000L, 1));
+            return null;
+        });
+        database.close();
+        assertTrue(write.isDone());
+        assertTrue(database.isDrained());
+    }
+
+    @Test
+    void testWritesRunInSubmissionOrder() throws Exception {
+        List<CompletableFuture<Void>> writes = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            ActivityRecord record = new ActivityRecord(1, i, 50.0, 1635288019000L + i, 1);
+            writes.add(database.write(connection -> {
+                new ActivityDao(connection).insertActivity(record);
+                return null;
+            }));
+        }
+        CompletableFuture.allOf(writes.toArray(new CompletableFuture<?>[0])).get(5, TimeUnit.SECONDS);
+
+        List<Integer> reps = database.read(connection -> {
+            List<Integer> values = new ArrayList<>();
+            try (Statement stmt = connection.createStatement();
+                 ResultSet rs = stmt.executeQuery("SELECT reps FROM activity_records ORDER BY id")) {
+                while (rs.next()) {
+                    values.add(rs.getInt(1));
+                }
+            }
+            return values;
+        });
+        assertEquals(20, reps.size());
+        for (int i = 0; i < reps.size(); i++) {
+            assertEquals(i, reps.get(i));
+        }
+    }
+
+    @Test
+    void testReadsRunWhileAWriteIsOpen() throws Exception {
+        CountDownLatch inTransaction = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Void> write = database.write(connection -> {
+            connection.setAutoCommit(false);
+            try {
+                new ActivityDao(connection).insertActivity(new ActivityRecord(1, 5, 100.0, 1635288019000L, 1));
+                inTransaction.countDown();
+                assertTrue(release.await(5, TimeUnit.SECONDS));
+                connection.commit();
+            } catch (InterruptedException e) {
+                connection.rollback();
+                throw new SQLException(e);
+            } finally {
+                connection.setAutoCommit(true);
+            }
+            return null;
+        });
+
+        assertTrue(inTransaction.await(5, TimeUnit.SECONDS));
+        // The open write transaction neither blocks the reader nor shows it uncommitted rows
+        long visible = database.read(connection -> new ActivityDao(connection).countActivities());
+        assertEquals(0, visible);
+
+        release.countDown();
+        write.get(5, TimeUnit.SECONDS);
+        visible = database.read(connection -> new ActivityDao(connection).countActivities());
+        assertEquals(1, visible);
+    }
+
+    private static String pragma(Statement stmt, String name) throws SQLException {
+        try (stmt; ResultSet rs = stmt.executeQuery("PRAGMA " + name)) {
+            return rs.getString(1);
+        }
+    }
+}
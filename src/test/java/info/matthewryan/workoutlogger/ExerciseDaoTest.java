@@ -1,6 +1,9 @@
 package info.matthewryan.workoutlogger;
 
+import info.matthewryan.workoutlogger.model.ActivityRecord;
 import info.matthewryan.workoutlogger.model.Exercise;
+import info.matthewryan.workoutlogger.persistence.ActivityBatchInserter;
+import info.matthewryan.workoutlogger.persistence.ActivityDao;
 import info.matthewryan.workoutlogger.persistence.ExerciseDao;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -150,6 +153,88 @@ class ExerciseDaoTest extends UnitTestBase {
         assertFalse(result, "Empty exercise should not be added");
     }
 
+    @Test
+    void testDictionaryStaysInSyncWithWrites() {
+        int benchId = exerciseDao.getExerciseIdByName("Bench Press");
+        assertNotEquals(-1, benchId, "Preloaded exercise should resolve");
+        assertEquals("Bench Press", exerciseDao.getExerciseNameById(benchId));
+
+        // getOrCreate writes through, and a second call resolves from memory to the same id
+        int newId = exerciseDao.getOrCreateExerciseId("Zercher Squat");
+        assertNotEquals(-1, newId);
+        assertEquals(newId, exerciseDao.getOrCreateExerciseId("Zercher Squat"));
+        assertEquals("Zercher Squat", exerciseDao.getExerciseNameById(newId));
+
+        // Deleting removes both directions
+        exerciseDao.deleteExercise(newId);
+        assertEquals(-1, exerciseDao.getExerciseIdByName("Zercher Squat"));
+        assertNull(exerciseDao.getExerciseNameById(newId));
+
+        // Other DAOs sharing the dictionary see the same names
+        ActivityDao activityDao = new ActivityDao(connection, exerciseDao.getExerciseDictionary());
+        activityDao.createActivityTable();
+        activityDao.insertActivity(new ActivityRecord(benchId, 5, 100.0, 1635288019000L, 1));
+        assertEquals(1, activityDao.getActivityDataByExercise("Bench Press").size());
+    }
+
+    @Test
+    void testDictionaryReadsThroughRowsWrittenElsewhere() throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.executeUpdate("INSERT INTO exercises (name) VALUES ('Hill Sprint')");
+        }
+        assertNotEquals(-1, exerciseDao.getExerciseIdByName("Hill Sprint"), "Read through on first lookup");
+
+        // A miss is remembered, so a row written elsewhere afterwards needs an invalidate
+        assertEquals(-1, exerciseDao.getExerciseIdByName("Sled Push"));
+        try (Statement stmt = connection.createStatement()) {
+            stmt.executeUpdate("INSERT INTO exercises (name) VALUES ('Sled Push')");
+        }
+        assertEquals(-1, exerciseDao.getExerciseIdByName("Sled Push"));
+        exerciseDao.getExerciseDictionary().invalidate();
+        int id = exerciseDao.getExerciseIdByName("Sled Push");
+        assertNotEquals(-1, id, "Rows inserted outside the DAO should still resolve");
+        assertEquals("Sled Push", exerciseDao.getExerciseNameById(id));
+
+        exerciseDao.clearExercisesTable();
+        assertEquals(-1, exerciseDao.getExerciseIdByName("Sled Push"));
+    }
+
+    @Test
+    void testDictionaryRemembersMisses() throws SQLException {
+        assertNull(exerciseDao.getExerciseNameById(99_999));
+        assertEquals(-1, exerciseDao.getExerciseIdByName("Nordic Curl"));
+        // Rows the lookups would now find, were they still querying
+        try (Statement stmt = connection.createStatement()) {
+            stmt.executeUpdate("INSERT INTO exercises (id, name) VALUES (99999, 'Copenhagen Plank')");
+        }
+        assertNull(exerciseDao.getExerciseNameById(99_999));
+
+        assertTrue(exerciseDao.insertExercise("Nordic Curl", false));
+        assertNotEquals(-1, exerciseDao.getExerciseIdByName("Nordic Curl"), "Putting a name clears its miss");
+        exerciseDao.getExerciseDictionary().invalidate();
+        assertEquals("Copenhagen Plank", exerciseDao.getExerciseNameById(99_999));
+    }
+
+    @Test
+    void testDictionaryForgetsExercisesOfRolledBackChunk() throws SQLException {
+        ActivityDao activityDao = new ActivityDao(connection, exerciseDao.getExerciseDictionary());
+        activityDao.createActivityTable();
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("CREATE TRIGGER reject_negative_weight BEFORE INSERT ON activity_records " +
+                    "WHEN NEW.weight < 0 BEGIN SELECT RAISE(ABORT, 'negative weight'); END");
+        }
+
+        // The exercise is created inside the chunk's transaction, like an import does
+        try (ActivityBatchInserter inserter = activityDao.openBatchInserter(10)) {
+            int id = exerciseDao.getOrCreateExerciseId("Jefferson Curl");
+            assertNotEquals(-1, id);
+            inserter.add(new ActivityRecord(id, 5, -1.0, 1635288019000L, 1));
+            assertThrows(SQLException.class, inserter::flush);
+        }
+
+        assertEquals(-1, exerciseDao.getExerciseIdByName("Jefferson Curl"), "Rolled back exercise is forgotten");
+    }
+
     private boolean insertAndCheckExercise(String exerciseName) {
         return exerciseDao.insertExercise(exerciseName, false);
     }
@@ -0,0 +1,158 @@
+package info.matthewryan.workoutlogger;
+
+import info.matthewryan.workoutlogger.model.ActivityColumns;
+import info.matthewryan.workoutlogger.model.ActivityRecord;
+import info.matthewryan.workoutlogger.persistence.ActivityBatchInserter;
+import info.matthewryan.workoutlogger.persistence.ActivityDao;
+import info.matthewryan.workoutlogger.persistence.HistorySnapshot;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HistorySnapshotTest {
+
+    private static final long BASE = 1635288019000L;
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testSnapshotMatchesColumns() throws Exception {
+        ActivityColumns.Builder builder = ActivityColumns.builder(8);
+        builder.add(3, 5, 100.0, BASE + 2000, 1);
+        builder.add(1, 8, 60.0, BASE, 1);
+        builder.add(3, 3, 110.5, BASE + 3000, 2);
+        builder.add(1, 8, 62.5, BASE + 1000, 1);
+        ActivityColumns columns = builder.build();
+        Map<Integer, String> names = Map.of(1, "Bench Press", 3, "Squat – Low Bar");
+
+        Path file = tempDir.resolve("history.snapshot");
+        HistorySnapshot.write(file, 42, columns, names::get);
+        HistorySnapshot snapshot = HistorySnapshot.open(file);
+
+        assertEquals(42, snapshot.getChangeCounter());
+        assertEquals(columns.size(), snapshot.size());
+        assertArrayEquals(new int[]{1, 3}, snapshot.getExerciseIds());
+        assertEquals("Squat – Low Bar", snapshot.getExerciseName(3));
+        for (int row = 0; row < columns.size(); row++) {
+            assertEquals(columns.getExerciseId(row), snapshot.getExerciseId(row));
+            assertEquals(columns.getTimestamp(row), snapshot.getTimestamp(row));
+            assertEquals(columns.getReps(row), snapshot.getReps(row));
+            assertEquals(columns.getWeight(row), snapshot.getWeight(row));
+            assertEquals(columns.getSessionId(row), snapshot.getSessionId(row));
+        }
+        for (int exerciseId = 0; exerciseId <= 4; exerciseId++) {
+            assertEquals(columns.getExerciseStart(exerciseId), snapshot.getExerciseStart(exerciseId));
+            assertEquals(columns.getExerciseEnd(exerciseId), snapshot.getExerciseEnd(exerciseId));
+        }
+
+        ActivityColumns squat = snapshot.getActivityColumns(3);
+        assertEquals(2, squat.size());
+        assertEquals(110.5, squat.getWeight(1));
+        assertTrue(snapshot.getActivityColumns(2).isEmpty());
+
+        // Writing again replaces the file in one step
+        HistorySnapshot.write(file, 43, ActivityColumns.empty(), names::get);
+        assertTrue(HistorySnapshot.open(file).isEmpty());
+        assertFalse(Files.exists(tempDir.resolve("history.snapshot.tmp")));
+    }
+
+    @Test
+    void testRewritesGoToNewGenerations() throws Exception {
+        ActivityColumns.Builder builder = ActivityColumns.builder(2);
+        builder.add(1, 8, 60.0, BASE, 1);
+        ActivityColumns columns = builder.build();
+        Path base = tempDir.resolve("history.snapshot");
+        assertNull(HistorySnapshot.latestGeneration(base));
+
+        Path first = HistorySnapshot.nextGeneration(base);
+        HistorySnapshot.write(first, 1, columns, id -> "Bench Press");
+        HistorySnapshot mapped = HistorySnapshot.open(first);
+
+        // The mapped file is left alone; the rewrite goes next to it
+        Path second = HistorySnapshot.nextGeneration(base);
+        assertNotEquals(first, second);
+        HistorySnapshot.write(second, 2, columns, id -> "Bench Press");
+        assertEquals(second, HistorySnapshot.latestGeneration(base));
+        assertEquals(1, mapped.getChangeCounter());
+        assertEquals(BASE, mapped.getTimestamp(0));
+
+        Files.writeString(base, "unnumbered");
+        Files.writeString(tempDir.resolve("history.snapshot.9.tmp"), "partial");
+        Files.writeString(tempDir.resolve("history.snapshot.old"), "not a generation");
+        HistorySnapshot.deleteOlderGenerations(base, second);
+        assertFalse(Files.exists(first));
+        assertFalse(Files.exists(base));
+        assertFalse(Files.exists(tempDir.resolve("history.snapshot.9.tmp")));
+        assertTrue(Files.exists(tempDir.resolve("history.snapshot.old")));
+        assertEquals(2, HistorySnapshot.open(HistorySnapshot.latestGeneration(base)).getChangeCounter());
+    }
+
+    @Test
+    void testTruncatedSnapshotIsRejected() throws Exception {
+        ActivityColumns.Builder builder = ActivityColumns.builder(2);
+        builder.add(1, 5, 100.0, BASE, 1);
+        Path file = tempDir.resolve("history.snapshot");
+        HistorySnapshot.write(file, 1, builder.build(), id -> "Deadlift");
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 4);
+        }
+        assertThrows(IOException.class, () -> HistorySnapshot.open(file));
+
+        Files.write(file, new byte[64]);
+        assertThrows(IOException.class, () -> HistorySnapshot.open(file));
+    }
+
+    @Test
+    void testChangeCounterFollowsActivityChanges() throws Exception {
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + tempDir.resolve("workouts.db"))) {
+            ActivityDao activityDao = new ActivityDao(connection);
+            activityDao.createActivityTable();
+            long initial = activityDao.getChangeCounter();
+
+            activityDao.insertActivities(List.of(
+                    new ActivityRecord(1, 5, 100.0, BASE, 1),
+                    new ActivityRecord(1, 5, 105.0, BASE + 1000, 1)));
+            long afterInsert = activityDao.getChangeCounter();
+            assertTrue(afterInsert > initial);
+
+            activityDao.deleteActivity(1);
+            assertTrue(activityDao.getChangeCounter() > afterInsert);
+
+            // Creating the table again keeps the count
+            long beforeRecreate = activityDao.getChangeCounter();
+            activityDao.createActivityTable();
+            assertEquals(beforeRecreate, activityDao.getChangeCounter());
+        }
+    }
+
+    @Test
+    void testBulkLoadMovesChangeCounterOnce() throws Exception {
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + tempDir.resolve("workouts.db"))) {
+            ActivityDao activityDao = new ActivityDao(connection);
+            activityDao.createActivityTable();
+            long initial = activityDao.getChangeCounter();
+
+            try (ActivityBatchInserter loader = activityDao.openBulkLoader(100)) {
+                for (int i = 0; i < 250; i++) {
+                    loader.add(new ActivityRecord(1, 5, 100.0, BASE + i * 1000L, 1));
+                }
+            }
+
+            assertEquals(initial + 1, activityDao.getChangeCounter());
+            assertEquals(250, activityDao.countActivities());
+        }
+    }
+}
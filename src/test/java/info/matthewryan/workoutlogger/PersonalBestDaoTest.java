@@ -0,0 +1,199 @@
+package info.matthewryan.workoutlogger;
+
+import info.matthewryan.workoutlogger.model.ActivityRecord;
+import info.matthewryan.workoutlogger.model.PersonalBest;
+import info.matthewryan.workoutlogger.persistence.ActivityDao;
+import info.matthewryan.workoutlogger.persistence.ExerciseDao;
+import info.matthewryan.workoutlogger.persistence.ExerciseDictionary;
+import info.matthewryan.workoutlogger.persistence.PersonalBestDao;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PersonalBestDaoTest extends UnitTestBase {
+
+    private static final long BASE = 1635288019000L;
+
+    private ActivityDao activityDao;
+    private PersonalBestDao personalBestDao;
+
+    @BeforeEach
+    @Override
+    protected void setUp() {
+        super.setUp();
+        activityDao = new ActivityDao(connection);
+        activityDao.createActivityTable();
+        personalBestDao = new PersonalBestDao(connection);
+        personalBestDao.createPersonalBestTable();
+    }
+
+    @Test
+    void testBestsFollowInserts() throws SQLException {
+        assertNull(personalBestDao.getPersonalBest(1), "No sets means no personal best");
+
+        insert(1, 5, 100.0, 0);   // e1RM 116.67, volume 500
+        insert(1, 1, 110.0, 1);   // Heaviest, e1RM 110
+        insert(1, 12, 80.0, 2);   // Volume 960, e1RM 112
+        insert(2, 3, 20.0, 3);    // Other exercise
+
+        PersonalBest best = personalBestDao.getPersonalBest(1);
+        assertEquals(110.0, best.getBestWeight());
+        assertEquals(BASE + 1000L, best.getBestWeightTimestamp());
+        assertEquals(960.0, best.getBestVolume(), 1e-9);
+        assertEquals(BASE + 2000L, best.getBestVolumeTimestamp());
+        assertEquals(PersonalBest.estimateOneRepMax(5, 100.0), best.getBestEstimatedOneRepMax(), 1e-9);
+        assertEquals(BASE, best.getBestEstimatedOneRepMaxTimestamp());
+
+        assertTrue(best.isBeatenBy(1, 112.5));
+        assertFalse(best.isBeatenBy(5, 90.0));
+        assertEquals(60.0, personalBestDao.getPersonalBest(2).getBestVolume(), 1e-9);
+    }
+
+    @Test
+    void testEqualSetKeepsEarliestHolder() throws SQLException {
+        long later = insert(1, 5, 100.0, 10);
+        long earlier = insert(1, 5, 100.0, 5);  // Logged afterwards but happened earlier
+        insert(1, 5, 100.0, 20);
+
+        PersonalBest best = personalBestDao.getPersonalBest(1);
+        assertEquals(earlier, best.getBestWeightActivityId());
+        assertEquals(earlier, best.getBestVolumeActivityId());
+
+        // Removing the holder hands the record to the next earliest equal set
+        assertTrue(activityDao.deleteActivity(earlier));
+        assertEquals(later, personalBestDao.getPersonalBest(1).getBestWeightActivityId());
+    }
+
+    @Test
+    void testActivityDaoReturnsStoredHolder() {
+        ExerciseDictionary dictionary = new ExerciseDictionary(connection);
+        ExerciseDao exerciseDao = new ExerciseDao(connection, dictionary);
+        exerciseDao.createExerciseTable();
+        int squat = exerciseDao.getOrCreateExerciseId("Squat");
+        ActivityDao squatDao = new ActivityDao(connection, dictionary);
+
+        long later = insert(squat, 5, 100.0, 10);
+        long earlier = insert(squat, 3, 100.0, 5);
+        insert(squat, 10, 90.0, 20);
+
+        ActivityRecord best = squatDao.getPersonalBest("Squat");
+        assertEquals(earlier, best.getId(), "Ties go to the earliest set, as in personal_bests");
+        assertEquals(100.0, best.getWeight());
+
+        assertTrue(activityDao.deleteActivity(earlier));
+        assertEquals(later, squatDao.getPersonalBest("Squat").getId());
+        assertNull(squatDao.getPersonalBest("Deadlift"));
+    }
+
+    @Test
+    void testActivityDaoFallsBackWithoutTheTable() throws SQLException {
+        ExerciseDictionary dictionary = new ExerciseDictionary(connection);
+        ExerciseDao exerciseDao = new ExerciseDao(connection, dictionary);
+        exerciseDao.createExerciseTable();
+        int squat = exerciseDao.getOrCreateExerciseId("Squat");
+        insert(squat, 5, 100.0, 10);
+        long heaviest = insert(squat, 1, 110.0, 20);
+
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("DROP TABLE personal_bests");
+        }
+        ActivityRecord best = new ActivityDao(connection, dictionary).getPersonalBest("Squat");
+        assertEquals(heaviest, best.getId(), "The heaviest set is read from activity_records");
+    }
+
+    @Test
+    void testDeletesRepairBests() throws SQLException {
+        long heaviest = insert(1, 1, 120.0, 0);
+        long bulkiest = insert(1, 10, 90.0, 1);
+        insert(1, 5, 100.0, 2);
+
+        assertTrue(activityDao.deleteActivity(heaviest));
+        PersonalBest best = personalBestDao.getPersonalBest(1);
+        assertEquals(100.0, best.getBestWeight());
+        assertEquals(bulkiest, best.getBestVolumeActivityId());
+
+        assertTrue(activityDao.deleteActivity(bulkiest));
+        best = personalBestDao.getPersonalBest(1);
+        assertEquals(500.0, best.getBestVolume(), 1e-9);
+
+        // Deleting the last set removes the exercise's bests
+        try (Statement stmt = connection.createStatement()) {
+            stmt.executeUpdate("DELETE FROM activity_records WHERE exercise_id = 1");
+        } catch (SQLException e) {
+            fail(e);
+        }
+        assertNull(personalBestDao.getPersonalBest(1));
+    }
+
+    @Test
+    void testIncrementalBestsMatchRebuild() throws SQLException {
+        Random random = new Random(42);
+        List<ActivityRecord> records = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            records.add(new ActivityRecord(1 + random.nextInt(5), 1 + random.nextInt(12),
+                    20 + random.nextInt(40) * 2.5, BASE + random.nextInt(100_000) * 1000L, 1));
+        }
+        activityDao.insertActivities(records);
+        try (Statement stmt = connection.createStatement()) {
+            stmt.executeUpdate("DELETE FROM activity_records WHERE id % 7 = 0");
+            stmt.executeUpdate("UPDATE activity_records SET weight = weight + 50 WHERE id % 11 = 0");
+        }
+
+        List<PersonalBest> incremental = new ArrayList<>();
+        for (int exerciseId = 1; exerciseId <= 5; exerciseId++) {
+            incremental.add(personalBestDao.getPersonalBest(exerciseId));
+        }
+        personalBestDao.rebuildPersonalBests();
+        for (int exerciseId = 1; exerciseId <= 5; exerciseId++) {
+            PersonalBest expected = personalBestDao.getPersonalBest(exerciseId);
+            PersonalBest actual = incremental.get(exerciseId - 1);
+            assertEquals(expected.toString(), actual.toString());
+            assertEquals(expected.getBestWeightActivityId(), actual.getBestWeightActivityId());
+            assertEquals(expected.getBestVolumeActivityId(), actual.getBestVolumeActivityId());
+            assertEquals(expected.getBestEstimatedOneRepMaxActivityId(), actual.getBestEstimatedOneRepMaxActivityId());
+        }
+    }
+
+    @Test
+    void testRebuildJoinsTheCallersTransaction() throws SQLException {
+        insert(3, 5, 60.0, 0);
+        connection.setAutoCommit(false);
+        try {
+            insert(3, 1, 200.0, 1);
+            personalBestDao.rebuildPersonalBests();
+            assertFalse(connection.getAutoCommit(), "The caller's transaction is still open");
+            assertEquals(200.0, personalBestDao.getPersonalBest(3).getBestWeight());
+            connection.rollback();
+        } finally {
+            connection.setAutoCommit(true);
+        }
+        // Nothing was committed halfway: the set and the rebuilt bests went with the rollback
+        assertEquals(60.0, personalBestDao.getPersonalBest(3).getBestWeight());
+    }
+
+    @Test
+    void testExistingHistoryIsBackfilled() throws SQLException {
+        insert(3, 5, 60.0, 0);
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("DROP TABLE personal_bests");
+        }
+        personalBestDao.createPersonalBestTable();
+        assertEquals(60.0, personalBestDao.getPersonalBest(3).getBestWeight());
+    }
+
+    private long insert(int exerciseId, int reps, double weight, int secondsAfterBase) {
+        activityDao.insertActivity(new ActivityRecord(exerciseId, reps, weight, BASE + secondsAfterBase * 1000L, 1));
+        try (Statement stmt = connection.createStatement()) {
+            return stmt.executeQuery("SELECT last_insert_rowid()").getLong(1);
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package info.matthewryan.workoutlogger;
+
+import info.matthewryan.workoutlogger.persistence.QueryMetrics;
+import info.matthewryan.workoutlogger.persistence.QueryStats;
+import info.matthewryan.workoutlogger.persistence.SessionDao;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class QueryMetricsTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testPercentilesFollowTheRecordedLatencies() {
+        QueryStats stats = QueryMetrics.forMethod(QueryMetricsTest.class, "percentiles");
+        stats.reset();
+        long now = System.nanoTime();
+        // 90 calls of at least 1 ms and 10 of at least 1 s, backdated so the elapsed time is known
+        for (int i = 0; i < 90; i++) {
+            stats.record(now - 1_000_000, 2);
+        }
+        for (int i = 0; i < 10; i++) {
+            stats.record(now - 1_000_000_000, 2);
+        }
+
+        assertEquals(100, stats.getCalls());
+        assertEquals(200, stats.getRows());
+        assertEquals(0, stats.getErrors());
+        assertTrue(stats.getP50Micros() >= 1000 && stats.getP50Micros() < 100_000, "p50 falls among the fast calls");
+        assertTrue(stats.getP99Micros() >= 1_000_000, "p99 falls among the slow calls");
+        assertTrue(stats.getP99Micros() <= stats.getMaxMicros());
+        assertTrue(stats.getMeanMicros() > 100_000);
+    }
+
+    @Test
+    void testTimedCallsRecordRowsAndErrors() {
+        QueryStats stats = QueryMetrics.forMethod(QueryMetricsTest.class, "timed");
+        stats.reset();
+
+        try (QueryStats.Timer timer = stats.start()) {
+            timer.succeeded(2);
+        }
+        try (QueryStats.Timer timer = stats.start()) {
+            timer.succeeded(3);
+        }
+        assertThrows(SQLException.class, () -> {
+            try (QueryStats.Timer timer = stats.start()) {
+                throw new SQLException("failed");
+            }
+        });
+
+        assertEquals(3, stats.getCalls());
+        assertEquals(5, stats.getRows());
+        assertEquals(1, stats.getErrors());
+    }
+
+    @Test
+    void testDaoCallsAreCounted() throws SQLException {
+        QueryStats getSession = QueryMetrics.forMethod(SessionDao.class, "getSessionById");
+        QueryStats endSession = QueryMetrics.forMethod(SessionDao.class, "endSession");
+        long callsBefore = getSession.getCalls();
+        long rowsBefore = getSession.getRows();
+        long errorsBefore = endSession.getErrors();
+
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + tempDir.resolve("metrics.db"))) {
+            SessionDao sessionDao = new SessionDao(connection);
+            sessionDao.createSessionTable();
+            sessionDao.restoreSession(7, 1000, 2000);
+            assertNotNull(sessionDao.getSessionById(7));
+            assertNull(sessionDao.getSessionById(8));
+
+            connection.createStatement().execute("DROP TABLE session");
+            assertThrows(SQLException.class, () -> sessionDao.endSession(7, 3000));
+        }
+
+        assertEquals(callsBefore + 2, getSession.getCalls());
+        assertEquals(rowsBefore + 1, getSession.getRows());
+        assertEquals(errorsBefore + 1, endSession.getErrors());
+    }
+
+    @Test
+    void testStatsArePublishedOverJmx() throws Exception {
+        QueryMetrics.forMethod(SessionDao.class, "getSessionById");
+        QueryMetrics.start(60_000);
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(
+                    "info.matthewryan.workoutlogger:type=QueryStats,dao=SessionDao,method=getSessionById");
+            long deadline = System.currentTimeMillis() + 5000;
+            while (!server.isRegistered(name) && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertTrue(server.isRegistered(name));
+            assertEquals("getSessionById", server.getAttribute(name, "Method"));
+            assertTrue((Long) server.getAttribute(name, "Calls") >= 0);
+        } finally {
+            QueryMetrics.stop();
+        }
+    }
+}
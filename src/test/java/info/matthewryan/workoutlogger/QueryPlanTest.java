@@ -0,0 +1,155 @@
+package info.matthewryan.workoutlogger;
+
+import info.matthewryan.workoutlogger.persistence.ActivityDao;
+import info.matthewryan.workoutlogger.persistence.ExerciseDao;
+import info.matthewryan.workoutlogger.persistence.ExerciseDictionary;
+import info.matthewryan.workoutlogger.persistence.PersonalBestDao;
+import info.matthewryan.workoutlogger.persistence.SessionDao;
+import info.matthewryan.workoutlogger.persistence.VolumeRollupDao;
+import info.matthewryan.workoutlogger.persistence.WorkoutDao;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Runs EXPLAIN QUERY PLAN for every read query the DAOs declare (static *_SQL constants starting
+// with SELECT) and fails when a filtered or ordered query scans a table that has an index
+class QueryPlanTest extends UnitTestBase {
+
+    private static final Logger logger = LoggerFactory.getLogger(QueryPlanTest.class);
+
+    private static final List<Class<?>> DAO_CLASSES = List.of(
+            ActivityDao.class, ExerciseDao.class, ExerciseDictionary.class, PersonalBestDao.class, SessionDao.class,
+            VolumeRollupDao.class, WorkoutDao.class);
+
+    // "SCAN TABLE activity_records AS a USING INDEX ..." (older SQLite) or "SCAN a USING INDEX ..." (newer)
+    private static final Pattern SCAN = Pattern.compile("^SCAN (?:TABLE )?(\\w+)(?: AS (\\w+))?(.*)$");
+
+    @BeforeEach
+    @Override
+    protected void setUp() {
+        super.setUp();
+
+        ExerciseDao exerciseDao = new ExerciseDao(connection);
+        exerciseDao.createExerciseTable();
+        exerciseDao.createVolumeGroupTable();
+        new ActivityDao(connection).createActivityTable();
+        new PersonalBestDao(connection).createPersonalBestTable();
+        new VolumeRollupDao(connection).createRollupTables();
+        new SessionDao(connection).createSessionTable();
+        WorkoutDao workoutDao = new WorkoutDao(connection);
+        workoutDao.createWorkoutTable();
+        workoutDao.createWorkoutExercisesTable();
+    }
+
+    @Test
+    void testDaoQueriesUseIndexes() throws Exception {
+        Map<String, String> queries = collectReadQueries();
+        assertTrue(queries.size() >= 10, "Expected to find the DAO read queries, found " + queries.keySet());
+
+        List<String> failures = new ArrayList<>();
+        for (Map.Entry<String, String> query : queries.entrySet()) {
+            String sql = query.getValue();
+            List<String> plan = explain(sql);
+            logger.info("{}:\n  {}", query.getKey(), String.join("\n  ", plan));
+
+            if (isFullRead(sql)) {
+                continue;  // Reads every row on purpose, a scan is the right plan
+            }
+            for (String step : plan) {
+                Matcher matcher = SCAN.matcher(step);
+                if (matcher.matches() && !matcher.group(3).contains("USING") && hasIndex(matcher.group(1))) {
+                    failures.add(query.getKey() + " scans " + matcher.group(1) + ": " + step);
+                }
+            }
+        }
+        assertTrue(failures.isEmpty(), "Queries not using an index:\n" + String.join("\n", failures));
+    }
+
+    @Test
+    void testActivityQueriesUseTheirIndex() throws Exception {
+        Map<String, String> queries = collectReadQueries();
+
+        assertPlanUses(queries.get("ActivityDao.SELECT_ACTIVITIES_BY_TIME_RANGE_SQL"), "idx_activity_records_timestamp");
+        assertPlanUses(queries.get("ActivityDao.SELECT_ACTIVITIES_BY_EXERCISE_SQL"), "COVERING INDEX idx_activity_records_exercise_timestamp");
+        assertPlanUses(queries.get("ActivityDao.SELECT_PERSONAL_BEST_SQL"), "INTEGER PRIMARY KEY");
+        assertPlanUses(queries.get("ActivityDao.SELECT_HEAVIEST_SET_SQL"), "idx_activity_records_exercise_weight");
+        assertPlanUses(queries.get("ActivityDao.SELECT_ACTIVITIES_FOR_SESSION_SQL"), "idx_activity_records_session_timestamp");
+        assertPlanUses(queries.get("ActivityDao.SELECT_ACTIVITY_ROWS_PAGE_SQL"), "idx_activity_records_timestamp (timestamp<?)");
+        assertPlanUses(queries.get("ActivityDao.SCAN_ACTIVITIES_SQL"), "idx_activity_records_timestamp");
+        assertPlanUses(queries.get("ActivityDao.SCAN_ACTIVITIES_BY_EXERCISE_SQL"), "COVERING INDEX idx_activity_records_exercise_timestamp");
+        assertPlanUses(queries.get("ActivityDao.SCAN_ACTIVITIES_BY_EXERCISE_ORDER_SQL"), "COVERING INDEX idx_activity_records_exercise_timestamp");
+
+        // The window function reads the session in index order; only its few output rows get sorted
+        List<String> plan = explain(queries.get("ActivityDao.SELECT_ACTIVITY_ROWS_FOR_SESSION_SQL"));
+        assertTrue(plan.stream().anyMatch(step -> step.contains("idx_activity_records_session_timestamp (session_id=?)")),
+                "Expected a session index search in plan " + plan);
+    }
+
+    // The query searches or walks the given index and needs no separate sort step
+    private void assertPlanUses(String sql, String index) throws SQLException {
+        assertNotNull(sql);
+        List<String> plan = explain(sql);
+        assertTrue(plan.stream().anyMatch(step -> step.contains(index)), "Expected " + index + " in plan " + plan);
+        assertTrue(plan.stream().noneMatch(step -> step.contains("TEMP B-TREE")), "Unexpected sort in plan " + plan);
+    }
+
+    private Map<String, String> collectReadQueries() throws IllegalAccessException {
+        Map<String, String> queries = new LinkedHashMap<>();
+        for (Class<?> daoClass : DAO_CLASSES) {
+            for (Field field : daoClass.getDeclaredFields()) {
+                int modifiers = field.getModifiers();
+                if (!Modifier.isStatic(modifiers) || field.getType() != String.class || !field.getName().endsWith("_SQL")) {
+                    continue;
+                }
+                field.setAccessible(true);
+                String sql = (String) field.get(null);
+                if (sql.trim().toUpperCase(Locale.ROOT).startsWith("SELECT")) {
+                    queries.put(daoClass.getSimpleName() + "." + field.getName(), sql);
+                }
+            }
+        }
+        return queries;
+    }
+
+    private List<String> explain(String sql) throws SQLException {
+        List<String> plan = new ArrayList<>();
+        try (PreparedStatement pstmt = connection.prepareStatement("EXPLAIN QUERY PLAN " + sql);
+             ResultSet rs = pstmt.executeQuery()) {
+            while (rs.next()) {
+                plan.add(rs.getString("detail"));
+            }
+        }
+        return plan;
+    }
+
+    private boolean isFullRead(String sql) {
+        String upper = sql.toUpperCase(Locale.ROOT);
+        return !upper.contains(" WHERE ") && !upper.contains(" ORDER BY ");
+    }
+
+    private boolean hasIndex(String table) throws SQLException {
+        try (PreparedStatement pstmt = connection.prepareStatement(
+                "SELECT 1 FROM sqlite_master WHERE type = 'index' AND tbl_name = ?")) {
+            pstmt.setString(1, table);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+}
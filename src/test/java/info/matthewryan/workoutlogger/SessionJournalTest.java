@@ -0,0 +1,159 @@
+package info.matthewryan.workoutlogger;
+
+import info.matthewryan.workoutlogger.model.ActivityRecord;
+import info.matthewryan.workoutlogger.model.Session;
+import info.matthewryan.workoutlogger.persistence.ActivityDao;
+import info.matthewryan.workoutlogger.persistence.SessionDao;
+import info.matthewryan.workoutlogger.persistence.SessionJournal;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SessionJournalTest {
+
+    private static final long BASE = 1635288019000L;
+
+    @TempDir
+    Path tempDir;
+
+    private Path journalFile;
+    private Connection connection;
+    private SessionDao sessionDao;
+    private ActivityDao activityDao;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        journalFile = tempDir.resolve("session.journal");
+        connection = DriverManager.getConnection("jdbc:sqlite:" + tempDir.resolve("workouts.db"));
+        sessionDao = new SessionDao(connection);
+        sessionDao.createSessionTable();
+        activityDao = new ActivityDao(connection);
+        activityDao.createActivityTable();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        connection.close();
+    }
+
+    @Test
+    void testEntriesSurviveReopen() throws Exception {
+        try (SessionJournal journal = SessionJournal.open(journalFile)) {
+            CompletableFuture<Void> start = journal.sessionStarted(7, BASE);
+            CompletableFuture<Void> set = journal.setLogged(new ActivityRecord(3, 5, 102.5, BASE + 1000, 7));
+            CompletableFuture.allOf(start, set).get(5, TimeUnit.SECONDS);
+            assertEquals(2L * SessionJournal.RECORD_SIZE, journal.size());
+        }
+
+        try (SessionJournal journal = SessionJournal.open(journalFile)) {
+            List<SessionJournal.Entry> entries = journal.getRecoveredEntries();
+            assertEquals(2, entries.size());
+            assertEquals(SessionJournal.EntryType.SESSION_START, entries.get(0).getType());
+            assertEquals(7, entries.get(0).getSessionId());
+            ActivityRecord set = entries.get(1).toActivityRecord();
+            assertEquals(3, set.getExerciseId());
+            assertEquals(5, set.getReps());
+            assertEquals(102.5, set.getWeight());
+            assertEquals(BASE + 1000, set.getTimestamp());
+            assertEquals(7, set.getSessionId());
+        }
+    }
+
+    @Test
+    void testTornTailIsDiscarded() throws Exception {
+        try (SessionJournal journal = SessionJournal.open(journalFile)) {
+            journal.sessionStarted(1, BASE);
+            journal.setLogged(new ActivityRecord(1, 5, 100.0, BASE + 1000, 1)).get(5, TimeUnit.SECONDS);
+        }
+        // A crash halfway through the next append
+        try (FileChannel channel = FileChannel.open(journalFile, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            channel.write(ByteBuffer.wrap(new byte[SessionJournal.RECORD_SIZE / 2]));
+        }
+
+        try (SessionJournal journal = SessionJournal.open(journalFile)) {
+            assertEquals(2, journal.getRecoveredEntries().size());
+            assertEquals(2L * SessionJournal.RECORD_SIZE, journal.size());
+
+            // Appends continue from the end of the valid records
+            journal.sessionEnded(1, BASE + 2000).get(5, TimeUnit.SECONDS);
+        }
+        try (SessionJournal journal = SessionJournal.open(journalFile)) {
+            assertEquals(3, journal.getRecoveredEntries().size());
+        }
+    }
+
+    @Test
+    void testCorruptRecordEndsRecovery() throws Exception {
+        try (SessionJournal journal = SessionJournal.open(journalFile)) {
+            for (int i = 0; i < 3; i++) {
+                journal.setLogged(new ActivityRecord(1, 5, 100.0, BASE + i, 1)).get(5, TimeUnit.SECONDS);
+            }
+        }
+        flipByte(SessionJournal.RECORD_SIZE + 30);  // Inside the reps of the second record
+
+        try (SessionJournal journal = SessionJournal.open(journalFile)) {
+            assertEquals(1, journal.getRecoveredEntries().size());
+        }
+    }
+
+    @Test
+    void testReplayRestoresSessionsAndMissingSets() throws Exception {
+        // Session 1 was ended and half its sets were committed; session 2 was never ended
+        Session committed = new Session(BASE, 0);
+        sessionDao.startSession(committed);
+        assertEquals(1, committed.getId());
+        activityDao.insertActivity(new ActivityRecord(1, 5, 100.0, BASE + 1000, 1));
+
+        try (SessionJournal journal = SessionJournal.open(journalFile)) {
+            journal.sessionStarted(1, BASE);
+            journal.setLogged(new ActivityRecord(1, 5, 100.0, BASE + 1000, 1));
+            journal.setLogged(new ActivityRecord(1, 5, 105.0, BASE + 2000, 1));
+            journal.sessionEnded(1, BASE + 3000);
+            journal.sessionStarted(2, BASE + 10_000);
+            journal.setLogged(new ActivityRecord(2, 8, 60.0, BASE + 11_000, 2)).get(5, TimeUnit.SECONDS);
+        }
+
+        try (SessionJournal journal = SessionJournal.open(journalFile)) {
+            assertEquals(2, journal.replay(sessionDao, activityDao));
+            // Replaying again changes nothing
+            assertEquals(0, journal.replay(sessionDao, activityDao));
+
+            journal.checkpoint();
+            assertEquals(0, journal.size());
+        }
+
+        assertEquals(3, activityDao.countActivities());
+        assertEquals(BASE + 3000, sessionDao.getSessionById(1).getEndTimestamp());
+        Session recovered = sessionDao.getSessionById(2);
+        assertEquals(BASE + 10_000, recovered.getStartTimestamp());
+        assertEquals(BASE + 11_000, recovered.getEndTimestamp(), "Closed at its last journaled set");
+
+        try (SessionJournal journal = SessionJournal.open(journalFile)) {
+            assertTrue(journal.getRecoveredEntries().isEmpty());
+        }
+    }
+
+    private void flipByte(long position) throws IOException {
+        try (FileChannel channel = FileChannel.open(journalFile, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            java.nio.ByteBuffer one = ByteBuffer.allocate(1);
+            channel.read(one, position);
+            one.put(0, (byte) ~one.get(0));
+            one.rewind();
+            channel.write(one, position);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package info.matthewryan.workoutlogger;
+
+import info.matthewryan.workoutlogger.model.ActivityRecord;
+import info.matthewryan.workoutlogger.persistence.ActivityDao;
+import info.matthewryan.workoutlogger.persistence.SlowQueryLog;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SlowQueryLogTest {
+
+    private static final long BASE = 1635288019000L;
+
+    @TempDir
+    Path tempDir;
+
+    private Connection connection;
+    private ActivityDao activityDao;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        connection = DriverManager.getConnection("jdbc:sqlite:" + tempDir.resolve("workouts.db"));
+        activityDao = new ActivityDao(connection);
+        activityDao.createActivityTable();
+        List<ActivityRecord> records = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            records.add(new ActivityRecord(1 + i % 2, 5, 100.0 + i, BASE + i * 1000L, 1));
+        }
+        activityDao.insertActivities(records);
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        connection.close();
+    }
+
+    @Test
+    void testSlowStatementsAreCapturedWithBindsRowsAndPlan() throws Exception {
+        Path file = tempDir.resolve("slow-queries.log");
+        try (SlowQueryLog log = new SlowQueryLog(file, 0)) {
+            log.install();
+            assertEquals(10, activityDao.forEachActivityOfExercise(2, (exerciseId, reps, weight, timestamp, sessionId) -> { }));
+            activityDao.insertActivity(new ActivityRecord(3, 8, 60.0, BASE + 50_000, 2));
+        }
+
+        String logged = Files.readString(file);
+        assertTrue(logged.contains("FROM activity_records WHERE exercise_id = ? ORDER BY timestamp"), logged);
+        assertTrue(logged.contains("binds: [2]"), logged);
+        assertTrue(logged.contains("10 rows"), logged);
+        assertTrue(logged.contains("idx_activity_records_exercise_timestamp"), "The plan is logged: " + logged);
+        assertTrue(logged.contains("binds: [3, 8, 60.0, " + (BASE + 50_000) + ", 2]"), logged);
+        assertTrue(logged.contains("1 rows"), logged);
+    }
+
+    @Test
+    void testNothingIsCapturedUnderTheThresholdOrOnceClosed() throws Exception {
+        Path file = tempDir.resolve("slow-queries.log");
+        try (SlowQueryLog log = new SlowQueryLog(file, 60_000)) {
+            log.install();
+            activityDao.countActivities();
+        }
+        activityDao.countActivities();
+        assertFalse(Files.exists(file));
+    }
+
+    @Test
+    void testFileIsRotated() throws Exception {
+        Path file = tempDir.resolve("slow-queries.log");
+        try (SlowQueryLog log = new SlowQueryLog(file, 0, 200, 2)) {
+            log.install();
+            for (int i = 0; i < 10; i++) {
+                activityDao.countActivities();
+            }
+        }
+
+        assertTrue(Files.exists(file));
+        assertTrue(Files.exists(tempDir.resolve("slow-queries.log.1")));
+        assertTrue(Files.exists(tempDir.resolve("slow-queries.log.2")));
+        assertFalse(Files.exists(tempDir.resolve("slow-queries.log.3")));
+    }
+}
@@ -0,0 +1,215 @@
+package info.matthewryan.workoutlogger;
+
+import info.matthewryan.workoutlogger.model.ActivityRecord;
+import info.matthewryan.workoutlogger.model.VolumeRollup;
+import info.matthewryan.workoutlogger.model.VolumeRollup.Resolution;
+import info.matthewryan.workoutlogger.persistence.ActivityBatchInserter;
+import info.matthewryan.workoutlogger.persistence.ActivityDao;
+import info.matthewryan.workoutlogger.persistence.PersonalBestDao;
+import info.matthewryan.workoutlogger.persistence.VolumeRollupDao;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VolumeRollupDaoTest extends UnitTestBase {
+
+    private ActivityDao activityDao;
+    private VolumeRollupDao volumeRollupDao;
+
+    @BeforeEach
+    @Override
+    protected void setUp() {
+        super.setUp();
+        activityDao = new ActivityDao(connection);
+        activityDao.createActivityTable();
+        volumeRollupDao = new VolumeRollupDao(connection);
+        volumeRollupDao.createRollupTables();
+    }
+
+    @Test
+    void testBucketsByDayWeekAndMonth() {
+        // Wednesday 2024-01-31 and the following Sunday and Monday
+        activityDao.insertActivity(record(1, 5, 100.0, LocalDateTime.of(2024, 1, 31, 23, 30)));
+        activityDao.insertActivity(record(1, 1, 120.0, LocalDateTime.of(2024, 1, 31, 7, 0)));
+        activityDao.insertActivity(record(1, 10, 50.0, LocalDateTime.of(2024, 2, 4, 0, 15)));
+        activityDao.insertActivity(record(1, 8, 60.0, LocalDateTime.of(2024, 2, 5, 18, 0)));
+
+        List<VolumeRollup> days = volumeRollupDao.getRollups(1, Resolution.DAY);
+        assertEquals(3, days.size());
+        VolumeRollup wednesday = days.get(0);
+        assertEquals(LocalDate.of(2024, 1, 31), wednesday.getBucketStart());
+        assertEquals(LocalDate.of(2024, 1, 31).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli(),
+                wednesday.getBucketStartMillis());
+        assertEquals(620.0, wednesday.getTotalVolume(), 1e-9);
+        assertEquals(2, wednesday.getSetCount());
+        assertEquals(6, wednesday.getRepCount());
+        assertEquals(120.0, wednesday.getMaxWeight());
+        assertEquals(120.0, wednesday.getBestEstimatedOneRepMax(), 1e-9);  // The single beats 5 x 100 (116.67)
+
+        List<VolumeRollup> weeks = volumeRollupDao.getRollups(1, Resolution.WEEK);
+        assertEquals(2, weeks.size());
+        assertEquals(LocalDate.of(2024, 1, 29), weeks.get(0).getBucketStart());
+        assertEquals(3, weeks.get(0).getSetCount());
+        assertEquals(LocalDate.of(2024, 2, 5), weeks.get(1).getBucketStart());
+
+        List<VolumeRollup> months = volumeRollupDao.getRollups(1, Resolution.MONTH);
+        assertEquals(2, months.size());
+        assertEquals(LocalDate.of(2024, 2, 1), months.get(1).getBucketStart());
+        assertEquals(980.0, months.get(1).getTotalVolume(), 1e-9);
+
+        List<VolumeRollup> february = volumeRollupDao.getRollups(1, Resolution.DAY,
+                LocalDate.of(2024, 2, 1), LocalDate.of(2024, 2, 29));
+        assertEquals(2, february.size());
+    }
+
+    @Test
+    void testDeletesRepairRollups() {
+        LocalDateTime day = LocalDateTime.of(2024, 3, 12, 10, 0);
+        activityDao.insertActivity(record(1, 1, 140.0, day));
+        activityDao.insertActivity(record(1, 5, 100.0, day.plusMinutes(5)));
+
+        try (Statement stmt = connection.createStatement()) {
+            stmt.executeUpdate("DELETE FROM activity_records WHERE weight = 140.0");
+            VolumeRollup rollup = volumeRollupDao.getRollups(1, Resolution.DAY).get(0);
+            assertEquals(1, rollup.getSetCount());
+            assertEquals(500.0, rollup.getTotalVolume(), 1e-9);
+            assertEquals(100.0, rollup.getMaxWeight(), "Removing the heaviest set rescans the bucket");
+
+            // Deleting the last set drops the bucket
+            stmt.executeUpdate("DELETE FROM activity_records");
+        } catch (SQLException e) {
+            fail(e);
+        }
+        assertTrue(volumeRollupDao.getRollups(1, Resolution.DAY).isEmpty());
+        assertTrue(volumeRollupDao.getRollups(1, Resolution.MONTH).isEmpty());
+    }
+
+    @Test
+    void testIncrementalRollupsMatchRebuild() throws SQLException {
+        Random random = new Random(7);
+        LocalDateTime start = LocalDateTime.of(2023, 1, 1, 6, 0);
+        List<ActivityRecord> records = new ArrayList<>();
+        for (int i = 0; i < 600; i++) {
+            records.add(record(1 + random.nextInt(3), 1 + random.nextInt(12), 20 + random.nextInt(40) * 2.5,
+                    start.plusMinutes(random.nextInt(400 * 24 * 60))));
+        }
+        activityDao.insertActivities(records);
+        try (Statement stmt = connection.createStatement()) {
+            stmt.executeUpdate("DELETE FROM activity_records WHERE id % 5 = 0");
+            stmt.executeUpdate("UPDATE activity_records SET weight = weight + 40 WHERE id % 9 = 0");
+            stmt.executeUpdate("UPDATE activity_records SET timestamp = timestamp + 86400000 WHERE id % 13 = 0");
+        }
+
+        List<String> incremental = snapshot();
+        volumeRollupDao.rebuildRollups();
+        assertEquals(snapshot(), incremental);
+    }
+
+    @Test
+    void testBulkLoadMatchesRebuild() throws SQLException {
+        PersonalBestDao personalBestDao = new PersonalBestDao(connection);
+        personalBestDao.createPersonalBestTable();
+        activityDao.insertActivity(record(1, 5, 60.0, LocalDateTime.of(2022, 12, 30, 12, 0)));
+
+        Random random = new Random(11);
+        LocalDateTime start = LocalDateTime.of(2023, 1, 1, 6, 0);
+        try (ActivityBatchInserter loader = activityDao.openBulkLoader(100)) {
+            for (int i = 0; i < 600; i++) {
+                loader.add(record(1 + random.nextInt(3), 1 + random.nextInt(12), 20 + random.nextInt(40) * 2.5,
+                        start.plusMinutes(random.nextInt(400 * 24 * 60))));
+            }
+            loader.flush();
+            // The triggers skipped the committed chunks
+            assertEquals(1, volumeRollupDao.getRollups(1, Resolution.MONTH).size());
+            assertNull(personalBestDao.getPersonalBest(2));
+        }
+
+        List<String> loaded = snapshot();
+        List<String> loadedBests = personalBests(personalBestDao);
+        volumeRollupDao.rebuildRollups();
+        personalBestDao.rebuildPersonalBests();
+        assertEquals(snapshot(), loaded);
+        assertEquals(personalBests(personalBestDao), loadedBests);
+
+        // Per-row maintenance is back on afterwards
+        activityDao.insertActivity(record(3, 1, 500.0, LocalDateTime.of(2025, 1, 1, 12, 0)));
+        assertEquals(500.0, personalBestDao.getPersonalBest(3).getBestWeight());
+        assertEquals(1, volumeRollupDao.getRollups(3, Resolution.DAY,
+                LocalDate.of(2025, 1, 1), LocalDate.of(2025, 1, 1)).size());
+    }
+
+    @Test
+    void testInterruptedBulkLoadIsFinishedAtStartup() throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.executeUpdate("INSERT INTO activity_bulk_load (id) VALUES (0)");
+        }
+        activityDao.insertActivity(record(2, 5, 60.0, LocalDateTime.of(2024, 5, 1, 12, 0)));
+        assertTrue(volumeRollupDao.getRollups(2, Resolution.DAY).isEmpty());
+
+        activityDao.finishInterruptedBulkLoad();
+        assertEquals(300.0, volumeRollupDao.getRollups(2, Resolution.DAY).get(0).getTotalVolume(), 1e-9);
+        activityDao.insertActivity(record(2, 5, 60.0, LocalDateTime.of(2024, 5, 1, 13, 0)));
+        assertEquals(600.0, volumeRollupDao.getRollups(2, Resolution.DAY).get(0).getTotalVolume(), 1e-9);
+    }
+
+    @Test
+    void testExistingHistoryIsBackfilled() throws SQLException {
+        activityDao.insertActivity(record(2, 5, 60.0, LocalDateTime.of(2024, 5, 1, 12, 0)));
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("DROP TABLE volume_rollup_day");
+        }
+        volumeRollupDao.createRollupTables();
+        assertEquals(300.0, volumeRollupDao.getRollups(2, Resolution.DAY).get(0).getTotalVolume(), 1e-9);
+    }
+
+    private List<String> snapshot() {
+        List<String> rows = new ArrayList<>();
+        for (Resolution resolution : Resolution.values()) {
+            for (int exerciseId = 1; exerciseId <= 3; exerciseId++) {
+                volumeRollupDao.getRollups(exerciseId, resolution).forEach(rollup -> rows.add(rollup.toString()));
+            }
+        }
+        return rows;
+    }
+
+    private static List<String> personalBests(PersonalBestDao personalBestDao) throws SQLException {
+        List<String> bests = new ArrayList<>();
+        for (int exerciseId = 1; exerciseId <= 3; exerciseId++) {
+            bests.add(String.valueOf(personalBestDao.getPersonalBest(exerciseId)));
+        }
+        return bests;
+    }
+
+    private static ActivityRecord record(int exerciseId, int reps, double weight, LocalDateTime time) {
+        long timestamp = time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        return new ActivityRecord(exerciseId, reps, weight, timestamp, 1);
+    }
+
+    @Test
+    void testRebuildJoinsTheCallersTransaction() throws SQLException {
+        activityDao.insertActivity(record(2, 5, 60.0, LocalDateTime.of(2024, 5, 1, 12, 0)));
+        connection.setAutoCommit(false);
+        try {
+            activityDao.insertActivity(record(2, 1, 100.0, LocalDateTime.of(2024, 5, 2, 12, 0)));
+            volumeRollupDao.rebuildRollups();
+            assertFalse(connection.getAutoCommit(), "The caller's transaction is still open");
+            assertEquals(2, volumeRollupDao.getRollups(2, Resolution.DAY).size());
+            connection.rollback();
+        } finally {
+            connection.setAutoCommit(true);
+        }
+        // Nothing was committed halfway: the set and its rebuilt rollups went with the rollback
+        assertEquals(1, activityDao.countActivities());
+        assertEquals(1, volumeRollupDao.getRollups(2, Resolution.DAY).size());
+    }
+}
@@ -0,0 +1,57 @@
+package info.matthewryan.workoutlogger.model;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ActivityColumnsTest {
+
+    @Test
+    void testRowsAreGroupedByExerciseInTimeOrder() {
+        ActivityColumns.Builder builder = ActivityColumns.builder(2);  // Forces the columns to grow
+        builder.add(3, 5, 100.0, 3000L, 1);
+        builder.add(1, 8, 60.0, 2000L, 1);
+        builder.add(3, 5, 102.5, 1000L, 1);
+        builder.add(1, 8, 62.5, 4000L, 2);
+        builder.add(7, 10, 20.0, 5000L, 2);
+        ActivityColumns columns = builder.build();
+
+        assertEquals(5, columns.size());
+        assertArrayEquals(new int[]{1, 3, 7}, columns.getExerciseIds());
+
+        assertEquals(0, columns.getExerciseStart(1));
+        assertEquals(2, columns.getExerciseEnd(1));
+        assertEquals(2, columns.getExerciseStart(3));
+        assertEquals(4, columns.getExerciseEnd(3));
+        assertEquals(1, columns.getExerciseRowCount(7));
+
+        // Within an exercise rows are in timestamp order, with all fields moved together
+        assertEquals(1000L, columns.getTimestamp(2));
+        assertEquals(102.5, columns.getWeight(2));
+        assertEquals(3000L, columns.getTimestamp(3));
+        assertEquals(100.0, columns.getWeight(3));
+        assertEquals(2, columns.getSessionId(1));
+
+        ActivityRecord record = columns.toRecord(4);
+        assertEquals(7, record.getExerciseId());
+        assertEquals(10, record.getReps());
+    }
+
+    @Test
+    void testMissingExerciseHasEmptyRange() {
+        ActivityColumns.Builder builder = ActivityColumns.builder(4);
+        builder.add(2, 5, 100.0, 1000L, 1);
+        builder.add(4, 5, 100.0, 2000L, 1);
+        ActivityColumns columns = builder.build();
+
+        assertEquals(0, columns.getExerciseRowCount(3));
+        assertEquals(1, columns.getExerciseStart(3));
+        assertEquals(columns.getExerciseStart(3), columns.getExerciseEnd(3));
+        assertEquals(0, columns.getExerciseRowCount(99));
+        assertEquals(2, columns.getExerciseStart(99));
+
+        assertTrue(ActivityColumns.empty().isEmpty());
+        assertEquals(0, ActivityColumns.empty().getExerciseRowCount(1));
+        assertThrows(IndexOutOfBoundsException.class, () -> columns.getTimestamp(2));
+    }
+}
@@ -0,0 +1,152 @@
+package info.matthewryan.workoutlogger.services;
+
+import info.matthewryan.workoutlogger.model.ActivityRecord;
+import info.matthewryan.workoutlogger.persistence.ActivityDao;
+import info.matthewryan.workoutlogger.persistence.Database;
+import info.matthewryan.workoutlogger.persistence.ExerciseDao;
+import info.matthewryan.workoutlogger.persistence.SessionJournal;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+class ActivityWriteBufferTest {
+
+    private static final long BASE = 1635288019000L;
+
+    @TempDir
+    Path tempDir;
+
+    private Database database;
+    private ActivityDao writerDao;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        database = new Database("jdbc:sqlite:" + tempDir.resolve("workouts.db"), 1);
+        writerDao = database.write(connection -> {
+            ActivityDao activityDao = new ActivityDao(connection);
+            activityDao.createActivityTable();
+            return activityDao;
+        }).get(5, TimeUnit.SECONDS);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        database.close();
+    }
+
+    @Test
+    void testAddIsAcknowledgedBeforeTheWrite() throws Exception {
+        try (ActivityWriteBuffer buffer = new ActivityWriteBuffer(database, writerDao, 100, 60_000)) {
+            for (int i = 0; i < 10; i++) {
+                buffer.add(record(i));
+            }
+            assertEquals(10, buffer.getPendingCount());
+            assertEquals(0, committedCount());
+
+            assertEquals(10L, buffer.flush().get(5, TimeUnit.SECONDS));
+            assertEquals(0, buffer.getPendingCount());
+            assertEquals(10, committedCount());
+        }
+    }
+
+    @Test
+    void testSizeThresholdFlushes() throws Exception {
+        try (ActivityWriteBuffer buffer = new ActivityWriteBuffer(database, writerDao, 5, 60_000)) {
+            for (int i = 0; i < 12; i++) {
+                buffer.add(record(i));
+            }
+            assertEquals(2, buffer.getPendingCount(), "Two full batches were handed to the writer");
+            buffer.flush().get(5, TimeUnit.SECONDS);
+            assertEquals(12, committedCount());
+        }
+    }
+
+    @Test
+    void testTimeThresholdFlushes() throws Exception {
+        try (ActivityWriteBuffer buffer = new ActivityWriteBuffer(database, writerDao, 100, 50)) {
+            buffer.add(record(0));
+            long deadline = System.currentTimeMillis() + 5000;
+            while (committedCount() == 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(1, committedCount());
+        }
+    }
+
+    @Test
+    void testWhenWrittenFollowsTheBatchWithoutFlushing() throws Exception {
+        try (ActivityWriteBuffer buffer = new ActivityWriteBuffer(database, writerDao, 100, 60_000)) {
+            assertTrue(buffer.whenWritten().isDone(), "Nothing is waiting");
+            buffer.add(record(0));
+            CompletableFuture<Long> written = buffer.whenWritten();
+            buffer.add(record(1));
+            assertSame(written, buffer.whenWritten(), "The same batch");
+            assertFalse(written.isDone());
+            assertEquals(2, buffer.getPendingCount(), "Asking does not hurry the write");
+
+            buffer.flush();
+            assertEquals(2L, written.get(5, TimeUnit.SECONDS));
+            assertEquals(2, committedCount());
+        }
+    }
+
+    @Test
+    void testCloseWritesPendingRecords() throws Exception {
+        ActivityWriteBuffer buffer = new ActivityWriteBuffer(database, writerDao, 100, 60_000);
+        buffer.add(record(0));
+        buffer.add(record(1));
+        buffer.close();
+
+        assertEquals(2, committedCount());
+        assertThrows(IllegalStateException.class, () -> buffer.add(record(2)));
+    }
+
+    @Test
+    void testAddIsJournaledBeforeTheWrite() throws Exception {
+        try (SessionJournal journal = SessionJournal.open(tempDir.resolve("session.journal"));
+             ActivityWriteBuffer buffer = new ActivityWriteBuffer(database, writerDao, journal, 100, 60_000)) {
+            buffer.add(record(0)).get(5, TimeUnit.SECONDS);
+            assertEquals(SessionJournal.RECORD_SIZE, journal.size());
+            assertEquals(0, committedCount());
+        }
+        try (SessionJournal journal = SessionJournal.open(tempDir.resolve("session.journal"))) {
+            assertEquals(1, journal.getRecoveredEntries().size());
+        }
+    }
+
+    @Test
+    void testEndSessionFlushes() throws Exception {
+        ExerciseDao exerciseDao = mock(ExerciseDao.class);
+        Mockito.when(exerciseDao.getExerciseIdByName("Bench Press")).thenReturn(1);
+
+        try (ActivityWriteBuffer buffer = new ActivityWriteBuffer(database, writerDao, 100, 60_000)) {
+            WorkoutService workoutService = new WorkoutService(null, exerciseDao, buffer);
+            workoutService.startNewSession();
+            workoutService.recordActivity("Bench Press", 5, 100.0);
+            workoutService.recordActivity("Bench Press", 5, 105.0);
+            assertEquals(0, committedCount());
+
+            workoutService.endSession();
+            buffer.flush().get(5, TimeUnit.SECONDS);
+            assertEquals(2, committedCount());
+        }
+    }
+
+    private long committedCount() throws SQLException {
+        return database.read(connection -> new ActivityDao(connection).countActivities());
+    }
+
+    private static ActivityRecord record(int i) {
+        return new ActivityRecord(1, 5, 100.0 + i, BASE + i * 1000L, 1);
+    }
+}
@@ -0,0 +1,168 @@
+package info.matthewryan.workoutlogger.services;
+
+import info.matthewryan.workoutlogger.model.Exercise;
+import info.matthewryan.workoutlogger.persistence.ActivityDao;
+import info.matthewryan.workoutlogger.persistence.Database;
+import info.matthewryan.workoutlogger.persistence.ExerciseDao;
+import info.matthewryan.workoutlogger.persistence.SessionDao;
+import info.matthewryan.workoutlogger.persistence.WorkoutDao;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+class AsyncDataServiceTest {
+
+    @TempDir
+    Path tempDir;
+
+    private ActivityDao mockActivityDao;
+    private ExerciseDao mockExerciseDao;
+    private AsyncDataService database;
+
+    @BeforeEach
+    public void setUp() {
+        mockActivityDao = mock(ActivityDao.class);
+        mockExerciseDao = mock(ExerciseDao.class);
+        Mockito.when(mockExerciseDao.getAllExercises()).thenReturn(List.of(new Exercise(1, "Bench Press", true)));
+        Mockito.when(mockActivityDao.countActivities()).thenReturn(42L);
+
+        database = new AsyncDataService(mockActivityDao, mockExerciseDao, mock(SessionDao.class), mock(WorkoutDao.class));
+    }
+
+    @AfterEach
+    public void tearDown() {
+        database.shutdown();
+    }
+
+    @Test
+    void testQueriesRunOnTheDatabaseThread() throws Exception {
+        String thread = database.exercises(dao -> Thread.currentThread().getName()).get(5, TimeUnit.SECONDS);
+        assertTrue(thread.startsWith("db-worker"), thread);
+
+        List<Exercise> exercises = database.exercises(ExerciseDao::getAllExercises).get(5, TimeUnit.SECONDS);
+        assertEquals("Bench Press", exercises.get(0).getName());
+    }
+
+    @Test
+    void testCancelledRequestIsSkipped() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Boolean> blocker = database.activities(dao -> awaitQuietly(release));
+        CompletableFuture<Long> superseded = database.activities(ActivityDao::countActivities);
+
+        assertTrue(superseded.cancel(false));
+        release.countDown();
+        assertTrue(blocker.get(5, TimeUnit.SECONDS));
+
+        // Anything queued behind the cancelled request still runs
+        assertEquals(42L, database.activities(ActivityDao::countActivities).get(5, TimeUnit.SECONDS));
+        Mockito.verify(mockActivityDao, Mockito.times(1)).countActivities();
+    }
+
+    @Test
+    void testRequestSlotDropsSupersededResults() {
+        RequestSlot slot = new RequestSlot(Runnable::run);
+        List<String> delivered = new ArrayList<>();
+
+        CompletableFuture<String> first = new CompletableFuture<>();
+        CompletableFuture<String> second = new CompletableFuture<>();
+        slot.deliver(first, delivered::add);
+        slot.deliver(second, delivered::add);
+
+        assertTrue(first.isCancelled(), "A new request cancels the previous one");
+        second.complete("second");
+        assertEquals(List.of("second"), delivered);
+
+        // A result that is already on its way when superseded is dropped as well
+        CompletableFuture<String> third = new CompletableFuture<>();
+        List<Runnable> pending = new ArrayList<>();
+        RequestSlot queued = new RequestSlot(pending::add);
+        queued.deliver(third, delivered::add);
+        third.complete("third");
+        queued.deliver(new CompletableFuture<String>(), delivered::add);
+        pending.forEach(Runnable::run);
+        assertEquals(List.of("second"), delivered);
+    }
+
+    @Test
+    void testRequestSlotReportsFailureOfCurrentRequest() {
+        RequestSlot slot = new RequestSlot(Runnable::run);
+        List<String> delivered = new ArrayList<>();
+        List<Throwable> failures = new ArrayList<>();
+
+        CompletableFuture<String> superseded = new CompletableFuture<>();
+        slot.deliver(superseded, delivered::add, failures::add);
+        CompletableFuture<String> failing = new CompletableFuture<>();
+        slot.deliver(failing, delivered::add, failures::add);
+        assertTrue(failures.isEmpty(), "Cancelling a superseded request is not a failure");
+
+        IllegalStateException failure = new IllegalStateException("query failed");
+        failing.completeExceptionally(failure);
+        assertEquals(List.of(failure), failures);
+        assertTrue(delivered.isEmpty());
+    }
+
+    @Test
+    void testReadersSeeExercisesTheWriterDeletes() throws Exception {
+        try (Database db = new Database("jdbc:sqlite:" + tempDir.resolve("workouts.db"), 2)) {
+            ExerciseDao writerDao = db.write(connection -> {
+                ExerciseDao exerciseDao = new ExerciseDao(connection, db.getExerciseDictionary());
+                exerciseDao.createExerciseTable();
+                exerciseDao.insertExercise("Bench Press", false);
+                exerciseDao.insertExercise("Squat", false);
+                return exerciseDao;
+            }).get(5, TimeUnit.SECONDS);
+            AsyncDataService readers = new AsyncDataService(db);
+            try {
+                // Enough lookups for every reader to load its dictionary
+                int benchId = -1;
+                for (int i = 0; i < 4; i++) {
+                    benchId = readers.exercises(dao -> dao.getExerciseIdByName("Bench Press")).get(5, TimeUnit.SECONDS);
+                    assertNotEquals(-1, benchId);
+                }
+
+                int deletedId = benchId;
+                db.write(connection -> {
+                    writerDao.deleteExercise(deletedId);
+                    writerDao.insertExercise("Deadlift", false);
+                    return null;
+                }).get(5, TimeUnit.SECONDS);
+                for (int i = 0; i < 4; i++) {
+                    assertEquals(-1, (int) readers.exercises(dao -> dao.getExerciseIdByName("Bench Press"))
+                            .get(5, TimeUnit.SECONDS));
+                    assertNull(readers.exercises(dao -> dao.getExerciseNameById(deletedId)).get(5, TimeUnit.SECONDS));
+                    assertNotEquals(-1, (int) readers.exercises(dao -> dao.getExerciseIdByName("Deadlift"))
+                            .get(5, TimeUnit.SECONDS));
+                }
+
+                db.write(connection -> {
+                    writerDao.clearExercisesTable();
+                    return null;
+                }).get(5, TimeUnit.SECONDS);
+                assertEquals(-1, (int) readers.exercises(dao -> dao.getExerciseIdByName("Squat")).get(5, TimeUnit.SECONDS));
+            } finally {
+                readers.shutdown();
+            }
+        }
+    }
+
+    private static boolean awaitQuietly(CountDownLatch latch) {
+        try {
+            return latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
@@ -0,0 +1,296 @@
+package info.matthewryan.workoutlogger.services;
+
+import info.matthewryan.workoutlogger.model.ActivityRecord;
+import info.matthewryan.workoutlogger.persistence.ActivityDao;
+import info.matthewryan.workoutlogger.persistence.Database;
+import info.matthewryan.workoutlogger.persistence.QueryMetrics;
+import info.matthewryan.workoutlogger.persistence.QueryStats;
+import info.matthewryan.workoutlogger.persistence.VolumeRollupDao;
+import info.matthewryan.workoutlogger.services.ProgressChartLoader.Level;
+import info.matthewryan.workoutlogger.services.ProgressChartLoader.Series;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProgressChartLoaderTest {
+
+    private static final long DAY = 86_400_000L;
+    private static final int DAYS = 3 * 365;
+
+    // Noon, so no set sits near a day boundary in any time zone the tests run in
+    private static final long BASE = LocalDate.of(2020, 1, 1).atStartOfDay(ZoneId.systemDefault())
+            .toInstant().toEpochMilli() + DAY / 2;
+
+    @TempDir
+    Path tempDir;
+
+    private Database database;
+    private AsyncDataService dataService;
+    private ProgressChartLoader loader;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        database = new Database("jdbc:sqlite:" + tempDir.resolve("workouts.db"), 2);
+        database.write(connection -> {
+            ActivityDao activityDao = new ActivityDao(connection);
+            activityDao.createActivityTable();
+            new VolumeRollupDao(connection).createRollupTables();
+            // One set of 5 x 100 kg a day for three years
+            List<ActivityRecord> records = new ArrayList<>();
+            for (int day = 0; day < DAYS; day++) {
+                records.add(new ActivityRecord(1, 5, 100.0, BASE + day * DAY, 1));
+            }
+            activityDao.insertActivities(records);
+            return null;
+        }).get(10, TimeUnit.SECONDS);
+        dataService = new AsyncDataService(database);
+        loader = new ProgressChartLoader(dataService);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        dataService.shutdown();
+        database.close();
+    }
+
+    @Test
+    void testLevelFollowsTheWidthOfTheView() {
+        assertEquals(Level.SETS, ProgressChartLoader.levelFor(30 * DAY));
+        assertEquals(Level.WEEKS, ProgressChartLoader.levelFor(365 * DAY));
+        assertEquals(Level.MONTHS, ProgressChartLoader.levelFor(10 * 365 * DAY));
+    }
+
+    @Test
+    void testNarrowViewLoadsSetsAndWideViewLoadsRollups() throws Exception {
+        long from = BASE + 100 * DAY;
+        long to = BASE + 130 * DAY;
+        Series sets = loader.load(1, from, to).get(10, TimeUnit.SECONDS);
+        assertEquals(Level.SETS, sets.getLevel());
+        int inView = 0;
+        for (int i = 0; i < sets.size(); i++) {
+            assertEquals(500.0, sets.getY()[i], 1e-9);
+            if (sets.getX()[i] >= from && sets.getX()[i] < to) {
+                inView++;
+            }
+        }
+        assertEquals(30, inView);
+        assertTrue(sets.size() < DAYS, "Only the tiles around the view are loaded");
+
+        Series weeks = loader.load(1, BASE, BASE + DAYS * DAY).get(10, TimeUnit.SECONDS);
+        assertEquals(Level.WEEKS, weeks.getLevel());
+        double total = 0;
+        for (int i = 0; i < weeks.size(); i++) {
+            assertTrue(weeks.getY()[i] <= 7 * 500.0);
+            if (i > 0) {
+                assertTrue(weeks.getX()[i] > weeks.getX()[i - 1], "Buckets ascend");
+            }
+            total += weeks.getY()[i];
+        }
+        assertEquals(DAYS * 500.0, total, 1e-6, "Every set is counted once");
+    }
+
+    @Test
+    void testTilesAreCachedUntilInvalidated() throws Exception {
+        QueryStats rangeQueries = QueryMetrics.forMethod(ActivityDao.class, "forEachActivityOfExerciseBetween");
+        long from = BASE + 200 * DAY;
+        long to = BASE + 230 * DAY;
+
+        long before = rangeQueries.getCalls();
+        Series first = loader.load(1, from, to).get(10, TimeUnit.SECONDS);
+        long loaded = rangeQueries.getCalls() - before;
+        assertTrue(loaded >= 3, "The view and a tile either side");
+
+        CompletableFuture<Series> again = loader.load(1, from, to);
+        assertTrue(again.isDone(), "Cached tiles complete at once");
+        assertArrayEquals(first.getX(), again.get().getX());
+        assertTrue(loader.isCurrent(first, 1, from, to));
+
+        // Panning by a tile fetches only the tile that comes into reach
+        before = rangeQueries.getCalls();
+        loader.load(1, from + 28 * DAY, to + 28 * DAY).get(10, TimeUnit.SECONDS);
+        assertEquals(1, rangeQueries.getCalls() - before);
+
+        loader.invalidate(1);
+        before = rangeQueries.getCalls();
+        loader.load(1, from, to).get(10, TimeUnit.SECONDS);
+        assertEquals(loaded, rangeQueries.getCalls() - before);
+    }
+
+    @Test
+    void testLoggedSetIsAddedToCachedTilesWithoutQuerying() throws Exception {
+        QueryStats rangeQueries = QueryMetrics.forMethod(ActivityDao.class, "forEachActivityOfExerciseBetween");
+        long from = BASE + 300 * DAY;
+        long to = BASE + 330 * DAY;
+        Series sets = loader.load(1, from, to).get(10, TimeUnit.SECONDS);
+        Series weeks = loader.load(1, BASE, BASE + DAYS * DAY).get(10, TimeUnit.SECONDS);
+
+        long logged = BASE + 310 * DAY + 3_600_000;
+        long before = rangeQueries.getCalls();
+        loader.add(1, logged, 800.0, new CompletableFuture<Void>());
+
+        CompletableFuture<Series> setsAfter = loader.load(1, from, to);
+        assertTrue(setsAfter.isDone(), "Nothing is fetched again");
+        assertEquals(sets.size() + 1, setsAfter.get().size());
+        double[] x = setsAfter.get().getX();
+        int index = 0;
+        while (x[index] != logged) {
+            index++;
+        }
+        assertEquals(800.0, setsAfter.get().getY()[index], 1e-9);
+        assertTrue(x[index - 1] < logged && x[index + 1] > logged, "The set is in timestamp order");
+
+        Series weeksAfter = loader.load(1, BASE, BASE + DAYS * DAY).get();
+        assertEquals(weeks.size(), weeksAfter.size(), "The set joins its week");
+        double difference = 0;
+        for (int i = 0; i < weeks.size(); i++) {
+            difference += weeksAfter.getY()[i] - weeks.getY()[i];
+        }
+        assertEquals(800.0, difference, 1e-9);
+        assertEquals(before, rangeQueries.getCalls());
+    }
+
+    @Test
+    void testLoggedSetIsReadFromTheDatabaseOnceCommitted() throws Exception {
+        QueryStats rangeQueries = QueryMetrics.forMethod(ActivityDao.class, "forEachActivityOfExerciseBetween");
+        long from = BASE + 400 * DAY;
+        long to = BASE + 430 * DAY;
+        long logged = BASE + 500 * DAY + 3_600_000;  // In a tile that is not cached yet
+        CompletableFuture<Void> written = new CompletableFuture<>();
+        CompletableFuture<Boolean> refreshed = loader.add(1, logged, 800.0, written);
+
+        // A tile first fetched before the commit gets the set as well
+        Series before = loader.load(1, logged - 10 * DAY, logged + 10 * DAY).get(10, TimeUnit.SECONDS);
+        assertEquals(1, count(before, logged));
+        Series cached = loader.load(1, from, to).get(10, TimeUnit.SECONDS);
+
+        database.write(connection -> {
+            new ActivityDao(connection).insertActivity(new ActivityRecord(1, 8, 100.0, logged, 2));
+            return null;
+        }).get(10, TimeUnit.SECONDS);
+        written.complete(null);
+        assertTrue(refreshed.get(10, TimeUnit.SECONDS), "A tile fetched in between is dropped");
+
+        // The set's tiles are read again and hold it once; other tiles stay cached
+        long calls = rangeQueries.getCalls();
+        Series after = loader.load(1, logged - 10 * DAY, logged + 10 * DAY).get(10, TimeUnit.SECONDS);
+        assertEquals(1, count(after, logged));
+        assertEquals(before.size(), after.size());
+        assertTrue(rangeQueries.getCalls() > calls);
+        calls = rangeQueries.getCalls();
+        assertArrayEquals(cached.getX(), loader.load(1, from, to).get(10, TimeUnit.SECONDS).getX());
+        assertEquals(calls, rangeQueries.getCalls());
+
+        Series weeks = loader.load(1, BASE, BASE + DAYS * DAY).get(10, TimeUnit.SECONDS);
+        double total = 0;
+        for (double volume : weeks.getY()) {
+            total += volume;
+        }
+        assertEquals(DAYS * 500.0 + 800.0, total, 1e-6);
+    }
+
+    @Test
+    void testTilesCachedBeforeTheSetStayAfterItsCommit() throws Exception {
+        QueryStats rangeQueries = QueryMetrics.forMethod(ActivityDao.class, "forEachActivityOfExerciseBetween");
+        long from = BASE + 600 * DAY;
+        long to = BASE + 630 * DAY;
+        Series sets = loader.load(1, from, to).get(10, TimeUnit.SECONDS);
+
+        long logged = BASE + 610 * DAY + 3_600_000;
+        CompletableFuture<Void> written = new CompletableFuture<>();
+        CompletableFuture<Boolean> refreshed = loader.add(1, logged, 800.0, written);
+        Series patched = loader.plus(sets, logged, 800.0);
+        assertEquals(1, count(patched, logged));
+        assertSame(sets, loader.plus(sets, BASE + 900 * DAY, 800.0), "A set outside the series leaves it alone");
+
+        database.write(connection -> {
+            new ActivityDao(connection).insertActivity(new ActivityRecord(1, 8, 100.0, logged, 2));
+            return null;
+        }).get(10, TimeUnit.SECONDS);
+        written.complete(null);
+        assertFalse(refreshed.get(10, TimeUnit.SECONDS), "Nothing needs loading again");
+
+        long calls = rangeQueries.getCalls();
+        CompletableFuture<Series> after = loader.load(1, from, to);
+        assertTrue(after.isDone(), "The patched tiles are kept");
+        assertArrayEquals(patched.getX(), after.get().getX());
+        assertArrayEquals(patched.getY(), after.get().getY());
+        assertEquals(calls, rangeQueries.getCalls());
+    }
+
+    @Test
+    void testTileStillFetchingWhenTheSetIsLoggedIsReadAgain() throws Exception {
+        long from = BASE + 800 * DAY;
+        long to = BASE + 830 * DAY;
+        long logged = BASE + 810 * DAY + 3_600_000;
+
+        // Hold every reader so the tiles stay queued until after the commit
+        CountDownLatch release = new CountDownLatch(1);
+        List<CompletableFuture<Void>> holders = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            holders.add(dataService.activities(dao -> {
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return null;
+            }));
+        }
+        CompletableFuture<Series> queued = loader.load(1, from, to);
+
+        CompletableFuture<Void> written = new CompletableFuture<>();
+        CompletableFuture<Boolean> refreshed = loader.add(1, logged, 800.0, written);
+        database.write(connection -> {
+            new ActivityDao(connection).insertActivity(new ActivityRecord(1, 8, 100.0, logged, 2));
+            return null;
+        }).get(10, TimeUnit.SECONDS);
+        written.complete(null);
+        assertTrue(refreshed.get(10, TimeUnit.SECONDS), "The queued tile is dropped");
+
+        release.countDown();
+        queued.get(10, TimeUnit.SECONDS);
+        for (CompletableFuture<Void> holder : holders) {
+            holder.get(10, TimeUnit.SECONDS);
+        }
+        assertEquals(1, count(loader.load(1, from, to).get(10, TimeUnit.SECONDS), logged));
+    }
+
+    @Test
+    void testFailedWriteDropsTheSet() throws Exception {
+        long from = BASE + 700 * DAY;
+        long to = BASE + 730 * DAY;
+        Series sets = loader.load(1, from, to).get(10, TimeUnit.SECONDS);
+
+        long logged = BASE + 710 * DAY + 3_600_000;
+        CompletableFuture<Void> written = new CompletableFuture<>();
+        CompletableFuture<Boolean> refreshed = loader.add(1, logged, 800.0, written);
+        written.completeExceptionally(new IllegalStateException("Write failed"));
+        assertTrue(refreshed.get(10, TimeUnit.SECONDS));
+
+        Series after = loader.load(1, from, to).get(10, TimeUnit.SECONDS);
+        assertEquals(0, count(after, logged));
+        assertEquals(sets.size(), after.size());
+    }
+
+    private static int count(Series series, long x) {
+        int count = 0;
+        for (double value : series.getX()) {
+            if (value == x) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
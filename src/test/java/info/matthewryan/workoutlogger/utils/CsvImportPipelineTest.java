@@ -0,0 +1,104 @@
+package info.matthewryan.workoutlogger.utils;
+
+import info.matthewryan.workoutlogger.model.ActivityRecord;
+import info.matthewryan.workoutlogger.persistence.ActivityBatchInserter;
+import info.matthewryan.workoutlogger.persistence.ActivityDao;
+import info.matthewryan.workoutlogger.persistence.ExerciseDao;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class CsvImportPipelineTest {
+
+    private ExerciseDao exerciseDao;
+    private ActivityDao activityDao;
+    private ActivityBatchInserter inserter;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        exerciseDao = mock(ExerciseDao.class);
+        activityDao = mock(ActivityDao.class);
+        inserter = mock(ActivityBatchInserter.class);
+        when(activityDao.openBulkLoader(anyInt())).thenReturn(inserter);
+        when(exerciseDao.getOrCreateExerciseId(anyString())).thenAnswer(invocation -> invocation.getArgument(0).hashCode());
+    }
+
+    @Test
+    void testImportsEveryLineOfDataFile() throws Exception {
+        int dataLines;
+        Set<String> exerciseNames = new HashSet<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(getClass().getResourceAsStream("/data.csv")))) {
+            List<String> lines = reader.lines().skip(1).toList();
+            dataLines = lines.size();
+            lines.forEach(line -> exerciseNames.add(line.split(",")[2]));
+        }
+
+        ImportResult result;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(getClass().getResourceAsStream("/data.csv")))) {
+            result = new CsvImportPipeline(exerciseDao, activityDao, 4, 4, 1000).run(reader);
+        }
+
+        // Every line reaches the single writer, and each exercise is resolved only once
+        verify(inserter, times(dataLines)).add(any(ActivityRecord.class));
+        verify(inserter).close();
+        verify(exerciseDao, times(exerciseNames.size())).getOrCreateExerciseId(anyString());
+        assertEquals(0, result.getSkippedRows());
+    }
+
+    @Test
+    void testParsesFieldsAndSkipsInvalidLines() throws Exception {
+        String csv = "Date,Workout Name,Exercise Name,Reps,Weight (kg)\n" +
+                "2021-11-18 13:03:57,Weekly Day 2,Trapbar Deadlift,6,67.0\n" +
+                "not a valid line\n" +
+                "2021-11-18 13:06:57,Weekly Day 2,Trapbar Deadlift,abc,67.0\n";
+
+        ImportResult result;
+        try (BufferedReader reader = new BufferedReader(new StringReader(csv))) {
+            result = new CsvImportPipeline(exerciseDao, activityDao, 2, 2, 10).run(reader);
+        }
+
+        ArgumentCaptor<ActivityRecord> captor = ArgumentCaptor.forClass(ActivityRecord.class);
+        verify(inserter, times(1)).add(captor.capture());
+        ActivityRecord record = captor.getValue();
+        assertEquals("Trapbar Deadlift".hashCode(), record.getExerciseId());
+        assertEquals(6, record.getReps());
+        assertEquals(67.0, record.getWeight());
+        assertEquals(2, result.getSkippedRows());
+    }
+
+    @Test
+    void testReadFailureDropsThePendingChunk() throws Exception {
+        String csv = "Date,Workout Name,Exercise Name,Reps,Weight (kg)\n" +
+                "2021-11-18 13:03:57,Weekly Day 2,Trapbar Deadlift,6,67.0\n";
+        BufferedReader failingReader = new BufferedReader(new StringReader(csv)) {
+            private int lines;
+
+            @Override
+            public String readLine() throws IOException {
+                if (++lines > 2) {
+                    throw new IOException("Disk gone");
+                }
+                return super.readLine();
+            }
+        };
+
+        assertThrows(IOException.class,
+                () -> new CsvImportPipeline(exerciseDao, activityDao, 2, 2, 10).run(failingReader));
+
+        // The failed import commits nothing more; close must not flush a partial chunk
+        verify(inserter).abandon();
+        verify(inserter, never()).flush();
+        verify(inserter).close();
+    }
+}
@@ -1,6 +1,7 @@
 package info.matthewryan.workoutlogger.utils;
 
 import info.matthewryan.workoutlogger.model.ActivityRecord;
+import info.matthewryan.workoutlogger.persistence.ActivityBatchInserter;
 import info.matthewryan.workoutlogger.persistence.ActivityDao;
 import info.matthewryan.workoutlogger.persistence.ExerciseDao;
 import org.junit.jupiter.api.BeforeEach;
@@ -11,7 +12,9 @@ import java.io.*;
 import java.text.SimpleDateFormat;
 import java.util.*;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.mockito.Mockito.*;
 
 public class CsvImporterTest {
@@ -106,6 +109,81 @@ public class CsvImporterTest {
         outputStatistics();
     }
 
+    @Test
+    void testImportCsvBulk() throws Exception {
+        ActivityBatchInserter inserter = mock(ActivityBatchInserter.class);
+        when(activityDao.openBulkLoader(anyInt())).thenReturn(inserter);
+        when(exerciseDao.getOrCreateExerciseId(anyString())).thenReturn(1);
+
+        int dataLines;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(getClass().getResourceAsStream("/data.csv")))) {
+            dataLines = (int) reader.lines().count() - 1;  // Minus header
+        }
+
+        ImportResult result;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(getClass().getResourceAsStream("/data.csv")))) {
+            result = csvImporter.importCsv(reader, 500);
+        }
+
+        // Every data line goes through the single batch inserter, never the per-row insert
+        verify(activityDao, times(1)).openBulkLoader(500);
+        verify(inserter, times(dataLines)).add(Mockito.any(ActivityRecord.class));
+        verify(inserter).close();
+        verify(activityDao, never()).insertActivity(Mockito.any(ActivityRecord.class));
+
+        // Exercise lookups are cached for the duration of the import
+        verify(exerciseDao, times(exerciseSetFromFile().size())).getOrCreateExerciseId(anyString());
+        assertEquals(0, result.getSkippedRows());
+    }
+
+    @Test
+    void testStrayQuoteOnlySkipsItsOwnLine() throws IOException {
+        StringBuilder csv = new StringBuilder("Date,Workout Name,Exercise Name,Reps,Weight\n");
+        csv.append("2021-10-26 10:00:00,Legs,\"Quoted\nName\",5,100\n");
+        csv.append("2021-10-26 10:01:00,Legs,\"Bench Press,5,100\n");  // Never closed
+        for (int i = 0; i < 2 * CsvImporter.MAX_RECORD_LINES; i++) {
+            csv.append("2021-10-26 10:02:00,Legs,Squat,5,100\n");
+        }
+        BufferedReader reader = new BufferedReader(new StringReader(csv.toString()));
+
+        CsvImporter.readRecord(reader);  // Header
+        assertEquals("2021-10-26 10:00:00,Legs,\"Quoted\nName\",5,100", CsvImporter.readRecord(reader));
+        assertEquals("2021-10-26 10:01:00,Legs,\"Bench Press,5,100", CsvImporter.readRecord(reader));
+        for (int i = 0; i < 2 * CsvImporter.MAX_RECORD_LINES; i++) {
+            assertEquals("2021-10-26 10:02:00,Legs,Squat,5,100", CsvImporter.readRecord(reader));
+        }
+        assertNull(CsvImporter.readRecord(reader));
+    }
+
+    @Test
+    void testQuoteInsideUnquotedFieldIsLiteral() throws Exception {
+        String csv = "Date,Workout Name,Exercise Name,Reps,Weight,Notes\n" +
+                "2021-10-26 10:00:00,Legs,Box Jump,5,0,Raised the box 6\" today\n" +
+                "2021-10-26 10:01:00,Legs,Squat,5,100,\n" +
+                "2021-10-26 10:02:00,Legs,Squat,5,100,\n" +
+                "2021-10-26 10:03:00,Legs,Squat,5,100,\n";
+        BufferedReader reader = new BufferedReader(new StringReader(csv));
+        CsvImporter.readRecord(reader);  // Header
+        assertEquals("2021-10-26 10:00:00,Legs,Box Jump,5,0,Raised the box 6\" today", CsvImporter.readRecord(reader));
+        assertEquals("2021-10-26 10:01:00,Legs,Squat,5,100,", CsvImporter.readRecord(reader));
+
+        ActivityBatchInserter inserter = mock(ActivityBatchInserter.class);
+        when(activityDao.openBulkLoader(anyInt())).thenReturn(inserter);
+        when(exerciseDao.getOrCreateExerciseId(anyString())).thenReturn(1);
+        ImportResult result = csvImporter.importCsv(new BufferedReader(new StringReader(csv)), 500);
+
+        verify(inserter, times(4)).add(Mockito.any(ActivityRecord.class));
+        assertEquals(0, result.getSkippedRows());
+    }
+
+    private Set<String> exerciseSetFromFile() throws IOException {
+        Set<String> names = new HashSet<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(getClass().getResourceAsStream("/data.csv")))) {
+            reader.lines().skip(1).forEach(line -> names.add(line.split(",")[2]));
+        }
+        return names;
+    }
+
     // Method to update statistics while processing each line
     private void updateStatistics(String line) {
         // Split the CSV line
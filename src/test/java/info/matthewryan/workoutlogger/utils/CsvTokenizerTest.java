@@ -0,0 +1,125 @@
+package info.matthewryan.workoutlogger.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.text.SimpleDateFormat;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CsvTokenizerTest {
+
+    @Test
+    void testSplitsPlainFields() {
+        CsvTokenizer tokenizer = new CsvTokenizer();
+        assertEquals(8, tokenizer.reset("2021-11-18 13:03:57,Weekly Day 2,Trapbar Deadlift,6,67.0,147.70971566386797,,0"));
+        assertTrue(tokenizer.isComplete());
+        assertEquals("Trapbar Deadlift", tokenizer.getString(2));
+        assertTrue(tokenizer.fieldEquals(2, "Trapbar Deadlift"));
+        assertFalse(tokenizer.fieldEquals(2, "Trapbar"));
+        assertEquals(6, tokenizer.parseInt(3));
+        assertEquals(67.0, tokenizer.parseDouble(4));
+        assertEquals(147.70971566386797, tokenizer.parseDouble(5));
+        assertEquals(0, tokenizer.fieldLength(6));
+        assertEquals(0, tokenizer.parseInt(7));
+    }
+
+    @Test
+    void testHandlesQuotedFields() {
+        CsvTokenizer tokenizer = new CsvTokenizer();
+        assertEquals(4, tokenizer.reset("a,\"Notes, with a comma\",\"He said \"\"light\"\"\",\"\""));
+        assertEquals("a", tokenizer.getString(0));
+        assertEquals("Notes, with a comma", tokenizer.getString(1));
+        assertEquals("He said \"light\"", tokenizer.getString(2));
+        assertTrue(tokenizer.fieldEquals(2, "He said \"light\""));
+        assertEquals("", tokenizer.getString(3));
+
+        // A quote left open means the record continues on the next line
+        tokenizer.reset("a,\"first line");
+        assertFalse(tokenizer.isComplete());
+        tokenizer.reset("a,\"first line\nsecond line\",b");
+        assertTrue(tokenizer.isComplete());
+        assertEquals("first line\nsecond line", tokenizer.getString(1));
+        assertEquals("b", tokenizer.getString(2));
+    }
+
+    @Test
+    void testReadRecordJoinsMultiLineFields() throws Exception {
+        BufferedReader reader = new BufferedReader(new StringReader("h1,h2\n1,\"two\nlines\"\n3,4\n"));
+        assertEquals("h1,h2", CsvImporter.readRecord(reader));
+        assertEquals("1,\"two\nlines\"", CsvImporter.readRecord(reader));
+        assertEquals("3,4", CsvImporter.readRecord(reader));
+        assertNull(CsvImporter.readRecord(reader));
+    }
+
+    @Test
+    void testNumbersMatchJdkParsing() {
+        CsvTokenizer tokenizer = new CsvTokenizer();
+        String[] values = {"0", "-0.5", "+12.25", "100.0", "0.1", "2.5e3", "123456789012345.6", "-7", ".5"};
+        for (String value : values) {
+            tokenizer.reset(value);
+            assertEquals(Double.parseDouble(value), tokenizer.parseDouble(0), value);
+        }
+        tokenizer.reset("x,,-2147483648,2147483648");
+        assertThrows(NumberFormatException.class, () -> tokenizer.parseInt(0));
+        assertThrows(NumberFormatException.class, () -> tokenizer.parseDouble(1));
+        assertEquals(Integer.MIN_VALUE, tokenizer.parseInt(2));
+        assertThrows(NumberFormatException.class, () -> tokenizer.parseInt(3));
+    }
+
+    @Test
+    void testTimestampParserMatchesSimpleDateFormat() throws Exception {
+        SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+        FixedTimestampParser parser = new FixedTimestampParser();
+        CsvTokenizer tokenizer = new CsvTokenizer();
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(getClass().getResourceAsStream("/data.csv")))) {
+            reader.readLine();  // Skip header
+            String line;
+            while ((line = reader.readLine()) != null) {
+                tokenizer.reset(line);
+                String date = tokenizer.getString(0);
+                long expected = sdf.parse(date).getTime();
+                assertEquals(expected, parser.parse(line, tokenizer.fieldStart(0), tokenizer.fieldEnd(0)), date);
+                assertEquals(CsvImporter.getSessionIdFromTimestamp(expected), parser.getLastEpochDay(), date);
+            }
+        }
+    }
+
+    @Test
+    void testTimestampParserAcrossDaylightSavingChanges() {
+        ZoneId sydney = ZoneId.of("Australia/Sydney");
+        FixedTimestampParser parser = new FixedTimestampParser(sydney);
+        String[] times = {
+                "2023-04-01 23:30:00", "2023-04-02 01:30:00", "2023-04-02 02:30:00", "2023-04-02 03:30:00",
+                "2023-10-01 01:59:59", "2023-10-01 03:00:00", "2023-10-01 12:00:00", "2024-02-29 08:15:30"
+        };
+        for (String time : times) {
+            long expected = LocalDateTime.parse(time.replace(' ', 'T')).atZone(sydney).toInstant().toEpochMilli();
+            assertEquals(expected, parser.parse(time), time);
+        }
+
+        assertThrows(IllegalArgumentException.class, () -> parser.parse("2023-02-30 10:00:00"));
+        assertThrows(IllegalArgumentException.class, () -> parser.parse("2023/02/01 10:00:00"));
+        assertThrows(IllegalArgumentException.class, () -> parser.parse("2023-02-01"));
+    }
+
+    @Test
+    void testTimestampParserWhenDaylightSavingStartsAtMidnight() {
+        // Santiago skipped from 00:00 to 01:00 on 2022-09-11, so that day starts at 01:00
+        ZoneId santiago = ZoneId.of("America/Santiago");
+        FixedTimestampParser parser = new FixedTimestampParser(santiago);
+        String[] times = {
+                "2022-09-10 23:59:59", "2022-09-11 00:30:00", "2022-09-11 01:00:00", "2022-09-11 10:30:00",
+                "2022-09-11 10:45:00", "2022-09-12 00:00:00", "2022-04-02 23:30:00", "2022-04-03 10:30:00"
+        };
+        for (String time : times) {
+            long expected = LocalDateTime.parse(time.replace(' ', 'T')).atZone(santiago).toInstant().toEpochMilli();
+            assertEquals(expected, parser.parse(time), time);
+        }
+    }
+}
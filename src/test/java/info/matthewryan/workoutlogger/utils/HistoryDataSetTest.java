@@ -0,0 +1,88 @@
+package info.matthewryan.workoutlogger.utils;
+
+import info.matthewryan.workoutlogger.model.ActivityColumns;
+import info.matthewryan.workoutlogger.utils.HistoryDataSet.Measure;
+import io.fair_acc.dataset.DataSet;
+import io.fair_acc.dataset.spi.DoubleDataSet;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HistoryDataSetTest {
+
+    private static ActivityColumns columns() {
+        ActivityColumns.Builder builder = ActivityColumns.builder(8);
+        builder.add(1, 8, 60.0, 1000L, 1);
+        builder.add(3, 5, 100.0, 2000L, 1);
+        builder.add(3, 1, 120.0, 3000L, 1);
+        builder.add(3, 10, 80.0, 4000L, 2);
+        builder.add(7, 10, 20.0, 5000L, 2);
+        return builder.build();
+    }
+
+    @Test
+    void testExerciseRowsAreReadInPlace() {
+        ActivityColumns columns = columns();
+        HistoryDataSet dataSet = new HistoryDataSet("Volume", Measure.VOLUME);
+        assertEquals(0, dataSet.getDataCount());
+
+        dataSet.setExercise(columns, 3);
+        assertEquals(3, dataSet.getDataCount());
+        assertEquals(2000.0, dataSet.get(DataSet.DIM_X, 0));
+        assertEquals(500.0, dataSet.get(DataSet.DIM_Y, 0));
+        assertEquals(4000.0, dataSet.get(DataSet.DIM_X, 2));
+        assertEquals(800.0, dataSet.get(DataSet.DIM_Y, 2));
+
+        dataSet.setExercise(columns, 7);
+        assertEquals(1, dataSet.getDataCount());
+        assertEquals(5000.0, dataSet.get(DataSet.DIM_X, 0));
+
+        dataSet.setExercise(columns, 2);  // No sets
+        assertEquals(0, dataSet.getDataCount());
+    }
+
+    @Test
+    void testMeasures() {
+        ActivityColumns columns = columns();
+        HistoryDataSet weight = new HistoryDataSet("Weight", Measure.MAX_WEIGHT).setExercise(columns, 3);
+        HistoryDataSet e1rm = new HistoryDataSet("e1RM", Measure.ESTIMATED_ONE_REP_MAX).setExercise(columns, 3);
+
+        assertEquals(120.0, weight.get(DataSet.DIM_Y, 1));
+        assertEquals(120.0, e1rm.get(DataSet.DIM_Y, 1), 1e-9, "A single is its own max");
+        assertEquals(100.0 * (1 + 5 / 30.0), e1rm.get(DataSet.DIM_Y, 0), 1e-9);
+    }
+
+    @Test
+    void testSelectionShowsChosenRowsOnly() {
+        HistoryDataSet dataSet = new HistoryDataSet("Volume", Measure.VOLUME).setExercise(columns(), 3);
+
+        dataSet.select(new int[]{0, 2, 99}, 2);
+        assertEquals(2, dataSet.getDataCount());
+        assertEquals(3, dataSet.getRowCount());
+        assertEquals(4000.0, dataSet.get(DataSet.DIM_X, 1));
+
+        dataSet.select(null, 0);
+        assertEquals(3, dataSet.getDataCount());
+
+        assertThrows(IndexOutOfBoundsException.class, () -> dataSet.select(new int[1], 2));
+    }
+
+    @Test
+    void testSetShowsWhatAnotherHistoryDataSetShows() {
+        int[] rows = {0, 2};
+        HistoryDataSet source = new HistoryDataSet("e1RM", Measure.ESTIMATED_ONE_REP_MAX)
+                .setExercise(columns(), 3)
+                .select(rows, 2);
+        HistoryDataSet copy = new HistoryDataSet("Copy", Measure.VOLUME);
+        copy.set(source, true);
+
+        assertEquals(Measure.ESTIMATED_ONE_REP_MAX, copy.getMeasure());
+        assertEquals(2, copy.getDataCount());
+        assertEquals(source.get(DataSet.DIM_Y, 1), copy.get(DataSet.DIM_Y, 1));
+        rows[1] = 1;  // The copy keeps its own selection
+        assertEquals(4000.0, copy.get(DataSet.DIM_X, 1));
+
+        assertThrows(UnsupportedOperationException.class,
+                () -> copy.set(new DoubleDataSet("Values").set(new double[]{1}, new double[]{2}), true));
+    }
+}
@@ -0,0 +1,395 @@
+package info.matthewryan.workoutlogger.utils;
+
+import info.matthewryan.workoutlogger.model.ActivityRecord;
+import info.matthewryan.workoutlogger.persistence.ActivityBatchInserter;
+import info.matthewryan.workoutlogger.persistence.ActivityDao;
+import info.matthewryan.workoutlogger.persistence.ExerciseDao;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Deterministic generator of synthetic training histories for scale tests and benchmarks. Each
+ * athlete follows a weekly split of three to five days over a catalogue of up to a few hundred
+ * exercises, with strength that grows along a saturating overload curve, periodic deload weeks,
+ * skipped sessions, missed weeks and multi-week layoffs that cost some of the progress made.
+ * The same settings always produce the same sets, and sets are produced one at a time, so
+ * histories of tens of millions of sets can be streamed into the database through the batch
+ * insert path or written as CSV in the import format. A test fixture, kept out of the application
+ * jar; the benchmarks compile against it with the tests. The schema has no notion of an athlete,
+ * so the histories of several athletes simply share the tables; in the database each athlete's
+ * sessions get ids of their own.
+ */
+public class HistoryGenerator {
+
+    private static final Logger logger = LoggerFactory.getLogger(HistoryGenerator.class);
+
+    public static final String CSV_HEADER = "Date,Workout Name,Exercise Name,Reps,Weight (kg),Weight (lb),Notes,Duration";
+
+    // Rough sets per athlete per year at the default settings, for sizing by set count
+    private static final int SETS_PER_ATHLETE_YEAR = 3000;
+    private static final double POUNDS_PER_KG = 2.2046226218;
+    // Session ids are athlete * SESSION_ID_STRIDE + the session's local epoch day. Only
+    // insertInto can set them: the CSV format has no session column and the importer takes the
+    // epoch day, so in an imported CSV every athlete training on one day shares a session.
+    private static final long SESSION_ID_STRIDE = 100_000L;
+
+    // Movement, and the one-rep max of an average intermediate lifter on the barbell version
+    private static final String[] MOVEMENTS = {
+            "Bench Press", "Squat", "Deadlift", "Overhead Press", "Row", "Romanian Deadlift", "Front Squat",
+            "Hip Thrust", "Lat Pulldown", "Leg Press", "Lunge", "Split Squat", "Curl", "Triceps Extension",
+            "Lateral Raise", "Chest Fly", "Shrug", "Calf Raise", "Leg Curl", "Leg Extension", "Face Pull",
+            "Good Morning", "Upright Row", "Hack Squat", "Step-Up", "Close-Grip Bench Press", "Pullover",
+            "Reverse Fly", "Preacher Curl", "Skull Crusher"
+    };
+    private static final double[] MOVEMENT_ONE_REP_MAX = {
+            90, 120, 150, 60, 80, 110, 95, 130, 75, 200, 50, 50, 40, 35, 15, 25, 110, 90, 50, 60, 30, 60, 45, 130,
+            40, 80, 35, 20, 35, 35
+    };
+    // Equipment or variation, and how much of the barbell one-rep max it allows
+    private static final String[] VARIATIONS = {
+            "Barbell", "Dumbbell", "Machine", "Cable", "Smith Machine", "Kettlebell", "Single-Arm Dumbbell",
+            "Incline", "Decline", "Paused", "Tempo", "Deficit", "Banded"
+    };
+    private static final double[] VARIATION_FACTOR = {
+            1.0, 0.4, 0.9, 0.5, 0.9, 0.35, 0.35, 0.85, 0.95, 0.85, 0.75, 0.85, 0.8
+    };
+    // Training days, as offsets from the start of the week, for three, four and five day splits
+    private static final int[][] SPLITS = {{0, 2, 4}, {0, 1, 3, 4}, {0, 1, 2, 3, 4}};
+
+    private final long seed;
+    private final int athletes;
+    private final int years;
+    private final int exercises;
+    private final long maxSets;
+    private final LocalDate endDate;
+    private final ZoneId zone;
+
+    private HistoryGenerator(Builder builder) {
+        this.seed = builder.seed;
+        this.athletes = builder.athletes;
+        this.years = builder.years;
+        this.exercises = builder.exercises;
+        this.maxSets = builder.maxSets;
+        this.endDate = builder.endDate;
+        this.zone = builder.zone;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    // Enough athletes over the given years for the requested number of sets, stopping at exactly that many
+    public static HistoryGenerator forSetCount(long seed, long sets, int years) {
+        int athletes = (int) Math.max(1, Math.min(Integer.MAX_VALUE,
+                (long) Math.ceil(sets * 1.2 / ((double) SETS_PER_ATHLETE_YEAR * years))));
+        return builder().seed(seed).athletes(athletes).years(years).maxSets(sets).build();
+    }
+
+    public int getExerciseCount() {
+        return exercises;
+    }
+
+    // Name of catalogue entry index: the barbell movements first, then each variation in turn
+    public String getExerciseName(int index) {
+        int movement = index % MOVEMENTS.length;
+        int variation = index / MOVEMENTS.length;
+        String name = VARIATIONS[variation % VARIATIONS.length] + " " + MOVEMENTS[movement];
+        int round = variation / VARIATIONS.length;
+        return round == 0 ? name : name + " (Variation " + (round + 1) + ")";
+    }
+
+    // Insert the history through the bulk load path, creating exercises as needed
+    public ImportResult insertInto(ExerciseDao exerciseDao, ActivityDao activityDao) throws SQLException {
+        return insertInto(exerciseDao, activityDao, CsvImporter.DEFAULT_CHUNK_SIZE);
+    }
+
+    public ImportResult insertInto(ExerciseDao exerciseDao, ActivityDao activityDao, int chunkSize) throws SQLException {
+        long start = System.nanoTime();
+        int[] exerciseIds = new int[exercises];
+        long written;
+        try (ActivityBatchInserter inserter = activityDao.openBulkLoader(chunkSize)) {
+            written = generate((athlete, exercise, workout, time, reps, weight) -> {
+                if (exerciseIds[exercise] == 0) {
+                    exerciseIds[exercise] = exerciseDao.getOrCreateExerciseId(getExerciseName(exercise));
+                }
+                long sessionId = athlete * SESSION_ID_STRIDE + time.toLocalDate().toEpochDay();
+                inserter.add(new ActivityRecord(exerciseIds[exercise], reps, weight,
+                        time.atZone(zone).toInstant().toEpochMilli(), sessionId));
+            });
+            inserter.flush();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);  // Not thrown on this path
+        }
+        ImportResult result = new ImportResult(written, 0, System.nanoTime() - start);
+        logger.info("Generated {} sets for {} athletes into the database: {}", written, athletes, result);
+        return result;
+    }
+
+    // Write the history as CSV in the import format, header first
+    public long writeCsv(Path file) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            return writeCsv(writer);
+        }
+    }
+
+    public long writeCsv(Writer writer) throws IOException {
+        StringBuilder line = new StringBuilder(128);
+        writer.write(CSV_HEADER);
+        writer.write('\n');
+        long written;
+        try {
+            written = generate((athlete, exercise, workout, time, reps, weight) -> {
+                line.setLength(0);
+                appendDateTime(line, time);
+                line.append(",Athlete ").append(athlete + 1).append(" Day ").append((char) ('A' + workout))
+                    .append(',').append(getExerciseName(exercise))
+                    .append(',').append(reps)
+                    .append(',').append(weight)
+                    .append(',').append(Math.round(weight * POUNDS_PER_KG * 100) / 100.0)
+                    .append(",,0\n");
+                writer.append(line);
+            });
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);  // Not thrown on this path
+        }
+        logger.info("Generated {} sets for {} athletes as CSV", written, athletes);
+        return written;
+    }
+
+    // Command line, from the test classpath: HistoryGenerator <csv file> <sets> [seed] [years]
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            throw new IllegalArgumentException("Usage: HistoryGenerator <csv file> <sets> [seed] [years]");
+        }
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : 1L;
+        int years = args.length > 3 ? Integer.parseInt(args[3]) : 3;
+        forSetCount(seed, Long.parseLong(args[1]), years).writeCsv(Path.of(args[0]));
+    }
+
+    private interface SetSink {
+        void accept(int athlete, int exercise, int workout, LocalDateTime time, int reps, double weight)
+                throws IOException, SQLException;
+    }
+
+    // Athletes one after another, each in time order; returns the number of sets produced
+    private long generate(SetSink sink) throws IOException, SQLException {
+        long written = 0;
+        LocalDate firstDay = endDate.minusYears(years);
+        for (int athlete = 0; athlete < athletes && written < maxSets; athlete++) {
+            written += new Athlete(athlete, firstDay).train(sink, maxSets - written);
+        }
+        return written;
+    }
+
+    private static void appendDateTime(StringBuilder out, LocalDateTime time) {
+        out.append(time.getYear()).append('-');
+        appendTwoDigits(out, time.getMonthValue()).append('-');
+        appendTwoDigits(out, time.getDayOfMonth()).append(' ');
+        appendTwoDigits(out, time.getHour()).append(':');
+        appendTwoDigits(out, time.getMinute()).append(':');
+        appendTwoDigits(out, time.getSecond());
+    }
+
+    private static StringBuilder appendTwoDigits(StringBuilder out, int value) {
+        return out.append((char) ('0' + value / 10)).append((char) ('0' + value % 10));
+    }
+
+    // One athlete's program and progress. Every athlete has a Random of their own, so one
+    // athlete's history does not depend on how many sets the others produced.
+    private final class Athlete {
+
+        private final int index;
+        private final LocalDate firstDay;
+        private final Random random;
+        private final int[] trainingDays;
+        private final int[][] workouts;
+
+        // Per catalogue exercise this athlete does: starting one-rep max, the fraction it can
+        // still grow by, weeks to get most of the way there, and the rep range trained
+        private final double[] startOneRepMax;
+        private final double[] potential;
+        private final double[] weeksToPotential;
+        private final int[] minReps;
+
+        private Athlete(int index, LocalDate firstDay) {
+            this.index = index;
+            this.random = new Random(seed * 0x9E3779B97F4A7C15L + index);
+            this.firstDay = firstDay.plusDays(random.nextInt(14));
+            this.trainingDays = SPLITS[random.nextInt(SPLITS.length)];
+
+            double strength = 0.6 + 0.8 * random.nextDouble();
+            startOneRepMax = new double[exercises];
+            potential = new double[exercises];
+            weeksToPotential = new double[exercises];
+            minReps = new int[exercises];
+
+            // Four to six exercises per training day, drawn with a bias towards the popular
+            // low catalogue entries
+            workouts = new int[trainingDays.length][];
+            for (int day = 0; day < trainingDays.length; day++) {
+                workouts[day] = new int[4 + random.nextInt(3)];
+                for (int slot = 0; slot < workouts[day].length; slot++) {
+                    double r = random.nextDouble();
+                    int exercise = (int) (exercises * r * r);
+                    workouts[day][slot] = exercise;
+                    if (startOneRepMax[exercise] == 0) {
+                        double full = MOVEMENT_ONE_REP_MAX[exercise % MOVEMENTS.length]
+                                * VARIATION_FACTOR[(exercise / MOVEMENTS.length) % VARIATIONS.length] * strength;
+                        startOneRepMax[exercise] = full * (0.55 + 0.2 * random.nextDouble());
+                        potential[exercise] = 0.4 + 0.8 * random.nextDouble();
+                        weeksToPotential[exercise] = 30 + 60 * random.nextDouble();
+                        minReps[exercise] = random.nextBoolean() ? 3 : 8;
+                    }
+                }
+            }
+        }
+
+        private long train(SetSink sink, long limit) throws IOException, SQLException {
+            long written = 0;
+            // Progress clock in weeks; layoffs turn it back
+            double trainedWeeks = 0;
+            int deloadEvery = 6 + random.nextInt(5);
+            int layoffWeeksLeft = 0;
+            int week = 0;
+
+            LocalDate weekStart = firstDay.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+            for (; weekStart.isBefore(endDate) && written < limit; weekStart = weekStart.plusWeeks(1), week++) {
+                if (layoffWeeksLeft > 0) {
+                    layoffWeeksLeft--;
+                    trainedWeeks = Math.max(0, trainedWeeks - 1.5);  // Detraining
+                    continue;
+                }
+                if (random.nextDouble() < 0.01) {
+                    layoffWeeksLeft = 2 + random.nextInt(7);
+                    continue;
+                }
+                if (random.nextDouble() < 0.05) {
+                    continue;  // Missed week
+                }
+                boolean deload = week % deloadEvery == deloadEvery - 1;
+
+                for (int day = 0; day < trainingDays.length && written < limit; day++) {
+                    LocalDate date = weekStart.plusDays(trainingDays[day]);
+                    if (date.isBefore(firstDay) || !date.isBefore(endDate) || random.nextDouble() < 0.1) {
+                        continue;  // Outside the history, or a skipped session
+                    }
+                    LocalDateTime time = date.atTime(6 + random.nextInt(14), random.nextInt(60));
+                    for (int exercise : workouts[day]) {
+                        time = time.plusMinutes(2);
+                        written += trainExercise(sink, day, exercise, time, trainedWeeks, deload, limit - written);
+                        time = time.plusMinutes(3L * 5);
+                        if (written >= limit) {
+                            break;
+                        }
+                    }
+                }
+                trainedWeeks += deload ? 0.5 : 1;
+            }
+            return written;
+        }
+
+        private int trainExercise(SetSink sink, int workout, int exercise, LocalDateTime start, double trainedWeeks,
+                                  boolean deload, long limit) throws IOException, SQLException {
+            double oneRepMax = startOneRepMax[exercise]
+                    * (1 + potential[exercise] * (1 - Math.exp(-trainedWeeks / weeksToPotential[exercise])));
+            int sets = (int) Math.min(limit, 3 + random.nextInt(3));
+            int reps = minReps[exercise] + random.nextInt(4);
+            double weight = roundWeight(oneRepMax / (1 + reps / 30.0) * (deload ? 0.85 : 0.97 + 0.05 * random.nextDouble()));
+
+            LocalDateTime time = start;
+            for (int set = 0; set < sets; set++) {
+                int setReps = Math.max(1, reps - (set > 1 ? random.nextInt(3) : 0));  // Fatigue on later sets
+                double setWeight = weight;
+                if (!deload && set == sets - 1 && random.nextDouble() < 0.02) {
+                    // A heavy single now and then: the spikes personal bests are made of
+                    setReps = 1;
+                    setWeight = roundWeight(oneRepMax * (0.98 + 0.06 * random.nextDouble()));
+                }
+                sink.accept(index, exercise, workout, time, setReps, setWeight);
+                time = time.plusSeconds(90 + random.nextInt(150));
+            }
+            return sets;
+        }
+
+        private double roundWeight(double weight) {
+            double step = weight < 20 ? 1.0 : 2.5;
+            return Math.max(step, Math.round(weight / step) * step);
+        }
+    }
+
+    public static final class Builder {
+
+        private long seed = 1;
+        private int athletes = 1;
+        private int years = 3;
+        private int exercises = 300;
+        private long maxSets = Long.MAX_VALUE;
+        private LocalDate endDate = LocalDate.of(2024, 1, 1);
+        private ZoneId zone = ZoneId.systemDefault();
+
+        private Builder() {
+        }
+
+        public Builder seed(long seed) {
+            this.seed = seed;
+            return this;
+        }
+
+        public Builder athletes(int athletes) {
+            this.athletes = athletes;
+            return this;
+        }
+
+        public Builder years(int years) {
+            this.years = years;
+            return this;
+        }
+
+        // Size of the exercise catalogue athletes choose from
+        public Builder exercises(int exercises) {
+            this.exercises = exercises;
+            return this;
+        }
+
+        // Stop after this many sets, wherever that falls
+        public Builder maxSets(long maxSets) {
+            this.maxSets = maxSets;
+            return this;
+        }
+
+        // Day after the last day of the history; fixed by default so runs are repeatable
+        public Builder endDate(LocalDate endDate) {
+            this.endDate = endDate;
+            return this;
+        }
+
+        // Zone the local training times are converted in
+        public Builder zone(ZoneId zone) {
+            this.zone = zone;
+            return this;
+        }
+
+        public HistoryGenerator build() {
+            if (athletes <= 0 || years <= 0 || exercises <= 0 || maxSets < 0) {
+                throw new IllegalArgumentException("Athletes, years and exercises must be positive");
+            }
+            return new HistoryGenerator(this);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package info.matthewryan.workoutlogger.utils;
+
+import info.matthewryan.workoutlogger.model.ActivityColumns;
+import info.matthewryan.workoutlogger.persistence.ActivityDao;
+import info.matthewryan.workoutlogger.persistence.ExerciseDao;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.time.ZoneId;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HistoryGeneratorTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testSameSeedSameHistory() throws Exception {
+        HistoryGenerator generator = HistoryGenerator.builder().seed(7).athletes(3).years(2).build();
+        String first = csv(generator);
+        String second = csv(HistoryGenerator.builder().seed(7).athletes(3).years(2).build());
+        assertEquals(first, second);
+        assertNotEquals(first, csv(HistoryGenerator.builder().seed(8).athletes(3).years(2).build()));
+
+        // Three athletes over two years train a few thousand sets each
+        long sets = first.lines().count() - 1;
+        assertTrue(sets > 3 * 2 * 1500 && sets < 3 * 2 * 6000, "Unexpected history size " + sets);
+        assertTrue(first.startsWith(HistoryGenerator.CSV_HEADER + "\n"));
+    }
+
+    @Test
+    void testStopsAtRequestedSetCount() throws Exception {
+        HistoryGenerator generator = HistoryGenerator.forSetCount(3, 25_000, 2);
+        assertEquals(25_000, generator.writeCsv(new StringWriter()));
+    }
+
+    @Test
+    void testCsvAndDatabaseOutputAgree() throws Exception {
+        HistoryGenerator generator = HistoryGenerator.builder().seed(11).athletes(1).years(3)
+                .zone(ZoneId.systemDefault()).build();
+
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + tempDir.resolve("generated.db"));
+             Connection imported = DriverManager.getConnection("jdbc:sqlite:" + tempDir.resolve("imported.db"))) {
+            ActivityColumns generated = load(connection, dao -> generator.insertInto(dao.exerciseDao, dao.activityDao));
+            ActivityColumns parsed = load(imported, dao -> new CsvImporter(dao.exerciseDao, dao.activityDao)
+                    .importCsv(new BufferedReader(new StringReader(csv(generator)))));
+
+            assertEquals(generated.size(), parsed.size());
+            for (int row = 0; row < generated.size(); row += 97) {
+                assertEquals(generated.getTimestamp(row), parsed.getTimestamp(row));
+                assertEquals(generated.getReps(row), parsed.getReps(row));
+                assertEquals(generated.getWeight(row), parsed.getWeight(row));
+                // One athlete: session ids are the local epoch day, as in the CSV import
+                assertEquals(generated.getSessionId(row), parsed.getSessionId(row));
+            }
+        }
+    }
+
+    @Test
+    void testStrengthProgresses() throws Exception {
+        HistoryGenerator generator = HistoryGenerator.builder().seed(5).athletes(8).years(3).build();
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + tempDir.resolve("progress.db"))) {
+            ActivityColumns columns = load(connection, dao -> generator.insertInto(dao.exerciseDao, dao.activityDao));
+
+            // Over all athletes, the most trained exercise is lifted heavier in the last year than the first
+            int busiest = -1;
+            for (int exerciseId : columns.getExerciseIds()) {
+                if (busiest == -1 || columns.getExerciseRowCount(exerciseId) > columns.getExerciseRowCount(busiest)) {
+                    busiest = exerciseId;
+                }
+            }
+            long firstYearEnd = columns.getTimestamp(columns.getExerciseStart(busiest)) + 365L * 86_400_000L;
+            long lastYearStart = columns.getTimestamp(columns.getExerciseEnd(busiest) - 1) - 365L * 86_400_000L;
+            double firstYear = 0;
+            double lastYear = 0;
+            int firstCount = 0;
+            int lastCount = 0;
+            for (int row = columns.getExerciseStart(busiest); row < columns.getExerciseEnd(busiest); row++) {
+                if (columns.getTimestamp(row) < firstYearEnd) {
+                    firstYear += columns.getWeight(row);
+                    firstCount++;
+                } else if (columns.getTimestamp(row) > lastYearStart) {
+                    lastYear += columns.getWeight(row);
+                    lastCount++;
+                }
+            }
+            assertTrue(lastYear / lastCount > firstYear / firstCount * 1.1,
+                    "Expected progress, got " + firstYear / firstCount + " -> " + lastYear / lastCount);
+        }
+    }
+
+    private static String csv(HistoryGenerator generator) throws Exception {
+        StringWriter writer = new StringWriter();
+        generator.writeCsv(writer);
+        return writer.toString();
+    }
+
+    private interface Fill {
+        void into(Daos daos) throws Exception;
+    }
+
+    private static final class Daos {
+        private final ExerciseDao exerciseDao;
+        private final ActivityDao activityDao;
+
+        private Daos(Connection connection) {
+            exerciseDao = new ExerciseDao(connection);
+            activityDao = new ActivityDao(connection, exerciseDao.getExerciseDictionary());
+            exerciseDao.createExerciseTable();
+            activityDao.createActivityTable();
+        }
+    }
+
+    private static ActivityColumns load(Connection connection, Fill fill) throws Exception {
+        Daos daos = new Daos(connection);
+        fill.into(daos);
+        return daos.activityDao.loadActivityColumns();
+    }
+}
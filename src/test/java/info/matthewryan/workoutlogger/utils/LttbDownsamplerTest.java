@@ -0,0 +1,59 @@
+package info.matthewryan.workoutlogger.utils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LttbDownsamplerTest {
+
+    @Test
+    void testShortSeriesIsKeptWhole() {
+        double[] x = {1, 2, 3, 4, 5};
+        double[] y = {5, 3, 8, 1, 2};
+        assertArrayEquals(new int[]{0, 1, 2, 3, 4}, LttbDownsampler.downsample(x, y, 0, 5, 10));
+        assertArrayEquals(new int[]{1, 2, 3}, LttbDownsampler.downsample(x, y, 1, 4, 3));
+    }
+
+    @Test
+    void testReducesToThresholdKeepingEndsAndPeaks() {
+        int count = 100_000;
+        double[] x = new double[count];
+        double[] y = new double[count];
+        for (int i = 0; i < count; i++) {
+            x[i] = i * 1000.0;
+            y[i] = 500 + 50 * Math.sin(i / 300.0);
+        }
+        int peak = 61_234;
+        y[peak] = 2000;  // A personal best far above everything around it
+
+        int[] selected = LttbDownsampler.downsample(x, y, 0, count, 400);
+
+        assertEquals(400, selected.length);
+        assertEquals(0, selected[0]);
+        assertEquals(count - 1, selected[selected.length - 1]);
+        for (int i = 1; i < selected.length; i++) {
+            assertTrue(selected[i] > selected[i - 1], "Indices ascend");
+        }
+        boolean peakKept = false;
+        for (int index : selected) {
+            peakKept |= index == peak;
+        }
+        assertTrue(peakKept, "The spike survives downsampling");
+    }
+
+    @Test
+    void testSubRangeStaysInsideIt() {
+        double[] x = new double[1000];
+        double[] y = new double[1000];
+        for (int i = 0; i < x.length; i++) {
+            x[i] = i;
+            y[i] = i % 7;
+        }
+        int[] selected = LttbDownsampler.downsample(x, y, 200, 700, 50);
+
+        assertEquals(50, selected.length);
+        assertEquals(200, selected[0]);
+        assertEquals(699, selected[49]);
+        assertThrows(IndexOutOfBoundsException.class, () -> LttbDownsampler.downsample(x, y, 900, 1001, 50));
+    }
+}